@@ -0,0 +1,204 @@
+package languagemodel.compute;
+
+import edu.stanford.nlp.util.StringUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import languagemodel.structures.ModelStore;
+import languagemodel.utils.FileHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * This class benchmarks scoring sentences against
+ * a model store, on or off the Java heap. The store
+ * is filled with a synthetic vocabulary and Zipf-
+ * distributed bigrams, so the benchmark needs neither
+ * a dataset nor a CoreNLP pipeline.
+ *
+ * The same models are also held in HashMaps keyed by
+ * word and by joined bigram, and scoreSentencesByString
+ * scores the sentences the way the String path does:
+ * appending the sentence symbols, splitting it into
+ * n-gram Strings and looking each one up. Comparing
+ * the two, with the gc profiler, shows the time and the
+ * bytes allocated per sentence the scorer saves.
+ *
+ * Build and run it with:
+ *
+ * >> mvn -Pjmh package
+ * >> java -jar target/benchmarks.jar SentenceScorerBenchmark -prof gc
+ *
+ * @author David Olorundare
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SentenceScorerBenchmark
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the number of words in the synthetic vocabulary.
+	private static final int VOCABULARY_SIZE = 20000;
+
+	// Represents the number of bigrams in the model store.
+	private static final int BIGRAMS = 200000;
+
+	// Represents the number of sentences scored per benchmark call.
+	private static final int SENTENCES = 1000;
+
+	// Represents the number of words in each sentence.
+	private static final int SENTENCE_LENGTH = 20;
+
+	// Represents true if the model store is kept outside the Java heap.
+	@Param({ "false", "true" })
+	public boolean offHeap;
+
+	// Represents the scorer the sentences are scored with.
+	private SentenceScorer scorer;
+
+	// Represents the unigram log probabilities of the String path, keyed by word.
+	private HashMap<String, Float> unigramModel;
+
+	// Represents the bigram log probabilities of the String path, keyed by the two words joined by a space.
+	private HashMap<String, Float> bigramModel;
+
+	// Represents the sentences scored.
+	private String[] sentences;
+
+	// Represents the scores of the sentence last scored.
+	private final float[] scores = new float[4];
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that fills the model store
+	 * and draws the sentences, with a fixed seed.
+	 */
+	@Setup
+	public void setUp()
+	{
+		Random random = new Random(42);
+		ArrayList<String> words = new ArrayList<String>(VOCABULARY_SIZE + 3);
+		float[] unigramLogProbabilities = new float[VOCABULARY_SIZE + 3];
+		words.add("<s>");
+		words.add("</s>");
+		words.add(".");
+		for (int index = 0; index < VOCABULARY_SIZE; index++) { words.add("w" + index); }
+		for (int index = 0; index < words.size(); index++) { unigramLogProbabilities[index] = (float) -Math.log(index + 2); }
+
+		ModelStore store = new ModelStore(words, unigramLogProbabilities, BIGRAMS, offHeap);
+		unigramModel = new HashMap<String, Float>();
+		for (int index = 0; index < words.size(); index++) { unigramModel.put(words.get(index), unigramLogProbabilities[index]); }
+		bigramModel = new HashMap<String, Float>();
+		for (int index = 0; index < BIGRAMS; index++)
+		{
+			String first = words.get(zipf(random)), second = words.get(zipf(random));
+			float logProbability = (float) -Math.log(2 + random.nextInt(100));
+			store.putBigram(store.getId(first), store.getId(second), 1, logProbability);
+			bigramModel.put(first + " " + second, logProbability);
+		}
+		scorer = new SentenceScorer(store);
+
+		sentences = new String[SENTENCES];
+		StringBuilder sentence = new StringBuilder();
+		for (int index = 0; index < SENTENCES; index++)
+		{
+			sentence.setLength(0);
+			for (int word = 0; word < SENTENCE_LENGTH; word++) { sentence.append(words.get(zipf(random))).append(' '); }
+			sentences[index] = sentence.append('.').toString();
+		}
+	}
+
+
+	/**
+	 * Helper method that scores every sentence.
+	 *
+	 * @return	the sum of the bigram log probabilities, so the work is not eliminated.
+	 */
+	@Benchmark
+	public float scoreSentences()
+	{
+		float total = 0;
+		for (String sentence : sentences)
+		{
+			scorer.score(sentence, scores);
+			total += scores[3];
+		}
+		return total;
+	}
+
+
+	/**
+	 * Helper method that scores every sentence
+	 * along the String path, as the baseline the
+	 * scorer is compared against.
+	 *
+	 * @return	the sum of the bigram log probabilities, so the work is not eliminated.
+	 */
+	@Benchmark
+	public float scoreSentencesByString()
+	{
+		float total = 0;
+		for (String sentence : sentences)
+		{
+			String appended = FileHandler.getInstance().appendToSentence(sentence);
+
+			// Every token but <s> is predicted, </s> included.
+			float unigramLogProbability = 0;
+			List<String> unigrams = StringUtils.split(appended);
+			for (String unigram : unigrams.subList(1, unigrams.size()))
+			{
+				Float logProbability = unigramModel.get(unigram);
+				if (logProbability != null) { unigramLogProbability += logProbability; }
+			}
+			scores[1] = unigramLogProbability;
+
+			float bigramLogProbability = 0;
+			for (String bigram : StringUtils.getNgramsString(appended, 2, 2))
+			{
+				Float logProbability = bigramModel.get(bigram);
+				if (logProbability != null) { bigramLogProbability += logProbability; }
+			}
+			scores[3] = bigramLogProbability;
+			total += scores[3];
+		}
+		return total;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that draws the index of a
+	 * word from a Zipf distribution over the words
+	 * after <s>, by inverting its continuous form.
+	 */
+	private static int zipf(Random random)
+	{
+		double rank = Math.exp(random.nextDouble() * Math.log(VOCABULARY_SIZE + 2));
+		return Math.min(VOCABULARY_SIZE + 2, (int) rank);
+	}
+
+}
@@ -0,0 +1,171 @@
+package languagemodel.structures;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * This class benchmarks the garbage collection
+ * pauses caused by the same language models held
+ * in three ways: as the HashMaps of WordTokens the
+ * models are built in, in a model store on the
+ * Java heap, and in a model store outside it (-O).
+ * The models are synthetic, with Zipf-distributed
+ * bigrams, and only the form benchmarked is kept
+ * alive.
+ *
+ * fullCollection times a full collection, which
+ * marks every live object, so it shows the cost of
+ * tracing the models directly. allocationChurn
+ * allocates short-lived arrays while keeping a ring
+ * of them alive, so some survive into the old
+ * generation, as a long scoring run does; run it
+ * with the gc profiler to get the number and total
+ * time of the collections per iteration, and with
+ * -Xlog:gc for each pause.
+ *
+ * Build and run it with:
+ *
+ * >> mvn -Pjmh package
+ * >> java -jar target/benchmarks.jar ModelStoreGcBenchmark -prof gc
+ * >> java -jar target/benchmarks.jar ModelStoreGcBenchmark.allocationChurn -jvmArgsAppend -Xlog:gc
+ *
+ * @author David Olorundare
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ModelStoreGcBenchmark
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the number of words in the synthetic vocabulary.
+	private static final int VOCABULARY_SIZE = 50000;
+
+	// Represents the number of bigrams drawn for the models.
+	private static final int BIGRAMS = 1000000;
+
+	// Represents the number of arrays kept alive by the allocation churn.
+	private static final int RING_SIZE = 4096;
+
+	// Represents the number of arrays allocated per churn operation.
+	private static final int ALLOCATIONS = 1000;
+
+	// Represents the form the models are held in: the HashMaps they are built in, or a model store on or off the heap.
+	@Param({ "hashMap", "onHeap", "offHeap" })
+	public String models;
+
+	// Represents the unigram model, if the models are held as HashMaps.
+	private HashMap<String, WordToken> unigramModel;
+
+	// Represents the bigram model, if the models are held as HashMaps.
+	private HashMap<String, WordToken> bigramModel;
+
+	// Represents the model store, if the models are held in one.
+	private ModelStore store;
+
+	// Represents the arrays kept alive by the allocation churn.
+	private final byte[][] ring = new byte[RING_SIZE][];
+
+	// Represents the next slot of the ring to be replaced.
+	private int ringPosition = 0;
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that builds the models, with a
+	 * fixed seed, and keeps only the form benchmarked.
+	 */
+	@Setup
+	public void setUp()
+	{
+		Random random = new Random(42);
+		HashMap<String, WordToken> unigrams = new HashMap<String, WordToken>();
+		for (int index = 0; index < VOCABULARY_SIZE; index++)
+		{
+			WordToken token = new WordToken();
+			token.unigram = "w" + index;
+			token.count = 1 + VOCABULARY_SIZE / (index + 1);
+			token.probability = (float) -Math.log(index + 2);
+			unigrams.put(token.unigram, token);
+		}
+		HashMap<String, WordToken> bigrams = new HashMap<String, WordToken>();
+		while (bigrams.size() < BIGRAMS)
+		{
+			WordToken gram = new WordToken();
+			gram.bigramW = "w" + zipf(random) + " w" + zipf(random);
+			gram.count = 1 + random.nextInt(10);
+			gram.probability = (float) -Math.log(2 + random.nextInt(100));
+			gram.splitWords();
+			bigrams.put(gram.bigramW, gram);
+		}
+
+		if (models.equals("hashMap")) { unigramModel = unigrams; bigramModel = bigrams; }
+		else { store = new ModelStore(unigrams, bigrams, BIGRAMS, models.equals("offHeap"), 0); }
+		System.gc();
+	}
+
+
+	/**
+	 * Helper method that runs a full collection.
+	 */
+	@Benchmark
+	public void fullCollection()
+	{ System.gc(); }
+
+
+	/**
+	 * Helper method that allocates arrays of random
+	 * size, each replacing the oldest array of the ring.
+	 *
+	 * @return	the last array allocated, so the work is not eliminated.
+	 */
+	@Benchmark
+	public byte[] allocationChurn()
+	{
+		byte[] allocated = null;
+		for (int index = 0; index < ALLOCATIONS; index++)
+		{
+			allocated = new byte[256 + (index * 7919) % 8192];
+			ring[ringPosition] = allocated;
+			ringPosition = (ringPosition + 1) % RING_SIZE;
+		}
+		return allocated;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that draws the index of a
+	 * word from a Zipf distribution over the
+	 * vocabulary, by inverting its continuous form.
+	 */
+	private static int zipf(Random random)
+	{
+		double rank = Math.exp(random.nextDouble() * Math.log(VOCABULARY_SIZE));
+		return Math.min(VOCABULARY_SIZE - 1, (int) rank - 1);
+	}
+
+}
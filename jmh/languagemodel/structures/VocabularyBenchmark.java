@@ -0,0 +1,192 @@
+package languagemodel.structures;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+
+/**
+ * This class benchmarks looking words up in the
+ * perfect hash vocabulary of the model store against
+ * a HashMap from word to id, over the words of a
+ * training dataset split on whitespace, as the scorer
+ * splits them. Every word of the dataset is looked
+ * up once per operation batch, most frequent words
+ * most often, as when a test dataset is scored.
+ *
+ * The scorer finds each word as a range of its
+ * sentence, so lookupHashMapRange cuts a substring
+ * for the HashMap, as it would have to, while
+ * lookupHashMapWord looks up words already held
+ * as Strings, the best case for the HashMap.
+ * Setup prints the retained size of both indexes,
+ * measured with JOL (plus, for a vocabulary kept
+ * outside the heap, its direct buffers), and the
+ * gc profiler shows the bytes allocated per lookup.
+ *
+ * Build and run it with:
+ *
+ * >> mvn -Pjmh package
+ * >> java -jar target/benchmarks.jar VocabularyBenchmark -prof gc
+ *
+ * @author David Olorundare
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VocabularyBenchmark
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the number of words looked up per benchmark call.
+	private static final int LOOKUPS = 1 << 16;
+
+	// Represents the training dataset the vocabulary is built from.
+	@Param({ "src/data/train/HG-train.txt" })
+	public String dataset;
+
+	// Represents true if the perfect hash vocabulary is kept outside the Java heap.
+	@Param({ "false", "true" })
+	public boolean offHeap;
+
+	// Represents the perfect hash vocabulary.
+	private PerfectHashVocabulary perfectHash;
+
+	// Represents the HashMap vocabulary, from each word to its id.
+	private HashMap<String, Integer> hashMap;
+
+	// Represents the text of the dataset the words are looked up in.
+	private String text;
+
+	// Represents the start of each word looked up, within the text.
+	private int[] starts;
+
+	// Represents the end of each word looked up, within the text.
+	private int[] ends;
+
+	// Represents each word looked up, held as a String.
+	private String[] words;
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that builds both vocabularies
+	 * from the dataset, picks the words looked up
+	 * and prints the retained size of each vocabulary.
+	 *
+	 * @throws IOException	if an error occurs while reading the dataset.
+	 */
+	@Setup
+	public void setUp() throws IOException
+	{
+		text = new String(Files.readAllBytes(Paths.get(dataset)), StandardCharsets.UTF_8);
+		LinkedHashSet<String> distinctWords = new LinkedHashSet<String>();
+		int[] allStarts = new int[text.length() / 2 + 1], allEnds = new int[allStarts.length];
+		int tokens = 0, index = 0;
+		while (index < text.length())
+		{
+			while (index < text.length() && Character.isWhitespace(text.charAt(index))) { index++; }
+			int start = index;
+			while (index < text.length() && !Character.isWhitespace(text.charAt(index))) { index++; }
+			if (index == start) { continue; }
+			allStarts[tokens] = start;
+			allEnds[tokens++] = index;
+			distinctWords.add(text.substring(start, index));
+		}
+
+		perfectHash = new PerfectHashVocabulary(distinctWords, offHeap);
+		hashMap = new HashMap<String, Integer>();
+		for (String word : distinctWords) { hashMap.put(word, perfectHash.getId(word)); }
+
+		// Take the words looked up in the order of the text, wrapping around, so frequent words are looked up most often.
+		starts = new int[LOOKUPS];
+		ends = new int[LOOKUPS];
+		words = new String[LOOKUPS];
+		for (int lookup = 0; lookup < LOOKUPS; lookup++)
+		{
+			starts[lookup] = allStarts[lookup % tokens];
+			ends[lookup] = allEnds[lookup % tokens];
+			words[lookup] = text.substring(starts[lookup], ends[lookup]);
+		}
+
+		long hashMapBytes = GraphLayout.parseInstance(hashMap).totalSize();
+		long perfectHashBytes = GraphLayout.parseInstance(perfectHash).totalSize() + (offHeap ? perfectHash.byteSize() : 0);
+		System.out.printf("%n%d words: HashMap retains %d bytes (%.1f per word), perfect hash %d bytes (%.1f per word)%n",
+				distinctWords.size(), hashMapBytes, (double) hashMapBytes / distinctWords.size(), perfectHashBytes, (double) perfectHashBytes / distinctWords.size());
+	}
+
+
+	/**
+	 * Helper method that looks every word up in the
+	 * perfect hash vocabulary, as a range of the text.
+	 *
+	 * @return	the sum of the ids found, so the work is not eliminated.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public long lookupPerfectHash()
+	{
+		long total = 0;
+		for (int lookup = 0; lookup < LOOKUPS; lookup++) { total += perfectHash.getId(text, starts[lookup], ends[lookup]); }
+		return total;
+	}
+
+
+	/**
+	 * Helper method that looks every word up in the
+	 * HashMap vocabulary, cutting it out of the text
+	 * first, as a range lookup on a HashMap must.
+	 *
+	 * @return	the sum of the ids found, so the work is not eliminated.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public long lookupHashMapRange()
+	{
+		long total = 0;
+		for (int lookup = 0; lookup < LOOKUPS; lookup++) { total += hashMap.get(text.substring(starts[lookup], ends[lookup])); }
+		return total;
+	}
+
+
+	/**
+	 * Helper method that looks every word up in the
+	 * HashMap vocabulary, from Strings made beforehand.
+	 *
+	 * @return	the sum of the ids found, so the work is not eliminated.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public long lookupHashMapWord()
+	{
+		long total = 0;
+		for (int lookup = 0; lookup < LOOKUPS; lookup++) { total += hashMap.get(words[lookup]); }
+		return total;
+	}
+
+}
@@ -0,0 +1,254 @@
+package languagemodel.compute;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import edu.stanford.nlp.ling.CoreAnnotations.LineNumberAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+import languagemodel.structures.ModelStore;
+import languagemodel.structures.PerplexityReport;
+import languagemodel.utils.CompiledCorpus;
+import languagemodel.utils.FileHandler;
+import languagemodel.utils.MappedTextDocument;
+
+
+/**
+ * This class evaluates many test datasets against
+ * the same language models, several files at a time.
+ * The CoreNLP pipeline and the model store are shared
+ * by all files; each file is read, annotated and scored
+ * on its own thread with its own sentence scorer, and
+ * its results are streamed to its own result file as
+ * its sentences are scored. Once every file has been
+ * evaluated a summary of all of them is written.
+ *
+ * @author David Olorundare
+ *
+ */
+public class BatchEvaluator
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the name of the summary file written to the output directory.
+	public static final String SUMMARY_FILE = "summary.txt";
+
+	// Represents the file name extension given to result files.
+	private static final String RESULT_EXTENSION = ".out";
+
+	// Represents the CoreNLP pipeline the test datasets are annotated with.
+	private final StanfordCoreNLP pipeline;
+
+	// Represents the model store the test datasets are scored against.
+	private final ModelStore store;
+
+	// Represents the number of files evaluated at a time.
+	private final int threads;
+
+	// Represents the charset the test datasets are read with, or null to detect it for each file.
+	private final Charset inputCharset;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 * @param nlpPipeline	the CoreNLP pipeline the test datasets are annotated with.
+	 *
+	 * @param modelStore	the model store the test datasets are scored against; it must hold the log probabilities.
+	 *
+	 * @param fileThreads	the number of files evaluated at a time.
+	 *
+	 * @param charset	the charset the test datasets are read with, or null to detect it for each file.
+	 *
+	 */
+	public BatchEvaluator(StanfordCoreNLP nlpPipeline, ModelStore modelStore, int fileThreads, Charset charset)
+	{
+		pipeline = nlpPipeline;
+		store = modelStore;
+		threads = Math.max(1, fileThreads);
+		inputCharset = charset;
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that evaluates every test dataset,
+	 * writing one result file per dataset and a summary
+	 * to the output directory.
+	 *
+	 * @param testFiles	the paths of the test datasets.
+	 *
+	 * @param outputDirectory	the directory the result files and summary are written to; it is created if needed.
+	 *
+	 * @return	the text of the summary.
+	 *
+	 * @throws IOException	if a test dataset cannot be read, or a result file cannot be written.
+	 */
+	public String evaluate(List<String> testFiles, String outputDirectory) throws IOException
+	{
+		final File directory = new File(outputDirectory);
+		if (!directory.isDirectory() && !directory.mkdirs()) { throw new IOException("The output directory cannot be created: " + outputDirectory); }
+
+		long startTime = System.nanoTime();
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		List<Future<float[]>> results = new ArrayList<Future<float[]>>();
+		try
+		{
+			for (final String testFile : testFiles)
+			{
+				results.add(workers.submit(new Callable<float[]>()
+				{
+					public float[] call() throws IOException { return evaluateFile(testFile, new File(directory, new File(testFile).getName() + RESULT_EXTENSION)); }
+				}));
+			}
+
+			StringBuilder summary = new StringBuilder();
+			summary.append(String.format("%-40s %10s %10s %16s %16s %12s %12s %10s%n", "file", "sentences", "tokens", "avg unigram SP", "avg bigram SP", "unigram PPL", "bigram PPL", "ms"));
+			long sentences = 0, tokens = 0;
+			int emptyFiles = 0;
+			for (int index = 0; index < testFiles.size(); index++)
+			{
+				float[] result = waitFor(results.get(index));
+				sentences += (long) result[0];
+				tokens += (long) result[1];
+				String name = new File(testFiles.get(index)).getName();
+				if (result[0] == 0)
+				{
+					// A file without sentences has no probabilities or perplexities to report.
+					emptyFiles++;
+					summary.append(String.format("%-40s %10d %10d %16s %16s %12s %12s %10.1f%n", name, 0, 0, "empty", "empty", "empty", "empty", result[6]));
+					continue;
+				}
+				summary.append(String.format("%-40s %10d %10d %16.6e %16.6e %12.4f %12.4f %10.1f%n", name,
+						(long) result[0], (long) result[1], result[2], result[3], result[4], result[5], result[6]));
+			}
+			summary.append(String.format("%n%d files (%d empty), %d sentences, %d tokens in %.1f ms (%d threads)%n", testFiles.size(), emptyFiles, sentences, tokens,
+					(System.nanoTime() - startTime) / 1e6, threads));
+
+			Writer summaryWriter = new OutputStreamWriter(new FileOutputStream(new File(directory, SUMMARY_FILE)), StandardCharsets.UTF_8);
+			try { summaryWriter.write(summary.toString()); }
+			finally { summaryWriter.close(); }
+			return summary.toString();
+		}
+		finally { workers.shutdownNow(); }
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that reads, annotates and scores
+	 * one test dataset, streaming each sentence's
+	 * probabilities to its result file as it is scored.
+	 *
+	 * @param testFile	the path of the test dataset.
+	 *
+	 * @param resultFile	the result file written.
+	 *
+	 * @return	the number of sentences and tokens, the average unigram and bigram sentence-probabilities, the unigram and bigram perplexities and the evaluation time (in milliseconds) of the dataset; all but the time are 0 if it holds no sentences.
+	 *
+	 * @throws IOException	if the test dataset cannot be read, or the result file cannot be written.
+	 */
+	private float[] evaluateFile(String testFile, File resultFile) throws IOException
+	{
+		long startTime = System.nanoTime();
+		Annotation document;
+		if (CompiledCorpus.isCompiled(testFile)) { document = new CompiledCorpus(testFile).getDocument(); }
+		else { document = new MappedTextDocument(testFile, inputCharset, pipeline, MappedTextDocument.SLICE_CHARACTERS).getDocument(); }
+
+		SentenceScorer scorer = new SentenceScorer(store);
+		PerplexityReport report = new PerplexityReport();
+		float[] scores = new float[4];
+		float totalUnigramSentenceProbability = 0, totalBigramSentenceProbability = 0;
+		long tokens = 0;
+		int sentenceNumber = 1;
+
+		Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resultFile), StandardCharsets.UTF_8));
+		try
+		{
+			for (CoreMap sentence : document.get(SentencesAnnotation.class))
+			{
+				String text = sentence.toString();
+				scorer.score(text, scores);
+				totalUnigramSentenceProbability += scores[0];
+				totalBigramSentenceProbability += scores[2];
+
+				int sentenceTokens = FileHandler.getInstance().countWords(text);
+				tokens += sentenceTokens;
+				Integer line = sentence.get(LineNumberAnnotation.class);
+				report.addSentence(text, scores[1], scores[3], sentenceTokens, (line == null) ? 0 : line);
+
+				output.write("Sentence " + sentenceNumber++ + ": " + text + "\n");
+				output.write("- unigram [Prob] " + scores[0] + "\n");
+				output.write("- bigram  [Prob] " + scores[2] + "\n\n");
+			}
+
+			int sentences = report.getSentenceCount();
+			float[] perplexity = report.getCorpusPerplexity();
+			output.write("==========================\n");
+			if (sentences == 0)
+			{
+				// An empty dataset has no averages or perplexities, which would otherwise come out as NaN.
+				output.write("* The test dataset holds no sentences.\n");
+				float[] result = { 0, 0, 0, 0, 0, 0, (System.nanoTime() - startTime) / 1e6f };
+				return result;
+			}
+			output.write("* Probability:\n");
+			output.write("- Average unigram probability: " + (totalUnigramSentenceProbability / sentences) + "\n");
+			output.write("- Average bigram probability: " + (totalBigramSentenceProbability / sentences) + "\n");
+			output.write("\n----------\n");
+			output.write("*Perplexity:\n");
+			output.write("- Unigram perplexity: " + perplexity[0] + "\n");
+			output.write("- Bigram perplexity:  " + perplexity[1] + "\n");
+
+			float[] result = { sentences, tokens, totalUnigramSentenceProbability / sentences, totalBigramSentenceProbability / sentences,
+					perplexity[0], perplexity[1], (System.nanoTime() - startTime) / 1e6f };
+			return result;
+		}
+		finally { output.close(); }
+	}
+
+
+	/**
+	 * Helper method that waits for the evaluation of
+	 * a file and returns its result, rethrowing the
+	 * error that stopped it, if any.
+	 */
+	private static float[] waitFor(Future<float[]> result) throws IOException
+	{
+		try { return result.get(); }
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("The batch evaluation was interrupted.", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException) { throw (IOException) e.getCause(); }
+			throw new IOException("A test dataset could not be evaluated.", e.getCause());
+		}
+	}
+
+}
@@ -0,0 +1,775 @@
+package languagemodel.compute;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetEndAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+import languagemodel.structures.NgramCounts;
+import languagemodel.structures.WordToken;
+import languagemodel.utils.FileHandler;
+import languagemodel.utils.MappedTextReader;
+
+
+/**
+ * This class counts the unigrams and bigrams of
+ * a training dataset in three overlapping stages:
+ * a reader thread decodes the memory-mapped file
+ * into batches of whole lines, a pool of tokenizer
+ * workers splits each batch into sentences, and a
+ * pool of counting workers turns each sentence into
+ * a token-id stream and counts it, with its unigrams
+ * counted from the words of its CoreNLP tokens
+ * (unless they are counted from whitespace words). The
+ * stages are connected by bounded queues, so a slow
+ * stage blocks the stages feeding it instead of
+ * letting batches pile up in memory. The reader's
+ * buffer never grows, and the sentences counted are
+ * dropped with their batch unless they are kept for
+ * the random-sentence generator, so the memory the
+ * pipeline holds does not grow with the dataset.
+ *
+ * CoreNLP joins a line that does not end a sentence
+ * to the next line's sentence, even across a blank
+ * line, so the reader cuts a batch at its last line
+ * break after a full stop, question or exclamation
+ * mark; failing that, at its last line break, then
+ * its last whitespace, then wherever the buffer is
+ * full. The tokenizer workers on either side of a
+ * cut run the splitter on the text around it, and if
+ * a sentence runs across it (after an abbreviation
+ * such as "Mr.", say), the earlier batch hands its
+ * last sentence on to the later one. A sentence
+ * handed on is capped in length, and a longer one
+ * is counted as cut. The splitter sees only the text
+ * around a cut, so a split that depends on text
+ * further away could still differ from that of a
+ * single-threaded run.
+ *
+ * The busy time of every stage and the depth of
+ * the queue feeding it are recorded, to show which
+ * stage is the bottleneck.
+ *
+ * @author David Olorundare
+ *
+ */
+public class CountingPipeline
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the number of characters the reader decodes into one batch at most, unless another number is given.
+	private static final int BATCH_CHARACTERS = 1 << 16;
+
+	// Represents the number of characters of text either side of a cut the splitter is run on.
+	private static final int CUT_CONTEXT = 1024;
+
+	// Represents the length of the longest sentence a batch hands on to the next one, beyond which it is counted as cut.
+	private static final int MAX_CARRY = 1 << 18;
+
+	// Represents the batch each stage passes on once its input is exhausted, telling the next stage to stop.
+	private static final Batch END_OF_INPUT = new Batch(-1, null, null, null, null, null);
+
+	// Represents the CoreNLP pipeline the tokenizer workers annotate batches with.
+	private final StanfordCoreNLP tokenizer;
+
+	// Represents the number of tokenizer workers.
+	private final int tokenizerThreads;
+
+	// Represents the number of counting workers.
+	private final int countingThreads;
+
+	// Represents the number of characters the reader decodes into one batch at most.
+	private final int batchCharacters;
+
+	// Represents the disk-spilling counter the bigrams are handed to, or null if they are counted in memory.
+	private final ExternalBigramCounter externalBigramCounter;
+
+	// Represents true if unigrams are counted from the words of the CoreNLP tokens, rather than from the whitespace words.
+	private final boolean countTokenWords;
+
+	// Represents true if the sentences counted are kept, for the random-sentence generator.
+	private final boolean keepSentences;
+
+	// Represents the queue of text batches between the reader and the tokenizer workers.
+	private final ArrayBlockingQueue<Batch> textQueue;
+
+	// Represents the queue of tokenized batches between the tokenizer and the counting workers.
+	private final ArrayBlockingQueue<Batch> sentenceQueue;
+
+	// Represents the threads running the stages.
+	private ExecutorService workers;
+
+	// Represents the pending results of the stages.
+	private final ArrayList<Future<Void>> stageResults = new ArrayList<Future<Void>>();
+
+	// Represents the results of the stages, in the order the stages finish.
+	private ExecutorCompletionService<Void> finishedStages;
+
+	// Represents whether the stages have been stopped after one of them failed.
+	private volatile boolean stopped = false;
+
+	// Represents the counts of each counting worker.
+	private final ArrayList<NgramCounts> workerCounts = new ArrayList<NgramCounts>();
+
+	// Represents the sentences of each batch, keyed by batch number, if they are kept.
+	private final ConcurrentSkipListMap<Long, String[]> batchSentences = new ConcurrentSkipListMap<Long, String[]>();
+
+	// Represents the text each batch hands on to the next one, keyed by the number of the batch handing it on.
+	private final ConcurrentHashMap<Long, CompletableFuture<String>> carries = new ConcurrentHashMap<Long, CompletableFuture<String>>();
+
+	// Represents the number of tokenizer workers still running.
+	private final AtomicInteger runningTokenizers = new AtomicInteger();
+
+	// Represents the charset the training dataset is decoded with.
+	private Charset charset;
+
+	// Represents the size of the training dataset in bytes.
+	private long byteSize = 0;
+
+	// Represents the time the pipeline started, in nanoseconds.
+	private long startTime = 0;
+
+	// Represents the time the pipeline took from start to finish, in nanoseconds.
+	private long elapsedTime = 0;
+
+	// Represents the number of batches read, tokenized and counted.
+	private final AtomicLong[] stageItems = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+
+	// Represents the time the workers of each stage spent working rather than waiting on a queue, in nanoseconds.
+	private final AtomicLong[] stageBusyTime = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+
+	// Represents the sum of the depths of the queue feeding each stage, sampled whenever a batch is taken from it.
+	private final AtomicLong[] queueDepthTotal = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+
+	// Represents the number of times the depth of the queue feeding each stage was sampled.
+	private final AtomicLong[] queueDepthSamples = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+
+	// Represents the largest depth of the queue feeding each stage seen when a batch is taken from it.
+	private final AtomicInteger[] queueDepthMaximum = { new AtomicInteger(), new AtomicInteger(), new AtomicInteger() };
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 * @param pipeline	the CoreNLP pipeline used to split the text into sentences and words.
+	 *
+	 * @param tokenizerWorkers	the number of tokenizer workers.
+	 *
+	 * @param countingWorkers	the number of counting workers.
+	 *
+	 * @param bigramCounter	the disk-spilling counter bigrams are handed to, or null to count them in memory.
+	 *
+	 * @param tokenUnigrams	true to count unigrams from the words of the CoreNLP tokens, or false to count them from the whitespace words.
+	 *
+	 * @param sentencesKept	true to keep the text of every sentence counted, for getSentences.
+	 *
+	 */
+	public CountingPipeline(StanfordCoreNLP pipeline, int tokenizerWorkers, int countingWorkers, ExternalBigramCounter bigramCounter, boolean tokenUnigrams, boolean sentencesKept)
+	{ this(pipeline, tokenizerWorkers, countingWorkers, bigramCounter, tokenUnigrams, sentencesKept, BATCH_CHARACTERS); }
+
+
+	/**
+	 * Constructor of the class, with the size of
+	 * the batches given, so tests can put many cuts
+	 * into a small dataset.
+	 */
+	CountingPipeline(StanfordCoreNLP pipeline, int tokenizerWorkers, int countingWorkers, ExternalBigramCounter bigramCounter, boolean tokenUnigrams, boolean sentencesKept, int batchSize)
+	{
+		if (tokenizerWorkers <= 0 || countingWorkers <= 0) { throw new IllegalArgumentException("The pipeline needs at least one worker per stage."); }
+
+		tokenizer = pipeline;
+		tokenizerThreads = tokenizerWorkers;
+		countingThreads = countingWorkers;
+		externalBigramCounter = bigramCounter;
+		countTokenWords = tokenUnigrams;
+		keepSentences = sentencesKept;
+		batchCharacters = batchSize;
+
+		// Two batches per worker keep every worker supplied without letting the queues grow further.
+		textQueue = new ArrayBlockingQueue<Batch>(2 * tokenizerWorkers);
+		sentenceQueue = new ArrayBlockingQueue<Batch>(2 * countingWorkers);
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that starts counting the unigrams
+	 * and bigrams of a training dataset, returning
+	 * while the stages are running.
+	 *
+	 * @param filePath	the path of the training dataset.
+	 *
+	 * @param fileCharset	the charset of the training dataset, or null to detect it.
+	 *
+	 * @throws FileNotFoundException	if the file does not exist.
+	 *
+	 * @throws IOException	if an error occurs while mapping the file.
+	 */
+	public void start(String filePath, Charset fileCharset) throws FileNotFoundException, IOException
+	{
+		startTime = System.nanoTime();
+		final MappedTextReader reader = new MappedTextReader(filePath, fileCharset);
+		byteSize = reader.getByteSize();
+		charset = reader.getCharset();
+
+		workers = Executors.newFixedThreadPool(1 + tokenizerThreads + countingThreads);
+		finishedStages = new ExecutorCompletionService<Void>(workers);
+		runningTokenizers.set(tokenizerThreads);
+		stageResults.add(finishedStages.submit(() -> { read(reader); return null; }));
+		for (int index = 0; index < tokenizerThreads; index++) { stageResults.add(finishedStages.submit(() -> { tokenize(); return null; })); }
+		for (int index = 0; index < countingThreads; index++)
+		{
+			final NgramCounts counts = new NgramCounts();
+			workerCounts.add(counts);
+			stageResults.add(finishedStages.submit(() -> { count(counts); return null; }));
+		}
+		workers.shutdown();
+	}
+
+
+	/**
+	 * Helper method that waits for every stage to
+	 * finish, then adds the counts to the given
+	 * unigram and bigram count models. The stages
+	 * are awaited in the order they finish, so the
+	 * first one to fail stops all the others, which
+	 * would otherwise stay blocked on its queue.
+	 *
+	 * @param unigramModel	the unigram count model added to.
+	 *
+	 * @param bigramModel	the bigram count model added to; unused if bigrams are handed to the disk-spilling counter.
+	 *
+	 * @throws IOException	if any stage failed.
+	 */
+	public void finish(HashMap<String, WordToken> unigramModel, HashMap<String, WordToken> bigramModel) throws IOException
+	{
+		try
+		{
+			for (int remaining = stageResults.size(); remaining > 0; remaining--) { finishedStages.take().get(); }
+		}
+		catch (InterruptedException e)
+		{
+			stopStages();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while counting the training dataset.", e);
+		}
+		catch (ExecutionException e)
+		{
+			// A failed stage leaves the others blocked on its queues, so stop them too.
+			stopStages();
+			if (e.getCause() instanceof IOException) { throw (IOException) e.getCause(); }
+			throw new IOException("Counting the training dataset failed.", e.getCause());
+		}
+		elapsedTime = System.nanoTime() - startTime;
+
+		for (NgramCounts counts : workerCounts) { counts.mergeInto(unigramModel, bigramModel); }
+	}
+
+
+	/**
+	 * Helper method that returns the number of sentences counted.
+	 *
+	 * @return	the number of sentences counted.
+	 */
+	public int getSentenceCount()
+	{
+		int sentences = 0;
+		for (NgramCounts counts : workerCounts) { sentences += counts.getSentenceCount(); }
+		return sentences;
+	}
+
+
+	/**
+	 * Helper method that returns the text of every
+	 * sentence counted, in the order they appear in
+	 * the training dataset, if they were kept.
+	 *
+	 * @return	the sentences counted, or none if they were not kept.
+	 */
+	public String[] getSentences()
+	{
+		ArrayList<String> sentences = new ArrayList<String>();
+		for (String[] batch : batchSentences.values())
+		{
+			for (String sentence : batch) { sentences.add(sentence); }
+		}
+		return sentences.toArray(new String[0]);
+	}
+
+
+	/**
+	 * Helper method that returns the charset the training dataset was decoded with.
+	 *
+	 * @return	the charset of the training dataset.
+	 */
+	public Charset getCharset()
+	{ return charset; }
+
+
+	/**
+	 * Helper method that returns the size of the training dataset in bytes.
+	 *
+	 * @return	the size of the training dataset.
+	 */
+	public long getByteSize()
+	{ return byteSize; }
+
+
+	/**
+	 * Helper method that returns the time the reader spent decoding the training dataset.
+	 *
+	 * @return	the read time, in nanoseconds.
+	 */
+	public long getReadTime()
+	{ return stageBusyTime[0].get(); }
+
+
+	/**
+	 * Helper method that returns the statistics of the
+	 * read, tokenize and count stages, in that order.
+	 * The utilization of a stage is the fraction of the
+	 * pipeline's running time its workers spent working;
+	 * the busiest stage is the bottleneck.
+	 *
+	 * @return	for each stage, its number of workers, the number of batches it handled, its utilization, and the average and largest depth of the queue feeding it.
+	 */
+	public float[][] getStageStats()
+	{
+		int[] stageWorkers = { 1, tokenizerThreads, countingThreads };
+		float[][] stats = new float[3][];
+		for (int stage = 0; stage < 3; stage++)
+		{
+			long items = stageItems[stage].get();
+			float utilization = (elapsedTime == 0) ? 0 : (float) stageBusyTime[stage].get() / (elapsedTime * stageWorkers[stage]);
+			long samples = queueDepthSamples[stage].get();
+			float averageDepth = (samples == 0) ? 0 : (float) queueDepthTotal[stage].get() / samples;
+			stats[stage] = new float[] { stageWorkers[stage], items, utilization, averageDepth, queueDepthMaximum[stage].get() };
+		}
+		return stats;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that runs the reader stage: it
+	 * decodes the mapped training dataset a batch at
+	 * a time, one window of the file after another,
+	 * cutting each batch where cutPosition finds, and
+	 * queues the batches for the tokenizers. A batch
+	 * is queued once the next one has been cut, so
+	 * the text after its cut is known.
+	 *
+	 * @param reader	the reader of the training dataset, closed once it has been read.
+	 *
+	 * @throws InterruptedException	if the reader is interrupted while waiting on the queue.
+	 *
+	 * @throws IOException	if an error occurs while mapping the next window of the file.
+	 */
+	private void read(MappedTextReader reader) throws InterruptedException, IOException
+	{
+		try
+		{
+			CharBuffer characters = CharBuffer.allocate(batchCharacters);
+			long batchNumber = 0;
+			String pendingText = null;
+			Cut pendingCut = null;
+			boolean endOfInput = false;
+			while (!endOfInput)
+			{
+				long batchStart = System.nanoTime();
+				endOfInput = !reader.read(characters);
+				characters.flip();
+				int end = endOfInput ? characters.limit() : cutPosition(characters);
+				String text = characters.subSequence(0, end).toString();
+				characters.position(end);
+				characters.compact();
+				stageBusyTime[0].addAndGet(System.nanoTime() - batchStart);
+				if (text.isEmpty()) { continue; }
+
+				// The batch before this one can be queued, now that the text after its cut is known.
+				Cut cut = null;
+				if (pendingText != null)
+				{
+					cut = new Cut(pendingText, text);
+					queueText(new Batch(batchNumber++, pendingText, pendingCut, cut, null, null));
+				}
+				pendingText = text;
+				pendingCut = cut;
+			}
+			if (pendingText != null) { queueText(new Batch(batchNumber, pendingText, pendingCut, null, null, null)); }
+		}
+		finally
+		{
+			reader.close();
+			if (!stopped)
+			{
+				for (int index = 0; index < tokenizerThreads; index++) { textQueue.put(END_OF_INPUT); }
+			}
+		}
+	}
+
+
+	/**
+	 * Helper method that queues a text batch for the tokenizers.
+	 */
+	private void queueText(Batch batch) throws InterruptedException
+	{
+		textQueue.put(batch);
+		stageItems[0].incrementAndGet();
+	}
+
+
+	/**
+	 * Helper method that runs a tokenizer worker: it
+	 * splits each text batch into sentences, and
+	 * queues their texts (and token words, if the
+	 * unigrams are counted from them) for the
+	 * counting workers. A sentence running across the
+	 * cut after a batch is handed on to the next one,
+	 * which puts it ahead of its own text.
+	 *
+	 * @throws InterruptedException	if the worker is interrupted while waiting on a queue or a sentence handed on.
+	 *
+	 * @throws ExecutionException	never, since a sentence handed on is never completed exceptionally.
+	 */
+	private void tokenize() throws InterruptedException, ExecutionException
+	{
+		try
+		{
+			Batch batch;
+			while ((batch = take(textQueue, 1)) != END_OF_INPUT)
+			{
+				long batchStart = System.nanoTime();
+				String text = batch.text;
+				if (batch.startCut != null && !batch.startCut.splits(tokenizer))
+				{
+					// Waiting on the batch before is not counted as busy time.
+					long waitStart = System.nanoTime();
+					text = carry(batch.number - 1).get() + text;
+					carries.remove(batch.number - 1);
+					batchStart += System.nanoTime() - waitStart;
+				}
+				// The text after the cut is tokenized too, since CoreNLP ends the last sentence of a text differently.
+				boolean splits = (batch.endCut == null) || batch.endCut.splits(tokenizer);
+				List<CoreMap> sentences = annotate(text, (batch.endCut == null) ? "" : batch.endCut.following());
+				int counted = 0;
+				while (counted < sentences.size() && sentences.get(counted).get(CharacterOffsetBeginAnnotation.class) < text.length()) { counted++; }
+				// The cut was judged from less text than the batch holds, so if the two disagree the batch is tokenized by itself.
+				if (splits && counted > 0 && sentences.get(counted - 1).get(CharacterOffsetEndAnnotation.class) > text.length())
+				{
+					sentences = annotate(text, "");
+					counted = sentences.size();
+				}
+
+				// Hand the last sentence on to the next batch if it runs across the cut, unless it is too long to.
+				if (!splits)
+				{
+					String rest = (counted == 0) ? "" : text.substring(sentences.get(counted - 1).get(CharacterOffsetBeginAnnotation.class));
+					if (rest.length() > MAX_CARRY) { rest = ""; }
+					else if (!rest.isEmpty()) { counted--; }
+					carry(batch.number).complete(rest);
+				}
+
+				String[] sentenceTexts = new String[counted];
+				String[][] sentenceTokenWords = countTokenWords ? new String[counted][] : null;
+				for (int index = 0; index < counted; index++)
+				{
+					sentenceTexts[index] = sentences.get(index).toString();
+					if (countTokenWords) { sentenceTokenWords[index] = FileHandler.getInstance().tokenWords(sentences.get(index)); }
+				}
+				stageBusyTime[1].addAndGet(System.nanoTime() - batchStart);
+				stageItems[1].incrementAndGet();
+
+				sentenceQueue.put(new Batch(batch.number, null, null, null, sentenceTexts, sentenceTokenWords));
+			}
+		}
+		finally
+		{
+			// The last tokenizer to stop tells every counting worker to stop.
+			if (runningTokenizers.decrementAndGet() == 0 && !stopped)
+			{
+				for (int index = 0; index < countingThreads; index++) { sentenceQueue.put(END_OF_INPUT); }
+			}
+		}
+	}
+
+
+	/**
+	 * Helper method that splits the text of a batch,
+	 * followed by the text after its cut, into sentences.
+	 */
+	private List<CoreMap> annotate(String text, String following)
+	{
+		Annotation document = new Annotation(text + following);
+		tokenizer.annotate(document);
+		return document.get(SentencesAnnotation.class);
+	}
+
+
+	/**
+	 * Helper method that returns the text a batch
+	 * hands on to the next one, once it is known.
+	 */
+	private CompletableFuture<String> carry(long batchNumber)
+	{ return carries.computeIfAbsent(batchNumber, number -> new CompletableFuture<String>()); }
+
+
+	/**
+	 * Helper method that runs a counting worker: it
+	 * counts the unigrams and bigrams of each batch of
+	 * sentences into the worker's own counts.
+	 *
+	 * @param counts	the counts of the worker.
+	 *
+	 * @throws InterruptedException	if the worker is interrupted while waiting on the queue.
+	 *
+	 * @throws IOException	if an error occurs while spilling bigram counts to disk.
+	 */
+	private void count(NgramCounts counts) throws InterruptedException, IOException
+	{
+		Batch batch;
+		while ((batch = take(sentenceQueue, 2)) != END_OF_INPUT)
+		{
+			long batchStart = System.nanoTime();
+			for (int index = 0; index < batch.sentences.length; index++)
+			{
+				String[] tokenWords = (batch.tokenWords == null) ? null : batch.tokenWords[index];
+				// The disk-spilling counter spills the worker's own counts whenever all the workers' counts exceed its budget.
+				if (externalBigramCounter != null) { externalBigramCounter.addSentence(counts, batch.sentences[index], tokenWords); }
+				else { counts.addSentence(batch.sentences[index], tokenWords, null); }
+			}
+			if (keepSentences) { batchSentences.put(batch.number, batch.sentences); }
+			stageBusyTime[2].addAndGet(System.nanoTime() - batchStart);
+			stageItems[2].incrementAndGet();
+		}
+		if (externalBigramCounter != null) { externalBigramCounter.drain(counts); }
+	}
+
+
+	/**
+	 * Helper method that returns where a full buffer
+	 * is cut: after its last line break that ends a
+	 * sentence, failing that after its last line break,
+	 * then after its last whitespace, and failing all
+	 * of them at its end.
+	 *
+	 * @param characters	the decoded text, from position 0 to its limit.
+	 *
+	 * @return	the length of the batch cut from the text, which is never 0.
+	 */
+	private static int cutPosition(CharBuffer characters)
+	{
+		int lastLineBreak = -1, lastWhitespace = -1;
+		for (int position = characters.limit() - 1; position >= 0; position--)
+		{
+			char character = characters.get(position);
+			if (character == '\n')
+			{
+				if (endsSentence(characters, position)) { return position + 1; }
+				if (lastLineBreak < 0) { lastLineBreak = position; }
+			}
+			if (lastWhitespace < 0 && Character.isWhitespace(character)) { lastWhitespace = position; }
+		}
+		if (lastLineBreak >= 0) { return lastLineBreak + 1; }
+		return (lastWhitespace >= 0) ? lastWhitespace + 1 : characters.limit();
+	}
+
+
+	/**
+	 * Helper method that returns true if the text
+	 * before a line break ends with the end of a
+	 * sentence: a full stop, question or exclamation
+	 * mark, perhaps followed by closing quotes or
+	 * brackets. CoreNLP joins a line that does not
+	 * end a sentence to the next line's sentence,
+	 * so a batch cut there would count different
+	 * sentences than the whole dataset does.
+	 *
+	 * @param characters	the decoded text.
+	 *
+	 * @param lineBreak	the position of the line break.
+	 */
+	private static boolean endsSentence(CharBuffer characters, int lineBreak)
+	{
+		int position = lineBreak - 1;
+		while (position >= 0 && Character.isWhitespace(characters.get(position))) { position--; }
+		while (position >= 0 && "\"')]".indexOf(characters.get(position)) >= 0) { position--; }
+		if (position < 0 || ".!?".indexOf(characters.get(position)) < 0) { return false; }
+		if (characters.get(position) != '.') { return true; }
+		// An ellipsis, spaced or not, does not end a sentence.
+		position--;
+		while (position >= 0 && characters.get(position) == ' ') { position--; }
+		return position < 0 || characters.get(position) != '.';
+	}
+
+
+	/**
+	 * Helper method that stops every stage after one
+	 * of them failed: the stages are cancelled, which
+	 * interrupts those blocked on a queue, and the
+	 * queues are cleared, so no stage blocks on them
+	 * again while it stops.
+	 */
+	private void stopStages()
+	{
+		stopped = true;
+		for (Future<Void> result : stageResults) { result.cancel(true); }
+		textQueue.clear();
+		sentenceQueue.clear();
+		workers.shutdownNow();
+	}
+
+
+	/**
+	 * Helper method that takes the next batch from
+	 * the queue feeding a stage, recording the depth
+	 * the queue had beforehand.
+	 */
+	private Batch take(ArrayBlockingQueue<Batch> queue, int stage) throws InterruptedException
+	{
+		int depth = queue.size();
+		Batch batch = queue.take();
+		if (batch != END_OF_INPUT)
+		{
+			queueDepthTotal[stage].addAndGet(depth);
+			queueDepthSamples[stage].incrementAndGet();
+			queueDepthMaximum[stage].accumulateAndGet(depth, Math::max);
+		}
+		return batch;
+	}
+
+
+	/**
+	 * This class represents one batch passed between
+	 * stages: a run of text, with the cuts either side
+	 * of it, or the sentences it was split into.
+	 *
+	 */
+	private static final class Batch
+	{
+		// Represents the position of the batch within the training dataset.
+		final long number;
+
+		// Represents the text of the batch, before it is tokenized.
+		final String text;
+
+		// Represents the cut between the batch and the one before it, or null if it is the first.
+		final Cut startCut;
+
+		// Represents the cut between the batch and the one after it, or null if it is the last.
+		final Cut endCut;
+
+		// Represents the sentences of the batch, once it is tokenized.
+		final String[] sentences;
+
+		// Represents the words of the CoreNLP tokens of each sentence, or null if unigrams are counted from whitespace words.
+		final String[][] tokenWords;
+
+		Batch(long batchNumber, String batchText, Cut batchStartCut, Cut batchEndCut, String[] batchSentences, String[][] batchTokenWords)
+		{
+			number = batchNumber;
+			text = batchText;
+			startCut = batchStartCut;
+			endCut = batchEndCut;
+			sentences = batchSentences;
+			tokenWords = batchTokenWords;
+		}
+	}
+
+
+	/**
+	 * This class represents the cut between two
+	 * batches, with the text either side of it: the
+	 * last line before it that is not blank, and the
+	 * first one after it, each up to CUT_CONTEXT
+	 * characters, with any blank lines between them. It is shared
+	 * by the tokenizer workers of both batches, so the
+	 * splitter runs on it once, and both see the same
+	 * answer.
+	 *
+	 */
+	private static final class Cut
+	{
+		// Represents the text around the cut.
+		private final String context;
+
+		// Represents the position of the cut within its context.
+		private final int offset;
+
+		// Represents whether CoreNLP splits sentences at the cut, once the splitter has been run.
+		private Boolean splits;
+
+		Cut(String before, String after)
+		{
+			// The last line before the cut, past any blank lines it ends with.
+			int start = before.length();
+			while (start > 0 && Character.isWhitespace(before.charAt(start - 1))) { start--; }
+			while (start > 0 && before.charAt(start - 1) != '\n') { start--; }
+			start = Math.max(start, before.length() - CUT_CONTEXT);
+
+			// The line after the cut, past any blank lines it starts with.
+			int end = 0;
+			while (end < after.length() && Character.isWhitespace(after.charAt(end))) { end++; }
+			while (end < after.length() && after.charAt(end) != '\n') { end++; }
+			end = Math.min(end, CUT_CONTEXT);
+
+			context = before.substring(start) + after.substring(0, end);
+			offset = before.length() - start;
+		}
+
+		/**
+		 * Returns the text after the cut.
+		 */
+		String following()
+		{ return context.substring(offset); }
+
+		/**
+		 * Returns true if CoreNLP splits sentences at
+		 * the cut: the splitter is run on the text around
+		 * it, and no sentence may run across it.
+		 */
+		synchronized boolean splits(StanfordCoreNLP tokenizer)
+		{
+			if (splits == null)
+			{
+				Annotation text = new Annotation(context);
+				tokenizer.annotate(text);
+				splits = true;
+				for (CoreMap sentence : text.get(SentencesAnnotation.class))
+				{
+					if (sentence.get(CharacterOffsetBeginAnnotation.class) < offset && sentence.get(CharacterOffsetEndAnnotation.class) > offset) { splits = false; }
+				}
+			}
+			return splits;
+		}
+	}
+
+}
@@ -0,0 +1,509 @@
+package languagemodel.compute;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import languagemodel.structures.NgramCounts;
+
+
+/**
+ * This class counts the bigrams of a training
+ * dataset within a fixed memory budget.
+ * The bigrams are counted by their packed id keys
+ * in the n-gram counts of each counting worker,
+ * without any lock. Each table is charged what it
+ * takes in memory, slots and sorting space included,
+ * beyond its initial size. Whenever the tables of all
+ * the workers together exceed the budget, the worker
+ * that exceeded it drains its counts, sorted by
+ * their words, into a temporary run file; only
+ * adding the run to the list of runs is locked.
+ * Once counting is done, the runs are merged (as in
+ * a classic external sort) into one final sorted
+ * count table, which is read straight into the
+ * model store rather than back into memory.
+ *
+ * @author David Olorundare
+ *
+ */
+public final class ExternalBigramCounter
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the maximum number of run files merged together in a single merge pass.
+	private static final int MERGE_FACTOR = 64;
+
+	// Represents the size, in characters, of the buffer used when reading and writing run files.
+	private static final int IO_BUFFER_SIZE = 1 << 16;
+
+	// Represents the separator between the two words of a bigram in a run file.
+	private static final char WORD_SEPARATOR = ' ';
+
+	// Represents the separator between a bigram and its count in a run file.
+	private static final char FIELD_SEPARATOR = '\t';
+
+	// Represents the number of bytes the in-memory counts may occupy before being spilled to disk.
+	private final long memoryBudget;
+
+	// Represents the number of bytes currently taken by the bigram tables of every worker.
+	private final AtomicLong memoryUsed = new AtomicLong();
+
+	// Represents the sorted run files spilled to disk so far.
+	private ArrayList<File> runFiles = new ArrayList<File>();
+
+	// Represents the number of bigrams in each run file.
+	private final HashMap<File, Long> runSizes = new HashMap<File, Long>();
+
+	// Represents the temporary directory holding the run files.
+	private File runDirectory;
+
+	// Represents the final sorted count table, once counting has finished.
+	private File countTable;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the ExternalBigramCounter class.
+	 *
+	 * @param memoryBudgetBytes	the number of bytes the in-memory counts may occupy before being spilled to disk.
+	 *
+	 */
+	public ExternalBigramCounter(long memoryBudgetBytes)
+	{
+		if (memoryBudgetBytes <= 0) { throw new IllegalArgumentException("The counting memory budget must be positive: " + memoryBudgetBytes); }
+		memoryBudget = memoryBudgetBytes;
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that counts the unigrams and
+	 * bigrams of a sentence into the given n-gram
+	 * counts, and drains their bigrams to a run file
+	 * if the memory budget is exceeded. It may be
+	 * called from several threads at once, as long as
+	 * each has its own n-gram counts, and each of them
+	 * must be drained once counting is done.
+	 *
+	 * @param counts	the n-gram counts the sentence is counted into.
+	 *
+	 * @param sentence	the text of the sentence, without start or end symbols.
+	 *
+	 * @param tokenWords	the words of the sentence's CoreNLP tokens, which its unigrams are counted from, or null to count them from its whitespace words.
+	 *
+	 * @throws IOException	if an error occurs while spilling the counts to disk.
+	 *
+	 */
+	public void addSentence(NgramCounts counts, CharSequence sentence, String[] tokenWords) throws IOException
+	{
+		if (countTable != null) { throw new IllegalStateException("Counting has already finished."); }
+
+		long bigramBytes = counts.getBigramBytes();
+		counts.addSentence(sentence, tokenWords, null);
+		if (memoryUsed.addAndGet(counts.getBigramBytes() - bigramBytes) > memoryBudget) { drain(counts); }
+	}
+
+
+	/**
+	 * Helper method that spills the bigrams held
+	 * by the given n-gram counts to a new run file,
+	 * freeing the memory they occupied. The unigram
+	 * counts are left in the n-gram counts.
+	 *
+	 * @param counts	the n-gram counts whose bigrams are spilled.
+	 *
+	 * @throws IOException	if an error occurs while writing the run file.
+	 *
+	 */
+	public void drain(NgramCounts counts) throws IOException
+	{
+		long distinctBigrams = counts.getBigramSize();
+		if (distinctBigrams == 0) { return; }
+		long bigramBytes = counts.getBigramBytes();
+
+		File run = createRunFile();
+		final Writer output = openRunWriter(run);
+		try
+		{
+			counts.drainBigrams(new NgramCounts.BigramVisitor()
+			{
+				public void visit(String firstWord, String secondWord, int count)
+				{
+					try { writeEntry(output, firstWord, secondWord, count); }
+					catch (IOException e) { throw new UncheckedIOException(e); }
+				}
+			});
+		}
+		catch (UncheckedIOException e) { throw e.getCause(); }
+		finally { output.close(); }
+
+		memoryUsed.addAndGet(counts.getBigramBytes() - bigramBytes);
+		synchronized (this) { runFiles.add(run); runSizes.put(run, distinctBigrams); }
+	}
+
+
+	/**
+	 * Helper method that finishes counting by
+	 * merging all the spilled runs into the final
+	 * sorted count table. Every n-gram counts must
+	 * have been drained before.
+	 *
+	 * @return	the file containing the final sorted count table.
+	 *
+	 * @throws IOException	if an error occurs while writing or merging the runs.
+	 *
+	 */
+	public File finish() throws IOException
+	{
+		if (countTable != null) { return countTable; }
+
+		// With nothing spilled, the count table is an empty run.
+		if (runFiles.isEmpty()) { File run = createRunFile(); openRunWriter(run).close(); runFiles.add(run); runSizes.put(run, 0L); }
+
+		// Merge the runs in passes of at most MERGE_FACTOR files until only one remains.
+		while (runFiles.size() > 1)
+		{
+			ArrayList<File> mergedRuns = new ArrayList<File>();
+			for (int start = 0; start < runFiles.size(); start += MERGE_FACTOR)
+			{
+				List<File> group = runFiles.subList(start, Math.min(start + MERGE_FACTOR, runFiles.size()));
+				mergedRuns.add(mergeRuns(group));
+				for (File run : group) { run.delete(); runSizes.remove(run); }
+			}
+			runFiles = mergedRuns;
+		}
+		countTable = runFiles.get(0);
+		return countTable;
+	}
+
+
+	/**
+	 * This interface receives each bigram of the
+	 * final sorted count table as a range of the
+	 * line holding it, so no String is made for
+	 * its words.
+	 */
+	public interface CountVisitor
+	{
+		/**
+		 * Receives one bigram.
+		 *
+		 * @param line	the line of the count table holding the bigram; its first word ends at wordEnd.
+		 *
+		 * @param wordEnd	the index of the space between the two words of the bigram.
+		 *
+		 * @param bigramEnd	the index after the second word of the bigram.
+		 *
+		 * @param count	the count of the bigram.
+		 */
+		void visit(String line, int wordEnd, int bigramEnd, int count);
+	}
+
+
+	/**
+	 * Helper method that hands every bigram of the
+	 * final sorted count table to a visitor, in the
+	 * order of the table: by their first words and
+	 * then by their second words. The table can be
+	 * read any number of times.
+	 *
+	 * @param visitor	the visitor the bigrams are handed to.
+	 *
+	 * @throws IOException	if an error occurs while merging the runs or reading the count table.
+	 *
+	 */
+	public void forEachCount(CountVisitor visitor) throws IOException
+	{
+		RunCursor cursor = new RunCursor(openRun(finish()));
+		try
+		{
+			while (cursor.advance()) { visitor.visit(cursor.line, cursor.wordEnd, cursor.bigramEnd, cursor.count); }
+		}
+		finally { cursor.reader.close(); }
+	}
+
+
+	/**
+	 * Helper method that returns the number of
+	 * distinct bigrams in the final sorted count
+	 * table.
+	 *
+	 * @return	the number of bigrams in the count table.
+	 *
+	 * @throws IOException	if an error occurs while merging the runs.
+	 *
+	 */
+	public long getTableSize() throws IOException
+	{ return runSizes.get(finish()); }
+
+
+	/**
+	 * Helper method that deletes all the
+	 * temporary files created by this counter.
+	 *
+	 */
+	public void close()
+	{
+		for (File run : runFiles) { run.delete(); }
+		if (runDirectory != null) { runDirectory.delete(); }
+		runFiles.clear();
+		runSizes.clear();
+		countTable = null;
+	}
+
+
+	/**
+	 * Helper method that returns the number of
+	 * sorted runs spilled to disk so far.
+	 *
+	 * @return	the number of runs spilled to disk.
+	 *
+	 */
+	public int getRunCount(){ return runFiles.size(); }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that merges a group of sorted
+	 * run files into a single sorted run file,
+	 * summing the counts of bigrams found in more
+	 * than one run.
+	 *
+	 * @param runs	the sorted run files to be merged.
+	 *
+	 * @return	the merged run file.
+	 *
+	 * @throws IOException	if an error occurs while reading or writing the runs.
+	 *
+	 */
+	private File mergeRuns(List<File> runs) throws IOException
+	{
+		PriorityQueue<RunCursor> cursors = new PriorityQueue<RunCursor>();
+		long mergedSize = 0;
+		File merged = createRunFile();
+		Writer output = openRunWriter(merged);
+		try
+		{
+			for (File run : runs)
+			{
+				RunCursor cursor = new RunCursor(openRun(run));
+				if (cursor.advance()) { cursors.add(cursor); }
+			}
+
+			while (!cursors.isEmpty())
+			{
+				// Pull every cursor positioned on the smallest bigram and sum up their counts.
+				RunCursor cursor = cursors.poll();
+				String line = cursor.line;
+				int bigramEnd = cursor.bigramEnd;
+				int count = cursor.count;
+				if (cursor.advance()) { cursors.add(cursor); }
+
+				while (!cursors.isEmpty() && cursors.peek().line.regionMatches(0, line, 0, bigramEnd + 1))
+				{
+					cursor = cursors.poll();
+					count += cursor.count;
+					if (cursor.advance()) { cursors.add(cursor); }
+				}
+				output.write(line, 0, bigramEnd);
+				writeCount(output, count);
+				mergedSize++;
+			}
+		}
+		finally
+		{
+			output.close();
+			for (RunCursor cursor : cursors) { cursor.reader.close(); }
+		}
+		runSizes.put(merged, mergedSize);
+		return merged;
+	}
+
+
+	/**
+	 * Helper method that creates a new, empty
+	 * run file in the temporary run directory.
+	 *
+	 * @return	the new run file.
+	 *
+	 * @throws IOException	if the run file cannot be created.
+	 *
+	 */
+	private synchronized File createRunFile() throws IOException
+	{
+		if (runDirectory == null)
+		{
+			runDirectory = Files.createTempDirectory("bigram-counts").toFile();
+			runDirectory.deleteOnExit();
+		}
+		File run = File.createTempFile("run", ".txt", runDirectory);
+		run.deleteOnExit();
+		return run;
+	}
+
+
+	/**
+	 * Helper method that opens a run file for reading.
+	 *
+	 * @param run	the run file to be read.
+	 *
+	 * @return	a reader over the lines of the run file.
+	 *
+	 * @throws IOException	if the run file cannot be opened.
+	 *
+	 */
+	private BufferedReader openRun(File run) throws IOException
+	{
+		return new BufferedReader(new InputStreamReader(new FileInputStream(run), StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+	}
+
+
+	/**
+	 * Helper method that opens a run file for writing.
+	 *
+	 * @param run	the run file to be written.
+	 *
+	 * @return	a writer over the run file.
+	 *
+	 * @throws IOException	if the run file cannot be opened.
+	 *
+	 */
+	private static Writer openRunWriter(File run) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run), StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+	}
+
+
+	/**
+	 * Helper method that writes a single bigram
+	 * and its count as one line of a run file.
+	 *
+	 * @param output	the run file being written.
+	 *
+	 * @param firstWord	the first word of the bigram.
+	 *
+	 * @param secondWord	the second word of the bigram.
+	 *
+	 * @param count		the count of the bigram.
+	 *
+	 * @throws IOException	if an error occurs while writing the run file.
+	 *
+	 */
+	private static void writeEntry(Writer output, String firstWord, String secondWord, int count) throws IOException
+	{
+		output.write(firstWord);
+		output.write(WORD_SEPARATOR);
+		output.write(secondWord);
+		writeCount(output, count);
+	}
+
+
+	/**
+	 * Helper method that ends a line of a run
+	 * file with the count of its bigram.
+	 *
+	 * @param output	the run file being written.
+	 *
+	 * @param count		the count of the bigram.
+	 *
+	 * @throws IOException	if an error occurs while writing the run file.
+	 *
+	 */
+	private static void writeCount(Writer output, int count) throws IOException
+	{
+		output.write(FIELD_SEPARATOR);
+		output.write(Integer.toString(count));
+		output.write('\n');
+	}
+
+
+	/**
+	 * This class represents the current read
+	 * position within one sorted run file
+	 * while the runs are being merged. Runs are
+	 * sorted by the first words of their bigrams
+	 * and then by their second words, as the n-gram
+	 * counts drain them, rather than by whole lines.
+	 *
+	 */
+	private static final class RunCursor implements Comparable<RunCursor>
+	{
+		// Represents the reader over the run file.
+		final BufferedReader reader;
+
+		// Represents the line at the current position.
+		String line;
+
+		// Represents the index of the separator between the two words of the bigram in the line.
+		int wordEnd;
+
+		// Represents the index of the separator between the bigram and its count in the line.
+		int bigramEnd;
+
+		// Represents the count of the bigram at the current position.
+		int count;
+
+		RunCursor(BufferedReader runReader) { reader = runReader; }
+
+		/**
+		 * Moves the cursor onto the next entry of the run,
+		 * closing the run once it has been exhausted.
+		 *
+		 * @return	true if the cursor is positioned on an entry, false if the run is exhausted.
+		 */
+		boolean advance() throws IOException
+		{
+			line = reader.readLine();
+			if (line == null) { reader.close(); return false; }
+
+			// Words never hold whitespace, so the first space ends the first word.
+			wordEnd = line.indexOf(WORD_SEPARATOR);
+			bigramEnd = line.lastIndexOf(FIELD_SEPARATOR);
+			count = Integer.parseInt(line.substring(bigramEnd + 1));
+			return true;
+		}
+
+		public int compareTo(RunCursor other)
+		{
+			int order = compareRange(line, 0, wordEnd, other.line, 0, other.wordEnd);
+			return (order != 0) ? order : compareRange(line, wordEnd + 1, bigramEnd, other.line, other.wordEnd + 1, other.bigramEnd);
+		}
+
+		/**
+		 * Compares two ranges of characters as String.compareTo compares two Strings.
+		 */
+		private static int compareRange(String first, int firstStart, int firstEnd, String second, int secondStart, int secondEnd)
+		{
+			int length = Math.min(firstEnd - firstStart, secondEnd - secondStart);
+			for (int index = 0; index < length; index++)
+			{
+				char firstCharacter = first.charAt(firstStart + index), secondCharacter = second.charAt(secondStart + index);
+				if (firstCharacter != secondCharacter) { return firstCharacter - secondCharacter; }
+			}
+			return (firstEnd - firstStart) - (secondEnd - secondStart);
+		}
+	}
+
+}
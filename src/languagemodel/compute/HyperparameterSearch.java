@@ -0,0 +1,411 @@
+package languagemodel.compute;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.StringUtils;
+import languagemodel.structures.WordToken;
+import languagemodel.utils.FileHandler;
+
+
+/**
+ * This class tunes the hyperparameters of several
+ * bigram smoothing methods to minimize the perplexity
+ * of a held-out dataset:
+ *  * add-k smoothing, searching k,
+ *  * interpolation with the unigram model, estimating
+ *    its weight lambda by expectation-maximization,
+ *  * interpolated absolute discounting, searching the
+ *    discount D.
+ * k and D are searched with a grid whose candidates
+ * are evaluated in parallel, followed by a golden-section
+ * search around the best candidate.
+ *
+ * The held-out dataset is reduced once to its distinct
+ * bigrams, each cached with its held-out frequency and
+ * the training counts every method needs, so evaluating
+ * a candidate costs one pass over the distinct held-out
+ * bigrams rather than rescoring the dataset.
+ *
+ * The smoothed models are normalized over the words that
+ * follow in the training bigrams, plus one unknown word,
+ * so all counts are taken from the bigram counts.
+ *
+ * @author David Olorundare
+ *
+ */
+public class HyperparameterSearch
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the names of the smoothing methods tuned, with their hyperparameter.
+	private static final String[] METHOD_NAMES = { "add-k (k)", "interpolated (lambda)", "absolute discounting (D)" };
+
+	// Represents the number of grid candidates evaluated for a searched hyperparameter.
+	private static final int GRID_SIZE = 16;
+
+	// Represents the number of golden-section steps taken around the best grid candidate.
+	private static final int GOLDEN_SECTION_STEPS = 30;
+
+	// Represents the largest number of expectation-maximization iterations.
+	private static final int EM_ITERATIONS = 200;
+
+	// Represents the ratio of the golden section.
+	private static final double GOLDEN_RATIO = (Math.sqrt(5) - 1) / 2;
+
+	// Represents the raw bigram counts of the training dataset.
+	private final HashMap<String, WordToken> trainingBigrams;
+
+	// Represents the mapping of each history word to its bigram count and its number of distinct following words.
+	private final HashMap<String, int[]> historyCounts = new HashMap<String, int[]>();
+
+	// Represents the mapping of each word to the number of bigrams it ends.
+	private final HashMap<String, int[]> wordCounts = new HashMap<String, int[]>();
+
+	// Represents the total number of training bigrams.
+	private long bigramTotal = 0;
+
+	// Represents the number of words the models are normalized over, including the unknown word.
+	private final int vocabularySize;
+
+	// Represents the number of candidates evaluated by the last search.
+	private int evaluations;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which collects the
+	 * history and word counts of the training bigrams.
+	 *
+	 * @param bigramModel	the raw bigram counts of the training dataset.
+	 *
+	 */
+	public HyperparameterSearch(HashMap<String, WordToken> bigramModel)
+	{
+		trainingBigrams = bigramModel;
+		for (WordToken gram : bigramModel.values())
+		{
+			int separator = gram.bigramW.indexOf(' ');
+			String history = gram.bigramW.substring(0, separator), word = gram.bigramW.substring(separator + 1);
+			int[] historyCount = historyCounts.get(history);
+			if (historyCount == null) { historyCount = new int[2]; historyCounts.put(history, historyCount); }
+			historyCount[0] += gram.count;
+			historyCount[1]++;
+			int[] wordCount = wordCounts.get(word);
+			if (wordCount == null) { wordCount = new int[1]; wordCounts.put(word, wordCount); }
+			wordCount[0] += gram.count;
+			bigramTotal += gram.count;
+		}
+		vocabularySize = wordCounts.size() + 1;
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the name of each smoothing method tuned.
+	 *
+	 * @return	the names of the smoothing methods, in the order of the search results.
+	 */
+	public String[] getMethodNames()
+	{ return METHOD_NAMES; }
+
+
+	/**
+	 * Helper method that tunes each smoothing method
+	 * on a held-out dataset, and reports the perplexity
+	 * of the tuned models on the held-out and test datasets.
+	 *
+	 * @param heldOutDoc	the annotated held-out dataset.
+	 *
+	 * @param testDoc	the annotated test dataset.
+	 *
+	 * @return	for each smoothing method, its tuned hyperparameter, held-out perplexity, test perplexity and the number of candidates evaluated.
+	 *
+	 * @throws InterruptedException	if the search is interrupted while candidates are evaluated in parallel.
+	 */
+	public float[][] search(Annotation heldOutDoc, Annotation testDoc) throws InterruptedException
+	{
+		CachedBigrams heldOut = cacheBigrams(heldOutDoc);
+		CachedBigrams test = cacheBigrams(testDoc);
+		float[][] results = new float[METHOD_NAMES.length][];
+
+		ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try
+		{
+			for (int method = 0; method < METHOD_NAMES.length; method++)
+			{
+				evaluations = 0;
+				double parameter;
+				if (method == 0) { parameter = Math.pow(10, searchParameter(workers, heldOut, method, -5, 1, true)); }
+				else if (method == 1) { parameter = estimateLambda(heldOut); }
+				else { parameter = searchParameter(workers, heldOut, method, 0.01, 0.99, false); }
+
+				results[method] = new float[] { (float) parameter, (float) perplexity(heldOut, method, parameter), (float) perplexity(test, method, parameter), evaluations };
+			}
+		}
+		finally { workers.shutdown(); }
+		return results;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that reduces a dataset to its
+	 * distinct bigrams, caching each one's frequency
+	 * and the training counts the methods need.
+	 *
+	 * @param doc	the annotated dataset.
+	 *
+	 * @return	the distinct bigrams of the dataset.
+	 */
+	private CachedBigrams cacheBigrams(Annotation doc)
+	{
+		HashMap<String, int[]> frequencies = new HashMap<String, int[]>();
+		for (CoreMap sentence : doc.get(SentencesAnnotation.class))
+		{
+			for (String bigram : StringUtils.getNgramsString(FileHandler.getInstance().appendToSentence(sentence), 2, 2))
+			{
+				int[] frequency = frequencies.get(bigram);
+				if (frequency == null) { frequencies.put(bigram, new int[] { 1 }); }
+				else { frequency[0]++; }
+			}
+		}
+		return new CachedBigrams(frequencies);
+	}
+
+
+	/**
+	 * Helper method that searches the hyperparameter
+	 * of a smoothing method within a range: a grid of
+	 * candidates is evaluated in parallel, then a
+	 * golden-section search narrows in between the
+	 * neighbours of the best candidate.
+	 *
+	 * @param workers	the threads the grid candidates are evaluated on.
+	 *
+	 * @param heldOut	the distinct held-out bigrams.
+	 *
+	 * @param method	the smoothing method whose hyperparameter is searched.
+	 *
+	 * @param low	the lower end of the range searched.
+	 *
+	 * @param high	the upper end of the range searched.
+	 *
+	 * @param logarithmic	true if the range is the base-10 logarithm of the hyperparameter.
+	 *
+	 * @return	the hyperparameter with the lowest held-out perplexity (as its logarithm, if the range is logarithmic).
+	 *
+	 * @throws InterruptedException	if the search is interrupted.
+	 */
+	private double searchParameter(ExecutorService workers, final CachedBigrams heldOut, final int method, double low, double high, final boolean logarithmic) throws InterruptedException
+	{
+		final double[] grid = new double[GRID_SIZE];
+		List<Callable<Double>> candidates = new ArrayList<Callable<Double>>();
+		for (int index = 0; index < GRID_SIZE; index++)
+		{
+			grid[index] = low + (high - low) * index / (GRID_SIZE - 1);
+			final double candidate = grid[index];
+			candidates.add(new Callable<Double>()
+			{
+				public Double call() { return perplexity(heldOut, method, logarithmic ? Math.pow(10, candidate) : candidate); }
+			});
+		}
+
+		int best = 0;
+		double bestPerplexity = Double.MAX_VALUE;
+		List<Future<Double>> results = workers.invokeAll(candidates);
+		for (int index = 0; index < GRID_SIZE; index++)
+		{
+			double candidatePerplexity;
+			try { candidatePerplexity = results.get(index).get(); }
+			catch (ExecutionException e) { throw new IllegalStateException("A hyperparameter candidate could not be evaluated.", e.getCause()); }
+			if (candidatePerplexity < bestPerplexity) { bestPerplexity = candidatePerplexity; best = index; }
+		}
+		evaluations += GRID_SIZE;
+
+		// The held-out perplexity is assumed unimodal between the best candidate's neighbours.
+		double left = grid[Math.max(0, best - 1)], right = grid[Math.min(GRID_SIZE - 1, best + 1)];
+		double first = right - GOLDEN_RATIO * (right - left), second = left + GOLDEN_RATIO * (right - left);
+		double firstPerplexity = perplexity(heldOut, method, logarithmic ? Math.pow(10, first) : first);
+		double secondPerplexity = perplexity(heldOut, method, logarithmic ? Math.pow(10, second) : second);
+		for (int step = 0; step < GOLDEN_SECTION_STEPS; step++)
+		{
+			if (firstPerplexity < secondPerplexity)
+			{
+				right = second; second = first; secondPerplexity = firstPerplexity;
+				first = right - GOLDEN_RATIO * (right - left);
+				firstPerplexity = perplexity(heldOut, method, logarithmic ? Math.pow(10, first) : first);
+			}
+			else
+			{
+				left = first; first = second; firstPerplexity = secondPerplexity;
+				second = left + GOLDEN_RATIO * (right - left);
+				secondPerplexity = perplexity(heldOut, method, logarithmic ? Math.pow(10, second) : second);
+			}
+		}
+		evaluations += GOLDEN_SECTION_STEPS + 2;
+
+		double refined = (firstPerplexity < secondPerplexity) ? first : second;
+		return (Math.min(firstPerplexity, secondPerplexity) < bestPerplexity) ? refined : grid[best];
+	}
+
+
+	/**
+	 * Helper method that estimates the weight of
+	 * the bigram model in its interpolation with the
+	 * unigram model by expectation-maximization on the
+	 * held-out bigrams: each step sets lambda to the
+	 * expected share of the held-out bigrams that the
+	 * bigram model accounts for.
+	 *
+	 * @param heldOut	the distinct held-out bigrams.
+	 *
+	 * @return	the estimated interpolation weight.
+	 */
+	private double estimateLambda(CachedBigrams heldOut)
+	{
+		double lambda = 0.5;
+		for (int iteration = 0; iteration < EM_ITERATIONS; iteration++)
+		{
+			double expected = 0, total = 0;
+			for (int index = 0; index < heldOut.size; index++)
+			{
+				// Bigrams whose history is unseen do not depend on lambda.
+				if (heldOut.historyCounts[index] == 0) { continue; }
+				double bigramPart = lambda * heldOut.bigramCounts[index] / heldOut.historyCounts[index];
+				double unigramPart = (1 - lambda) * heldOut.unigramProbabilities[index];
+				expected += heldOut.frequencies[index] * bigramPart / (bigramPart + unigramPart);
+				total += heldOut.frequencies[index];
+			}
+			evaluations++;
+			double next = (total == 0) ? lambda : expected / total;
+			if (Math.abs(next - lambda) < 1e-7) { return next; }
+			lambda = next;
+		}
+		return lambda;
+	}
+
+
+	/**
+	 * Helper method that computes the perplexity of
+	 * a set of distinct bigrams under a smoothing method.
+	 *
+	 * @param bigrams	the distinct bigrams and their frequencies.
+	 *
+	 * @param method	the smoothing method.
+	 *
+	 * @param parameter	the hyperparameter of the smoothing method.
+	 *
+	 * @return	the perplexity of the bigrams.
+	 */
+	private double perplexity(CachedBigrams bigrams, int method, double parameter)
+	{
+		double logProbability = 0;
+		for (int index = 0; index < bigrams.size; index++)
+		{
+			double bigramCount = bigrams.bigramCounts[index], historyCount = bigrams.historyCounts[index];
+			double unigramProbability = bigrams.unigramProbabilities[index], probability;
+			if (method == 0) { probability = (bigramCount + parameter) / (historyCount + parameter * vocabularySize); }
+			else if (historyCount == 0) { probability = unigramProbability; }
+			else if (method == 1) { probability = parameter * bigramCount / historyCount + (1 - parameter) * unigramProbability; }
+			else { probability = (Math.max(bigramCount - parameter, 0) + parameter * bigrams.followerCounts[index] * unigramProbability) / historyCount; }
+			logProbability += bigrams.frequencies[index] * Math.log(probability);
+		}
+		return Math.exp(-logProbability / bigrams.total);
+	}
+
+
+	/**
+	 * This class holds the distinct bigrams of a
+	 * dataset, with their frequencies and the training
+	 * counts the smoothing methods need, as parallel arrays.
+	 */
+	private class CachedBigrams
+	{
+		// Represents the number of distinct bigrams.
+		final int size;
+
+		// Represents the total frequency of the bigrams.
+		final long total;
+
+		// Represents the frequency of each bigram in the dataset.
+		final int[] frequencies;
+
+		// Represents the training count of each bigram.
+		final int[] bigramCounts;
+
+		// Represents the training count of each bigram's history as a history.
+		final int[] historyCounts;
+
+		// Represents the number of distinct words following each bigram's history in training.
+		final int[] followerCounts;
+
+		// Represents the add-one smoothed unigram probability of each bigram's word.
+		final double[] unigramProbabilities;
+
+		CachedBigrams(HashMap<String, int[]> bigrams)
+		{
+			size = bigrams.size();
+			frequencies = new int[size];
+			bigramCounts = new int[size];
+			historyCounts = new int[size];
+			followerCounts = new int[size];
+			unigramProbabilities = new double[size];
+
+			long frequencyTotal = 0;
+			int index = 0;
+			for (String bigram : bigrams.keySet())
+			{
+				int separator = bigram.indexOf(' ');
+				int[] history = historyCountsOf(bigram.substring(0, separator));
+				int[] word = wordCounts.get(bigram.substring(separator + 1));
+				frequencies[index] = bigrams.get(bigram)[0];
+				bigramCounts[index] = trainingCount(bigram);
+				historyCounts[index] = history[0];
+				followerCounts[index] = history[1];
+				unigramProbabilities[index] = ((word == null ? 0 : word[0]) + 1.0) / (bigramTotal + vocabularySize);
+				frequencyTotal += frequencies[index];
+				index++;
+			}
+			total = frequencyTotal;
+		}
+	}
+
+
+	/**
+	 * Helper method that returns the training count of a bigram.
+	 */
+	private int trainingCount(String bigram)
+	{
+		WordToken gram = trainingBigrams.get(bigram);
+		return (gram == null) ? 0 : gram.count;
+	}
+
+
+	/**
+	 * Helper method that returns the bigram count and
+	 * the number of distinct following words of a history.
+	 */
+	private int[] historyCountsOf(String history)
+	{
+		int[] counts = historyCounts.get(history);
+		return (counts == null) ? new int[2] : counts;
+	}
+
+}
@@ -4,20 +4,32 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import edu.stanford.nlp.ling.CoreAnnotations.LineNumberAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
-import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
-import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.PropertiesUtils;
 import edu.stanford.nlp.util.StringUtils;
 import languagemodel.structures.AnalyzedData;
+import languagemodel.structures.ModelStore;
+import languagemodel.structures.NgramCounts;
+import languagemodel.structures.ProbabilityCache;
+import languagemodel.structures.ProbabilityCodebook;
+import languagemodel.structures.RunConfiguration;
+import languagemodel.structures.SentenceScoreCache;
+import languagemodel.structures.PerfectHashVocabulary;
+import languagemodel.structures.PerplexityReport;
+import languagemodel.structures.Vocabulary;
 import languagemodel.structures.WordToken;
+import languagemodel.utils.ArpaFile;
+import languagemodel.utils.CompiledCorpus;
 import languagemodel.utils.FileHandler;
 
 
@@ -96,25 +108,46 @@ public final class LanguageModeler
 	
 	// Represents the unigram (first array index) and bigram (second array index) test dataset perplexity.
 	private float[] testDataPerplexity;
+	
+	// Represents the sentence, document and corpus perplexities of the test dataset, aggregated while it is scored.
+	private PerplexityReport perplexityReport;
   	
  		//================== LANGUAGE MODEL VARIABLES =======================
  	
  	// Represents the mapping of all bigrams in the training dataset to their occurrence-rate.
  	private HashMap<String, WordToken> bigramCount = new HashMap<String, WordToken>();
-	
- 		//======================== OPERATOR VARIABLES ======================
  	
- 	// Represents a variable that determines if smoothing is enabled on bigram model.
- 	private Boolean smoothing = false;
+ 	// Represents the pipeline counting the training dataset in overlapping stages, if enabled.
+ 	private CountingPipeline countingPipeline;
+ 	
+ 	// Represents the disk-spilling bigram counter used when a counting memory budget is given.
+ 	private ExternalBigramCounter externalBigramCounter;
+ 	
+ 	// Represents the total occurrence of unigrams in the training dataset, used as the unigram probability denominator.
+ 	private int unigramTotal = 0;
+ 	
+ 	// Represents the bounded cache of bigram log probabilities computed on demand when lazy probabilities are enabled.
+ 	private ProbabilityCache probabilityCache;
  	
- 	// Represents a variable that determines if the perplexity of the testing dataset should be computed.
- 	private Boolean perplexity = false;
+ 	// Represents the vocabulary of the training dataset, whose perfect hash function assigns each word type an id.
+ 	private PerfectHashVocabulary vocabulary;
  	
- 	// Represents a variable that determines if random-sentences from the training dataset should be generated.
- 	private Boolean randomSentenceGenerator = false;
+ 	// Represents the bounded cache of token-id sequences and scores of sentences already evaluated against the models.
+ 	private SentenceScoreCache sentenceScoreCache;
+ 	
+ 	// Represents the compact store the language models are moved into once built.
+ 	private ModelStore modelStore;
+	
+ 	// Represents the scorer evaluating sentences against the model store without allocating, if the store holds the log probabilities.
+ 	private SentenceScorer sentenceScorer;
+ 	
+ 	// Represents the scores of the sentence last evaluated by the sentence scorer, reused between sentences.
+ 	private float[] sentenceScores = new float[4];
+ 	
+ 		//======================== OPERATOR VARIABLES ======================
  	
- 	// Represents the number of new random sentences that should be generated from the training dataset.
- 	private int generateSentences = 0;
+ 	// Represents the settings of the run: the operations performed on the language models, and how they are built.
+ 	private RunConfiguration configuration = RunConfiguration.DEFAULT;
  	
  	// Represents a temporary storage of the new sentences that have been randomly generated.
  	private ArrayList<String> randomGenSentences;
@@ -193,7 +226,7 @@ public final class LanguageModeler
 	 * 
 	 * @param	 testingText	the dataset used to evaluate the built language models.
 	 * 
-	 * @param	 operators		additional operations that should be performed on the training dataset.
+	 * @param	 runConfiguration	the operations that should be performed on the language models, and how they are built.
 	 * 
 	 * @return	structure containing the results of language model operations.
 	 * 
@@ -201,50 +234,121 @@ public final class LanguageModeler
 	 * @throws	FileNotFoundException  if either training or testing set data does not exist.
 	 * 
 	 */
-	public AnalyzedData analyzeText(String trainingText, String testingText, HashMap<String, Integer> operators) throws FileNotFoundException, IOException
+	public AnalyzedData analyzeText(String trainingText, String testingText, RunConfiguration runConfiguration) throws FileNotFoundException, IOException
 	{
 		
 		//=========================  OPERATE ON THE TRAINING AND TEST DATASETS  =======================================================
 		
 		trainingData = trainingText;
 		testingData = testingText;
+		resetRunState();
+		applyConfiguration(runConfiguration);
 
-		// Suppress the red information lines that CoreNLP usually displays on startup.
-		PrintStream nlpErrorHandler = System.err;
-		System.setErr(new PrintStream(new OutputStream() { public void write(int temp) { } }));
-		
 		// Setup the CoreNLP pipeline for both training and testing datasets.
-        dataPipeline = new StanfordCoreNLP(PropertiesUtils.asProperties("annotators", "tokenize, ssplit","tokenize.language", "en"));
-        System.setErr(nlpErrorHandler);
-        
-        // Create an empty Annotation just with the given text
-        Annotation trainDocument = FileHandler.getInstance().readData(trainingText);
-        Annotation testDocument = FileHandler.getInstance().readData(testingText);
+		createPipeline();
         
-        // Run all Annotators for the training and test datasets.
+        // The execution time includes annotating the datasets, which is done as they are read.
         Long startTime = System.currentTimeMillis();
-        dataPipeline.annotate(trainDocument);
-        dataPipeline.annotate(testDocument);
+        
+        // Read and annotate the datasets, a slice at a time, unless they were read from compiled corpora; when counting
+        // is pipelined, the pipeline reads and counts the training dataset while the test dataset is processed.
+        Annotation trainDocument = null;
+        String trainCharset = null;
+        // Prebuilt language models given as an ARPA file are loaded as they are, instead of a training dataset.
+        boolean arpaModels = ArpaFile.isArpa(trainingText);
+        if (arpaModels) { trainCharset = StandardCharsets.UTF_8.name(); }
+        // A compiled training dataset is already tokenized, and compiling needs the whole training document.
+        // Counting within a memory budget always streams the training dataset, so it is never held whole.
+        else if ((configuration.getThreads() > 0 || configuration.getMemoryBudget() > 0) && !configuration.isCompile() && !CompiledCorpus.isCompiled(trainingText))
+        { startCountingPipeline(trainingText); }
+        else
+        {
+        	trainDocument = FileHandler.getInstance().readAnnotatedData(trainingText, dataPipeline);
+        	trainCharset = FileHandler.getInstance().getLastReadCharset().name();
+        }
+        Annotation testDocument = FileHandler.getInstance().readAnnotatedData(testingText, dataPipeline);
+        String testCharset = FileHandler.getInstance().getLastReadCharset().name();
+        
+        // Compile the tokenized datasets, so later runs can skip tokenization.
+        if (configuration.isCompile()) { compileDatasets(trainDocument, testDocument); }
         
         // Start performing each of the operation as required by the Homework.
-		coreOperation(trainDocument, operators);
+        if (countingPipeline != null) { trainCharset = countingPipeline.getCharset().name(); }
+        if (arpaModels) { loadArpaModels(trainingText); }
+        else { coreOperation(trainDocument); }
+        resultStats.setInputCharsets(new String[] { trainCharset, testCharset });
+        resultStats.setReadStats(FileHandler.getInstance().getReadStats());
 		System.out.println("Program Running\n");
 		
-		// Build the unigram and bigram language models, compute their probabilities.
-		logProbabilityOperation(allWordTokens, bigramCount);
+		// Models loaded from an ARPA file are already in the model store, and have no counts to derive anything else from.
+		if (!arpaModels)
+		{
+			// Build the unigram and bigram language models, compute their probabilities.
+			logProbabilityOperation(allWordTokens, bigramCount);
+			
+			// Evaluate every model variant derived from the raw counts, before they are moved into the model store.
+			if (configuration.getLargestCountCutoff() > 0)
+			{
+				VariantEvaluator variants = new VariantEvaluator(allWordTokens, bigramCount, unigramTotal, configuration.getLargestCountCutoff());
+				resultStats.setVariantResults(variants.getVariantNames(), variants.evaluate(testDocument));
+			}
+			
+			// Tune the smoothing hyperparameters on the held-out dataset, if one was given.
+			if (configuration.getHeldOutDataFilePath() != null) { tuneHyperparameters(testDocument); }
+			
+			// Score the test dataset with the exact models first, to measure what quantization costs in perplexity.
+			// Bigram counts kept within a memory budget are only on disk, so they are scored from an exact store built from the count table.
+			float[] exactTestDataScores = null;
+			if (configuration.getQuantizationBits() > 0)
+			{
+				if (externalBigramCounter != null) { streamModelStore(0); }
+				exactTestDataScores = scoreTestData(testDocument);
+			}
+			
+			// Move the language models into the compact model store, outside the Java heap and/or quantized if enabled.
+			// Unless the probabilities are computed lazily, the store is always built so sentences can be scored without allocating.
+			// Bigram counts kept within a memory budget can only be looked up once they are in the store.
+			if (configuration.isOffHeap() || configuration.getQuantizationBits() > 0 || !configuration.isLazyProbabilities() || externalBigramCounter != null) { buildModelStore(); }
+			if (exactTestDataScores != null) { resultStats.setQuantizationStats(compareQuantizedScores(exactTestDataScores, scoreTestData(testDocument))); }
+		}
+		if (configuration.isOffHeap() || configuration.getQuantizationBits() > 0) { resultStats.setModelStoreSize(modelStore.byteSize()); }
+		
+		// Write the language models as an ARPA file, if asked to; this needs the model store, so not with lazy probabilities.
+		if (configuration.getArpaOutputFilePath() != null && modelStore != null && !configuration.isLazyProbabilities()) { exportArpaModels(configuration.getArpaOutputFilePath()); }
 	
 		// Perform random sentence generation if enabled.
 		ArrayList<String> tokens = new ArrayList<String>();
 		tokens = splitTokens(allBigrams);
-		if (randomSentenceGenerator)
-		{ randomGenSentences = LanguageRandomGenerator.getInstance().randomGeneration(tokens, generateSentences); }
+		if (configuration.getGeneratedSentences() > 0)
+		{
+			LanguageRandomGenerator.getInstance().setLimits(configuration.getGeneratorMaxLength(), configuration.getGeneratorTimeBudget());
+			randomGenSentences = LanguageRandomGenerator.getInstance().randomGeneration(tokens, configuration.getGeneratedSentences());
+			resultStats.setGenerationStats(LanguageRandomGenerator.getInstance().getGenerationStats());
+		}
+		
+		// Find the most likely sentences by beam search if enabled; it runs on the model store, so not with lazy probabilities.
+		int beamWidth = configuration.getBeamWidth();
+		if (beamWidth > 0 && modelStore != null)
+		{
+			float[] beamScores = new float[beamWidth];
+			List<String> beamSentences = new SentenceGenerator(modelStore).beamSearch(beamWidth, beamWidth, SentenceGenerator.DEFAULT_MAX_LENGTH, null, null, beamScores);
+			resultStats.setBeamSentences(beamSentences, Arrays.copyOf(beamScores, beamSentences.size()));
+		}
 		
 		// Evaluate the language model using the test dataset.
 		SentenceProbabilityOperation(testDocument);
-		if (perplexity) { testDataPerplexity = computeTestDataPerplexityOperation(testDocument); }
+		if (configuration.isPerplexity())
+		{
+			testDataPerplexity = computeTestDataPerplexityOperation();
+			resultStats.setPerplexityReport(perplexityReport);
+		}
 		
 		// Return results of language model operations.
 		resultStats.addResults( documentSentences, getAverageUnigramProbability(), getAverageBigramProbability(), testDataPerplexity, randomGenSentences);
+		if (configuration.isLazyProbabilities())
+		{ resultStats.setProbabilityCacheStats(new float[] { probabilityCache.getHitCount(), probabilityCache.getMissCount(), probabilityCache.getHitRate() }); }
+		if (sentenceScoreCache != null)
+		{ resultStats.setSentenceCacheStats(new float[] { sentenceScoreCache.getHitCount(), sentenceScoreCache.getMissCount(), sentenceScoreCache.getHitRate() }); }
 		
 		Long stopTime = System.currentTimeMillis();
 		System.out.println("Execution Time: " + (stopTime - startTime) + " ms\n");
@@ -252,6 +356,118 @@ public final class LanguageModeler
 	}
 	
 	
+	/**
+	 * Builds the unigram and bigram language models 
+	 * from a training dataset alone, and moves them 
+	 * into the model store, so many test datasets can 
+	 * then be scored against them at the same time.
+	 * Log probabilities are always computed up front 
+	 * here, since the store must hold all of them.
+	 * 
+	 * @param	 trainingText	the dataset used to build the language models.
+	 * 
+	 * @param	 runConfiguration	the operations that should be performed on the language models, and how they are built.
+	 * 
+	 * @return	the model store holding the built language models.
+	 * 
+	 * @throws	IOException	if an error occurs while reading the training dataset.
+	 * @throws	FileNotFoundException  if the training dataset does not exist.
+	 * 
+	 */
+	public ModelStore trainModels(String trainingText, RunConfiguration runConfiguration) throws FileNotFoundException, IOException
+	{
+		trainingData = trainingText;
+		resetRunState();
+		applyConfiguration(runConfiguration.toBuilder().setProbabilityCacheSize(0).build());
+		createPipeline();
+		
+		// Prebuilt language models given as an ARPA file are loaded straight into the model store.
+		if (ArpaFile.isArpa(trainingText))
+		{
+			loadArpaModels(trainingText);
+			return modelStore;
+		}
+		
+		Annotation trainDocument = FileHandler.getInstance().readAnnotatedData(trainingText, dataPipeline);
+		
+		coreOperation(trainDocument);
+		logProbabilityOperation(allWordTokens, bigramCount);
+		buildModelStore();
+		if (configuration.getArpaOutputFilePath() != null) { exportArpaModels(configuration.getArpaOutputFilePath()); }
+		return modelStore;
+	}
+	
+	
+	/**
+	 * Returns the CoreNLP pipeline the datasets
+	 * are annotated with.
+	 * 
+	 * @return	the CoreNLP pipeline, or null if no language models have been built yet.
+	 * 
+	 */
+	public StanfordCoreNLP getPipeline() { return dataPipeline; }
+	
+	
+	/**
+	 * Suggests the most likely words to follow 
+	 * a history, using the bigram model held in 
+	 * the model store. It may be called from any 
+	 * number of threads at the same time.
+	 * 
+	 * @param	history		the text typed so far, before the word being predicted.
+	 * 
+	 * @param	prefix		the part of the next word typed so far, or null to suggest any word.
+	 * 
+	 * @param	k			the largest number of suggestions returned.
+	 * 
+	 * @return	the suggested words, most likely first.
+	 * 
+	 */
+	public List<String> predictNext(String history, String prefix, int k)
+	{
+		if (modelStore == null) { throw new IllegalStateException("The language models have not been moved into the model store."); }
+		return modelStore.getSuccessorIndex().predictNext(history, prefix, k);
+	}
+	
+	
+	/**
+	 * Computes the unigram and bigram probabilities 
+	 * of a piece of text using the language models built 
+	 * by the last call to analyzeText. If the sentence 
+	 * cache is enabled and the text has been scored 
+	 * before, its cached scores are returned without 
+	 * tokenizing it again.
+	 * 
+	 * @param	 text	the text to be scored.
+	 * 
+	 * @return	the unigram (first array index) and bigram (second array index) probabilities of the text.
+	 * 
+	 */
+	public float[] scoreText(String text)
+	{
+		if (dataPipeline == null) { throw new IllegalStateException("The language models have not been built yet."); }
+		
+		SentenceScoreCache.Entry cachedText = (sentenceScoreCache == null) ? null : sentenceScoreCache.get(text);
+		if (cachedText != null) { return new float[] { cachedText.scores[0], cachedText.scores[2] }; }
+		
+		Annotation document = new Annotation(text);
+		dataPipeline.annotate(document);
+		
+		// Sum up the log probabilities of every sentence the text is split into.
+		float unigramLogProbability = 0, bigramLogProbability = 0;
+		for (CoreMap sentence : document.get(SentencesAnnotation.class))
+		{
+			float[] scores = scoreSentence(sentence, sentence.toString());
+			unigramLogProbability += scores[1];
+			bigramLogProbability += scores[3];
+		}
+		
+		float[] scores = { (float) Math.exp(unigramLogProbability), unigramLogProbability, (float) Math.exp(bigramLogProbability), bigramLogProbability };
+		if (sentenceScoreCache != null) { sentenceScoreCache.put(text, scores); }
+		return new float[] { scores[0], scores[2] };
+	}
+	
+	
 	//=================================  PRIVATE METHODS ==========================================================================================
 	
 	
@@ -267,135 +483,213 @@ public final class LanguageModeler
 	 * 
 	 * @param doc	a given training dataset that will be used to build the uni- and bigram language models.
 	 * 
-	 * @param operators	a list of additional operations that should be performed on the language models.
+	 * @throws IOException	if an error occurs while spilling bigram counts to disk.
 	 * 
 	 */
-	private void coreOperation(Annotation doc, HashMap<String, Integer> operators)
+	private void coreOperation(Annotation doc) throws IOException
 	{        
-		// Retrieve a list of all sentences from the training dataset.
-		List<CoreMap> sentences = doc.get(SentencesAnnotation.class);        
-		allBigrams = new String[sentences.size()];
-		
-		// Count each sentence.
-    	sentenceCount = sentences.size();
-		
-		int index = 0;
-        for(CoreMap sentence: sentences) 
-        {
-        	// Save each of the original sentences.
-        	//lineSentences[index] = sentence.toString();
-        	allBigrams[index] = FileHandler.getInstance().appendToSentence(sentence);
-        	// Unigram counting.
-        	countAllUnigrams(sentence.get(TokensAnnotation.class));   
-        	// Bigram counting.
-        	countBigrams(FileHandler.getInstance().appendToSentence(sentence)); 
-        	index++;
-        }
+		// The counting pipeline, if enabled, has already counted the training dataset.
+		if (countingPipeline != null) { collectPipelineCounts(); }
+		else
+		{
+			// Count bigrams within the given memory budget (in megabytes), spilling count runs to disk when it is exceeded.
+			if (configuration.getMemoryBudget() > 0)
+			{ externalBigramCounter = new ExternalBigramCounter(configuration.getMemoryBudget() * 1024L * 1024L); }
+			
+			// Retrieve a list of all sentences from the training dataset.
+			List<CoreMap> sentences = doc.get(SentencesAnnotation.class);        
+			
+			// Count each sentence as a token-id stream surrounded by the reserved ids of <s> and </s>, and its unigrams from its CoreNLP tokens unless -U is given.
+			// The sentence texts are only kept for the random-sentence generator.
+			NgramCounts counts = new NgramCounts();
+			String[] sentenceTexts = new String[(configuration.getGeneratedSentences() > 0) ? sentences.size() : 0];
+			int index = 0;
+	        for(CoreMap sentence: sentences) 
+	        {
+	        	String text = sentence.toString();
+	        	String[] tokenWords = unigramWords(sentence);
+	        	// Hand the bigrams to the disk-spilling counter when counting within a memory budget.
+	        	if (externalBigramCounter != null) { externalBigramCounter.addSentence(counts, text, tokenWords); }
+	        	else { counts.addSentence(text, tokenWords, null); }
+	        	if (index < sentenceTexts.length) { sentenceTexts[index] = text; }
+	        	index++;
+	        }
+	        if (externalBigramCounter != null) { externalBigramCounter.drain(counts); }
+	        counts.mergeInto(allWordTokens, bigramCount);
+	    	sentenceCount = counts.getSentenceCount();
+	    	tokenCount = (int) counts.getWordCount();
+	    	allBigrams = appendSentences(sentenceTexts);
+		}
+        
+        // Merge the spilled bigram count runs into one sorted count table, which is later read straight into the model store.
+        if (externalBigramCounter != null) { externalBigramCounter.finish(); }
         
         // Create the various models that will be used: for count, log probability, and random-sentence-generation. 
-        buildModels(bigramCount, operators);
+        buildModels(bigramCount);
 	}
 	
 
 	/**
-	 * Helper method that counts the number of sentences
-	 * in the given test dataset.
+	 * Helper method that returns the words the
+	 * unigrams of a training sentence are counted
+	 * from: the words of its CoreNLP tokens, or null
+	 * to count them from its whitespace words (-U).
+	 * 
+	 * @param sentence	the training sentence.
+	 * 
+	 * @return	the token words of the sentence, or null if unigrams are counted from whitespace words.
+	 * 
+	 * @throws IOException	if the sentence was read from a compiled corpus that holds no CoreNLP tokens.
 	 * 
-	 * @param doc	the given test dataset whose sentences are to be counted.
 	 */
-	private void testDataSentenceCounter(Annotation doc)
+	private String[] unigramWords(CoreMap sentence) throws IOException
 	{
-		List<CoreMap> sentences = doc.get(SentencesAnnotation.class);      
-		testDataSentences = sentences.size();
-        for(CoreMap sentence: sentences) 
-        { testDataTokenCounter(sentence.get(TokensAnnotation.class)); }
+		if (configuration.isWhitespaceUnigrams()) { return null; }
+		String[] tokenWords = FileHandler.getInstance().tokenWords(sentence);
+		if (tokenWords == null)
+		{ throw new IOException("The training dataset is a compiled corpus without CoreNLP tokens (version 3); compile it again, or count unigrams from whitespace words with -U."); }
+		return tokenWords;
 	}
 	
 	
 	/**
-	 * Helper method that counts the number of tokens
-	 * in a given sentence from the test dataset.
+	 * Helper method that reads the held-out dataset
+	 * and tunes the hyperparameters of the smoothing
+	 * methods on it, from the raw bigram counts.
+	 * 
+	 * @param testDocument	the annotated test dataset, on which the tuned models are also evaluated.
 	 * 
-	 * @param sentence	the given test dataset sentence whose tokens are to be counted.
+	 * @throws IOException	if an error occurs while reading the held-out dataset.
 	 * 
 	 */
-	private void testDataTokenCounter(List<CoreLabel> sentence)
+	private void tuneHyperparameters(Annotation testDocument) throws IOException
 	{
-		Collection<String> unigrams = new ArrayList<String>();
-		unigrams = StringUtils.getNgramsFromTokens(sentence, 1,1);   
-    	for(String token : unigrams){ testDataTokens++; }
+		Annotation heldOutDocument = FileHandler.getInstance().readAnnotatedData(configuration.getHeldOutDataFilePath(), dataPipeline);
+		
+		HyperparameterSearch search = new HyperparameterSearch(bigramCount);
+		try { resultStats.setTuningResults(search.getMethodNames(), search.search(heldOutDocument, testDocument)); }
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("The hyperparameter search was interrupted.", e);
+		}
 	}
 	
 	
 	/**
-	 * Helper method that counts all unigrams
-	 * in a given sentence and tracks the total
-	 * number of tokens.
-	 * 
-	 * @param sentence	the given sentence whose unigrams are to be counted.
+	 * Helper method that sets up the CoreNLP 
+	 * pipeline that tokenizes the datasets and 
+	 * splits them into sentences.
 	 * 
 	 */
-	private void countAllUnigrams(List<CoreLabel> sentence)
+	private void createPipeline()
 	{
-		String[] unigrams = new String[sentence.size()];
-		unigrams = StringUtils.getNgramsFromTokens(sentence, 1,1).toArray(new String[0]);   
+		// Suppress the red information lines that CoreNLP usually displays on startup.
+		PrintStream nlpErrorHandler = System.err;
+		System.setErr(new PrintStream(new OutputStream() { public void write(int temp) { } }));
 		
-		tokenCount = unigrams.length;
-		WordToken token;
-		WordToken startSymbol;
+        dataPipeline = new StanfordCoreNLP(PropertiesUtils.asProperties("annotators", "tokenize, ssplit","tokenize.language", "en"));
+        System.setErr(nlpErrorHandler);
+	}
+	
+	
+	/**
+	 * Helper method that writes the tokenized
+	 * training and test datasets as compiled corpora,
+	 * next to the datasets they were read from.
+	 * Datasets that were read from compiled corpora
+	 * are not compiled again.
+	 * 
+	 * @param trainDocument	the annotated training dataset.
+	 * 
+	 * @param testDocument	the annotated test dataset.
+	 * 
+	 * @throws IOException	if an error occurs while writing a compiled corpus.
+	 * 
+	 */
+	private void compileDatasets(Annotation trainDocument, Annotation testDocument) throws IOException
+	{
+		ArrayList<String> compiledPaths = new ArrayList<String>();
+		ArrayList<float[]> compiledStats = new ArrayList<float[]>();
+		String[] sources = { trainingData, testingData };
+		Annotation[] documents = { trainDocument, testDocument };
+		for (int index = 0; index < sources.length; index++)
+		{
+			if (documents[index] == null || CompiledCorpus.isCompiled(sources[index])) { continue; }
+			String compiledPath = sources[index] + CompiledCorpus.EXTENSION;
+			compiledStats.add(CompiledCorpus.write(documents[index], compiledPath));
+			compiledPaths.add(compiledPath);
+		}
+		resultStats.setCompiledCorpora(compiledPaths.toArray(new String[0]), compiledStats.toArray(new float[0][]));
+	}
+	
+	
+	/**
+	 * Helper method that starts counting the training
+	 * dataset in a pipeline of a reader thread, tokenizer
+	 * workers and counting workers, which runs while the
+	 * test dataset is read and annotated.
+	 * 
+	 * @param trainingText	the path of the training dataset.
+	 * 
+	 * @throws IOException	if the training dataset cannot be mapped.
+	 * 
+	 */
+	private void startCountingPipeline(String trainingText) throws IOException
+	{
+		// Count bigrams within the given memory budget (in megabytes), spilling count runs to disk when it is exceeded.
+		if (configuration.getMemoryBudget() > 0)
+		{ externalBigramCounter = new ExternalBigramCounter(configuration.getMemoryBudget() * 1024L * 1024L); }
 		
-    	for (String word : unigrams)
-    	{
-    		if (allWordTokens.get(word) == null)
-    		{
-    			token = new WordToken(); token.unigram = word; token.count = 1;
-    			allWordTokens.put(word, token);
-    		}
-    		else
-    		{ 
-    			token = allWordTokens.get(word);
-    			token.count++;
-    			allWordTokens.put(word, token);	
-    		}	
-    	}
-    	// Append the start-symbol <s> to the list of all tokens in the training set.
-    	startSymbol = new WordToken();
-    	startSymbol.unigram = "<s>"; startSymbol.count = sentenceCount;
-    	allWordTokens.put("<s>", startSymbol);
-    }
+		// Counting is much cheaper than tokenizing, so it gets half as many workers; the sentences are only kept for the random-sentence generator.
+		// Without -T, a memory budget streams the training dataset through one tokenizer and one counting worker.
+		int threads = Math.max(1, configuration.getThreads());
+		countingPipeline = new CountingPipeline(dataPipeline, threads, Math.max(1, threads / 2), externalBigramCounter,
+				!configuration.isWhitespaceUnigrams(), configuration.getGeneratedSentences() > 0);
+		countingPipeline.start(trainingText, FileHandler.getInstance().getInputCharset());
+	}
+	
+	
+	/**
+	 * Helper method that waits for the counting
+	 * pipeline to finish and collects its counts,
+	 * sentences and stage statistics.
+	 * 
+	 * @throws IOException	if any stage of the pipeline failed.
+	 * 
+	 */
+	private void collectPipelineCounts() throws IOException
+	{
+		countingPipeline.finish(allWordTokens, bigramCount);
+		FileHandler.getInstance().recordRead(countingPipeline.getByteSize(), countingPipeline.getReadTime());
 		
+		sentenceCount = countingPipeline.getSentenceCount();
+		allBigrams = appendSentences(countingPipeline.getSentences());
 		
+		resultStats.setPipelineStats(countingPipeline.getStageStats());
+		countingPipeline = null;
+	}
+	
+	
 	/**
-	 * Helper method that counts all the 
-	 * bigrams in a given sentence.
+	 * Helper method that appends the <s> and </s>
+	 * symbols to each sentence of the training dataset
+	 * for the random-sentence generator. The counts never
+	 * need the appended sentences, so they are only built
+	 * when random-sentence generation is enabled.
 	 * 
-	 * @param sentence	the given sentence whose bigrams are to be counted.
+	 * @param sentences	the texts of the sentences of the training dataset.
+	 * 
+	 * @return	the sentences with their <s> and </s> symbols appended, or an empty array if random-sentence generation is disabled.
 	 * 
 	 */
-	private void countBigrams(String sentence)
+	private String[] appendSentences(String[] sentences)
 	{
-		Collection<String> bigramsList = new ArrayList<String>();
-    	bigramsList = StringUtils.getNgramsString(sentence, 2, 2); 
-    	String[] bigrams = new String[bigramsList.size()];
-    	bigrams = bigramsList.toArray(new String[0]);
-
-    	WordToken gram;
-    	
-    	for (String bigram : bigrams)
-    	{
-    		
-    		if (bigramCount.get(bigram) == null)
-    		{
-    			gram = new WordToken(); gram.count = 1; gram.bigramW = bigram;
-    			bigramCount.put(bigram, gram);
-    		}
-    		else
-    		{ 
-    			gram = bigramCount.get(bigram);
-    			gram.count++;
-    			bigramCount.put(bigram, gram);	
-    		}
-    	}
+		if (configuration.getGeneratedSentences() == 0) { return new String[0]; }
+		
+		String[] appendedSentences = new String[sentences.length];
+		for (int index = 0; index < sentences.length; index++) { appendedSentences[index] = FileHandler.getInstance().appendToSentence(sentences[index]); }
+		return appendedSentences;
 	}
 	
 	
@@ -408,31 +702,83 @@ public final class LanguageModeler
 	 * 
 	 * @param bigramCount	a list mapping of all bigrams in the dataset to their occurrence-rate.
 	 * 
-	 * @param operators		a list user-defined operations that be additionally performed such as smoothing and random-sentence generation.
-	 * 
 	 */
-	private void buildModels(HashMap<String, WordToken> bigramCount, HashMap<String, Integer> operators )
+	private void buildModels(HashMap<String, WordToken> bigramCount)
 	{
-		// pull info from operator to determine if smoothing or random-sentence generation is enabled.
-		for (String operation : operators.keySet() ) 
-		{
-			if ( operation.equals("smoothing") ) { if (operators.get(operation) == 1)  smoothing = true; }
-			if ( operation.equals("perplexity") ) { if (operators.get(operation) == 1)  perplexity = true; }
-			if ( operation.equals("generator") ) { generateSentences = operators.get(operation); randomSentenceGenerator = true; }
-		}
-		
 		// Thereafter build the needed bigram-count model needed for further computation.
 		createBigram2dModel(bigramCount);
+		
+		// Assign every word type in the training dataset an id.
+		vocabulary = new PerfectHashVocabulary(allWordTokens.keySet(), false);
+	}
+	
+	
+	/**
+	 * Helper method that clears everything counted,
+	 * built and evaluated by the previous run, so the
+	 * instance can be reused for another run without
+	 * its counts and totals adding up. The CoreNLP
+	 * pipeline and the sentence cache are kept; the
+	 * cache is invalidated, or dropped if the run does
+	 * not use it, once the run configuration is applied.
+	 * 
+	 */
+	private void resetRunState()
+	{
+		tokenCount = 0;
+		sentenceCount = 0;
+		testDataTokens = 0;
+		testDataSentences = 0;
+		allWordTokens = new HashMap<String, WordToken>();
+		bigramCount = new HashMap<String, WordToken>();
+		allBigrams = null;
+		documentSentences = new HashMap<String, float[]>();
+		avgUnigramSentenceProbability = 0;
+		avgBigramSentenceProbability = 0;
+		totalUnigramPerplexityProbability = 0;
+		totalBigramPerplexityProbability = 0;
+		testDataPerplexity = null;
+		perplexityReport = null;
+		unigramTotal = 0;
+		probabilityCache = null;
+		vocabulary = null;
+		modelStore = null;
+		sentenceScorer = null;
+		if (externalBigramCounter != null) { externalBigramCounter.close(); externalBigramCounter = null; }
+		randomGenSentences = null;
+		modelDefaultFill = 0;
+		resultStats = new AnalyzedData();
+	}
+	
+	
+	/**
+	 * Helper method that takes the settings of a run
+	 * from its configuration, and sets up the sentence
+	 * cache.
+	 * 
+	 * @param runConfiguration	the operations that should be performed on the language models, and how they are built.
+	 * 
+	 */
+	private void applyConfiguration(RunConfiguration runConfiguration)
+	{
+		configuration = runConfiguration;
+		
+		// The models are being rebuilt, so any sentence scores cached against the previous models are stale.
+		// A run without the cache drops it, so no sentence is scored from an earlier run's cache.
+		if (sentenceScoreCache != null) { sentenceScoreCache.invalidate(); }
+		if (configuration.getSentenceCacheSize() == 0) { sentenceScoreCache = null; }
+		if (sentenceScoreCache == null && configuration.getSentenceCacheSize() > 0) { sentenceScoreCache = new SentenceScoreCache(configuration.getSentenceCacheSize()); }
 	}
 	
 
 	/**
 	 * Helper method that creates a two-dimensional
 	 * table/model of bigrams (formed from unigrams)
-	 * and their occurrence-rate which is by default 
-	 * set to 0.
-	 * If Smoothing is enabled, the default occurrence-rate
-	 * on creation of the table/model is set to 1.
+	 * and their occurrence-rate.
+	 * If Smoothing is enabled, 1 is added to each 
+	 * occurrence-rate when its probability is computed; 
+	 * the counts themselves are left raw, so other model 
+	 * variants can still be derived from them.
 	 * 
 	 * @param model	the set of bigrams in the training dataset.
 	 *
@@ -440,14 +786,12 @@ public final class LanguageModeler
 	private void createBigram2dModel(HashMap<String, WordToken> model) 
 	{
 		// Smoothing is enabled, so prefill all counts with 1.
-		if (smoothing) { modelDefaultFill = 1; }
+		if (configuration.isSmoothing()) { modelDefaultFill = 1; }
 				
-		// Iterate through the model and add smoothing value.
-		for (String grams : model.keySet())
+		// Split each bigram into two separate words, unless only counts are kept for lazy probabilities.
+		if (!configuration.isLazyProbabilities())
 		{
-			model.get(grams).count += modelDefaultFill;
-			// Split the bigram into two separate words.
-			model.get(grams).splitWords();
+			for (WordToken gram : model.values()) { gram.splitWords(); }
 		}
 	}
 
@@ -458,6 +802,9 @@ public final class LanguageModeler
 	 * Helper method that delegates computation
 	 * of both unigram and bigram log probabilities
 	 * to auxiliary methods.
+	 * If lazy probabilities are enabled only the counts 
+	 * are kept, and each log probability is computed 
+	 * on its first lookup instead.
 	 * 
 	 * @param allTokens	a list mapping of all unigrams in the training dataset to their occurrence-rate.
 	 * 
@@ -466,6 +813,11 @@ public final class LanguageModeler
 	 */
 	private void logProbabilityOperation(HashMap<String, WordToken> allTokens, HashMap<String, WordToken> bigramCountModel)
 	{
+		// <s> is only ever a history, never predicted, so it is left out of the unigram total.
+		WordToken startSymbol = allTokens.get(NgramCounts.START_SYMBOL);
+		unigramTotal = sumMapValues(allTokens) - ((startSymbol != null) ? startSymbol.count : 0);
+		if (configuration.isLazyProbabilities()) { probabilityCache = new ProbabilityCache(configuration.getProbabilityCacheSize()); return; }
+		
 		computeUnigramLogProbability(allTokens);
 		computeBigramLogProbability(bigramCountModel);	
 	}
@@ -481,11 +833,13 @@ public final class LanguageModeler
 	 * 
 	 * @param totalOccurrence	the total occurrence of Ngrams in the training dataset
 	 * 
-	 * @return	the natural log of the probability of the Ngram.
+	 * @return	the natural log of the probability of the Ngram, or 0 if its history was never counted.
 	 * 
 	 */
 	private float computeLogProbability(int event, int totalOccurrence)
 	{
+		// A word that only the whitespace split makes has a unigram count of 0, so the bigrams it starts have no history to divide by.
+		if (totalOccurrence == 0) { return 0; }
 		float logProbability = 0;
 		float probability = ((new Integer(event).floatValue() )/(new Integer(totalOccurrence).floatValue()));
 		if (probability == 0 || probability == 1) { return 0; }
@@ -504,12 +858,10 @@ public final class LanguageModeler
 	 */
 	private void computeUnigramLogProbability(HashMap<String, WordToken> tokens)
 	{
-		int Ncount = sumMapValues(tokens);
-		
 		for(String unigram : tokens.keySet())
 		{
 			float unigramProbability = 0;
-			unigramProbability = computeLogProbability(tokens.get(unigram).count,Ncount);
+			unigramProbability = computeLogProbability(tokens.get(unigram).count,unigramTotal);
 			tokens.get(unigram).probability = unigramProbability;
 		}
 	}
@@ -524,18 +876,270 @@ public final class LanguageModeler
 	 */
 	private void computeBigramLogProbability(HashMap<String, WordToken> bigramModel)
 	{
-		float bigramProbability = 0;
-		for (String bigram : bigramModel.keySet())
+		WordToken history;
+		for (WordToken gram : bigramModel.values())
 		{	
-			for(String unigram : allWordTokens.keySet())
+			// Bigrams whose first word is not a known unigram keep a log probability of 0.
+			history = allWordTokens.get(gram.firstWord);
+			if (history != null) { gram.probability = computeLogProbability( gram.count + modelDefaultFill, history.count ); }
+		}
+	}
+	
+	
+	/**
+	 * Helper method that copies the unigram and
+	 * bigram models into the compact model store,
+	 * kept outside the Java heap and with quantized 
+	 * log probabilities if enabled, and releases the 
+	 * on-heap models so the garbage collector no longer 
+	 * has to trace them.
+	 * 
+	 * @throws IOException	if an error occurs while reading the sorted bigram count table.
+	 * 
+	 */
+	private void buildModelStore() throws IOException
+	{
+		if (externalBigramCounter == null) { modelStore = new ModelStore(allWordTokens, bigramCount, unigramTotal, configuration.isOffHeap(), configuration.getQuantizationBits()); }
+		else
+		{
+			streamModelStore(configuration.getQuantizationBits());
+			externalBigramCounter.close();
+			externalBigramCounter = null;
+		}
+		allWordTokens = new HashMap<String, WordToken>();
+		bigramCount = new HashMap<String, WordToken>();
+		vocabulary = null;
+		
+		// Lazy probabilities are not held by the store, so they are still looked up through the probability cache.
+		sentenceScorer = configuration.isLazyProbabilities() ? null : new SentenceScorer(modelStore);
+	}
+	
+	
+	/**
+	 * Helper method that builds the model store from
+	 * the unigram model and the sorted bigram count
+	 * table of the disk-spilling counter, computing
+	 * each bigram log probability as its count is read,
+	 * so the bigram counts are never all held on the
+	 * heap. Quantizing needs every bigram log probability
+	 * for its codebook before the table is laid out, so
+	 * the count table is then read twice.
+	 * 
+	 * @param quantizationBits	the number of bits (8 or 16) log probabilities are quantized to, or 0 to store them exactly.
+	 * 
+	 * @throws IOException	if an error occurs while reading the count table.
+	 * 
+	 */
+	private void streamModelStore(int quantizationBits) throws IOException
+	{
+		// Lazy probabilities are computed from the stored counts, so the store holds none, as with the on-heap models.
+		final boolean storeProbabilities = !configuration.isLazyProbabilities();
+		ProbabilityCodebook bigramCodebook = null;
+		if (quantizationBits > 0)
+		{
+			final float[] logProbabilities = new float[(int) externalBigramCounter.getTableSize()];
+			externalBigramCounter.forEachCount(new ExternalBigramCounter.CountVisitor()
 			{
-				if (bigramModel.get(bigram).firstWord.equals(unigram))
+				// The table is sorted by first word, so each history is looked up once.
+				int index = 0;
+				String history = null;
+				int historyCount = 0;
+				
+				public void visit(String line, int wordEnd, int bigramEnd, int count)
 				{
-					bigramProbability = computeLogProbability( bigramModel.get(bigram).count, allWordTokens.get(unigram).count );
-					bigramModel.get(bigram).probability = bigramProbability;
+					if (history == null || history.length() != wordEnd || !line.startsWith(history))
+					{
+						history = line.substring(0, wordEnd);
+						WordToken token = allWordTokens.get(history);
+						historyCount = (token == null) ? 0 : token.count;
+					}
+					logProbabilities[index++] = storeProbabilities ? computeLogProbability(count + modelDefaultFill, historyCount) : 0;
 				}
-			}
+			});
+			bigramCodebook = new ProbabilityCodebook(logProbabilities, quantizationBits);
 		}
+		
+		final ModelStore store = new ModelStore(allWordTokens, unigramTotal, externalBigramCounter.getTableSize(), bigramCodebook, configuration.isOffHeap());
+		externalBigramCounter.forEachCount(new ExternalBigramCounter.CountVisitor()
+		{
+			public void visit(String line, int wordEnd, int bigramEnd, int count)
+			{
+				int firstId = store.getId(line, 0, wordEnd);
+				float logProbability = storeProbabilities ? computeLogProbability(count + modelDefaultFill, store.getUnigramCount(firstId)) : 0;
+				store.putBigram(firstId, store.getId(line, wordEnd + 1, bigramEnd), count, logProbability);
+			}
+		});
+		store.finishBigrams();
+		modelStore = store;
+	}
+	
+	
+	/**
+	 * Helper method that loads prebuilt language models
+	 * from an ARPA file straight into the model store. The
+	 * file holds probabilities rather than counts or training
+	 * sentences, so smoothing, lazy probabilities, quantization,
+	 * model variants, hyperparameter tuning and random-sentence
+	 * generation do not apply to them.
+	 * 
+	 * @param arpaPath	the path of the ARPA file.
+	 * 
+	 * @throws IOException	if the ARPA file cannot be read, or is not well formed.
+	 * 
+	 */
+	private void loadArpaModels(String arpaPath) throws IOException
+	{
+		configuration = configuration.toBuilder().setSmoothing(false).setProbabilityCacheSize(0).setQuantizationBits(0)
+				.setGeneratedSentences(0).setLargestCountCutoff(0).setHeldOutDataFilePath(null).build();
+		
+		ArpaFile arpa = new ArpaFile(arpaPath, configuration.isOffHeap());
+		modelStore = arpa.getModelStore();
+		sentenceScorer = new SentenceScorer(modelStore);
+		allBigrams = new String[0];
+		
+		float[] stats = { 1, arpa.getUnigramCount(), arpa.getBigramCount(), arpa.getSkippedCount(), arpa.getByteSize(), arpa.getReadTime() / 1e6f };
+		resultStats.addArpaFile(arpaPath, stats);
+	}
+	
+	
+	/**
+	 * Helper method that writes the language models
+	 * held by the model store as an ARPA file.
+	 * 
+	 * @param arpaPath	the path the ARPA file is written to.
+	 * 
+	 * @throws IOException	if the ARPA file cannot be written.
+	 * 
+	 */
+	private void exportArpaModels(String arpaPath) throws IOException
+	{
+		long startTime = System.nanoTime();
+		float[] written = ArpaFile.write(modelStore, arpaPath);
+		float[] stats = { 0, written[0], written[1], 0, written[2], (System.nanoTime() - startTime) / 1e6f };
+		resultStats.addArpaFile(arpaPath, stats);
+	}
+	
+	
+	/**
+	 * Helper method that returns the log probability
+	 * of a unigram in the training dataset. If lazy
+	 * probabilities are enabled, it is computed from
+	 * the unigram's count on its first lookup and then
+	 * kept in the probability cache.
+	 * Unigrams not present in the training dataset
+	 * have a log probability of 0.
+	 * 
+	 * @param unigram	the unigram whose log probability is returned.
+	 * 
+	 * @return	the log probability of the unigram.
+	 * 
+	 */
+	private float unigramLogProbability(String unigram)
+	{
+		if (modelStore != null) { return storedUnigramLogProbability(unigram); }
+		
+		WordToken token = allWordTokens.get(unigram);
+		if (token == null) { return 0; }
+		
+		if (configuration.isLazyProbabilities()) { return cachedLogProbability(unigram, token.count, unigramTotal); }
+		return token.probability;
+	}
+	
+	
+	/**
+	 * Helper method that returns the log probability
+	 * of a bigram in the training dataset. If lazy
+	 * probabilities are enabled, it is computed from
+	 * the bigram's count on its first lookup and then
+	 * kept in the probability cache.
+	 * Bigrams not present in the training dataset
+	 * have a log probability of 0.
+	 * 
+	 * @param bigram	the bigram whose log probability is returned.
+	 * 
+	 * @return	the log probability of the bigram.
+	 * 
+	 */
+	private float bigramLogProbability(String bigram)
+	{
+		if (modelStore != null) { return storedBigramLogProbability(bigram); }
+		
+		WordToken gram = bigramCount.get(bigram);
+		if (gram == null) { return 0; }
+		if (!configuration.isLazyProbabilities()) { return gram.probability; }
+		
+		WordToken history = allWordTokens.get(bigram.substring(0, bigram.indexOf(' ')));
+		return cachedLogProbability(bigram, gram.count + modelDefaultFill, (history == null) ? 0 : history.count);
+	}
+	
+	
+	/**
+	 * Helper method that returns the log probability
+	 * of a unigram held in the model store.
+	 * 
+	 * @param unigram	the unigram whose log probability is returned.
+	 * 
+	 * @return	the log probability of the unigram.
+	 * 
+	 */
+	private float storedUnigramLogProbability(String unigram)
+	{
+		int id = modelStore.getId(unigram);
+		if (id == Vocabulary.UNKNOWN_ID || modelStore.getUnigramCount(id) == 0) { return 0; }
+		
+		if (configuration.isLazyProbabilities()) { return cachedLogProbability(unigram, modelStore.getUnigramCount(id), unigramTotal); }
+		return modelStore.getUnigramLogProbability(id);
+	}
+	
+	
+	/**
+	 * Helper method that returns the log probability
+	 * of a bigram held in the model store.
+	 * 
+	 * @param bigram	the bigram whose log probability is returned.
+	 * 
+	 * @return	the log probability of the bigram.
+	 * 
+	 */
+	private float storedBigramLogProbability(String bigram)
+	{
+		int separator = bigram.indexOf(' ');
+		int firstId = modelStore.getId(bigram, 0, separator);
+		int secondId = modelStore.getId(bigram, separator + 1, bigram.length());
+		if (firstId == Vocabulary.UNKNOWN_ID || secondId == Vocabulary.UNKNOWN_ID) { return 0; }
+		if (!configuration.isLazyProbabilities()) { return modelStore.getBigramLogProbability(firstId, secondId); }
+		
+		int count = modelStore.getBigramCount(firstId, secondId);
+		if (count == 0) { return 0; }
+		return cachedLogProbability(bigram, count + modelDefaultFill, modelStore.getUnigramCount(firstId));
+	}
+	
+	
+	/**
+	 * Helper method that returns the cached log
+	 * probability of a unigram or bigram, computing
+	 * it from its counts and caching it on a miss.
+	 * Unigrams hold no space and bigrams do, so the
+	 * two never share a cache entry.
+	 * 
+	 * @param ngram	the unigram or bigram whose log probability is returned.
+	 * 
+	 * @param count	the count of the n-gram.
+	 * 
+	 * @param totalCount	the count it is divided by: the unigram total for a unigram, or the unigram count of the first word of a bigram (0 if it is not a known unigram).
+	 * 
+	 * @return	the log probability of the n-gram.
+	 * 
+	 */
+	private float cachedLogProbability(String ngram, int count, int totalCount)
+	{
+		Float cachedProbability = probabilityCache.get(ngram);
+		if (cachedProbability != null) { return cachedProbability; }
+		
+		// Bigrams whose first word is not a known unigram have a log probability of 0.
+		float logProbability = (totalCount == 0) ? 0 : computeLogProbability(count, totalCount);
+		probabilityCache.put(ngram, logProbability);
+		return logProbability;
 	}
 	
 	
@@ -546,7 +1150,9 @@ public final class LanguageModeler
 	 * Helper method that computes the unigram and bigram
 	 * sentence-probabilities of all sentences in a given dataset.
 	 * Also computes the average unigram and bigram sentence-
-	 * probabilities.
+	 * probabilities, counts the tokens and sentences of the 
+	 * dataset, and aggregates its sentence, document and 
+	 * corpus perplexities, all in the same pass.
 	 * 
 	 * @param doc	the dataset to compute its sentence probabilities.
 	 * 
@@ -557,28 +1163,37 @@ public final class LanguageModeler
 		float totalUnigramSentenceProbability = 0;
 		float totalBigramSentenceProbability = 0;
 		int totalSentenceCount = 0;
-		// Stores the original and log form respectively of a sentence's probability. 
-		float[] rawAndLogProbability = new float[2];
+		perplexityReport = new PerplexityReport();
 		
 		// Retrieve a list of all sentences from the training dataset.
 		for (CoreMap sentences : doc.get(SentencesAnnotation.class) )
 		{
 			totalSentenceCount++;
-			// compute the unigram log probability of the sentence.
-			rawAndLogProbability = findUnigramProbability(sentences);
-			unigramSentenceProbability = rawAndLogProbability[0];
-			totalUnigramPerplexityProbability += rawAndLogProbability[1]; // log probability should come out from here. should be + not *
+			// The text of the sentence is taken once, and shared by its score, token count, report entry and result.
+			String text = sentences.toString();
+			// Stores the original and log form of the sentence's unigram and bigram probabilities. 
+			float[] scores = scoreSentence(sentences, text);
+			
+			// Count the tokens of the sentence, and add its perplexities to those of its document and the corpus.
+			int sentenceTokens = FileHandler.getInstance().countWords(text);
+			testDataTokens += sentenceTokens;
+			testDataSentences++;
+			Integer line = sentences.get(LineNumberAnnotation.class);
+			perplexityReport.addSentence(text, scores[1], scores[3], sentenceTokens, (line == null) ? 0 : line);
+			
+			// the unigram log probability of the sentence.
+			unigramSentenceProbability = scores[0];
+			totalUnigramPerplexityProbability += scores[1]; // log probability should come out from here. should be + not *
 			totalUnigramSentenceProbability += unigramSentenceProbability;
 			
-			// compute the bigram log probability of the sentence.
-			rawAndLogProbability = findBigramProbability(sentences);
-			bigramSentenceProbability = rawAndLogProbability[0];
-			totalBigramPerplexityProbability += rawAndLogProbability[1];
+			// the bigram log probability of the sentence.
+			bigramSentenceProbability = scores[2];
+			totalBigramPerplexityProbability += scores[3];
 			totalBigramSentenceProbability += bigramSentenceProbability;
 			
-			// Append the log probabilities and sentence to a list mapping them together.
-			float[] probabilities = { unigramSentenceProbability, bigramSentenceProbability };
-			documentSentences.put(sentences.toString(), probabilities);
+			// Append the probabilities, then the log probabilities, and sentence to a list mapping them together.
+			float[] probabilities = { unigramSentenceProbability, bigramSentenceProbability, scores[1], scores[3] };
+			documentSentences.put(text, probabilities);
 		}
 		
 		// Convert the log sentence probabilities into their raw form before finally using it to compute perplexity
@@ -591,6 +1206,45 @@ public final class LanguageModeler
 	}
 	
 	
+	/**
+	 * Helper method that computes the unigram and bigram
+	 * sentence-probabilities of a sentence, reusing the
+	 * cached scores of a sentence that has already been
+	 * evaluated against the current models.
+	 * If the sentence scorer is available the returned
+	 * array is reused by the next call, so it must be
+	 * read before scoring another sentence.
+	 * 
+	 * @param sentence	the given sentence to compute its sentence-probabilities.
+	 * 
+	 * @param text	the text of the sentence, as taken by its toString.
+	 * 
+	 * @return	the original and log unigram sentence-probability followed by the original and log bigram sentence-probability.
+	 * 
+	 */
+	private float[] scoreSentence(CoreMap sentence, String text)
+	{
+		SentenceScoreCache.Entry cachedSentence = (sentenceScoreCache == null) ? null : sentenceScoreCache.get(text);
+		if (cachedSentence != null) { return cachedSentence.scores; }
+		
+		float[] scores;
+		if (sentenceScorer != null)
+		{
+			sentenceScorer.score(text, sentenceScores);
+			scores = sentenceScores;
+		}
+		else
+		{
+			float[] unigramProbabilities = findUnigramProbability(sentence);
+			float[] bigramProbabilities = findBigramProbability(sentence);
+			scores = new float[] { unigramProbabilities[0], unigramProbabilities[1], bigramProbabilities[0], bigramProbabilities[1] };
+		}
+		
+		if (sentenceScoreCache != null) { sentenceScoreCache.put(text, scores.clone()); }
+		return scores;
+	}
+	
+	
 	/**
 	 * Helper method that computes the sentence-probability of 
 	 * the bigrams in a given sentence from in a dataset. 
@@ -604,9 +1258,6 @@ public final class LanguageModeler
 	 */
 	private float[] findBigramProbability(CoreMap sentence)
 	{
-		String[] words;
-		// The first and second words in the bigram.
-		String firstWord, secondWord; 
 		// The log probability of the bigram.
 		float logSentenceProbability = 0;
 		// The original form of the probability when converted.
@@ -614,17 +1265,8 @@ public final class LanguageModeler
 		
     	for (String bigram : StringUtils.getNgramsString(FileHandler.getInstance().appendToSentence(sentence), 2, 2) )
     	{
-    		words = bigram.split(" ");
-    		firstWord = words[0]; secondWord = words[1];
-
-    		for (String word : bigramCount.keySet() )
-    		{
-    			if( bigramCount.get(word).firstWord.equals(firstWord) && bigramCount.get(word).secondWord.equals(secondWord))
-    			{
-    				logSentenceProbability += bigramCount.get(word).probability;
-  
-    			}  			
-    		}
+    		// Get the log-probability of the bigram and add it in the overall sentence-probability.
+    		logSentenceProbability += bigramLogProbability(bigram);
     	}
     	originalSentenceProbability = (float) Math.exp(logSentenceProbability);
     	float[] probabilities = { originalSentenceProbability, logSentenceProbability };
@@ -652,15 +1294,13 @@ public final class LanguageModeler
 		float originalSentenceProbability = 0;
 		
 		
-    	for (String unigram : StringUtils.getNgramsString(FileHandler.getInstance().appendPrefixToSentence(sentence), 1, 1) )
+    	// Every token but <s> is predicted, </s> included.
+    	List<String> unigrams = StringUtils.split(FileHandler.getInstance().appendToSentence(sentence));
+    	for (String unigram : unigrams.subList(1, unigrams.size()) )
     	{
-    		// If the unigram is not contained in the language model then it is
-    		// brand new and assigned a 0-log probability.
-    		if ( allWordTokens.keySet().contains(unigram))
-    		{
-    			// Get the log-probability of the unigram and add it in the overall sentence-probability.
-    			logSentenceProbability += allWordTokens.get(unigram).probability;
-    		}	
+    		// Get the log-probability of the unigram and add it in the overall sentence-probability;
+    		// a unigram not contained in the language model is brand new and assigned a 0-log probability.
+    		logSentenceProbability += unigramLogProbability(unigram);
     	}
     	originalSentenceProbability = (float) Math.exp(logSentenceProbability);
     	float[] probabilities = { originalSentenceProbability, logSentenceProbability };
@@ -668,6 +1308,53 @@ public final class LanguageModeler
 	}
 	
 	
+	/**
+	 * Helper method that scores every sentence of a
+	 * dataset with the current models, without caching
+	 * or recording anything, and sums up the results.
+	 * 
+	 * @param doc	the dataset to be scored.
+	 * 
+	 * @return	the total unigram and bigram log probabilities of the dataset, followed by its token count (including one end symbol per sentence).
+	 * 
+	 */
+	private float[] scoreTestData(Annotation doc)
+	{
+		float unigramLogProbability = 0, bigramLogProbability = 0, tokens = 0;
+		for (CoreMap sentence : doc.get(SentencesAnnotation.class))
+		{
+			unigramLogProbability += findUnigramProbability(sentence)[1];
+			bigramLogProbability += findBigramProbability(sentence)[1];
+			tokens += FileHandler.getInstance().countWords(sentence) + 1;
+		}
+		float[] scores = { unigramLogProbability, bigramLogProbability, tokens };
+		return scores;
+	}
+	
+	
+	/**
+	 * Helper method that compares the test dataset
+	 * scores of the exact and quantized models by
+	 * their perplexities, computed in log space so
+	 * they do not underflow on large datasets.
+	 * 
+	 * @param exactScores	the test dataset scores of the exact models.
+	 * 
+	 * @param quantizedScores	the test dataset scores of the quantized models.
+	 * 
+	 * @return	the quantization bits, followed by the exact and quantized unigram perplexities and the exact and quantized bigram perplexities.
+	 * 
+	 */
+	private float[] compareQuantizedScores(float[] exactScores, float[] quantizedScores)
+	{
+		float tokens = exactScores[2];
+		float[] stats = { configuration.getQuantizationBits(),
+				(float) Math.exp(-exactScores[0] / tokens), (float) Math.exp(-quantizedScores[0] / tokens),
+				(float) Math.exp(-exactScores[1] / tokens), (float) Math.exp(-quantizedScores[1] / tokens) };
+		return stats;
+	}
+	
+	
 	/**
 	 * Helper method that computes the average unigram sentence
 	 * probability of a dataset.
@@ -710,17 +1397,17 @@ public final class LanguageModeler
 	 * Helper method that computes the unigram and 
 	 * bigram perplexities of a given test dataset.
 	 * 
-	 * @param doc	the given test dataset whose perplexity is to be computed.
+	 * The tokens and sentences of the test dataset 
+	 * are counted while it is scored.
 	 * 
 	 * @return	the unigram and bigram perplexities of the given dataset.
 	 */
-	private float[] computeTestDataPerplexityOperation(Annotation doc)
+	private float[] computeTestDataPerplexityOperation()
 	{ 
 		float unigramPerplexity = 0;
 		float bigramPerplexity = 0;
 		
 		// Get the number of tokens/per sentence in the given test dataset 
-		testDataSentenceCounter(doc);
 		float Ncount = new Integer(testDataTokens + testDataSentences).floatValue();
 		
 		// Compute the unigram and bigram perplexities of the given test dataset.
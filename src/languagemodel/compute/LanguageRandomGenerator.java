@@ -1,6 +1,7 @@
 package languagemodel.compute;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Random;
 
 
@@ -19,14 +20,20 @@ public final class LanguageRandomGenerator
 	//============================================ PRIVATE VARIABLES =============================================================
 	
 	
+	// Represents the default largest number of words in a generated sentence.
+	public static final int DEFAULT_MAX_LENGTH = 50;
+	
+	// Represents the default time budget of a batch of generated sentences, in milliseconds.
+	public static final int DEFAULT_TIME_BUDGET = 2000;
+	
 	// Holds an instance to this class.
 	private volatile static LanguageRandomGenerator instance;
 	
 	// Holds a list of all bigrams starting with the <s> tag.
 	private ArrayList<String> startSymbolBigrams;
 	
-	// Holds a reference to a list of bigrams from the training dataset.
-	private ArrayList<String> bigrams = new ArrayList<String>();
+	// Holds a mapping of each word to the list of bigrams (from the training dataset) that it starts.
+	private HashMap<String, ArrayList<String>> successorBigrams;
 	
 	// Holds a reference to the next bigram following a specific unigram.
 	private ArrayList<String> nextBigrams;
@@ -40,6 +47,15 @@ public final class LanguageRandomGenerator
 	// Holds a reference to all sentences generated in a given session.
 	private ArrayList<String> generatedSentences = new ArrayList<String>();
 	
+	// Represents the largest number of words in a generated sentence.
+	private int maxLength = DEFAULT_MAX_LENGTH;
+	
+	// Represents the time budget of a batch of generated sentences, in milliseconds.
+	private int timeBudget = DEFAULT_TIME_BUDGET;
+	
+	// Holds the number of sentences generated, cut off at the largest length, stopped at a dead end and left ungenerated by the time budget, and the time taken (in milliseconds), in the last batch.
+	private float[] generationStats;
+	
 	
 	//============================================ CONSTRUCTOR =============================================================
 	
@@ -91,11 +107,18 @@ public final class LanguageRandomGenerator
 	public ArrayList<String> randomGeneration(ArrayList<String> allBigrams, int sentencesToGenerate)
 	{
 		startSymbolBigrams = new ArrayList<String>();
-		// Store all the bigrams of the dataset.
-		bigrams = allBigrams;
+		successorBigrams = new HashMap<String, ArrayList<String>>();
+		generatedSentences = new ArrayList<String>();
 
-		// Pull out all the start symbol bigrams into their own list.
-		for (String words : bigrams) { if (words.split(" ")[0].equals("<s>")){ startSymbolBigrams.add(words.trim()); } }
+		// Pull out all the start symbol bigrams into their own list, and group every bigram by its first word.
+		for (String words : allBigrams)
+		{
+			String bigram = words.trim();
+			String firstWord = bigram.split(" ")[0];
+			if (firstWord.equals("<s>")){ startSymbolBigrams.add(bigram); }
+			if (!successorBigrams.containsKey(firstWord)) { successorBigrams.put(firstWord, new ArrayList<String>()); }
+			successorBigrams.get(firstWord).add(bigram);
+		}
 		nextBigrams = new ArrayList<String>();
 		
 		// Randomly generate new sentences
@@ -103,92 +126,85 @@ public final class LanguageRandomGenerator
 		
 		return generatedSentences;
 	}
+	
+	
+	/**
+	 * Helper method that sets the limits 
+	 * that keep sentence generation bounded.
+	 * 
+	 * @param largestLength	the largest number of words in a generated sentence.
+	 * 
+	 * @param budget	the time budget of a batch of generated sentences, in milliseconds.
+	 * 
+	 */
+	public void setLimits(int largestLength, int budget)
+	{
+		if (largestLength < 1) { throw new IllegalArgumentException("The largest sentence length must be at least 1, not " + largestLength + "."); }
+		if (budget < 0) { throw new IllegalArgumentException("The time budget must not be negative, not " + budget + "."); }
+		maxLength = largestLength;
+		timeBudget = budget;
+	}
+	
+	
+	/**
+	 * Helper method that returns how the last
+	 * batch of generated sentences ended.
+	 * 
+	 * @return	the number of sentences generated, cut off at the largest length, stopped at a dead end and left ungenerated by the time budget, and the time taken (in milliseconds).
+	 * 
+	 */
+	public float[] getGenerationStats()
+	{ return generationStats; }
 
 
+	//============================================ PRIVATE METHODS =============================================================
+	
+	
 	/**
 	 * Helper method that generates a new sentence
 	 * randomly using bigrams from a given training
-	 * dataset.
+	 * dataset. A sentence ends at the </s> end symbol,
+	 * at a word no bigram continues (a dead end), or
+	 * once it reaches the largest length; no more 
+	 * sentences are generated once the time budget 
+	 * of the batch is spent.
 	 * 
 	 * @param sentencesToGenerate	the number of sentences to generate.
 	 */
 	private void generateSentence(int sentencesToGenerate) 
 	{
-		String startWord;
+		long startTime = System.nanoTime();
+		long deadline = startTime + timeBudget * 1000000L;
+		int lengthCapped = 0, deadEnds = 0, overBudget = 0;
+		
 		// Randomly generate new sentences built out of bigrams in the training dataset.
 		for (int i = 0; i < sentencesToGenerate; i++)
 		{
-			startWord = startSymbolBigrams.get(randomValue.nextInt(startSymbolBigrams.size()));
+			// Stop once the time budget is spent, counting the sentences left ungenerated.
+			if (System.nanoTime() > deadline) { overBudget = sentencesToGenerate - i; break; }
+			if (startSymbolBigrams.isEmpty()) { deadEnds++; continue; }
+			
+			String word = startSymbolBigrams.get(randomValue.nextInt(startSymbolBigrams.size())).split(" ")[1];
 			sentence = new StringBuilder();
-			sentence.append(startWord.trim() + " ");
+			int length = 0;
 			
-			while(true)
+			// if end symbol </s> is encountered then stop generating sentence.
+			while (!word.equals("</s>"))
 			{
-				nextBigrams = searchForWord(bigrams, startWord.split(" ")[1]);
-				startWord = nextBigrams.get(randomValue.nextInt(nextBigrams.size()));				
-				sentence.append(startWord.split(" ")[1].trim() + " ");
+				sentence.append(word + " ");
+				if (++length >= maxLength) { lengthCapped++; break; }
 				
-				// if end symbol </s> is encountered then stop generating sentence.
-				if (startWord.split(" ")[0].equals(".") || startWord.split(" ")[1].equals(".")){ break; }
+				// A word that starts no bigram is a dead end.
+				nextBigrams = successorBigrams.get(word);
+				if (nextBigrams == null) { deadEnds++; break; }
+				word = nextBigrams.get(randomValue.nextInt(nextBigrams.size())).split(" ")[1];
 			}
 			
-			// Strip <s> and </s> tags before adding the sentence to the generated-sentences-list.
-			 generatedSentences.add(stripSentenceTags(sentence.toString()));
+			generatedSentences.add(sentence.toString().trim());
 		}
-	}
-	
-	
-	
-	
-	
-	
-	
-	//============================================ PRIVATE METHODS =============================================================
-	
-	
-	/**
-	 * Helper method that searches for a given unigram
-	 * in a list of bigrams.
-	 * 
-	 * @param bigrams	the list of bigrams to search through.
-	 * 
-	 * @param gram	the unigram to search for in the list of bigrams
-	 * 
-	 * @return	a list of bigrams whose first word is the unigram being searched for.
-	 * 
-	 */
-	private ArrayList<String> searchForWord(ArrayList<String> bigrams, String gram)
-	{
-		ArrayList<String> foundWords = new ArrayList<String>();
-		for (String word : bigrams)
-		{
-			if (word.split(" ")[0].equals(gram) ){ foundWords.add(word.trim()); }
-		}
-		return foundWords;
-	}
-	
-	
-	
-	/**
-	 * Helper method that strips the 
-	 * <s> sentence beginning tag and </s>
-	 * end tag from a generated sentence.
-	 * 
-	 * @param wrangledSentence	the generated sentence to strip.
-	 * 
-	 * @return	a stripped-out sentence without <s> tags.
-	 * 
-	 */
-	private String stripSentenceTags(String wrangledSentence)
-	{
-		if(wrangledSentence.startsWith("<s>"))
-		{ wrangledSentence = wrangledSentence.substring(3,wrangledSentence.length() - 1).trim(); }
-		
-		if ( wrangledSentence.endsWith("</s>")) 
-		{ wrangledSentence = wrangledSentence.substring(0,wrangledSentence.length()-1); wrangledSentence.concat("."); }
 		
-		return wrangledSentence;
+		float[] stats = { generatedSentences.size(), lengthCapped, deadEnds, overBudget, (System.nanoTime() - startTime) / 1e6f };
+		generationStats = stats;
 	}
 	
-	
 }
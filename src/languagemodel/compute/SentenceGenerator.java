@@ -0,0 +1,357 @@
+package languagemodel.compute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import languagemodel.structures.ModelStore;
+import languagemodel.structures.SuccessorIndex;
+import languagemodel.structures.Vocabulary;
+
+
+/**
+ * This class generates sentences from the bigram
+ * model held in a model store, either the most likely
+ * sentences by beam search, or random sentences by
+ * top-k and temperature sampling. Both walk the
+ * store's successor index, whose per-word successor
+ * runs are already sorted by probability, so a step
+ * only reads the first k successors of each history
+ * (O(beam x k) for a beam step) instead of scanning
+ * the bigrams.
+ *
+ * A sentence runs from <s> to </s>. It may be forced
+ * to start with given words, and to end with a given
+ * word (the sentence then ends as soon as the word is
+ * generated, rather than at </s>), and it is cut off
+ * after a largest number of words.
+ *
+ * An instance holds no state between calls, so it may
+ * be shared between threads (with a Random per thread).
+ *
+ * @author David Olorundare
+ *
+ */
+public class SentenceGenerator
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the largest number of words in a sentence generated from the command line.
+	public static final int DEFAULT_MAX_LENGTH = 40;
+
+	// Represents the model store the sentences are generated from.
+	private final ModelStore store;
+
+	// Represents the successor index of the model store.
+	private final SuccessorIndex successors;
+
+	// Represents the id of the <s> start symbol in the store.
+	private final int startId;
+
+	// Represents the id of the </s> end symbol in the store.
+	private final int endId;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 * @param modelStore	the model store the sentences are generated from; it must hold the log probabilities.
+	 *
+	 */
+	public SentenceGenerator(ModelStore modelStore)
+	{
+		store = modelStore;
+		successors = store.getSuccessorIndex();
+		startId = store.getId("<s>");
+		endId = store.getId("</s>");
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that finds the most likely
+	 * sentences by beam search: at each step every
+	 * sentence in the beam is extended by its k most
+	 * likely next words, and only the most likely
+	 * extensions are kept. The search stops once no
+	 * sentence in the beam can beat the finished ones.
+	 *
+	 * @param beamWidth	the number of sentences kept at each step, and the largest number returned.
+	 *
+	 * @param branching	the number of next words k tried for each sentence in the beam.
+	 *
+	 * @param maxLength	the largest number of words in a sentence.
+	 *
+	 * @param start	the words every sentence must start with, or null for none.
+	 *
+	 * @param end	the word every sentence must end with, or null for none.
+	 *
+	 * @param logProbabilities	receives the bigram log probability of each sentence returned, or null if not needed.
+	 *
+	 * @return	the most likely sentences, most likely first; empty if no sentence meets the constraints.
+	 */
+	public List<String> beamSearch(int beamWidth, int branching, int maxLength, String start, String end, float[] logProbabilities)
+	{
+		int endWordId = wordId(end);
+		Trellis trellis = new Trellis();
+		float[] startScore = new float[1];
+		int[] beam = { forcedStart(start, trellis, startScore) };
+		float[] beamScores = { startScore[0] };
+		int startLength = trellis.length(beam[0]);
+
+		int[] finished = new int[beamWidth];
+		float[] finishedScores = new float[beamWidth];
+		int finishedCount = 0;
+
+		int[] candidateParents = new int[beamWidth * branching];
+		int[] candidateWords = new int[beamWidth * branching];
+		float[] candidateScores = new float[beamWidth * branching];
+		long[] order = new long[beamWidth * branching];
+
+		for (int length = startLength; length < maxLength && beam.length > 0; length++)
+		{
+			// Stop once the best sentence in the beam cannot beat the worst finished one.
+			if (finishedCount == beamWidth && beamScores[0] <= finishedScores[beamWidth - 1]) { break; }
+
+			int candidates = 0;
+			for (int hypothesis = 0; hypothesis < beam.length; hypothesis++)
+			{
+				int lastWord = trellis.word(beam[hypothesis]);
+				int runEnd = Math.min(successors.getRunEnd(lastWord), successors.getRunStart(lastWord) + branching);
+				for (int index = successors.getRunStart(lastWord); index < runEnd; index++)
+				{
+					int word = successors.getSuccessorId(index);
+					float score = beamScores[hypothesis] + successors.getSuccessorLogProbability(index);
+					if (word == startId || (word == endId && endWordId != Vocabulary.UNKNOWN_ID)) { continue; }
+					if (word == endId || word == endWordId)
+					{
+						// A finished sentence takes the place of the worst finished one, if it is better.
+						if (word == endWordId) { score += store.getBigramLogProbability(endWordId, endId); }
+						if (finishedCount == beamWidth && score <= finishedScores[beamWidth - 1]) { continue; }
+						int slot = (finishedCount < beamWidth) ? finishedCount++ : beamWidth - 1;
+						while (slot > 0 && finishedScores[slot - 1] < score) { finished[slot] = finished[slot - 1]; finishedScores[slot] = finishedScores[slot - 1]; slot--; }
+						finished[slot] = (word == endId) ? beam[hypothesis] : trellis.add(word, beam[hypothesis]);
+						finishedScores[slot] = score;
+						continue;
+					}
+					candidateParents[candidates] = beam[hypothesis];
+					candidateWords[candidates] = word;
+					candidateScores[candidates] = score;
+					order[candidates] = ((long) sortableBits(-score) << 32) | candidates;
+					candidates++;
+				}
+			}
+
+			// Keep the most likely extensions as the next beam.
+			Arrays.sort(order, 0, candidates);
+			int kept = Math.min(beamWidth, candidates);
+			beam = new int[kept];
+			beamScores = new float[kept];
+			for (int index = 0; index < kept; index++)
+			{
+				int candidate = (int) order[index];
+				beam[index] = trellis.add(candidateWords[candidate], candidateParents[candidate]);
+				beamScores[index] = candidateScores[candidate];
+			}
+		}
+
+		List<String> sentences = new ArrayList<String>(finishedCount);
+		for (int index = 0; index < finishedCount; index++)
+		{
+			sentences.add(trellis.text(finished[index], successors));
+			if (logProbabilities != null && index < logProbabilities.length) { logProbabilities[index] = finishedScores[index]; }
+		}
+		return sentences;
+	}
+
+
+	/**
+	 * Helper method that generates a random sentence:
+	 * each next word is drawn from the k most likely
+	 * words to follow the last one, with probabilities
+	 * sharpened (temperature below 1) or flattened
+	 * (above 1) by the temperature.
+	 *
+	 * @param topK	the number of most likely next words drawn from, or 0 for all of them.
+	 *
+	 * @param temperature	the temperature the probabilities are raised to the inverse of; it must be positive.
+	 *
+	 * @param maxLength	the largest number of words in a sentence.
+	 *
+	 * @param start	the words the sentence must start with, or null for none.
+	 *
+	 * @param end	the word the sentence must end with, or null for none.
+	 *
+	 * @param random	the random generator drawn from.
+	 *
+	 * @return	the generated sentence, cut off at the largest length or wherever no next word can be drawn.
+	 */
+	public String sample(int topK, float temperature, int maxLength, String start, String end, Random random)
+	{
+		if (!(temperature > 0)) { throw new IllegalArgumentException("The temperature must be positive, not " + temperature + "."); }
+		int endWordId = wordId(end);
+		Trellis trellis = new Trellis();
+		int node = forcedStart(start, trellis, new float[1]);
+		double[] weights = new double[16];
+
+		for (int length = trellis.length(node); length < maxLength; length++)
+		{
+			int lastWord = trellis.word(node);
+			int runStart = successors.getRunStart(lastWord);
+			int runEnd = (topK > 0) ? Math.min(successors.getRunEnd(lastWord), runStart + topK) : successors.getRunEnd(lastWord);
+			if (runEnd - runStart > weights.length) { weights = new double[Math.max(runEnd - runStart, weights.length * 2)]; }
+
+			// Weigh each allowed successor by its probability to the power 1 / temperature, relative to the most likely.
+			double total = 0;
+			float largest = (runEnd > runStart) ? successors.getSuccessorLogProbability(runStart) : 0;
+			for (int index = runStart; index < runEnd; index++)
+			{
+				int word = successors.getSuccessorId(index);
+				boolean allowed = word != startId && (word != endId || endWordId == Vocabulary.UNKNOWN_ID);
+				weights[index - runStart] = allowed ? Math.exp((successors.getSuccessorLogProbability(index) - largest) / temperature) : 0;
+				total += weights[index - runStart];
+			}
+			if (total == 0) { break; }
+
+			double draw = random.nextDouble() * total;
+			int index = runStart;
+			while (index < runEnd - 1 && (draw -= weights[index - runStart]) >= 0) { index++; }
+			while (weights[index - runStart] == 0) { index--; }
+			if (successors.getSuccessorId(index) == endId) { break; }
+			node = trellis.add(successors.getSuccessorId(index), node);
+			if (successors.getSuccessorId(index) == endWordId) { break; }
+		}
+		return trellis.text(node, successors);
+	}
+
+
+	/**
+	 * Helper method that generates several random
+	 * sentences with the same settings.
+	 *
+	 * @param count	the number of sentences generated.
+	 *
+	 * @param topK	the number of most likely next words drawn from, or 0 for all of them.
+	 *
+	 * @param temperature	the temperature the probabilities are raised to the inverse of; it must be positive.
+	 *
+	 * @param maxLength	the largest number of words in a sentence.
+	 *
+	 * @param start	the words each sentence must start with, or null for none.
+	 *
+	 * @param end	the word each sentence must end with, or null for none.
+	 *
+	 * @param random	the random generator drawn from.
+	 *
+	 * @return	the generated sentences.
+	 */
+	public List<String> sampleSentences(int count, int topK, float temperature, int maxLength, String start, String end, Random random)
+	{
+		List<String> sentences = new ArrayList<String>(count);
+		for (int index = 0; index < count; index++) { sentences.add(sample(topK, temperature, maxLength, start, end, random)); }
+		return sentences;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that adds the <s> symbol and the
+	 * forced start words of a sentence to a trellis,
+	 * summing their bigram log probabilities.
+	 *
+	 * @return	the node of the last start word, to be extended.
+	 */
+	private int forcedStart(String start, Trellis trellis, float[] score)
+	{
+		int node = trellis.add(startId, -1);
+		int previous = startId;
+		if (start == null) { return node; }
+		for (String word : start.trim().split("\\s+"))
+		{
+			if (word.isEmpty()) { continue; }
+			int id = wordId(word);
+			score[0] += store.getBigramLogProbability(previous, id);
+			node = trellis.add(id, node);
+			previous = id;
+		}
+		return node;
+	}
+
+
+	/**
+	 * Helper method that returns the id of a forced
+	 * word, Vocabulary.UNKNOWN_ID for no word, and
+	 * rejects words not in the vocabulary.
+	 */
+	private int wordId(String word)
+	{
+		if (word == null) { return Vocabulary.UNKNOWN_ID; }
+		int id = store.getId(word);
+		if (id == Vocabulary.UNKNOWN_ID) { throw new IllegalArgumentException("The word is not in the vocabulary: " + word); }
+		return id;
+	}
+
+
+	/**
+	 * Helper method that converts a float into an
+	 * int that compares in the same order.
+	 */
+	private static int sortableBits(float value)
+	{
+		int bits = Float.floatToIntBits(value);
+		return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+	}
+
+
+	/**
+	 * This class holds the partial sentences of a
+	 * generation as a tree of word nodes, each
+	 * pointing back at the node before it, so a
+	 * sentence is extended without copying it.
+	 */
+	private static class Trellis
+	{
+		// Represents the word of each node.
+		int[] words = new int[64];
+
+		// Represents the node before each node, or -1 for the first node.
+		int[] parents = new int[64];
+
+		// Represents the number of nodes.
+		int size = 0;
+
+		int add(int word, int parent)
+		{
+			if (size == words.length) { words = Arrays.copyOf(words, size * 2); parents = Arrays.copyOf(parents, size * 2); }
+			words[size] = word;
+			parents[size] = parent;
+			return size++;
+		}
+
+		int word(int node) { return words[node]; }
+
+		int length(int node)
+		{
+			int length = 0;
+			for (; parents[node] != -1; node = parents[node]) { length++; }
+			return length;
+		}
+
+		String text(int node, SuccessorIndex successors)
+		{
+			StringBuilder text = new StringBuilder();
+			for (; parents[node] != -1; node = parents[node]) { text.insert(0, ' ').insert(0, successors.getWord(words[node])); }
+			return text.toString().trim();
+		}
+	}
+
+}
@@ -0,0 +1,232 @@
+package languagemodel.compute;
+
+import languagemodel.structures.ModelStore;
+import languagemodel.structures.Vocabulary;
+
+
+/**
+ * This class scores sentences against the unigram
+ * and bigram models held in a model store, without
+ * allocating any objects once it has warmed up.
+ * Instead of building the preprocessed sentence and
+ * its n-gram Strings, it splits the sentence text
+ * into word ranges in place, looks each range up in
+ * the store's vocabulary, and sums the log probabilities
+ * over the resulting token-id sequence. Its buffers are
+ * reused from one sentence to the next, so an instance
+ * must not be shared between threads.
+ *
+ * The tokens scored are those produced by FileHandler's
+ * appendToSentence followed by a whitespace split: the
+ * <s> symbol, the words of the sentence (with a trailing
+ * full stop split off its word) and the </s> symbol.
+ * The unigram score covers every token predicted,
+ * which is every token but <s>.
+ *
+ * @author David Olorundare
+ *
+ */
+public class SentenceScorer
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the model store the sentences are scored against.
+	private final ModelStore store;
+
+	// Represents the id of the <s> start symbol in the store.
+	private final int startId;
+
+	// Represents the id of the </s> end symbol in the store.
+	private final int endId;
+
+	// Represents the id of the full stop in the store.
+	private final int fullStopId;
+
+	// Represents the token-id sequence of the sentence last scored, reused between sentences.
+	private int[] tokenIds = new int[64];
+
+	// Represents the number of tokens in the sentence last scored.
+	private int tokenCount = 0;
+
+	// Represents the number of words of the sentence last backed off that are not in the vocabulary.
+	private int unknownCount = 0;
+
+	// Represents the log probability given to a word not in the vocabulary when backing off: that of an unseen word under add-one smoothing.
+	private final float unknownLogProbability;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 * @param modelStore	the model store the sentences are scored against; it must hold the log probabilities.
+	 *
+	 */
+	public SentenceScorer(ModelStore modelStore)
+	{
+		store = modelStore;
+		startId = store.getId("<s>");
+		endId = store.getId("</s>");
+		fullStopId = store.getId(".");
+		unknownLogProbability = (float) -Math.log((double) store.getUnigramTotal() + store.getVocabularySize());
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that computes the unigram and
+	 * bigram sentence-probabilities of a sentence.
+	 * Unigrams and bigrams not present in the store
+	 * have a log probability of 0.
+	 *
+	 * @param sentence	the text of the sentence.
+	 *
+	 * @param scores	receives the original and log unigram sentence-probability followed by the original and log bigram sentence-probability.
+	 *
+	 */
+	public void score(CharSequence sentence, float[] scores)
+	{
+		tokenize(sentence);
+
+		float unigramLogProbability = 0;
+		for (int index = 1; index < tokenCount; index++)
+		{
+			int id = tokenIds[index];
+			if (id != Vocabulary.UNKNOWN_ID && store.getUnigramCount(id) != 0) { unigramLogProbability += store.getUnigramLogProbability(id); }
+		}
+
+		float bigramLogProbability = 0;
+		for (int index = 1; index < tokenCount; index++)
+		{
+			int firstId = tokenIds[index - 1], secondId = tokenIds[index];
+			if (firstId != Vocabulary.UNKNOWN_ID && secondId != Vocabulary.UNKNOWN_ID) { bigramLogProbability += store.getBigramLogProbability(firstId, secondId); }
+		}
+
+		scores[0] = (float) Math.exp(unigramLogProbability);
+		scores[1] = unigramLogProbability;
+		scores[2] = (float) Math.exp(bigramLogProbability);
+		scores[3] = bigramLogProbability;
+	}
+
+
+	/**
+	 * Helper method that computes the bigram log
+	 * probability of a sentence with every step
+	 * scored, for ranking texts against each other.
+	 * Unlike score, no step is free: a bigram not in
+	 * the store backs off to the unigram log probability
+	 * of its word, and a word not in the vocabulary gets
+	 * the log probability of an unseen word under add-one
+	 * smoothing, 1 / (unigram total + vocabulary size).
+	 * A text the model knows little about therefore
+	 * scores low rather than high.
+	 *
+	 * @param sentence	the text of the sentence.
+	 *
+	 * @return	the backed-off bigram log probability of the sentence.
+	 */
+	public float backedOffLogProbability(CharSequence sentence)
+	{
+		tokenize(sentence);
+		unknownCount = 0;
+
+		float logProbability = 0;
+		for (int index = 1; index < tokenCount; index++)
+		{
+			int firstId = tokenIds[index - 1], secondId = tokenIds[index];
+			if (secondId == Vocabulary.UNKNOWN_ID || store.getUnigramCount(secondId) == 0) { unknownCount++; logProbability += unknownLogProbability; }
+			else if (firstId != Vocabulary.UNKNOWN_ID && store.containsBigram(firstId, secondId)) { logProbability += store.getBigramLogProbability(firstId, secondId); }
+			else { logProbability += store.getUnigramLogProbability(secondId); }
+		}
+		return logProbability;
+	}
+
+
+	/**
+	 * Helper method that returns the number of words
+	 * of the sentence last backed off that are not in
+	 * the vocabulary.
+	 *
+	 * @return	the number of unknown words of the sentence last backed off.
+	 */
+	public int getUnknownCount()
+	{ return unknownCount; }
+
+
+	/**
+	 * Helper method that returns the number of tokens
+	 * of the sentence last scored, including its <s>
+	 * and </s> symbols.
+	 *
+	 * @return	the number of tokens of the sentence last scored.
+	 */
+	public int getTokenCount()
+	{ return tokenCount; }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that splits a sentence into
+	 * its tokens and stores their ids, surrounded
+	 * by the ids of the <s> and </s> symbols.
+	 *
+	 * @param sentence	the text of the sentence.
+	 *
+	 */
+	private void tokenize(CharSequence sentence)
+	{
+		tokenCount = 0;
+		addToken(startId);
+
+		// A trailing full stop is split off its word, as appendToSentence does.
+		int end = sentence.length();
+		boolean fullStop = end > 0 && sentence.charAt(end - 1) == '.';
+		if (fullStop) { end--; }
+
+		int index = 0;
+		while (index < end)
+		{
+			while (index < end && isWhitespace(sentence.charAt(index))) { index++; }
+			int start = index;
+			while (index < end && !isWhitespace(sentence.charAt(index))) { index++; }
+			if (index > start) { addToken(store.getId(sentence, start, index)); }
+		}
+
+		if (fullStop) { addToken(fullStopId); }
+		addToken(endId);
+	}
+
+
+	/**
+	 * Helper method that appends a token id to
+	 * the token-id sequence, growing it if full.
+	 */
+	private void addToken(int id)
+	{
+		if (tokenCount == tokenIds.length)
+		{
+			int[] grownTokenIds = new int[tokenIds.length * 2];
+			System.arraycopy(tokenIds, 0, grownTokenIds, 0, tokenCount);
+			tokenIds = grownTokenIds;
+		}
+		tokenIds[tokenCount++] = id;
+	}
+
+
+	/**
+	 * Helper method that returns true if a character
+	 * separates words, matching the \s class of the
+	 * regular expression the n-gram split uses.
+	 */
+	private static boolean isWhitespace(char character)
+	{ return character == ' ' || character == '\t' || character == '\n' || character == '\u000B' || character == '\f' || character == '\r'; }
+
+}
@@ -0,0 +1,221 @@
+package languagemodel.compute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import languagemodel.structures.ModelStore;
+
+
+/**
+ * This class ranks candidate texts by how well a
+ * trained bigram model predicts them, so the most
+ * "in domain" candidates come first. Each candidate
+ * is scored once against the model store, without
+ * re-annotating or rebuilding anything, and the
+ * candidates are split across several threads, each
+ * with its own sentence scorer.
+ *
+ * With one model, candidates are ordered by their
+ * normalized bigram log probability: the log
+ * probability divided by the number of steps
+ * predicted (the tokens and the end symbol), which
+ * orders them in the same way as their perplexity.
+ *
+ * With a second, background model, candidates are
+ * ordered by their cross-entropy difference (Moore
+ * and Lewis, 2010): the cross-entropy under the
+ * in-domain model minus that under the background
+ * model, lowest first. It prefers texts that are
+ * typical of the domain rather than merely common.
+ *
+ * Every step of a candidate is scored, as the sentence
+ * scorer's backedOffLogProbability scores it: a bigram
+ * not in a store backs off to the unigram probability
+ * of its word, and a word not in the vocabulary gets
+ * the add-one probability of an unseen word. So a
+ * candidate made of words a model has never seen
+ * ranks low, not first, and each row also reports
+ * how many of its words the in-domain model does not
+ * know.
+ *
+ * @author David Olorundare
+ *
+ */
+public class TextRanker
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the column of a ranking row holding the index of the candidate.
+	public static final int INDEX = 0;
+
+	// Represents the column of a ranking row holding the normalized in-domain bigram log probability.
+	public static final int NORMALIZED_LOG_PROBABILITY = 1;
+
+	// Represents the column of a ranking row holding the in-domain bigram perplexity.
+	public static final int PERPLEXITY = 2;
+
+	// Represents the column of a ranking row holding the cross-entropy difference, or 0 without a background model.
+	public static final int CROSS_ENTROPY_DIFFERENCE = 3;
+
+	// Represents the column of a ranking row holding the number of words not in the in-domain vocabulary.
+	public static final int UNKNOWN_WORDS = 4;
+
+	// Represents the model store of the in-domain model.
+	private final ModelStore inDomainStore;
+
+	// Represents the model store of the background model, or null if there is none.
+	private final ModelStore backgroundStore;
+
+	// Represents the number of threads the candidates are scored on.
+	private final int threads;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which ranks candidates
+	 * against a single model.
+	 *
+	 * @param inDomainModel	the model store of the in-domain model; it must hold the log probabilities.
+	 *
+	 * @param scoringThreads	the number of threads the candidates are scored on.
+	 *
+	 */
+	public TextRanker(ModelStore inDomainModel, int scoringThreads)
+	{
+		this(inDomainModel, null, scoringThreads);
+	}
+
+
+	/**
+	 * Constructor of the class, which ranks candidates
+	 * by their cross-entropy difference between an
+	 * in-domain and a background model.
+	 *
+	 * @param inDomainModel	the model store of the in-domain model; it must hold the log probabilities.
+	 *
+	 * @param backgroundModel	the model store of the background model, or null to rank against the in-domain model alone.
+	 *
+	 * @param scoringThreads	the number of threads the candidates are scored on.
+	 *
+	 */
+	public TextRanker(ModelStore inDomainModel, ModelStore backgroundModel, int scoringThreads)
+	{
+		inDomainStore = inDomainModel;
+		backgroundStore = backgroundModel;
+		threads = Math.max(1, scoringThreads);
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that scores every candidate and
+	 * returns them ranked, most in-domain first.
+	 * Candidates with equal scores keep their order.
+	 *
+	 * @param candidates	the texts of the candidates, each scored as one sentence.
+	 *
+	 * @return	for each candidate, in ranked order, its index in the candidates, its normalized bigram log probability, its bigram perplexity, its cross-entropy difference and its number of unknown words.
+	 *
+	 * @throws InterruptedException	if the scoring is interrupted.
+	 */
+	public float[][] rank(final List<String> candidates) throws InterruptedException
+	{
+		final float[][] rows = new float[candidates.size()][];
+		final int chunkSize = (candidates.size() + threads - 1) / threads;
+
+		// Each thread scores a contiguous run of candidates with its own scorers.
+		List<Callable<Void>> chunks = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < candidates.size(); start += chunkSize)
+		{
+			final int first = start, last = Math.min(candidates.size(), start + chunkSize);
+			chunks.add(new Callable<Void>()
+			{
+				public Void call() { scoreCandidates(candidates, first, last, rows); return null; }
+			});
+		}
+
+		if (chunks.size() == 1) { scoreCandidates(candidates, 0, candidates.size(), rows); }
+		else if (!chunks.isEmpty())
+		{
+			ExecutorService workers = Executors.newFixedThreadPool(chunks.size());
+			try
+			{
+				for (Future<Void> result : workers.invokeAll(chunks))
+				{
+					try { result.get(); }
+					catch (ExecutionException e) { throw new IllegalStateException("A candidate could not be scored.", e.getCause()); }
+				}
+			}
+			finally { workers.shutdown(); }
+		}
+
+		final int key = (backgroundStore == null) ? NORMALIZED_LOG_PROBABILITY : CROSS_ENTROPY_DIFFERENCE;
+		final float direction = (backgroundStore == null) ? -1 : 1;
+		Arrays.sort(rows, new Comparator<float[]>()
+		{
+			public int compare(float[] first, float[] second)
+			{
+				int order = Float.compare(direction * first[key], direction * second[key]);
+				return (order != 0) ? order : Float.compare(first[INDEX], second[INDEX]);
+			}
+		});
+		return rows;
+	}
+
+
+	/**
+	 * Helper method that returns the candidates in
+	 * ranked order, most in-domain first.
+	 *
+	 * @param candidates	the texts of the candidates, each scored as one sentence.
+	 *
+	 * @return	the texts of the candidates, in ranked order.
+	 *
+	 * @throws InterruptedException	if the scoring is interrupted.
+	 */
+	public List<String> rankTexts(List<String> candidates) throws InterruptedException
+	{
+		List<String> ranked = new ArrayList<String>(candidates.size());
+		for (float[] row : rank(candidates)) { ranked.add(candidates.get((int) row[INDEX])); }
+		return ranked;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that scores a run of candidates
+	 * into their (unranked) rows.
+	 */
+	private void scoreCandidates(List<String> candidates, int first, int last, float[][] rows)
+	{
+		SentenceScorer inDomainScorer = new SentenceScorer(inDomainStore);
+		SentenceScorer backgroundScorer = (backgroundStore == null) ? null : new SentenceScorer(backgroundStore);
+		for (int index = first; index < last; index++)
+		{
+			String candidate = candidates.get(index);
+			float logProbability = inDomainScorer.backedOffLogProbability(candidate);
+
+			// A sentence is predicted in one step per token after <s>, ending with </s>.
+			int steps = inDomainScorer.getTokenCount() - 1;
+			float crossEntropy = -logProbability / steps;
+			float crossEntropyDifference = 0;
+			if (backgroundScorer != null) { crossEntropyDifference = crossEntropy - (-backgroundScorer.backedOffLogProbability(candidate) / steps); }
+			rows[index] = new float[] { index, -crossEntropy, (float) Math.exp(crossEntropy), crossEntropyDifference, inDomainScorer.getUnknownCount() };
+		}
+	}
+
+}
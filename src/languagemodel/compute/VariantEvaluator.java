@@ -0,0 +1,237 @@
+package languagemodel.compute;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.StringUtils;
+import languagemodel.structures.NgramCounts;
+import languagemodel.structures.WordToken;
+import languagemodel.utils.FileHandler;
+
+
+/**
+ * This class evaluates several variants of the
+ * language models on a test dataset in one pass,
+ * all derived from the same raw training counts.
+ * A variant combines a bigram smoothing method
+ * (none, or add-one) with a bigram count cutoff,
+ * below which a bigram is treated as unseen; each
+ * variant is reported at both orders, unigram and
+ * bigram.
+ *
+ * Unseen bigrams are scored, not skipped, so pruning
+ * a bigram always has a cost. Add-one adds 1 to
+ * every bigram count and the vocabulary size to
+ * every history count, so its probabilities sum to
+ * at most 1 over the vocabulary. An unsmoothed
+ * variant backs off to the unigram probability of
+ * the word; words never seen in training are left
+ * out of every unsmoothed variant alike, as they are
+ * out of the unigram model.
+ *
+ * The test dataset is split into n-grams only once:
+ * each bigram's count is looked up once, and every
+ * variant's log probability is derived from it. The
+ * raw counts are never modified.
+ *
+ * @author David Olorundare
+ *
+ */
+public class VariantEvaluator
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the count added to every bigram, seen or not, by each smoothing method: none and add-one.
+	private static final int[] SMOOTHING_FILLS = { 0, 1 };
+
+	// Represents the names of the smoothing methods.
+	private static final String[] SMOOTHING_NAMES = { "unsmoothed", "add-one" };
+
+	// Represents the raw unigram counts of the training dataset.
+	private final HashMap<String, WordToken> unigramCounts;
+
+	// Represents the raw bigram counts of the training dataset.
+	private final HashMap<String, WordToken> bigramCounts;
+
+	// Represents the total number of unigrams in the training dataset.
+	private final int unigramTotal;
+
+	// Represents the count added to seen bigrams by each variant.
+	private final int[] fills;
+
+	// Represents the bigram count cutoff of each variant.
+	private final int[] cutoffs;
+
+	// Represents the name of each variant.
+	private final String[] names;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which sets up every
+	 * combination of smoothing method and bigram
+	 * count cutoff from 1 to the given largest cutoff.
+	 *
+	 * @param unigramModel	the raw unigram counts of the training dataset.
+	 *
+	 * @param bigramModel	the raw bigram counts of the training dataset.
+	 *
+	 * @param totalUnigrams	the total number of unigrams in the training dataset.
+	 *
+	 * @param largestCutoff	the largest bigram count cutoff evaluated.
+	 *
+	 */
+	public VariantEvaluator(HashMap<String, WordToken> unigramModel, HashMap<String, WordToken> bigramModel, int totalUnigrams, int largestCutoff)
+	{
+		if (largestCutoff < 1) { throw new IllegalArgumentException("The largest count cutoff must be at least 1, not " + largestCutoff + "."); }
+		unigramCounts = unigramModel;
+		bigramCounts = bigramModel;
+		unigramTotal = totalUnigrams;
+
+		int variants = SMOOTHING_FILLS.length * largestCutoff;
+		fills = new int[variants];
+		cutoffs = new int[variants];
+		names = new String[variants];
+		for (int variant = 0; variant < variants; variant++)
+		{
+			int smoothing = variant / largestCutoff;
+			fills[variant] = SMOOTHING_FILLS[smoothing];
+			cutoffs[variant] = variant % largestCutoff + 1;
+			names[variant] = SMOOTHING_NAMES[smoothing] + ", cutoff " + cutoffs[variant];
+		}
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the name of each variant.
+	 *
+	 * @return	the names of the variants, in the order of the evaluation results.
+	 */
+	public String[] getVariantNames()
+	{ return names; }
+
+
+	/**
+	 * Helper method that evaluates every variant
+	 * on the sentences of a test dataset. Perplexities
+	 * are computed in log space, so they do not
+	 * underflow on large datasets.
+	 *
+	 * @param doc	the annotated test dataset.
+	 *
+	 * @return	for each variant, its number of bigrams kept, its unigram and bigram perplexities, and its average unigram and bigram sentence-probabilities.
+	 */
+	public float[][] evaluate(Annotation doc)
+	{
+		int variants = names.length;
+		double[] bigramLogProbabilities = new double[variants];
+		float[] bigramSentenceProbabilities = new float[variants];
+		float[] sentenceLogProbabilities = new float[variants];
+		double unigramLogProbability = 0;
+		float unigramSentenceProbability = 0;
+		long tokens = 0;
+
+		// Every word type but <s> can be predicted, so add-one spreads its counts over all of them.
+		int vocabularySize = unigramCounts.size() - (unigramCounts.containsKey(NgramCounts.START_SYMBOL) ? 1 : 0);
+
+		List<CoreMap> sentences = doc.get(SentencesAnnotation.class);
+		for (CoreMap sentence : sentences)
+		{
+			// The unigram model is the same for every variant; every token but <s> is predicted, </s> included.
+			float sentenceLogProbability = 0;
+			List<String> unigrams = StringUtils.split(FileHandler.getInstance().appendToSentence(sentence));
+			for (String unigram : unigrams.subList(1, unigrams.size()))
+			{
+				WordToken token = unigramCounts.get(unigram);
+				if (token != null) { sentenceLogProbability += logProbability(token.count, unigramTotal); }
+			}
+			unigramLogProbability += sentenceLogProbability;
+			unigramSentenceProbability += (float) Math.exp(sentenceLogProbability);
+
+			// Look each bigram up once, and derive every variant's log probability from its counts.
+			Arrays.fill(sentenceLogProbabilities, 0);
+			for (String bigram : StringUtils.getNgramsString(FileHandler.getInstance().appendToSentence(sentence), 2, 2))
+			{
+				int separator = bigram.indexOf(' ');
+				WordToken gram = bigramCounts.get(bigram);
+				WordToken history = unigramCounts.get(bigram.substring(0, separator));
+				WordToken word = unigramCounts.get(bigram.substring(separator + 1));
+				int count = (gram == null) ? 0 : gram.count;
+				int historyCount = (history == null) ? 0 : history.count;
+				float unigramBackoff = (word == null) ? 0 : logProbability(word.count, unigramTotal);
+				for (int variant = 0; variant < variants; variant++)
+				{
+					// A bigram below the cutoff is scored as unseen.
+					int keptCount = (count >= cutoffs[variant]) ? count : 0;
+					if (fills[variant] > 0)
+					{ sentenceLogProbabilities[variant] += (float) Math.log((double) (keptCount + fills[variant]) / (historyCount + (long) fills[variant] * vocabularySize)); }
+					else { sentenceLogProbabilities[variant] += (keptCount > 0) ? logProbability(keptCount, historyCount) : unigramBackoff; }
+				}
+			}
+			for (int variant = 0; variant < variants; variant++)
+			{
+				bigramLogProbabilities[variant] += sentenceLogProbabilities[variant];
+				bigramSentenceProbabilities[variant] += (float) Math.exp(sentenceLogProbabilities[variant]);
+			}
+
+			// Each sentence contributes its tokens and its end symbol.
+			tokens += FileHandler.getInstance().countWords(sentence) + 1;
+		}
+
+		int[] bigramsKept = countBigramsKept();
+		float[][] results = new float[variants][];
+		for (int variant = 0; variant < variants; variant++)
+		{
+			results[variant] = new float[] { bigramsKept[variant],
+					(float) Math.exp(-unigramLogProbability / tokens), (float) Math.exp(-bigramLogProbabilities[variant] / tokens),
+					unigramSentenceProbability / sentences.size(), bigramSentenceProbabilities[variant] / sentences.size() };
+		}
+		return results;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that counts, for each variant,
+	 * the bigrams whose count reaches its cutoff.
+	 */
+	private int[] countBigramsKept()
+	{
+		int[] kept = new int[names.length];
+		for (WordToken gram : bigramCounts.values())
+		{
+			for (int variant = 0; variant < names.length; variant++)
+			{ if (gram.count >= cutoffs[variant]) { kept[variant]++; } }
+		}
+		return kept;
+	}
+
+
+	/**
+	 * Helper method that computes the natural log
+	 * probability of an n-gram from its count and the
+	 * count of its history, in the same way as the
+	 * language models; a probability of 0 or 1, or a
+	 * history never counted, has a log probability of 0.
+	 */
+	private static float logProbability(int event, int totalOccurrence)
+	{
+		if (totalOccurrence == 0) { return 0; }
+		float probability = ((float) event) / ((float) totalOccurrence);
+		if (probability == 0 || probability == 1) { return 0; }
+		return (float) Math.log(probability);
+	}
+
+}
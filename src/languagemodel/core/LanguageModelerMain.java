@@ -2,9 +2,10 @@ package languagemodel.core;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.HashMap;
 import languagemodel.compute.LanguageModeler;
 import languagemodel.structures.AnalyzedData;
+import languagemodel.structures.RunConfiguration;
+import languagemodel.utils.ArgumentParser;
 import languagemodel.utils.FileHandler;
 import languagemodel.utils.OutputPrinter;
 
@@ -31,6 +32,27 @@ import languagemodel.utils.OutputPrinter;
  *  * if the '-P' switch is included; the unigram and bigram perplexities of the document are computed,
  *  * if the '-S' switch is included; Laplace-smoothing is used when building the bigram language model, 
  *  * if the '-G x' switch is included; x number of sentences are randomly generated along with the overall output. 
+ *  * if the '-M x' switch is included; bigrams are counted within x megabytes of memory, spilling sorted count runs to disk. 
+ *  * if the '-L x' switch is included; log probabilities are computed on first lookup and up to x of them are cached. 
+ *  * if the '-C x' switch is included; the token ids and scores of up to x repeated sentences are cached. 
+ *  * if the '-O' switch is included; the built language models are stored outside the Java heap. 
+ *  * if the '-Q x' switch is included; the stored log probabilities are quantized to x (8 or 16) bits. 
+ *  * if the '-E x' switch is included; the datasets are read with charset x (UTF-8, windows-1252, or auto to detect it). 
+ *  * if the '-T x' switch is included; the training dataset is read, tokenized (by x threads) and counted in a pipeline. 
+ *  * if the '-K' switch is included; the tokenized datasets are also written as compiled corpora (<dataset>.lmc), which can be given in place of the datasets. 
+ *  * if the '-V x' switch is included; every model variant (unsmoothed or add-one, bigram count cutoff 1 to x) is also evaluated, side by side. 
+ *  * if the test dataset is a directory or a glob pattern; the models are built once and every matching test 
+ *    dataset is evaluated in parallel (by '-T x' threads), writing one result file each and a summary to the output directory. 
+ *  * if the '-H x' switch is included; the add-k, interpolation and absolute discounting hyperparameters are tuned on the held-out dataset x. 
+ *  * if the '-B x' switch is included; the x most likely sentences are found by beam search (with a beam x wide). 
+ *  * if the '-X x' switch is included; randomly generated sentences are cut off after x words (50 by default). 
+ *  * if the '-W x' switch is included; sentences are randomly generated for at most x milliseconds (2000 by default). 
+ *  * if the '-A x' switch is included; the built language models are also written to x as an ARPA file. 
+ *  * if the '-U' switch is included; unigrams are counted from the whitespace words scored, rather than from the CoreNLP tokens. 
+ *  * if the training dataset is an ARPA file; its prebuilt language models are loaded instead of being trained. 
+ *  * if the '-F x' switch is included; the settings (and datasets) are also read from the properties file x, and any switch given overrides them. 
+ * 
+ * Every switch and value is checked before any dataset is read; an unknown switch or malformed value is reported with the usage.
  * 
  * 
  * 		:PROGRAM OPERATION/STRUCTURE:
@@ -58,59 +80,68 @@ public class LanguageModelerMain
 		
 		//==================== INITIALIZATION OF PROGRAM COMPONENTS ========================================
 		
-		HashMap<String, Integer> languageOperations = new HashMap<String, Integer>();
 		FileHandler textData = FileHandler.getInstance();
 		LanguageModeler textComputation = LanguageModeler.getInstance();
 		OutputPrinter output = OutputPrinter.getInstance();
 		AnalyzedData languageAnalysis = new AnalyzedData();
+		
+		// Parse the datasets, output-results file location and switches (or properties file) into the run configuration, checking them all up front.
+		RunConfiguration configuration;
+		try { configuration = ArgumentParser.parse(args); }
+		catch (IllegalArgumentException e)
+		{
+			// Show the user what was wrong, and some Usage-info.
+			if (args.length > 0) { System.out.println(e.getMessage()); }
+			printUsage();
+			return;
+		}
 			
 		//============================ INPUT FILE HANDLING AND LANGUAGE MODELING ANALYSIS =========================================
 		
-		// Take input file from the command line, operate on it, and store results in the output file.
-		if (args.length >= 2)
+		try 
 		{
-			// Set the training dataset, test dataset, and output-results file locations.
-			textData.setTrainDataFilePath(args[0]);
-			textData.setTestDataFilePath(args[1]);
-			textData.setOutputResultFilePath(args[2]);
-			
-            //	Extra Functionality (compute perplexity, add smoothing, generate-random-sentences)
-			if (args.length > 3)
+			// A test directory or glob pattern is evaluated in batch, against language models built once.
+			if (FileHandler.isBatchInput(configuration.getTestDataFilePath()))
 			{
-				for (int index = 3; index < args.length; index++ )
-				{
-					// Include perplexity computation.
-					if (args[index].equals("-P")){ languageOperations.put("perplexity", 1); }
-					// Include Laplace smoothing.
-					if (args[index].equals("-S")){ languageOperations.put("smoothing", 1); }
-					// Include random sentence generation.
-					if (args[index].equals("-G")){ int numberToGenerate = Integer.parseInt(args[index+1]); languageOperations.put("generator", numberToGenerate); }
-				}
+				System.out.println(textData.loadAndEvaluateBatch(textComputation, configuration));
+				return;
 			}
 			
-			try 
-			{
-				// Load the input text, build the language models, perform the operations, and return the results.
-				languageAnalysis = textData.loadAndCompute(textComputation, languageOperations); 
+			// Load the input text, build the language models, perform the operations, and return the results.
+			languageAnalysis = textData.loadAndCompute(textComputation, configuration); 
+		
+	   //============================== RESULTS-PRINTING  ======================================================
 			
-		   //============================== RESULTS-PRINTING  ======================================================
-				
-				// Print out language model analysis of the given input text and stores it in an external file.
-				output.printAnalysisToScreen(languageAnalysis);
-		        
-		   //====================================================================================================
-			}
-			catch (FileNotFoundException e) { e.printStackTrace(); }
-			catch (IOException e) { e.printStackTrace(); }	
-		}
-		else 
-		{
-			// Show the user some Usage-info.
-			System.out.println(":Usage: ./java -classpath .:stanford-corenlp-3.7.0.jar LanguageModelerMain <input_file_containing_training-text> "
-					+ "<input_containing_testing-text> <output_file_to_store_language_model_results>"
-					+ " <compute_perplexity-option | add_smoothing-option | "
-					+ "<generate sentences> <no. of sentences to generate>");
-			return;
+			// Print out language model analysis of the given input text and stores it in an external file.
+			output.printAnalysisToScreen(languageAnalysis);
+	        
+	   //====================================================================================================
 		}
+		catch (FileNotFoundException e) { e.printStackTrace(); }
+		catch (IOException e) { e.printStackTrace(); }	
+	}
+	
+	
+	/**
+	 * Helper method that shows the user
+	 * how to run the program.
+	 */
+	private static void printUsage()
+	{
+		System.out.println(":Usage: ./java -classpath .:stanford-corenlp-3.7.0.jar LanguageModelerMain <input_file_containing_training-text | ARPA file> "
+				+ "<input_containing_testing-text | testing directory | testing glob> <output_file_to_store_language_model_results | output directory>"
+				+ " <compute_perplexity-option | add_smoothing-option | "
+				+ "<generate sentences> <no. of sentences to generate> | "
+				+ "<count within memory budget> <budget in megabytes> | "
+				+ "<lazy probabilities> <cache size> | "
+				+ "<cache sentence scores> <cache size> | "
+				+ "<off-heap models> | <quantize probabilities> <8 | 16> | "
+				+ "<input charset> <UTF-8 | windows-1252 | auto> | "
+				+ "<pipelined counting> <tokenizer threads (file threads in batch mode)> | <compile datasets> | "
+				+ "<evaluate model variants> <largest count cutoff> | "
+				+ "<tune smoothing> <held-out dataset> | "
+				+ "<beam search> <beam width> | "
+				+ "<generated sentence length cap> <words> | <generation time budget> <milliseconds> | "
+				+ "<write ARPA models> <ARPA file> | <whitespace unigrams> | <run configuration> <properties file>");
 	}
 }
@@ -2,6 +2,7 @@ package languagemodel.structures;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 
 /**
@@ -33,6 +34,63 @@ public class AnalyzedData
 	// Represents a list of random new sentences generated using the training dataset.
 	ArrayList<String> randomGeneratedSentences;
 	
+	// Contains the hits, misses and hit rate of the lazy probability cache, if lazy probabilities were enabled.
+	private float[] probabilityCacheStats;
+	
+	// Contains the hits, misses and hit rate of the sentence score cache, if the sentence cache was enabled.
+	private float[] sentenceCacheStats;
+	
+	// Contains the quantization bits and the exact and quantized unigram and bigram perplexities, if quantization was enabled.
+	private float[] quantizationStats;
+	
+	// Represents the number of bytes occupied by the compact model store, or 0 if it was not used.
+	private long modelStoreSize;
+	
+	// Contains the names of the charsets the training and test datasets were read with.
+	private String[] inputCharsets;
+	
+	// Contains the number of bytes read from the datasets, the time spent reading them (in milliseconds) and the read throughput (in megabytes per second).
+	private float[] readStats;
+	
+	// Contains, for the read, tokenize and count stages of the counting pipeline, their workers, batches, utilization and input queue depths, if the pipeline was used.
+	private float[][] pipelineStats;
+	
+	// Contains the paths of the compiled corpora written, if the datasets were compiled.
+	private String[] compiledCorpora;
+	
+	// Contains, for each compiled corpus written, its number of sentences, words and vocabulary entries and its size in bytes.
+	private float[][] compiledCorpusStats;
+	
+	// Contains the paths of the ARPA files loaded or written, if any.
+	private ArrayList<String> arpaFiles;
+	
+	// Contains, for each ARPA file, 1 if it was loaded or 0 if it was written, its number of unigrams, bigrams and skipped higher-order n-grams, its size in bytes and the time taken (in milliseconds).
+	private ArrayList<float[]> arpaFileStats;
+	
+	// Contains the names of the model variants evaluated, if any.
+	private String[] variantNames;
+	
+	// Contains, for each model variant evaluated, its number of bigrams kept, its unigram and bigram perplexities, and its average unigram and bigram sentence-probabilities.
+	private float[][] variantResults;
+	
+	// Contains the names of the smoothing methods tuned on the held-out dataset, if any.
+	private String[] tuningNames;
+	
+	// Contains, for each smoothing method tuned, its tuned hyperparameter, held-out perplexity, test perplexity and the number of candidates evaluated.
+	private float[][] tuningResults;
+	
+	// Contains the sentence, document and corpus perplexities of the test dataset, if perplexity is computed.
+	private PerplexityReport perplexityReport;
+	
+	// Contains the number of random sentences generated, cut off at the largest length, stopped at a dead end and left ungenerated by the time budget, and the time taken (in milliseconds).
+	private float[] generationStats;
+	
+	// Contains the most likely sentences found by beam search, if enabled.
+	private List<String> beamSentences;
+	
+	// Contains the bigram log probability of each sentence found by beam search.
+	private float[] beamLogProbabilities;
+	
 	
 	//============================================ CONSTRUCTOR =============================================================
 	
@@ -116,12 +174,153 @@ public class AnalyzedData
 	 */
 	public void setGeneratedSentences(ArrayList<String> value) 
 	{ randomGeneratedSentences = value; }
+	
+	
+	/**
+	 * Helper method that sets the hits, misses and hit rate of the lazy probability cache.
+	 * 
+	 * @param value	structure containing the hits, misses and hit rate of the lazy probability cache.
+	 */
+	public void setProbabilityCacheStats(float[] value) 
+	{ probabilityCacheStats = value; }
+	
+	
+	/**
+	 * Helper method that sets the hits, misses and hit rate of the sentence score cache.
+	 * 
+	 * @param value	structure containing the hits, misses and hit rate of the sentence score cache.
+	 */
+	public void setSentenceCacheStats(float[] value) 
+	{ sentenceCacheStats = value; }
+	
+	
+	/**
+	 * Helper method that sets the quantization bits and the exact and quantized unigram and bigram perplexities.
+	 * 
+	 * @param value	structure containing the quantization bits and the exact and quantized perplexities.
+	 */
+	public void setQuantizationStats(float[] value) 
+	{ quantizationStats = value; }
+	
+	
+	/**
+	 * Helper method that sets the number of bytes occupied by the compact model store.
+	 * 
+	 * @param value	the number of bytes occupied by the compact model store.
+	 */
+	public void setModelStoreSize(long value) 
+	{ modelStoreSize = value; }
+	
+	
+	/**
+	 * Helper method that sets the names of the charsets the training and test datasets were read with.
+	 * 
+	 * @param value	structure containing the charset names of the training and test datasets.
+	 */
+	public void setInputCharsets(String[] value) 
+	{ inputCharsets = value; }
+	
+	
+	/**
+	 * Helper method that sets the number of bytes read from the datasets, the read time and the read throughput.
+	 * 
+	 * @param value	structure containing the bytes read, read time and read throughput.
+	 */
+	public void setReadStats(float[] value) 
+	{ readStats = value; }
+	
+	
+	/**
+	 * Helper method that sets the statistics of the read, tokenize and count stages of the counting pipeline.
+	 * 
+	 * @param value	structure containing, for each stage, its workers, batches, utilization, and average and largest input queue depth.
+	 */
+	public void setPipelineStats(float[][] value) 
+	{ pipelineStats = value; }
+	
+	
+	/**
+	 * Helper method that sets the compiled corpora written and their statistics.
+	 * 
+	 * @param paths	the paths of the compiled corpora.
+	 * 
+	 * @param stats	structure containing, for each compiled corpus, its number of sentences, words and vocabulary entries and its size in bytes.
+	 */
+	public void setCompiledCorpora(String[] paths, float[][] stats) 
+	{ compiledCorpora = paths; compiledCorpusStats = stats; }
+	
+	
+	/**
+	 * Helper method that adds an ARPA file loaded or written, and its statistics.
+	 * 
+	 * @param path	the path of the ARPA file.
+	 * 
+	 * @param stats	structure containing 1 if the file was loaded or 0 if it was written, its number of unigrams, bigrams and skipped higher-order n-grams, its size in bytes and the time taken (in milliseconds).
+	 */
+	public void addArpaFile(String path, float[] stats) 
+	{
+		if (arpaFiles == null) { arpaFiles = new ArrayList<String>(); arpaFileStats = new ArrayList<float[]>(); }
+		arpaFiles.add(path);
+		arpaFileStats.add(stats);
+	}
+	
+	
+	/**
+	 * Helper method that sets the model variants evaluated and their results.
+	 * 
+	 * @param names	the names of the model variants.
+	 * 
+	 * @param results	structure containing, for each model variant, its number of bigrams kept, its unigram and bigram perplexities, and its average unigram and bigram sentence-probabilities.
+	 */
+	public void setVariantResults(String[] names, float[][] results) 
+	{ variantNames = names; variantResults = results; }
+	
+	
+	/**
+	 * Helper method that sets the smoothing methods tuned on the held-out dataset and their results.
+	 * 
+	 * @param names	the names of the smoothing methods.
+	 * 
+	 * @param results	structure containing, for each smoothing method, its tuned hyperparameter, held-out perplexity, test perplexity and the number of candidates evaluated.
+	 */
+	public void setTuningResults(String[] names, float[][] results) 
+	{ tuningNames = names; tuningResults = results; }
+	
+	
+	/**
+	 * Helper method that sets the sentence, document and corpus perplexities of the test dataset.
+	 * 
+	 * @param value	the perplexity report of the test dataset.
+	 */
+	public void setPerplexityReport(PerplexityReport value) 
+	{ perplexityReport = value; }
+	
+	
+	/**
+	 * Helper method that sets how the random sentence generation ended.
+	 * 
+	 * @param value	the number of sentences generated, cut off at the largest length, stopped at a dead end and left ungenerated by the time budget, and the time taken (in milliseconds).
+	 */
+	public void setGenerationStats(float[] value) 
+	{ generationStats = value; }
+	
+	
+	/**
+	 * Helper method that sets the most likely sentences found by beam search.
+	 * 
+	 * @param sentences	the sentences found, most likely first.
+	 * 
+	 * @param logProbabilities	the bigram log probability of each sentence.
+	 */
+	public void setBeamSentences(List<String> sentences, float[] logProbabilities) 
+	{ beamSentences = sentences; beamLogProbabilities = logProbabilities; }
 		
 	
 	/**
-	 * Helper method that returns the sentences in the dataset with their respective unigram and bigram probabilities.
+	 * Helper method that returns the sentences in the dataset with their respective unigram and bigram probabilities,
+	 * followed by their unigram and bigram log probabilities.
 	 * 
-	 * @return sentences in the dataset with their respective unigram and bigram probabilities
+	 * @return sentences in the dataset with their respective unigram and bigram probabilities, then log probabilities.
 	 */
 	public HashMap<String, float[]> getDocumentSentenceInfo() 
 	{ return documentSentenceInfo; }
@@ -161,6 +360,177 @@ public class AnalyzedData
 	 */
 	public ArrayList<String> getRandomGeneratedSentences()
 	{ return randomGeneratedSentences; }
+	
+	
+	/**
+	 * Helper method that returns the hits, misses and hit rate of the lazy probability cache.
+	 * 
+	 * @return structure containing the hits, misses and hit rate of the lazy probability cache, or null if lazy probabilities were not enabled.
+	 */
+	public float[] getProbabilityCacheStats()
+	{ return probabilityCacheStats; }
+	
+	
+	/**
+	 * Helper method that returns the hits, misses and hit rate of the sentence score cache.
+	 * 
+	 * @return structure containing the hits, misses and hit rate of the sentence score cache, or null if the sentence cache was not enabled.
+	 */
+	public float[] getSentenceCacheStats()
+	{ return sentenceCacheStats; }
+	
+	
+	/**
+	 * Helper method that returns the quantization bits and the exact and quantized unigram and bigram perplexities.
+	 * 
+	 * @return structure containing the quantization bits and the exact and quantized perplexities, or null if quantization was not enabled.
+	 */
+	public float[] getQuantizationStats()
+	{ return quantizationStats; }
+	
+	
+	/**
+	 * Helper method that returns the number of bytes occupied by the compact model store.
+	 * 
+	 * @return the number of bytes occupied by the compact model store, or 0 if it was not used.
+	 */
+	public long getModelStoreSize()
+	{ return modelStoreSize; }
+	
+	
+	/**
+	 * Helper method that returns the names of the charsets the training and test datasets were read with.
+	 * 
+	 * @return structure containing the charset names of the training and test datasets.
+	 */
+	public String[] getInputCharsets()
+	{ return inputCharsets; }
+	
+	
+	/**
+	 * Helper method that returns the number of bytes read from the datasets, the read time and the read throughput.
+	 * 
+	 * @return structure containing the bytes read, read time (in milliseconds) and read throughput (in megabytes per second).
+	 */
+	public float[] getReadStats()
+	{ return readStats; }
+	
+	
+	/**
+	 * Helper method that returns the statistics of the read, tokenize and count stages of the counting pipeline.
+	 * 
+	 * @return structure containing, for each stage, its workers, batches, utilization, and average and largest input queue depth, or null if the pipeline was not used.
+	 */
+	public float[][] getPipelineStats()
+	{ return pipelineStats; }
+	
+	
+	/**
+	 * Helper method that returns the paths of the compiled corpora written.
+	 * 
+	 * @return the paths of the compiled corpora, or null if the datasets were not compiled.
+	 */
+	public String[] getCompiledCorpora()
+	{ return compiledCorpora; }
+	
+	
+	/**
+	 * Helper method that returns the statistics of the compiled corpora written.
+	 * 
+	 * @return structure containing, for each compiled corpus, its number of sentences, words and vocabulary entries and its size in bytes.
+	 */
+	public float[][] getCompiledCorpusStats()
+	{ return compiledCorpusStats; }
+	
+	
+	/**
+	 * Helper method that returns the paths of the ARPA files loaded or written.
+	 * 
+	 * @return the paths of the ARPA files, or null if none were loaded or written.
+	 */
+	public List<String> getArpaFiles()
+	{ return arpaFiles; }
+	
+	
+	/**
+	 * Helper method that returns the statistics of the ARPA files loaded or written.
+	 * 
+	 * @return structure containing, for each ARPA file, 1 if it was loaded or 0 if it was written, its number of unigrams, bigrams and skipped higher-order n-grams, its size in bytes and the time taken (in milliseconds).
+	 */
+	public List<float[]> getArpaFileStats()
+	{ return arpaFileStats; }
+	
+	
+	/**
+	 * Helper method that returns the names of the model variants evaluated.
+	 * 
+	 * @return the names of the model variants, or null if no variants were evaluated.
+	 */
+	public String[] getVariantNames()
+	{ return variantNames; }
+	
+	
+	/**
+	 * Helper method that returns the results of the model variants evaluated.
+	 * 
+	 * @return structure containing, for each model variant, its number of bigrams kept, its unigram and bigram perplexities, and its average unigram and bigram sentence-probabilities.
+	 */
+	public float[][] getVariantResults()
+	{ return variantResults; }
+	
+	
+	/**
+	 * Helper method that returns the names of the smoothing methods tuned on the held-out dataset.
+	 * 
+	 * @return the names of the smoothing methods, or null if no held-out dataset was given.
+	 */
+	public String[] getTuningNames()
+	{ return tuningNames; }
+	
+	
+	/**
+	 * Helper method that returns the results of the smoothing methods tuned on the held-out dataset.
+	 * 
+	 * @return structure containing, for each smoothing method, its tuned hyperparameter, held-out perplexity, test perplexity and the number of candidates evaluated.
+	 */
+	public float[][] getTuningResults()
+	{ return tuningResults; }
+	
+	
+	/**
+	 * Helper method that returns the sentence, document and corpus perplexities of the test dataset.
+	 * 
+	 * @return the perplexity report of the test dataset, or null if perplexity is not computed.
+	 */
+	public PerplexityReport getPerplexityReport()
+	{ return perplexityReport; }
+	
+	
+	/**
+	 * Helper method that returns how the random sentence generation ended.
+	 * 
+	 * @return the number of sentences generated, cut off at the largest length, stopped at a dead end and left ungenerated by the time budget, and the time taken (in milliseconds), or null if no sentences were generated.
+	 */
+	public float[] getGenerationStats()
+	{ return generationStats; }
+	
+	
+	/**
+	 * Helper method that returns the most likely sentences found by beam search.
+	 * 
+	 * @return the sentences found, most likely first, or null if beam search is not enabled.
+	 */
+	public List<String> getBeamSentences()
+	{ return beamSentences; }
+	
+	
+	/**
+	 * Helper method that returns the bigram log probabilities of the sentences found by beam search.
+	 * 
+	 * @return the bigram log probability of each sentence found.
+	 */
+	public float[] getBeamLogProbabilities()
+	{ return beamLogProbabilities; }
 
 		
 	//============================================ PRIVATE METHODS =============================================================
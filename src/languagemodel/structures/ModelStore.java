@@ -0,0 +1,541 @@
+package languagemodel.structures;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+
+/**
+ * This class is a compact, read-only store of
+ * trained unigram and bigram language models.
+ * The vocabulary is packed into one contiguous
+ * run of UTF-8 bytes indexed by a minimal perfect
+ * hash function, unigram counts and log probabilities are
+ * laid out by word id, and bigrams are kept in an
+ * NgramTable keyed by the ids of their two words.
+ * Every table lives in a ByteBuffer, so the whole
+ * store can be kept outside the Java heap, and the
+ * log probabilities can be quantized to 8 or 16 bits
+ * with one codebook per model to shrink it further.
+ * A quantized store keeps its bigrams in a
+ * SortedNgramTable instead, which holds no bigram
+ * counts, so it cannot serve lazy probabilities.
+ *
+ * @author David Olorundare
+ *
+ */
+public class ModelStore
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the number of bytes of unigram data per word: its count and (possibly quantized) log probability.
+	private final int unigramBytes;
+
+	// Represents the codebook the unigram log probabilities are quantized with, or null if they are stored exactly.
+	private final ProbabilityCodebook unigramCodebook;
+
+	// Represents true if the store is kept outside the Java heap.
+	private final boolean direct;
+
+	// Represents the vocabulary, whose perfect hash function assigns each word its id.
+	private final PerfectHashVocabulary words;
+
+	// Represents the unigram count and log probability of each word, indexed by word id.
+	private final ByteBuffer unigrams;
+
+	// Represents the bigram counts and log probabilities, keyed by the ids of their words, or null if the store is quantized.
+	private final NgramTable bigrams;
+
+	// Represents the quantized bigram log probabilities, without counts, or null if the store is not quantized.
+	private SortedNgramTable sortedBigrams;
+
+	// Represents the keys of the bigrams put into a quantized store, until finishBigrams sorts them.
+	private long[] pendingKeys;
+
+	// Represents the log probabilities of the bigrams put into a quantized store, until finishBigrams sorts them.
+	private float[] pendingLogProbabilities;
+
+	// Represents the number of bigrams put into a quantized store so far.
+	private int pendingSize = 0;
+
+	// Represents the codebook the bigrams put into a quantized store are quantized with.
+	private ProbabilityCodebook pendingCodebook;
+
+	// Represents the number of words in the vocabulary.
+	private final int vocabularySize;
+
+	// Represents the total occurrence of unigrams in the training dataset.
+	private final int unigramTotal;
+
+	// Represents the index of the words following each word, built on first use.
+	private volatile SuccessorIndex successorIndex;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which copies the given
+	 * unigram and bigram models into the store. Words
+	 * that only occur within bigrams are added to the
+	 * vocabulary with a unigram count of 0.
+	 *
+	 * @param unigramModel	the mapping of all unigrams in the training dataset to their count and log probability.
+	 *
+	 * @param bigramModel	the mapping of all bigrams in the training dataset to their count and log probability.
+	 *
+	 * @param totalUnigrams	the total occurrence of unigrams in the training dataset.
+	 *
+	 * @param offHeap	true if the store should be kept outside the Java heap.
+	 *
+	 * @param quantizationBits	the number of bits (8 or 16) log probabilities are quantized to, or 0 to store them exactly.
+	 *
+	 */
+	public ModelStore(HashMap<String, WordToken> unigramModel, HashMap<String, WordToken> bigramModel, int totalUnigrams, boolean offHeap, int quantizationBits)
+	{
+		direct = offHeap;
+		unigramTotal = totalUnigrams;
+
+		// Build one codebook per model from the log probabilities it holds.
+		ProbabilityCodebook bigramCodebook = null;
+		if (quantizationBits == 0) { unigramCodebook = null; }
+		else
+		{
+			unigramCodebook = new ProbabilityCodebook(logProbabilities(unigramModel), quantizationBits);
+			bigramCodebook = new ProbabilityCodebook(logProbabilities(bigramModel), quantizationBits);
+		}
+		unigramBytes = 4 + ((unigramCodebook == null) ? 4 : quantizationBits / 8);
+
+		// Collect every word type, including words that only occur within bigrams.
+		Vocabulary vocabulary = new Vocabulary();
+		for (String word : unigramModel.keySet()) { vocabulary.addWord(word); }
+		for (String bigram : bigramModel.keySet())
+		{
+			int separator = bigram.indexOf(' ');
+			vocabulary.addWord(bigram.substring(0, separator));
+			vocabulary.addWord(bigram.substring(separator + 1));
+		}
+		ArrayList<String> distinctWords = new ArrayList<String>(vocabulary.size());
+		for (int id = 0; id < vocabulary.size(); id++) { distinctWords.add(vocabulary.getWord(id)); }
+		vocabulary = null;
+
+		// Index the words with a perfect hash function, whose slots become their ids.
+		words = new PerfectHashVocabulary(distinctWords, offHeap);
+		vocabularySize = words.size();
+
+		unigrams = layOutUnigrams(unigramModel);
+
+		// Key the bigrams by the ids of their words; a quantized store lays them out sorted, without counts.
+		bigrams = (bigramCodebook == null) ? new NgramTable(bigramModel.size(), offHeap, null) : null;
+		if (bigramCodebook != null) { startPendingBigrams(bigramModel.size(), bigramCodebook); }
+		for (String bigram : bigramModel.keySet())
+		{
+			int separator = bigram.indexOf(' ');
+			WordToken gram = bigramModel.get(bigram);
+			putBigram(words.getId(bigram, 0, separator), words.getId(bigram, separator + 1, bigram.length()), gram.count, gram.probability);
+		}
+		finishBigrams();
+	}
+
+
+	/**
+	 * Constructor of the class used when the bigrams
+	 * are streamed in rather than held in a map, such
+	 * as from the sorted count table of the disk-spilling
+	 * bigram counter. It lays out the vocabulary and the
+	 * unigrams, and leaves the bigram table empty for
+	 * putBigram to fill, after which finishBigrams must
+	 * be called. Both words of every bigram put must be
+	 * in the unigram model.
+	 *
+	 * @param unigramModel	the mapping of all unigrams in the training dataset to their count and log probability.
+	 *
+	 * @param totalUnigrams	the total occurrence of unigrams in the training dataset.
+	 *
+	 * @param expectedBigrams	the number of bigrams that will be put into the store.
+	 *
+	 * @param bigramCodebook	the codebook the bigram log probabilities are quantized with, or null to store them exactly; the unigrams are quantized to as many bits.
+	 *
+	 * @param offHeap	true if the store should be kept outside the Java heap.
+	 *
+	 */
+	public ModelStore(HashMap<String, WordToken> unigramModel, int totalUnigrams, long expectedBigrams, ProbabilityCodebook bigramCodebook, boolean offHeap)
+	{
+		direct = offHeap;
+		unigramTotal = totalUnigrams;
+		unigramCodebook = (bigramCodebook == null) ? null : new ProbabilityCodebook(logProbabilities(unigramModel), bigramCodebook.getBits());
+		unigramBytes = 4 + ((unigramCodebook == null) ? 4 : unigramCodebook.getBits() / 8);
+
+		words = new PerfectHashVocabulary(unigramModel.keySet(), offHeap);
+		vocabularySize = words.size();
+		unigrams = layOutUnigrams(unigramModel);
+		bigrams = (bigramCodebook == null) ? new NgramTable(expectedBigrams, offHeap, null) : null;
+		if (bigramCodebook != null) { startPendingBigrams(expectedBigrams, bigramCodebook); }
+	}
+
+
+	/**
+	 * Constructor of the class used by model loaders,
+	 * such as the ARPA reader, that stream probabilities
+	 * rather than counts. It lays out the vocabulary and
+	 * the unigram log probabilities, and leaves the bigram
+	 * table empty for putBigram to fill. Every word is
+	 * given a unigram count of 1, which marks it as seen.
+	 * The log probabilities are stored exactly.
+	 *
+	 * @param vocabularyWords	the distinct words of the models.
+	 *
+	 * @param unigramLogProbabilities	the unigram log probability of each word, in the order of vocabularyWords.
+	 *
+	 * @param expectedBigrams	the number of bigrams that will be put into the store.
+	 *
+	 * @param offHeap	true if the store should be kept outside the Java heap.
+	 *
+	 */
+	public ModelStore(List<String> vocabularyWords, float[] unigramLogProbabilities, long expectedBigrams, boolean offHeap)
+	{
+		direct = offHeap;
+		unigramTotal = 0;
+		unigramCodebook = null;
+		unigramBytes = 8;
+
+		words = new PerfectHashVocabulary(vocabularyWords, offHeap);
+		vocabularySize = words.size();
+		unigrams = allocate(unigramBytes * vocabularySize);
+		for (int index = 0; index < vocabularyWords.size(); index++)
+		{
+			int id = words.getId(vocabularyWords.get(index));
+			unigrams.putInt(unigramBytes * id, 1);
+			unigrams.putFloat(unigramBytes * id + 4, unigramLogProbabilities[index]);
+		}
+		bigrams = new NgramTable(expectedBigrams, offHeap, null);
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the id of a word.
+	 *
+	 * @param word	the word whose id is returned.
+	 *
+	 * @return	the id of the word, or Vocabulary.UNKNOWN_ID if it is not in the vocabulary.
+	 */
+	public int getId(CharSequence word)
+	{ return words.getId(word); }
+
+
+	/**
+	 * Helper method that returns the id of the word
+	 * spanning a range of characters.
+	 *
+	 * @param text	the text holding the word.
+	 *
+	 * @param start	the index of the first character of the word.
+	 *
+	 * @param end	the index after the last character of the word.
+	 *
+	 * @return	the id of the word, or Vocabulary.UNKNOWN_ID if it is not in the vocabulary.
+	 */
+	public int getId(CharSequence text, int start, int end)
+	{ return words.getId(text, start, end); }
+
+
+	/**
+	 * Helper method that returns the word with the given id.
+	 *
+	 * @param id	the id of the word.
+	 *
+	 * @return	the word with the given id.
+	 */
+	public String getWord(int id)
+	{ return words.getWord(id); }
+
+
+	/**
+	 * Helper method that returns the unigram count of a word.
+	 *
+	 * @param id	the id of the word.
+	 *
+	 * @return	the unigram count of the word, 0 if it only occurs within bigrams.
+	 */
+	public int getUnigramCount(int id)
+	{ return unigrams.getInt(unigramBytes * id); }
+
+
+	/**
+	 * Helper method that returns the unigram log probability of a word.
+	 *
+	 * @param id	the id of the word.
+	 *
+	 * @return	the unigram log probability of the word.
+	 */
+	public float getUnigramLogProbability(int id)
+	{ return NgramTable.getLogProbability(unigrams, unigramBytes * id + 4, unigramCodebook); }
+
+
+	/**
+	 * Helper method that returns the count of a bigram.
+	 *
+	 * @param firstId	the id of the first word of the bigram.
+	 *
+	 * @param secondId	the id of the second word of the bigram.
+	 *
+	 * @return	the count of the bigram, or 0 if it is not in the store.
+	 *
+	 * @throws IllegalStateException	if the store is quantized, and so holds no bigram counts.
+	 */
+	public int getBigramCount(int firstId, int secondId)
+	{
+		if (bigrams == null) { throw new IllegalStateException("A quantized model store holds no bigram counts."); }
+		long slot = bigrams.find(NgramTable.bigramKey(firstId, secondId));
+		return (slot < 0) ? 0 : bigrams.getCount(slot);
+	}
+
+
+	/**
+	 * Helper method that returns the log probability of a bigram.
+	 *
+	 * @param firstId	the id of the first word of the bigram.
+	 *
+	 * @param secondId	the id of the second word of the bigram.
+	 *
+	 * @return	the log probability of the bigram, or 0 if it is not in the store.
+	 */
+	public float getBigramLogProbability(int firstId, int secondId)
+	{
+		if (bigrams == null)
+		{
+			int index = sortedBigrams.find(firstId, secondId);
+			return (index < 0) ? 0 : sortedBigrams.getLogProbability(index);
+		}
+		long slot = bigrams.find(NgramTable.bigramKey(firstId, secondId));
+		return (slot < 0) ? 0 : bigrams.getLogProbability(slot);
+	}
+
+
+	/**
+	 * Helper method that returns true if a bigram is in the store.
+	 *
+	 * @param firstId	the id of the first word of the bigram.
+	 *
+	 * @param secondId	the id of the second word of the bigram.
+	 *
+	 * @return	true if the bigram is in the store.
+	 */
+	public boolean containsBigram(int firstId, int secondId)
+	{
+		if (bigrams == null) { return sortedBigrams.find(firstId, secondId) >= 0; }
+		return bigrams.find(NgramTable.bigramKey(firstId, secondId)) >= 0;
+	}
+
+
+	/**
+	 * Helper method that puts a bigram into a store
+	 * made by the streaming or loading constructor.
+	 * The store must not be shared, nor its successor
+	 * index asked for, until every bigram has been put.
+	 *
+	 * @param firstId	the id of the first word of the bigram.
+	 *
+	 * @param secondId	the id of the second word of the bigram.
+	 *
+	 * @param count	the count of the bigram.
+	 *
+	 * @param logProbability	the log probability of the bigram.
+	 */
+	public void putBigram(int firstId, int secondId, int count, float logProbability)
+	{
+		if (bigrams != null) { bigrams.put(NgramTable.bigramKey(firstId, secondId), count, logProbability); return; }
+		if (pendingKeys == null) { throw new IllegalStateException("The bigrams of the model store have already been finished."); }
+		if (firstId < 0 || secondId < 0) { throw new IllegalArgumentException("Both words of a bigram must be in the vocabulary."); }
+		pendingKeys[pendingSize] = NgramTable.bigramKey(firstId, secondId);
+		pendingLogProbabilities[pendingSize++] = logProbability;
+	}
+
+
+	/**
+	 * Helper method that finishes putting bigrams
+	 * into a store made by the streaming constructor:
+	 * a quantized store lays out the bigrams put so
+	 * far as its sorted table. It does nothing for a
+	 * store that is not quantized.
+	 */
+	public void finishBigrams()
+	{
+		if (pendingKeys == null) { return; }
+		sortedBigrams = new SortedNgramTable(vocabularySize, pendingKeys, pendingLogProbabilities, pendingSize, direct, pendingCodebook);
+		pendingKeys = null;
+		pendingLogProbabilities = null;
+		pendingCodebook = null;
+	}
+
+
+	/**
+	 * This interface receives each bigram of a store.
+	 */
+	public interface BigramVisitor
+	{
+		/**
+		 * Receives one bigram.
+		 *
+		 * @param firstId	the id of the first word of the bigram.
+		 *
+		 * @param secondId	the id of the second word of the bigram.
+		 *
+		 * @param logProbability	the log probability of the bigram.
+		 */
+		void visit(int firstId, int secondId, float logProbability);
+	}
+
+
+	/**
+	 * Helper method that hands every bigram of the
+	 * store to a visitor, in no particular order.
+	 *
+	 * @param visitor	the visitor the bigrams are handed to.
+	 */
+	public void forEachBigram(BigramVisitor visitor)
+	{
+		if (bigrams == null)
+		{
+			for (int firstId = 0; firstId < vocabularySize; firstId++)
+			{
+				for (int index = sortedBigrams.getFirstIndex(firstId); index < sortedBigrams.getFirstIndex(firstId + 1); index++)
+				{ visitor.visit(firstId, sortedBigrams.getSecondId(index), sortedBigrams.getLogProbability(index)); }
+			}
+			return;
+		}
+		for (long slot = 0; slot < bigrams.capacity(); slot++)
+		{
+			long key = bigrams.getKey(slot);
+			if (key >= 0) { visitor.visit((int) (key >>> 32), (int) key, bigrams.getLogProbability(slot)); }
+		}
+	}
+
+
+	/**
+	 * Helper method that returns the index of the
+	 * words that follow each word, ordered by bigram
+	 * probability. It is built from the bigrams the
+	 * first time it is asked for, and shared after.
+	 *
+	 * @return	the successor index of the store.
+	 */
+	public SuccessorIndex getSuccessorIndex()
+	{
+		if (successorIndex == null)
+		{
+			synchronized (this)
+			{
+				if (successorIndex == null) { successorIndex = new SuccessorIndex(this); }
+			}
+		}
+		return successorIndex;
+	}
+
+
+	/**
+	 * Helper method that returns the number of words in the vocabulary.
+	 *
+	 * @return	the number of words in the vocabulary.
+	 */
+	public int getVocabularySize()
+	{ return vocabularySize; }
+
+
+	/**
+	 * Helper method that returns the number of bigrams in the store.
+	 *
+	 * @return	the number of bigrams in the store.
+	 */
+	public long getBigramSize()
+	{ return (bigrams == null) ? sortedBigrams.size() : bigrams.size(); }
+
+
+	/**
+	 * Helper method that returns the total occurrence of unigrams in the training dataset.
+	 *
+	 * @return	the total occurrence of unigrams.
+	 */
+	public int getUnigramTotal()
+	{ return unigramTotal; }
+
+
+	/**
+	 * Helper method that returns true if the store is kept outside the Java heap.
+	 *
+	 * @return	true if the store is off-heap.
+	 */
+	public boolean isOffHeap()
+	{ return direct; }
+
+
+	/**
+	 * Helper method that returns the number of bytes occupied by the store.
+	 *
+	 * @return	the size of the store in bytes.
+	 */
+	public long byteSize()
+	{ return words.byteSize() + unigrams.capacity() + ((bigrams == null) ? sortedBigrams.byteSize() : bigrams.byteSize()); }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that allocates a buffer inside
+	 * or outside the Java heap, as configured.
+	 */
+	private ByteBuffer allocate(int bytes)
+	{ return direct ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes); }
+
+
+	/**
+	 * Helper method that sets a quantized store up
+	 * to collect the bigrams put into it, so they can
+	 * be sorted once they have all been put.
+	 */
+	private void startPendingBigrams(long expectedBigrams, ProbabilityCodebook bigramCodebook)
+	{
+		if (expectedBigrams > Integer.MAX_VALUE - 8) { throw new IllegalArgumentException("Too many bigrams for a quantized model store: " + expectedBigrams); }
+		pendingKeys = new long[(int) expectedBigrams];
+		pendingLogProbabilities = new float[(int) expectedBigrams];
+		pendingCodebook = bigramCodebook;
+	}
+
+
+	/**
+	 * Helper method that lays out the count and
+	 * log probability of each unigram by word id.
+	 */
+	private ByteBuffer layOutUnigrams(HashMap<String, WordToken> unigramModel)
+	{
+		ByteBuffer layout = allocate(unigramBytes * vocabularySize);
+		for (String word : unigramModel.keySet())
+		{
+			int id = words.getId(word);
+			WordToken token = unigramModel.get(word);
+			layout.putInt(unigramBytes * id, token.count);
+			NgramTable.putLogProbability(layout, unigramBytes * id + 4, token.probability, unigramCodebook);
+		}
+		return layout;
+	}
+
+
+	/**
+	 * Helper method that collects the log probabilities held by a model.
+	 */
+	private static float[] logProbabilities(HashMap<String, WordToken> model)
+	{
+		float[] values = new float[model.size()];
+		int index = 0;
+		for (WordToken token : model.values()) { values[index++] = token.probability; }
+		return values;
+	}
+
+}
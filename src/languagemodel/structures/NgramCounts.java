@@ -0,0 +1,444 @@
+package languagemodel.structures;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import languagemodel.utils.NgramExtractor;
+
+
+/**
+ * This class counts the unigrams and bigrams of
+ * (part of) a training dataset over token ids.
+ * Each sentence is turned into a token-id stream:
+ * the reserved id of the <s> start symbol, the ids
+ * of its words (split on whitespace, with a trailing
+ * full stop split off its word, as appendToSentence
+ * does) and the reserved id of the </s> end symbol.
+ * No appended sentence or n-gram String is built:
+ * words are looked up in the vocabulary by their
+ * range of characters, so a String is made only
+ * the first time a word is seen, the bigrams are
+ * counted by their packed id keys, and a String is
+ * made for each distinct bigram only when the
+ * counts are handed over.
+ *
+ * The unigrams are counted from the words of the
+ * sentence's CoreNLP tokens, when they are given,
+ * as the models have always been counted; a word
+ * that only the whitespace split makes (such as
+ * "said," or "don't") is still added with a count
+ * of 0, so the bigrams it is part of can be looked
+ * up. Without token words, the unigrams are counted
+ * from the whitespace words instead, so the count of
+ * every word as a history is exactly the number of
+ * bigrams it starts. Either way </s> is counted as a
+ * unigram once per sentence, and <s> is counted once
+ * per sentence as the history of the first bigram,
+ * but it is never predicted, so it is left out of
+ * the unigram total.
+ *
+ * Each counting worker of the counting pipeline fills
+ * its own instance, so workers never contend on a
+ * shared table, and the instances are merged once
+ * counting is done. When counting within a memory
+ * budget, the bigrams are drained out in word order
+ * whenever the budget is exceeded, and the table is
+ * filled again from empty.
+ *
+ * @author David Olorundare
+ *
+ */
+public class NgramCounts
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the start symbol of a sentence.
+	public static final String START_SYMBOL = "<s>";
+
+	// Represents the end symbol of a sentence.
+	public static final String END_SYMBOL = "</s>";
+
+	// Represents the reserved id of the start symbol.
+	public static final int START_ID = 0;
+
+	// Represents the reserved id of the end symbol.
+	public static final int END_ID = 1;
+
+	// Represents the number of bits each id is packed into within a bigram key.
+	private static final int ID_BITS = 32;
+
+	// Represents the number of slots the bigram table starts with, and shrinks back to when it is drained.
+	private static final int INITIAL_BIGRAM_SLOTS = 1 << 16;
+
+	// Represents the number of bytes one slot of the bigram table takes: its key and its count.
+	private static final int SLOT_BYTES = 12;
+
+	// Represents the words counted, with the start and end symbols at their reserved ids.
+	private final Vocabulary vocabulary = new Vocabulary();
+
+	// Represents the unigram count of each word, indexed by word id.
+	private int[] unigramCounts = new int[1024];
+
+	// Represents the packed keys of the bigrams counted, in an open-addressing table (0 marks an empty slot).
+	private long[] bigramKeys = new long[INITIAL_BIGRAM_SLOTS];
+
+	// Represents the count of the bigram in each slot.
+	private int[] bigramCounts = new int[INITIAL_BIGRAM_SLOTS];
+
+	// Represents the number of distinct bigrams counted.
+	private int bigramSize = 0;
+
+	// Represents the token-id stream of the sentence being counted, reused between sentences.
+	private int[] tokenIds = new int[64];
+
+	// Represents the number of ids in the token-id stream.
+	private int tokenCount = 0;
+
+	// Represents the number of sentences counted.
+	private int sentences = 0;
+
+	// Represents the number of words counted, not including the start and end symbols.
+	private long words = 0;
+
+	// Represents the visitor counting each bigram key of a sentence.
+	private final NgramExtractor.KeyVisitor bigramCounter = new NgramExtractor.KeyVisitor()
+	{
+		public void visit(long key) { countBigram(key); }
+	};
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which reserves the
+	 * ids of the start and end symbols.
+	 *
+	 */
+	public NgramCounts()
+	{
+		vocabulary.addWord(START_SYMBOL);
+		vocabulary.addWord(END_SYMBOL);
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * This interface receives each bigram drained
+	 * out of the counts, with its count.
+	 */
+	public interface BigramVisitor
+	{
+		/**
+		 * Receives one bigram.
+		 *
+		 * @param firstWord	the first word of the bigram.
+		 *
+		 * @param secondWord	the second word of the bigram.
+		 *
+		 * @param count	the count of the bigram.
+		 */
+		void visit(String firstWord, String secondWord, int count);
+	}
+
+
+	/**
+	 * Helper method that counts the unigrams and
+	 * bigrams of a sentence, and the sentence itself,
+	 * with its unigrams counted from its whitespace words.
+	 *
+	 * @param sentence	the text of the sentence, without start or end symbols.
+	 *
+	 * @param bigramSink	the visitor the bigrams are handed to instead of being counted here (as token-id windows, whose words getWord returns), or null to count them here.
+	 */
+	public void addSentence(CharSequence sentence, NgramExtractor.NgramVisitor bigramSink)
+	{ addSentence(sentence, null, bigramSink); }
+
+
+	/**
+	 * Helper method that counts the unigrams and
+	 * bigrams of a sentence, and the sentence itself.
+	 *
+	 * @param sentence	the text of the sentence, without start or end symbols.
+	 *
+	 * @param tokenWords	the words of the sentence's CoreNLP tokens, which its unigrams are counted from, or null to count them from its whitespace words.
+	 *
+	 * @param bigramSink	the visitor the bigrams are handed to instead of being counted here (as token-id windows, whose words getWord returns), or null to count them here.
+	 */
+	public void addSentence(CharSequence sentence, String[] tokenWords, NgramExtractor.NgramVisitor bigramSink)
+	{
+		tokenize(sentence);
+		sentences++;
+		words += tokenCount - 2;
+
+		// Every token is counted as a unigram: <s> as a history, the words and </s> as predicted tokens.
+		if (tokenWords == null) { for (int index = 0; index < tokenCount; index++) { unigramCounts[tokenIds[index]]++; } }
+		else
+		{
+			unigramCounts[START_ID]++;
+			unigramCounts[END_ID]++;
+			for (String word : tokenWords)
+			{
+				int id = vocabulary.addWord(word);
+				if (id >= unigramCounts.length) { unigramCounts = Arrays.copyOf(unigramCounts, Math.max(id + 1, unigramCounts.length * 2)); }
+				unigramCounts[id]++;
+			}
+		}
+
+		if (bigramSink != null) { NgramExtractor.forEachNgram(tokenIds, tokenCount, 2, bigramSink); }
+		else { NgramExtractor.forEachKey(tokenIds, tokenCount, 2, ID_BITS, bigramCounter); }
+	}
+
+
+	/**
+	 * Helper method that returns the word with the given id.
+	 *
+	 * @param id	the id of the word.
+	 *
+	 * @return	the word with the given id.
+	 */
+	public String getWord(int id)
+	{ return vocabulary.getWord(id); }
+
+
+	/**
+	 * Helper method that adds these counts to
+	 * the given unigram and bigram count models,
+	 * making one String per distinct word and bigram.
+	 * Every word seen is added to the unigram model,
+	 * those not counted as unigrams with a count of 0;
+	 * the start and end symbols only once counted.
+	 *
+	 * @param unigramModel	the unigram count model added to.
+	 *
+	 * @param bigramModel	the bigram count model added to.
+	 */
+	public void mergeInto(HashMap<String, WordToken> unigramModel, HashMap<String, WordToken> bigramModel)
+	{
+		for (int id = 0; id < vocabulary.size(); id++)
+		{
+			if (id <= END_ID && unigramCounts[id] == 0) { continue; }
+			String word = vocabulary.getWord(id);
+			WordToken total = unigramModel.get(word);
+			if (total == null) { total = new WordToken(); total.unigram = word; unigramModel.put(word, total); }
+			total.count += unigramCounts[id];
+		}
+		for (int slot = 0; slot < bigramKeys.length; slot++)
+		{
+			if (bigramKeys[slot] == 0) { continue; }
+			long key = ~bigramKeys[slot];
+			String bigram = vocabulary.getWord((int) (key >>> ID_BITS)) + " " + vocabulary.getWord((int) key);
+			WordToken total = bigramModel.get(bigram);
+			if (total == null) { total = new WordToken(); total.bigramW = bigram; bigramModel.put(bigram, total); }
+			total.count += bigramCounts[slot];
+		}
+	}
+
+
+	/**
+	 * Helper method that hands every bigram counted
+	 * so far to a visitor, ordered by their first
+	 * words and then by their second words, and
+	 * empties the bigram table, shrinking it back to
+	 * its initial size. The unigram counts and the
+	 * vocabulary are kept.
+	 *
+	 * @param visitor	the visitor the bigrams are handed to.
+	 */
+	public void drainBigrams(BigramVisitor visitor)
+	{
+		// Rank the words in String order, so bigrams sort by their packed ranks as they would by their words.
+		Integer[] order = new Integer[vocabulary.size()];
+		for (int id = 0; id < order.length; id++) { order[id] = id; }
+		Arrays.sort(order, (first, second) -> vocabulary.getWord(first).compareTo(vocabulary.getWord(second)));
+		int[] ranks = new int[order.length];
+		for (int rank = 0; rank < order.length; rank++) { ranks[order[rank]] = rank; }
+
+		long[] rankedKeys = new long[bigramSize];
+		int[] rankedCounts = new int[bigramSize];
+		int position = 0;
+		for (int slot = 0; slot < bigramKeys.length; slot++)
+		{
+			if (bigramKeys[slot] == 0) { continue; }
+			long key = ~bigramKeys[slot];
+			rankedKeys[position++] = ((long) ranks[(int) (key >>> ID_BITS)] << ID_BITS) | ranks[(int) key];
+		}
+		Arrays.sort(rankedKeys);
+		for (position = 0; position < rankedKeys.length; position++)
+		{
+			int firstId = order[(int) (rankedKeys[position] >>> ID_BITS)];
+			int secondId = order[(int) rankedKeys[position]];
+			rankedCounts[position] = bigramCounts[find(((long) firstId << ID_BITS) | secondId)];
+			rankedKeys[position] = ((long) firstId << ID_BITS) | secondId;
+		}
+
+		bigramKeys = new long[INITIAL_BIGRAM_SLOTS];
+		bigramCounts = new int[INITIAL_BIGRAM_SLOTS];
+		bigramSize = 0;
+		for (position = 0; position < rankedKeys.length; position++)
+		{ visitor.visit(vocabulary.getWord((int) (rankedKeys[position] >>> ID_BITS)), vocabulary.getWord((int) rankedKeys[position]), rankedCounts[position]); }
+	}
+
+
+	/**
+	 * Helper method that returns the number of distinct bigrams counted since the table was last drained.
+	 *
+	 * @return	the number of distinct bigrams in the table.
+	 */
+	public int getBigramSize()
+	{ return bigramSize; }
+
+
+	/**
+	 * Helper method that returns the number of
+	 * bytes the bigram table takes beyond its initial
+	 * size, plus those drainBigrams needs to sort its
+	 * bigrams: 12 bytes per slot, in a table kept at
+	 * most half full and doubled when it fills, so 24
+	 * to 48 bytes per bigram, and 12 more per bigram
+	 * while draining. The vocabulary and the unigram
+	 * counts are kept until counting is done, so they
+	 * are not counted.
+	 *
+	 * @return	the number of bytes the bigrams counted take.
+	 */
+	public long getBigramBytes()
+	{ return (long) SLOT_BYTES * (bigramKeys.length - INITIAL_BIGRAM_SLOTS + bigramSize); }
+
+
+	/**
+	 * Helper method that returns the number of sentences counted.
+	 *
+	 * @return	the number of sentences counted.
+	 */
+	public int getSentenceCount()
+	{ return sentences; }
+
+
+	/**
+	 * Helper method that returns the number of words counted.
+	 *
+	 * @return	the number of words counted, not including the start and end symbols.
+	 */
+	public long getWordCount()
+	{ return words; }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that turns a sentence into its
+	 * token-id stream, surrounded by the reserved
+	 * ids of the start and end symbols.
+	 */
+	private void tokenize(CharSequence sentence)
+	{
+		tokenCount = 0;
+		addToken(START_ID);
+
+		// A trailing full stop is split off its word, as appendToSentence does.
+		int end = sentence.length();
+		boolean fullStop = end > 0 && sentence.charAt(end - 1) == '.';
+		if (fullStop) { end--; }
+
+		int index = 0;
+		while (index < end)
+		{
+			while (index < end && isWhitespace(sentence.charAt(index))) { index++; }
+			int start = index;
+			while (index < end && !isWhitespace(sentence.charAt(index))) { index++; }
+			if (index > start) { addToken(vocabulary.addWord(sentence, start, index)); }
+		}
+
+		if (fullStop) { addToken(vocabulary.addWord(".")); }
+		addToken(END_ID);
+	}
+
+
+	/**
+	 * Helper method that appends a token id to the
+	 * token-id stream, growing the stream and the
+	 * unigram counts if needed.
+	 */
+	private void addToken(int id)
+	{
+		if (tokenCount == tokenIds.length) { tokenIds = Arrays.copyOf(tokenIds, tokenCount * 2); }
+		if (id >= unigramCounts.length) { unigramCounts = Arrays.copyOf(unigramCounts, Math.max(id + 1, unigramCounts.length * 2)); }
+		tokenIds[tokenCount++] = id;
+	}
+
+
+	/**
+	 * Helper method that counts one occurrence of
+	 * a bigram by its key, growing the table once
+	 * it is half full. Keys are stored complemented,
+	 * so no stored key is 0.
+	 */
+	private void countBigram(long key)
+	{
+		if (bigramSize >= bigramKeys.length / 2) { grow(); }
+		int slot = find(key);
+		if (bigramKeys[slot] == 0) { bigramKeys[slot] = ~key; bigramSize++; }
+		bigramCounts[slot]++;
+	}
+
+
+	/**
+	 * Helper method that returns the slot holding
+	 * a bigram key, or the empty slot it would be
+	 * counted at.
+	 */
+	private int find(long key)
+	{
+		int slot = slot(key, bigramKeys.length);
+		while (bigramKeys[slot] != 0 && bigramKeys[slot] != ~key) { slot = (slot + 1) & (bigramKeys.length - 1); }
+		return slot;
+	}
+
+
+	/**
+	 * Helper method that doubles the bigram table,
+	 * re-inserting every key.
+	 */
+	private void grow()
+	{
+		long[] oldKeys = bigramKeys;
+		int[] oldCounts = bigramCounts;
+		bigramKeys = new long[oldKeys.length * 2];
+		bigramCounts = new int[oldKeys.length * 2];
+		for (int index = 0; index < oldKeys.length; index++)
+		{
+			if (oldKeys[index] == 0) { continue; }
+			int slot = slot(~oldKeys[index], bigramKeys.length);
+			while (bigramKeys[slot] != 0) { slot = (slot + 1) & (bigramKeys.length - 1); }
+			bigramKeys[slot] = oldKeys[index];
+			bigramCounts[slot] = oldCounts[index];
+		}
+	}
+
+
+	/**
+	 * Helper method that returns true if a character
+	 * separates words, matching the \s class of the
+	 * regular expression the n-gram split uses.
+	 */
+	private static boolean isWhitespace(char character)
+	{ return character == ' ' || character == '\t' || character == '\n' || character == '\u000B' || character == '\f' || character == '\r'; }
+
+
+	/**
+	 * Helper method that returns the home slot of a
+	 * key in a table of the given (power of two) size,
+	 * scrambling its bits first.
+	 */
+	private static int slot(long key, int capacity)
+	{
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key >>> 32) & (capacity - 1);
+	}
+
+}
@@ -0,0 +1,308 @@
+package languagemodel.structures;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * This class is a flat, open-addressing hash table
+ * mapping n-gram keys (word ids packed into a long)
+ * to their count and log probability.
+ * Entries are laid out in fixed-size slots inside
+ * ByteBuffers rather than as objects, so the table
+ * can live outside the Java heap (in direct buffers)
+ * where it is never scanned by the garbage collector.
+ * Log probabilities are stored as 32-bit floats, or
+ * as 8- or 16-bit codes of a ProbabilityCodebook.
+ *
+ * @author David Olorundare
+ *
+ */
+public class NgramTable
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the byte offset of the count within a slot.
+	private static final int COUNT_OFFSET = 8;
+
+	// Represents the byte offset of the log probability within a slot.
+	private static final int PROBABILITY_OFFSET = 12;
+
+	// Represents log2 of the number of slots held by each buffer (so each buffer is 1 GB at most).
+	private static final int BUFFER_SLOT_BITS = 26;
+
+	// Represents the number of bytes in one slot: the key, the count and the (possibly quantized) log probability.
+	private final int slotBytes;
+
+	// Represents the codebook the log probabilities are quantized with, or null if they are stored exactly.
+	private final ProbabilityCodebook codebook;
+
+	// Represents the buffers holding the slots of the table.
+	private final ByteBuffer[] buffers;
+
+	// Represents the number of slots in the table minus one (the capacity is a power of two).
+	private final long slotMask;
+
+	// Represents the number of entries in the table.
+	private long size = 0;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 * @param expectedEntries	the number of entries the table should hold.
+	 *
+	 * @param direct	true if the table should be stored outside the Java heap.
+	 *
+	 * @param probabilityCodebook	the codebook log probabilities are quantized with, or null to store them exactly.
+	 *
+	 */
+	public NgramTable(long expectedEntries, boolean direct, ProbabilityCodebook probabilityCodebook)
+	{
+		codebook = probabilityCodebook;
+		slotBytes = PROBABILITY_OFFSET + ((codebook == null) ? 4 : codebook.getBits() / 8);
+
+		// Keep the load factor at or below one half so probe sequences stay short.
+		long capacity = Long.highestOneBit(Math.max(16, expectedEntries * 2 - 1)) << 1;
+		slotMask = capacity - 1;
+
+		long bufferSlots = 1L << BUFFER_SLOT_BITS;
+		buffers = new ByteBuffer[(int) ((capacity + bufferSlots - 1) / bufferSlots)];
+		for (int index = 0; index < buffers.length; index++)
+		{
+			int bytes = (int) (Math.min(bufferSlots, capacity - index * bufferSlots) * slotBytes);
+			buffers[index] = direct ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+		}
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that packs the ids of the two
+	 * words of a bigram into a single key.
+	 *
+	 * @param firstId	the id of the first word of the bigram.
+	 *
+	 * @param secondId	the id of the second word of the bigram.
+	 *
+	 * @return	the key of the bigram.
+	 */
+	public static long bigramKey(int firstId, int secondId)
+	{ return ((long) firstId << 32) | (secondId & 0xFFFFFFFFL); }
+
+
+	/**
+	 * Helper method that stores the count and log
+	 * probability of an n-gram, replacing any values
+	 * already stored for it.
+	 *
+	 * @param key	the key of the n-gram; it must not be negative.
+	 *
+	 * @param count	the count of the n-gram.
+	 *
+	 * @param logProbability	the log probability of the n-gram.
+	 *
+	 * @return	the slot holding the n-gram.
+	 */
+	public long put(long key, int count, float logProbability)
+	{
+		if (key < 0) { throw new IllegalArgumentException("N-gram keys must not be negative: " + key); }
+
+		long slot = probe(key);
+		if (storedKey(slot) == 0)
+		{
+			// Keys are stored complemented so that an all-zero slot, as freshly allocated, reads as empty.
+			if (size > slotMask / 2) { throw new IllegalStateException("The n-gram table is full: " + size + " entries."); }
+			buffer(slot).putLong(offset(slot), ~key);
+			size++;
+		}
+		buffer(slot).putInt(offset(slot) + COUNT_OFFSET, count);
+		putLogProbability(buffer(slot), offset(slot) + PROBABILITY_OFFSET, logProbability, codebook);
+		return slot;
+	}
+
+
+	/**
+	 * Helper method that finds the slot holding an n-gram.
+	 *
+	 * @param key	the key of the n-gram.
+	 *
+	 * @return	the slot holding the n-gram, or -1 if it is not in the table.
+	 */
+	public long find(long key)
+	{
+		if (key < 0) { return -1; }
+		long slot = probe(key);
+		return (storedKey(slot) == 0) ? -1 : slot;
+	}
+
+
+	/**
+	 * Helper method that returns the count stored in a slot.
+	 *
+	 * @param slot	a slot returned by find or put.
+	 *
+	 * @return	the count of the n-gram in the slot.
+	 */
+	public int getCount(long slot)
+	{ return buffer(slot).getInt(offset(slot) + COUNT_OFFSET); }
+
+
+	/**
+	 * Helper method that returns the log probability stored in a slot.
+	 *
+	 * @param slot	a slot returned by find or put.
+	 *
+	 * @return	the log probability of the n-gram in the slot.
+	 */
+	public float getLogProbability(long slot)
+	{ return getLogProbability(buffer(slot), offset(slot) + PROBABILITY_OFFSET, codebook); }
+
+
+	/**
+	 * Helper method that returns the number of entries in the table.
+	 *
+	 * @return	the number of entries in the table.
+	 */
+	public long size()
+	{ return size; }
+
+
+	/**
+	 * Helper method that returns the number of slots in the table.
+	 *
+	 * @return	the number of slots, numbered from 0.
+	 */
+	public long capacity()
+	{ return slotMask + 1; }
+
+
+	/**
+	 * Helper method that returns the key of the n-gram
+	 * in a slot, so the table can be walked slot by slot.
+	 *
+	 * @param slot	a slot of the table, from 0 to capacity() - 1.
+	 *
+	 * @return	the key of the n-gram in the slot, or -1 if the slot is empty.
+	 */
+	public long getKey(long slot)
+	{
+		long stored = storedKey(slot);
+		return (stored == 0) ? -1 : ~stored;
+	}
+
+
+	/**
+	 * Helper method that returns the number of bytes occupied by the slots of the table.
+	 *
+	 * @return	the size of the table in bytes.
+	 */
+	public long byteSize()
+	{ return (slotMask + 1) * slotBytes; }
+
+
+	/**
+	 * Helper method that writes a log probability into
+	 * a buffer, either as a 32-bit float or as the
+	 * 8- or 16-bit code given by a codebook.
+	 *
+	 * @param buffer	the buffer written to.
+	 *
+	 * @param offset	the byte offset written at.
+	 *
+	 * @param logProbability	the log probability to be written.
+	 *
+	 * @param codebook	the codebook to quantize with, or null to write the exact value.
+	 */
+	public static void putLogProbability(ByteBuffer buffer, int offset, float logProbability, ProbabilityCodebook codebook)
+	{
+		if (codebook == null) { buffer.putFloat(offset, logProbability); }
+		else if (codebook.getBits() == 8) { buffer.put(offset, (byte) codebook.encode(logProbability)); }
+		else { buffer.putShort(offset, (short) codebook.encode(logProbability)); }
+	}
+
+
+	/**
+	 * Helper method that reads a log probability
+	 * written by putLogProbability.
+	 *
+	 * @param buffer	the buffer read from.
+	 *
+	 * @param offset	the byte offset read at.
+	 *
+	 * @param codebook	the codebook the value was quantized with, or null if it was written exactly.
+	 *
+	 * @return	the log probability.
+	 */
+	public static float getLogProbability(ByteBuffer buffer, int offset, ProbabilityCodebook codebook)
+	{
+		if (codebook == null) { return buffer.getFloat(offset); }
+		if (codebook.getBits() == 8) { return codebook.decode(buffer.get(offset) & 0xFF); }
+		return codebook.decode(buffer.getShort(offset) & 0xFFFF);
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that walks the probe sequence
+	 * of a key until it reaches either the slot
+	 * holding the key or an empty slot.
+	 *
+	 * @param key	the key being looked up.
+	 *
+	 * @return	the slot holding the key, or the empty slot where it would be stored.
+	 */
+	private long probe(long key)
+	{
+		long slot = mix(key) & slotMask;
+		long stored;
+		while ((stored = storedKey(slot)) != 0 && stored != ~key) { slot = (slot + 1) & slotMask; }
+		return slot;
+	}
+
+
+	/**
+	 * Helper method that returns the complemented key stored in a slot, 0 if the slot is empty.
+	 */
+	private long storedKey(long slot)
+	{ return buffer(slot).getLong(offset(slot)); }
+
+
+	/**
+	 * Helper method that returns the buffer holding a slot.
+	 */
+	private ByteBuffer buffer(long slot)
+	{ return buffers[(int) (slot >>> BUFFER_SLOT_BITS)]; }
+
+
+	/**
+	 * Helper method that returns the byte offset of a slot within its buffer.
+	 */
+	private int offset(long slot)
+	{ return (int) (slot & ((1L << BUFFER_SLOT_BITS) - 1)) * slotBytes; }
+
+
+	/**
+	 * Helper method that scrambles the bits of a key
+	 * (the MurmurHash3 finalizer) so that keys built
+	 * from consecutive ids spread over the table.
+	 */
+	private static long mix(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+}
@@ -0,0 +1,314 @@
+package languagemodel.structures;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+
+/**
+ * This class is a read-only vocabulary indexed
+ * by a minimal perfect hash function, built with
+ * the hash-and-displace (CHD) method.
+ * The words are packed as UTF-8 bytes into one
+ * contiguous buffer, and the id of each word is
+ * the slot the hash function sends it to, so ids
+ * are dense and no slot is wasted. Looking a word up
+ * costs one pass hashing its characters, one bucket
+ * seed read and one comparison against the packed
+ * bytes, and allocates nothing.
+ *
+ * @author David Olorundare
+ *
+ */
+public class PerfectHashVocabulary
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the average number of words per bucket of the hash function.
+	private static final int BUCKET_SIZE = 4;
+
+	// Represents the number of seeds tried for a bucket before the build gives up.
+	private static final int MAXIMUM_SEED = 1 << 24;
+
+	// Represents true if the vocabulary is kept outside the Java heap.
+	private final boolean direct;
+
+	// Represents the number of words in the vocabulary.
+	private final int size;
+
+	// Represents the number of buckets of the hash function.
+	private final int bucketCount;
+
+	// Represents the seed chosen for each bucket, which places the words of the bucket in free slots.
+	private final ByteBuffer seeds;
+
+	// Represents the UTF-8 bytes of every word in the vocabulary, one after the other in id order.
+	private final ByteBuffer wordData;
+
+	// Represents the offset of each word within the word data, indexed by word id (one extra entry marks the end).
+	private final ByteBuffer wordOffsets;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which builds the
+	 * perfect hash function over the given words.
+	 *
+	 * @param words	the distinct words of the vocabulary.
+	 *
+	 * @param offHeap	true if the vocabulary should be kept outside the Java heap.
+	 *
+	 */
+	public PerfectHashVocabulary(Collection<String> words, boolean offHeap)
+	{
+		direct = offHeap;
+		size = words.size();
+		bucketCount = Math.max(1, (size + BUCKET_SIZE - 1) / BUCKET_SIZE);
+
+		// Hash every word once, and sort the words into buckets.
+		byte[][] encodedWords = new byte[size][];
+		long[] hashes = new long[size];
+		int[] bucketSizes = new int[bucketCount];
+		int dataSize = 0;
+		int index = 0;
+		for (String word : words)
+		{
+			encodedWords[index] = word.getBytes(StandardCharsets.UTF_8);
+			hashes[index] = hash(word, 0, word.length());
+			bucketSizes[bucket(hashes[index])]++;
+			dataSize += encodedWords[index].length;
+			index++;
+		}
+		int[][] buckets = new int[bucketCount][];
+		for (int bucket = 0; bucket < bucketCount; bucket++) { buckets[bucket] = new int[bucketSizes[bucket]]; bucketSizes[bucket] = 0; }
+		for (index = 0; index < size; index++) { int bucket = bucket(hashes[index]); buckets[bucket][bucketSizes[bucket]++] = index; }
+
+		// Place the largest buckets first, while most slots are still free.
+		ArrayList<Integer> order = new ArrayList<Integer>(bucketCount);
+		for (int bucket = 0; bucket < bucketCount; bucket++) { if (bucketSizes[bucket] > 0) { order.add(bucket); } }
+		order.sort((first, second) -> bucketSizes[second] - bucketSizes[first]);
+
+		// Find a seed for each bucket sending all of its words to slots no other word has taken.
+		seeds = allocate(4 * bucketCount);
+		int[] slotWords = new int[size];
+		Arrays.fill(slotWords, -1);
+		int[] bucketSlots = new int[BUCKET_SIZE];
+		for (int bucket : order)
+		{
+			int[] members = buckets[bucket];
+			if (bucketSlots.length < members.length) { bucketSlots = new int[members.length]; }
+			int seed = 0;
+			while (!placeBucket(members, hashes, seed, slotWords, bucketSlots))
+			{
+				if (++seed == MAXIMUM_SEED) { throw new IllegalStateException("Could not build a perfect hash function over the vocabulary; it may contain duplicate words."); }
+			}
+			seeds.putInt(4 * bucket, seed);
+		}
+
+		// Pack the words in slot order, so the slot of a word is its id.
+		wordData = allocate(dataSize);
+		wordOffsets = allocate(4 * (size + 1));
+		for (int id = 0; id < size; id++)
+		{
+			wordOffsets.putInt(4 * id, wordData.position());
+			wordData.put(encodedWords[slotWords[id]]);
+		}
+		wordOffsets.putInt(4 * size, wordData.position());
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the id of a word.
+	 *
+	 * @param word	the word whose id is returned.
+	 *
+	 * @return	the id of the word, or Vocabulary.UNKNOWN_ID if it is not in the vocabulary.
+	 */
+	public int getId(CharSequence word)
+	{ return getId(word, 0, word.length()); }
+
+
+	/**
+	 * Helper method that returns the id of the word
+	 * spanning a range of characters, without
+	 * copying the range out.
+	 *
+	 * @param text	the text holding the word.
+	 *
+	 * @param start	the index of the first character of the word.
+	 *
+	 * @param end	the index after the last character of the word.
+	 *
+	 * @return	the id of the word, or Vocabulary.UNKNOWN_ID if it is not in the vocabulary.
+	 */
+	public int getId(CharSequence text, int start, int end)
+	{
+		if (size == 0) { return Vocabulary.UNKNOWN_ID; }
+		long wordHash = hash(text, start, end);
+		int id = slot(wordHash, seeds.getInt(4 * bucket(wordHash)));
+		return wordEquals(id, text, start, end) ? id : Vocabulary.UNKNOWN_ID;
+	}
+
+
+	/**
+	 * Helper method that returns the word with the given id.
+	 *
+	 * @param id	the id of the word.
+	 *
+	 * @return	the word with the given id.
+	 */
+	public String getWord(int id)
+	{
+		int start = wordOffsets.getInt(4 * id);
+		byte[] encodedWord = new byte[wordOffsets.getInt(4 * (id + 1)) - start];
+		for (int index = 0; index < encodedWord.length; index++) { encodedWord[index] = wordData.get(start + index); }
+		return new String(encodedWord, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Helper method that returns the number of words in the vocabulary.
+	 *
+	 * @return	the number of words in the vocabulary.
+	 */
+	public int size()
+	{ return size; }
+
+
+	/**
+	 * Helper method that returns the number of bytes occupied by the vocabulary.
+	 *
+	 * @return	the size of the vocabulary in bytes.
+	 */
+	public long byteSize()
+	{ return seeds.capacity() + wordData.capacity() + wordOffsets.capacity(); }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that tries to place the words
+	 * of a bucket with a seed, taking their slots
+	 * only if every one of them is free.
+	 *
+	 * @return	true if the words were placed.
+	 */
+	private boolean placeBucket(int[] members, long[] hashes, int seed, int[] slotWords, int[] bucketSlots)
+	{
+		for (int member = 0; member < members.length; member++)
+		{
+			int slot = slot(hashes[members[member]], seed);
+			if (slotWords[slot] != -1) { return false; }
+			for (int other = 0; other < member; other++) { if (bucketSlots[other] == slot) { return false; } }
+			bucketSlots[member] = slot;
+		}
+		for (int member = 0; member < members.length; member++) { slotWords[bucketSlots[member]] = members[member]; }
+		return true;
+	}
+
+
+	/**
+	 * Helper method that returns the bucket of a word hash.
+	 */
+	private int bucket(long wordHash)
+	{ return (int) (((wordHash >>> 32) * bucketCount) >>> 32); }
+
+
+	/**
+	 * Helper method that returns the slot a seed
+	 * sends a word hash to (scaling the hash by
+	 * multiplication rather than division).
+	 */
+	private int slot(long wordHash, int seed)
+	{ return (int) (((mix(wordHash + seed * 0x9e3779b97f4a7c15L) >>> 32) * size) >>> 32); }
+
+
+	/**
+	 * Helper method that returns true if the packed
+	 * word with the given id equals a range of
+	 * characters, comparing their UTF-8 bytes as
+	 * the characters are encoded.
+	 */
+	private boolean wordEquals(int id, CharSequence text, int start, int end)
+	{
+		int position = wordOffsets.getInt(4 * id);
+		int wordEnd = wordOffsets.getInt(4 * (id + 1));
+		for (int index = start; index < end; index++)
+		{
+			int character = text.charAt(index);
+			if (character < 0x80)
+			{
+				if (position >= wordEnd || wordData.get(position++) != (byte) character) { return false; }
+				continue;
+			}
+
+			if (Character.isHighSurrogate((char) character) && index + 1 < end && Character.isLowSurrogate(text.charAt(index + 1)))
+			{ character = Character.toCodePoint((char) character, text.charAt(++index)); }
+			// An unpaired surrogate is encoded as a question mark, as String.getBytes does.
+			else if (Character.isSurrogate((char) character))
+			{
+				if (position >= wordEnd || wordData.get(position++) != (byte) '?') { return false; }
+				continue;
+			}
+			int length = (character < 0x800) ? 2 : (character < 0x10000) ? 3 : 4;
+			if (position + length > wordEnd) { return false; }
+			for (int shift = 6 * (length - 1); shift >= 0; shift -= 6)
+			{
+				int leading = (shift == 6 * (length - 1)) ? (0xF0 << (4 - length)) & 0xFF : 0x80;
+				int mask = (shift == 6 * (length - 1)) ? 0x7F >> length : 0x3F;
+				if (wordData.get(position++) != (byte) (leading | ((character >> shift) & mask))) { return false; }
+			}
+		}
+		return position == wordEnd;
+	}
+
+
+	/**
+	 * Helper method that computes the 64-bit FNV-1a
+	 * hash of a range of characters.
+	 */
+	private static long hash(CharSequence text, int start, int end)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for (int index = start; index < end; index++)
+		{
+			hash ^= text.charAt(index);
+			hash *= 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+
+	/**
+	 * Helper method that scrambles the bits of a hash
+	 * (the MurmurHash3 finalizer).
+	 */
+	private static long mix(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+
+	/**
+	 * Helper method that allocates a buffer inside
+	 * or outside the Java heap, as configured.
+	 */
+	private ByteBuffer allocate(int bytes)
+	{ return direct ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes); }
+
+}
@@ -0,0 +1,306 @@
+package languagemodel.structures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+
+/**
+ * This class aggregates the perplexities of a
+ * test dataset while its sentences are scored,
+ * in a single streaming pass: the perplexity of
+ * each sentence, of each document (the line of
+ * the dataset a sentence starts on) and of the
+ * whole corpus. Sentence and document perplexities
+ * are summarized by percentiles, kept in log-scale
+ * histograms so their memory does not grow with
+ * the dataset, and the sentences with the highest
+ * bigram perplexity are kept as outliers.
+ *
+ * A sentence of n tokens is predicted in n + 1
+ * steps, its tokens and its end symbol, so its
+ * perplexity is exp(-log probability / (n + 1));
+ * documents and the corpus sum both over their
+ * sentences.
+ *
+ * @author David Olorundare
+ *
+ */
+public class PerplexityReport
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the percentiles reported.
+	public static final float[] PERCENTILES = { 50, 90, 99 };
+
+	// Represents the number of highest-perplexity sentences kept as outliers.
+	private static final int OUTLIER_COUNT = 5;
+
+	// Represents the number of histogram buckets per unit of log perplexity, giving percentiles within 1%.
+	private static final int BUCKETS_PER_LOG_UNIT = 100;
+
+	// Represents the number of histogram buckets; larger perplexities fall into the last one.
+	private static final int BUCKET_COUNT = 50 * BUCKETS_PER_LOG_UNIT;
+
+	// Represents the unigram and bigram log probabilities of the corpus.
+	private double corpusUnigramLogProbability = 0, corpusBigramLogProbability = 0;
+
+	// Represents the number of steps predicted in the corpus.
+	private long corpusSteps = 0;
+
+	// Represents the number of sentences in the corpus.
+	private int sentenceCount = 0;
+
+	// Represents the line the current document starts on, or 0 if the sentences have no line numbers.
+	private int documentLine = -1;
+
+	// Represents the unigram and bigram log probabilities of the current document.
+	private double documentUnigramLogProbability = 0, documentBigramLogProbability = 0;
+
+	// Represents the number of steps predicted and sentences in the current document.
+	private long documentSteps = 0, documentSentences = 0;
+
+	// Represents, for each finished document, its line, number of sentences and unigram and bigram perplexities.
+	private final ArrayList<float[]> documents = new ArrayList<float[]>();
+
+	// Represents the histograms of the unigram and bigram perplexities of the sentences.
+	private final long[] sentenceUnigramHistogram = new long[BUCKET_COUNT], sentenceBigramHistogram = new long[BUCKET_COUNT];
+
+	// Represents the histograms of the unigram and bigram perplexities of the documents.
+	private final long[] documentUnigramHistogram = new long[BUCKET_COUNT], documentBigramHistogram = new long[BUCKET_COUNT];
+
+	// Represents the sentences with the highest bigram perplexities seen so far, lowest first.
+	private final PriorityQueue<Outlier> outliers = new PriorityQueue<Outlier>();
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 */
+	public PerplexityReport(){	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that adds a scored sentence to
+	 * the report. Sentences must be added in order,
+	 * so a document ends when a sentence starts on
+	 * a different line.
+	 *
+	 * @param text	the text of the sentence.
+	 *
+	 * @param unigramLogProbability	the unigram log probability of the sentence.
+	 *
+	 * @param bigramLogProbability	the bigram log probability of the sentence.
+	 *
+	 * @param tokens	the number of tokens in the sentence.
+	 *
+	 * @param line	the line of the dataset the sentence starts on, or 0 if it is not known.
+	 */
+	public void addSentence(String text, float unigramLogProbability, float bigramLogProbability, int tokens, int line)
+	{
+		if (line != documentLine) { finishDocument(); documentLine = line; }
+
+		int steps = tokens + 1;
+		float unigramPerplexity = (float) Math.exp(-unigramLogProbability / steps);
+		float bigramPerplexity = (float) Math.exp(-bigramLogProbability / steps);
+		sentenceUnigramHistogram[bucket(unigramPerplexity)]++;
+		sentenceBigramHistogram[bucket(bigramPerplexity)]++;
+
+		if (outliers.size() < OUTLIER_COUNT) { outliers.add(new Outlier(text, bigramPerplexity)); }
+		else if (bigramPerplexity > outliers.peek().perplexity) { outliers.poll(); outliers.add(new Outlier(text, bigramPerplexity)); }
+
+		documentUnigramLogProbability += unigramLogProbability;
+		documentBigramLogProbability += bigramLogProbability;
+		documentSteps += steps;
+		documentSentences++;
+
+		corpusUnigramLogProbability += unigramLogProbability;
+		corpusBigramLogProbability += bigramLogProbability;
+		corpusSteps += steps;
+		sentenceCount++;
+	}
+
+
+	/**
+	 * Helper method that returns the unigram and bigram perplexities of the corpus.
+	 *
+	 * @return	the unigram and bigram perplexities of the corpus, or zeros if no sentence has been added.
+	 */
+	public float[] getCorpusPerplexity()
+	{
+		// An empty corpus has no perplexity; zeros keep NaN out of the reports.
+		if (sentenceCount == 0) { return new float[] { 0, 0 }; }
+		float[] perplexity = { (float) Math.exp(-corpusUnigramLogProbability / corpusSteps), (float) Math.exp(-corpusBigramLogProbability / corpusSteps) };
+		return perplexity;
+	}
+
+
+	/**
+	 * Helper method that returns the number of sentences in the corpus.
+	 *
+	 * @return	the number of sentences.
+	 */
+	public int getSentenceCount()
+	{ return sentenceCount; }
+
+
+	/**
+	 * Helper method that returns the perplexities of each document.
+	 *
+	 * @return	for each document, the line it starts on (0 if not known), its number of sentences and its unigram and bigram perplexities.
+	 */
+	public float[][] getDocumentPerplexities()
+	{
+		finishDocument();
+		return documents.toArray(new float[0][]);
+	}
+
+
+	/**
+	 * Helper method that returns the percentiles of the sentence perplexities.
+	 *
+	 * @return	the unigram perplexity at each of the reported percentiles, followed by the bigram perplexity at each.
+	 */
+	public float[] getSentencePercentiles()
+	{ return percentiles(sentenceUnigramHistogram, sentenceBigramHistogram, sentenceCount); }
+
+
+	/**
+	 * Helper method that returns the percentiles of the document perplexities.
+	 *
+	 * @return	the unigram perplexity at each of the reported percentiles, followed by the bigram perplexity at each.
+	 */
+	public float[] getDocumentPercentiles()
+	{
+		finishDocument();
+		return percentiles(documentUnigramHistogram, documentBigramHistogram, documents.size());
+	}
+
+
+	/**
+	 * Helper method that returns the sentences with the highest bigram perplexities.
+	 *
+	 * @return	the outlier sentences, highest perplexity first.
+	 */
+	public String[] getOutlierSentences()
+	{
+		Outlier[] sorted = sortedOutliers();
+		String[] sentences = new String[sorted.length];
+		for (int index = 0; index < sorted.length; index++) { sentences[index] = sorted[index].text; }
+		return sentences;
+	}
+
+
+	/**
+	 * Helper method that returns the bigram perplexities of the outlier sentences.
+	 *
+	 * @return	the bigram perplexities of the outlier sentences, highest first.
+	 */
+	public float[] getOutlierPerplexities()
+	{
+		Outlier[] sorted = sortedOutliers();
+		float[] perplexities = new float[sorted.length];
+		for (int index = 0; index < sorted.length; index++) { perplexities[index] = sorted[index].perplexity; }
+		return perplexities;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that records the current
+	 * document, if it has any sentences.
+	 */
+	private void finishDocument()
+	{
+		if (documentSentences == 0) { return; }
+		float unigramPerplexity = (float) Math.exp(-documentUnigramLogProbability / documentSteps);
+		float bigramPerplexity = (float) Math.exp(-documentBigramLogProbability / documentSteps);
+		documents.add(new float[] { documentLine, documentSentences, unigramPerplexity, bigramPerplexity });
+		documentUnigramHistogram[bucket(unigramPerplexity)]++;
+		documentBigramHistogram[bucket(bigramPerplexity)]++;
+
+		documentUnigramLogProbability = 0;
+		documentBigramLogProbability = 0;
+		documentSteps = 0;
+		documentSentences = 0;
+	}
+
+
+	/**
+	 * Helper method that returns the histogram
+	 * bucket of a perplexity, by its logarithm.
+	 */
+	private static int bucket(float perplexity)
+	{
+		if (!(perplexity > 1)) { return 0; }
+		return (int) Math.min(BUCKET_COUNT - 1, Math.log(perplexity) * BUCKETS_PER_LOG_UNIT);
+	}
+
+
+	/**
+	 * Helper method that reads the reported
+	 * percentiles off a unigram and a bigram
+	 * histogram, each as the geometric middle
+	 * of the bucket the percentile falls into.
+	 */
+	private static float[] percentiles(long[] unigramHistogram, long[] bigramHistogram, long total)
+	{
+		float[] values = new float[PERCENTILES.length * 2];
+		long[][] histograms = { unigramHistogram, bigramHistogram };
+		for (int model = 0; model < histograms.length; model++)
+		{
+			for (int index = 0; index < PERCENTILES.length; index++)
+			{
+				// The rank of the percentile, counting from 1.
+				long rank = Math.max(1, (long) Math.ceil(PERCENTILES[index] / 100 * total));
+				long seen = 0;
+				int bucket = 0;
+				while (bucket < BUCKET_COUNT - 1 && seen + histograms[model][bucket] < rank) { seen += histograms[model][bucket]; bucket++; }
+				values[model * PERCENTILES.length + index] = (total == 0) ? 0 : (float) Math.exp((bucket + 0.5) / BUCKETS_PER_LOG_UNIT);
+			}
+		}
+		return values;
+	}
+
+
+	/**
+	 * Helper method that returns the outliers,
+	 * highest perplexity first.
+	 */
+	private Outlier[] sortedOutliers()
+	{
+		Outlier[] sorted = outliers.toArray(new Outlier[0]);
+		Arrays.sort(sorted, Collections.reverseOrder());
+		return sorted;
+	}
+
+
+	/**
+	 * This class holds a sentence kept as
+	 * an outlier, ordered by its perplexity.
+	 */
+	private static class Outlier implements Comparable<Outlier>
+	{
+		// Represents the text of the sentence.
+		final String text;
+
+		// Represents the bigram perplexity of the sentence.
+		final float perplexity;
+
+		Outlier(String sentence, float sentencePerplexity) { text = sentence; perplexity = sentencePerplexity; }
+
+		public int compareTo(Outlier other) { return Float.compare(perplexity, other.perplexity); }
+	}
+
+}
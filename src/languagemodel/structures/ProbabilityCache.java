@@ -0,0 +1,333 @@
+package languagemodel.structures;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class is a bounded, thread-safe cache
+ * of n-gram log probabilities with W-TinyLFU
+ * eviction. New entries go into a small window
+ * evicted least-recently-used first; an entry
+ * leaving the window is admitted to the main
+ * region only if it has been looked up more often
+ * than the entry the main region would evict for
+ * it, so a burst of n-grams seen once cannot flush
+ * the frequent ones. The main region is a segmented
+ * LRU: entries hit again move from its probation
+ * part to its protected part. How often each n-gram
+ * was looked up is estimated by a count-min sketch
+ * of 4-bit counters, halved periodically so old
+ * lookups count for less.
+ * It is split into independently locked segments
+ * so concurrent lookups rarely contend, and it
+ * tracks its hit and miss counts.
+ *
+ * @author David Olorundare
+ *
+ */
+public class ProbabilityCache
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the number of independently locked segments the cache is split into.
+	private static final int SEGMENT_COUNT = 16;
+
+	// Represents the percentage of the capacity of a segment given to its window.
+	private static final int WINDOW_PERCENT = 1;
+
+	// Represents the percentage of the main region of a segment given to its protected part.
+	private static final int PROTECTED_PERCENT = 80;
+
+	// Represents the segments holding the cached log probabilities.
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+	// Represents the number of lookups that found a cached log probability.
+	private final AtomicLong hits = new AtomicLong();
+
+	// Represents the number of lookups that did not find a cached log probability.
+	private final AtomicLong misses = new AtomicLong();
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 * @param maximumSize	the maximum number of log probabilities held by the cache.
+	 *
+	 */
+	public ProbabilityCache(int maximumSize)
+	{
+		if (maximumSize <= 0) { throw new IllegalArgumentException("The probability cache size must be positive: " + maximumSize); }
+
+		// Spread the capacity over the segments, giving every segment room for at least one entry.
+		int segmentSize = Math.max(1, (maximumSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+		for (int index = 0; index < SEGMENT_COUNT; index++) { segments[index] = new Segment(segmentSize); }
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the cached
+	 * log probability of the given n-gram.
+	 *
+	 * @param ngram	the n-gram whose log probability is looked up.
+	 *
+	 * @return	the cached log probability, or null if it is not in the cache.
+	 *
+	 */
+	public Float get(String ngram)
+	{
+		Segment segment = segmentFor(ngram);
+		Float logProbability;
+		synchronized (segment) { logProbability = segment.get(ngram); }
+
+		if (logProbability == null) { misses.incrementAndGet(); }
+		else { hits.incrementAndGet(); }
+		return logProbability;
+	}
+
+
+	/**
+	 * Helper method that stores the log probability
+	 * of the given n-gram in the window of its segment;
+	 * if the window is full, its least-recently-used
+	 * entry is either admitted to the main region or
+	 * dropped.
+	 *
+	 * @param ngram	the n-gram whose log probability is stored.
+	 *
+	 * @param logProbability	the log probability of the n-gram.
+	 *
+	 */
+	public void put(String ngram, float logProbability)
+	{
+		Segment segment = segmentFor(ngram);
+		synchronized (segment) { segment.put(ngram, logProbability); }
+	}
+
+
+	/**
+	 * Helper method that returns the number of lookups that hit the cache.
+	 *
+	 * @return	the number of cache hits.
+	 */
+	public long getHitCount()
+	{ return hits.get(); }
+
+
+	/**
+	 * Helper method that returns the number of lookups that missed the cache.
+	 *
+	 * @return	the number of cache misses.
+	 */
+	public long getMissCount()
+	{ return misses.get(); }
+
+
+	/**
+	 * Helper method that returns the fraction of lookups that hit the cache.
+	 *
+	 * @return	the cache hit rate, or 0 if no lookups have been made.
+	 */
+	public float getHitRate()
+	{
+		long lookups = getHitCount() + getMissCount();
+		return (lookups == 0) ? 0 : (float) getHitCount() / lookups;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the segment
+	 * responsible for the given n-gram.
+	 *
+	 * @param ngram	the n-gram whose segment is returned.
+	 *
+	 * @return	the segment holding the n-gram.
+	 */
+	private Segment segmentFor(String ngram)
+	{
+		int hash = ngram.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[hash & (SEGMENT_COUNT - 1)];
+	}
+
+
+	/**
+	 * This class is one segment of the cache: a
+	 * window and a main region made of a probation
+	 * and a protected part, each an access-ordered
+	 * map, and the frequency sketch deciding which
+	 * entries leaving the window are admitted.
+	 *
+	 */
+	private static final class Segment
+	{
+		// Represents the entries most recently added, least-recently-used first.
+		private final LinkedHashMap<String, Float> window = new LinkedHashMap<String, Float>(16, 0.75f, true);
+
+		// Represents the entries of the main region hit only once since they were admitted, least-recently-used first.
+		private final LinkedHashMap<String, Float> probation = new LinkedHashMap<String, Float>(16, 0.75f, true);
+
+		// Represents the entries of the main region hit again since they were admitted, least-recently-used first.
+		private final LinkedHashMap<String, Float> protectedEntries = new LinkedHashMap<String, Float>(16, 0.75f, true);
+
+		// Represents the estimated number of recent lookups of each n-gram.
+		private final FrequencySketch sketch;
+
+		// Represents the maximum number of entries held by the window.
+		private final int windowCapacity;
+
+		// Represents the maximum number of entries held by the main region.
+		private final int mainCapacity;
+
+		// Represents the maximum number of entries held by the protected part of the main region.
+		private final int protectedCapacity;
+
+		Segment(int segmentCapacity)
+		{
+			windowCapacity = Math.max(1, segmentCapacity * WINDOW_PERCENT / 100);
+			mainCapacity = segmentCapacity - windowCapacity;
+			protectedCapacity = mainCapacity * PROTECTED_PERCENT / 100;
+			sketch = new FrequencySketch(segmentCapacity);
+		}
+
+		Float get(String ngram)
+		{
+			sketch.increment(ngram.hashCode());
+			Float logProbability = window.get(ngram);
+			if (logProbability != null) { return logProbability; }
+			logProbability = protectedEntries.get(ngram);
+			if (logProbability != null) { return logProbability; }
+
+			// A second hit in the main region promotes the entry, demoting the eldest protected entry if that part is full.
+			logProbability = probation.remove(ngram);
+			if (logProbability != null)
+			{
+				protectedEntries.put(ngram, logProbability);
+				if (protectedEntries.size() > protectedCapacity)
+				{
+					Map.Entry<String, Float> demoted = eldest(protectedEntries);
+					protectedEntries.remove(demoted.getKey());
+					probation.put(demoted.getKey(), demoted.getValue());
+				}
+			}
+			return logProbability;
+		}
+
+		void put(String ngram, float logProbability)
+		{
+			if (window.containsKey(ngram)) { window.put(ngram, logProbability); return; }
+			if (probation.containsKey(ngram)) { probation.put(ngram, logProbability); return; }
+			if (protectedEntries.containsKey(ngram)) { protectedEntries.put(ngram, logProbability); return; }
+
+			window.put(ngram, logProbability);
+			if (window.size() <= windowCapacity) { return; }
+			Map.Entry<String, Float> candidate = eldest(window);
+			window.remove(candidate.getKey());
+			if (mainCapacity == 0) { return; }
+			if (probation.size() + protectedEntries.size() < mainCapacity) { probation.put(candidate.getKey(), candidate.getValue()); return; }
+
+			// The main region is full: the candidate replaces the entry it would evict only if it was looked up more often.
+			LinkedHashMap<String, Float> victims = probation.isEmpty() ? protectedEntries : probation;
+			String victim = eldest(victims).getKey();
+			if (sketch.frequency(candidate.getKey().hashCode()) > sketch.frequency(victim.hashCode()))
+			{
+				victims.remove(victim);
+				probation.put(candidate.getKey(), candidate.getValue());
+			}
+		}
+
+		private static Map.Entry<String, Float> eldest(LinkedHashMap<String, Float> entries)
+		{ return entries.entrySet().iterator().next(); }
+	}
+
+
+	/**
+	 * This class is a count-min sketch estimating how
+	 * often each n-gram was looked up: four 4-bit
+	 * counters per n-gram, picked by four hashes from
+	 * a table of longs holding sixteen counters each,
+	 * the smallest of which is the estimate. Once
+	 * ten times as many lookups as the segment holds
+	 * entries have been counted, every counter is
+	 * halved, so the estimates follow recent lookups.
+	 *
+	 */
+	private static final class FrequencySketch
+	{
+		// Represents the seeds of the four hashes picking the counters of an n-gram.
+		private static final int[] SEEDS = { 0x97cb3127, 0xe4f3d1a5, 0x2f19a6b3, 0x7ed55d16 };
+
+		// Represents the largest value a counter holds.
+		private static final int MAXIMUM_COUNT = 15;
+
+		// Represents the counters, sixteen to a long.
+		private final long[] table;
+
+		// Represents the number of counted lookups after which every counter is halved.
+		private final int sampleSize;
+
+		// Represents the number of lookups counted since the counters were last halved.
+		private int additions = 0;
+
+		FrequencySketch(int capacity)
+		{
+			int size = Integer.highestOneBit(Math.max(8, capacity) - 1) << 1;
+			table = new long[size];
+			sampleSize = 10 * Math.max(8, capacity);
+		}
+
+		int frequency(int hash)
+		{
+			int frequency = MAXIMUM_COUNT;
+			for (int depth = 0; depth < SEEDS.length; depth++)
+			{
+				int counterHash = counterHash(hash, depth);
+				frequency = Math.min(frequency, (int) ((table[index(counterHash)] >>> shift(counterHash)) & MAXIMUM_COUNT));
+			}
+			return frequency;
+		}
+
+		void increment(int hash)
+		{
+			boolean added = false;
+			for (int depth = 0; depth < SEEDS.length; depth++)
+			{
+				int counterHash = counterHash(hash, depth);
+				int index = index(counterHash), shift = shift(counterHash);
+				if (((table[index] >>> shift) & MAXIMUM_COUNT) < MAXIMUM_COUNT) { table[index] += 1L << shift; added = true; }
+			}
+			if (added && ++additions == sampleSize) { halve(); }
+		}
+
+		private void halve()
+		{
+			for (int index = 0; index < table.length; index++) { table[index] = (table[index] >>> 1) & 0x7777777777777777L; }
+			additions /= 2;
+		}
+
+		private static int counterHash(int hash, int depth)
+		{
+			int counterHash = hash * SEEDS[depth];
+			return counterHash ^ (counterHash >>> 17);
+		}
+
+		private int index(int counterHash)
+		{ return (counterHash >>> 4) & (table.length - 1); }
+
+		private static int shift(int counterHash)
+		{ return (counterHash & 15) << 2; }
+	}
+
+}
@@ -0,0 +1,149 @@
+package languagemodel.structures;
+
+import java.util.Arrays;
+
+
+/**
+ * This class represents a codebook used to
+ * quantize the log probabilities of a language
+ * model into 8- or 16-bit codes.
+ * The codebook is built by binning the sorted log
+ * probabilities of the model into bins holding
+ * roughly equal numbers of values; each code stands
+ * for the mean of the values in its bin. If the model
+ * has no more distinct values than there are codes,
+ * every value gets its own code and nothing is lost.
+ *
+ * @author David Olorundare
+ *
+ */
+public class ProbabilityCodebook
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the number of bits in a code.
+	private final int bits;
+
+	// Represents the log probability each code stands for, in increasing order.
+	private final float[] centers;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which builds the
+	 * codebook from the log probabilities of a model.
+	 *
+	 * @param logProbabilities	the log probabilities the codebook is built from.
+	 *
+	 * @param codeBits	the number of bits in a code, either 8 or 16.
+	 *
+	 */
+	public ProbabilityCodebook(float[] logProbabilities, int codeBits)
+	{
+		if (codeBits != 8 && codeBits != 16) { throw new IllegalArgumentException("Probabilities can only be quantized to 8 or 16 bits: " + codeBits); }
+		bits = codeBits;
+
+		float[] values = logProbabilities.clone();
+		Arrays.sort(values);
+		int codeCount = 1 << codeBits;
+
+		// Count the distinct values; if they all fit, each one gets its own code.
+		int distinctCount = 0;
+		for (int index = 0; index < values.length; index++)
+		{
+			if (index == 0 || values[index] != values[index - 1]) { distinctCount++; }
+		}
+		if (distinctCount <= codeCount)
+		{
+			float[] distinctValues = new float[Math.max(1, distinctCount)];
+			int position = 0;
+			for (int index = 0; index < values.length; index++)
+			{
+				if (index == 0 || values[index] != values[index - 1]) { distinctValues[position++] = values[index]; }
+			}
+			centers = distinctValues;
+			return;
+		}
+
+		// Otherwise fill each bin with an equal share of the values, never splitting a run of equal values.
+		float[] binCenters = new float[codeCount];
+		int binCount = 0;
+		int start = 0;
+		while (start < values.length)
+		{
+			int remainingBins = codeCount - binCount;
+			int end = start + Math.max(1, (values.length - start) / remainingBins);
+			if (remainingBins == 1) { end = values.length; }
+			while (end < values.length && values[end] == values[end - 1]) { end++; }
+
+			double sum = 0;
+			for (int index = start; index < end; index++) { sum += values[index]; }
+			binCenters[binCount++] = (float) (sum / (end - start));
+			start = end;
+		}
+		centers = Arrays.copyOf(binCenters, binCount);
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the code of the
+	 * center nearest to the given log probability.
+	 *
+	 * @param logProbability	the log probability to be quantized.
+	 *
+	 * @return	the code of the log probability.
+	 */
+	public int encode(float logProbability)
+	{
+		int position = Arrays.binarySearch(centers, logProbability);
+		if (position >= 0) { return position; }
+
+		// Pick whichever of the neighbouring centers lies closer.
+		int above = -position - 1;
+		if (above == 0) { return 0; }
+		if (above == centers.length) { return centers.length - 1; }
+		return (logProbability - centers[above - 1] <= centers[above] - logProbability) ? above - 1 : above;
+	}
+
+
+	/**
+	 * Helper method that returns the log probability a code stands for.
+	 *
+	 * @param code	the code to be decoded.
+	 *
+	 * @return	the log probability of the code.
+	 */
+	public float decode(int code)
+	{ return centers[code]; }
+
+
+	/**
+	 * Helper method that returns the number of bits in a code.
+	 *
+	 * @return	the number of bits in a code.
+	 */
+	public int getBits()
+	{ return bits; }
+
+
+	/**
+	 * Helper method that returns the number of codes in use.
+	 *
+	 * @return	the number of codes in use.
+	 */
+	public int size()
+	{ return centers.length; }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+	// No Private Methods.
+
+}
@@ -0,0 +1,433 @@
+package languagemodel.structures;
+
+import java.nio.charset.Charset;
+import languagemodel.compute.LanguageRandomGenerator;
+
+
+/**
+ * This is an immutable storage class for the settings
+ * of one run of the program: the datasets, the operations
+ * performed on the language models, and the options that
+ * tune how they are built and evaluated. It is created
+ * through its Builder, which checks every setting when
+ * the configuration is built, so an invalid setting is
+ * reported before any dataset is read. A setting of 0
+ * (or false, or null) disables its operation.
+ *
+ * @author David Olorundare
+ *
+ */
+public final class RunConfiguration
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the configuration with every setting left at its default.
+	public static final RunConfiguration DEFAULT = new Builder().build();
+
+	// Represents the filepath of the training dataset.
+	private final String trainDataFilePath;
+
+	// Represents the filepath of the test dataset, directory or glob pattern.
+	private final String testDataFilePath;
+
+	// Represents the filepath of the output file, or of the output directory in batch mode.
+	private final String outputFilePath;
+
+	// Represents a variable that determines if the perplexity of the test dataset is computed.
+	private final boolean perplexity;
+
+	// Represents a variable that determines if Laplace smoothing is applied to the bigram model.
+	private final boolean smoothing;
+
+	// Represents the number of random sentences generated, or 0 if random-sentence generation is disabled.
+	private final int generatedSentences;
+
+	// Represents the largest number of words in a randomly generated sentence.
+	private final int generatorMaxLength;
+
+	// Represents the time budget of the randomly generated sentences, in milliseconds.
+	private final int generatorTimeBudget;
+
+	// Represents the memory budget of bigram counting in megabytes, or 0 if bigrams are counted in memory.
+	private final int memoryBudget;
+
+	// Represents the number of lazily computed log probabilities cached, or 0 if they are computed up front.
+	private final int probabilityCacheSize;
+
+	// Represents the number of sentences whose scores are cached, or 0 if the sentence cache is disabled.
+	private final int sentenceCacheSize;
+
+	// Represents a variable that determines if the language models are kept outside the Java heap.
+	private final boolean offHeap;
+
+	// Represents the number of bits (8 or 16) stored log probabilities are quantized to, or 0 if they are stored exactly.
+	private final int quantizationBits;
+
+	// Represents the charset the datasets are read with, or null if it is detected for each file.
+	private final Charset inputCharset;
+
+	// Represents the number of tokenizer threads (or of files evaluated at a time in batch mode), or 0 if counting is not pipelined.
+	private final int threads;
+
+	// Represents a variable that determines if the tokenized datasets are written as compiled corpora.
+	private final boolean compile;
+
+	// Represents a variable that determines if unigrams are counted from the whitespace words scored, rather than from the CoreNLP tokens.
+	private final boolean whitespaceUnigrams;
+
+	// Represents the largest bigram count cutoff of the model variants evaluated, or 0 if no variants are evaluated.
+	private final int largestCountCutoff;
+
+	// Represents the filepath of the held-out dataset the smoothing hyperparameters are tuned on, or null if they are not tuned.
+	private final String heldOutDataFilePath;
+
+	// Represents the width of the beam searched for the most likely sentences, or 0 if beam search is disabled.
+	private final int beamWidth;
+
+	// Represents the filepath the language models are written to as an ARPA file, or null if they are not written.
+	private final String arpaOutputFilePath;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which copies
+	 * the settings of a builder.
+	 *
+	 * @param builder	the builder holding the settings.
+	 *
+	 */
+	private RunConfiguration(Builder builder)
+	{
+		trainDataFilePath = builder.trainDataFilePath;
+		testDataFilePath = builder.testDataFilePath;
+		outputFilePath = builder.outputFilePath;
+		perplexity = builder.perplexity;
+		smoothing = builder.smoothing;
+		generatedSentences = builder.generatedSentences;
+		generatorMaxLength = builder.generatorMaxLength;
+		generatorTimeBudget = builder.generatorTimeBudget;
+		memoryBudget = builder.memoryBudget;
+		probabilityCacheSize = builder.probabilityCacheSize;
+		sentenceCacheSize = builder.sentenceCacheSize;
+		offHeap = builder.offHeap;
+		quantizationBits = builder.quantizationBits;
+		inputCharset = builder.inputCharset;
+		threads = builder.threads;
+		compile = builder.compile;
+		whitespaceUnigrams = builder.whitespaceUnigrams;
+		largestCountCutoff = builder.largestCountCutoff;
+		heldOutDataFilePath = builder.heldOutDataFilePath;
+		beamWidth = builder.beamWidth;
+		arpaOutputFilePath = builder.arpaOutputFilePath;
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns a builder holding
+	 * the settings of this configuration, so a
+	 * changed copy of it can be built.
+	 *
+	 * @return	a new builder holding these settings.
+	 */
+	public Builder toBuilder()
+	{ return new Builder(this); }
+
+
+	/** @return	the filepath of the training dataset, or null if none was given. */
+	public String getTrainDataFilePath()
+	{ return trainDataFilePath; }
+
+
+	/** @return	the filepath of the test dataset, directory or glob pattern, or null if none was given. */
+	public String getTestDataFilePath()
+	{ return testDataFilePath; }
+
+
+	/** @return	the filepath of the output file (or directory in batch mode), or null if none was given. */
+	public String getOutputFilePath()
+	{ return outputFilePath; }
+
+
+	/** @return	true if the perplexity of the test dataset is computed. */
+	public boolean isPerplexity()
+	{ return perplexity; }
+
+
+	/** @return	true if Laplace smoothing is applied to the bigram model. */
+	public boolean isSmoothing()
+	{ return smoothing; }
+
+
+	/** @return	the number of random sentences generated, or 0 if random-sentence generation is disabled. */
+	public int getGeneratedSentences()
+	{ return generatedSentences; }
+
+
+	/** @return	the largest number of words in a randomly generated sentence. */
+	public int getGeneratorMaxLength()
+	{ return generatorMaxLength; }
+
+
+	/** @return	the time budget of the randomly generated sentences, in milliseconds. */
+	public int getGeneratorTimeBudget()
+	{ return generatorTimeBudget; }
+
+
+	/** @return	the memory budget of bigram counting in megabytes, or 0 if bigrams are counted in memory. */
+	public int getMemoryBudget()
+	{ return memoryBudget; }
+
+
+	/** @return	true if log probabilities are computed on first lookup instead of up front. */
+	public boolean isLazyProbabilities()
+	{ return probabilityCacheSize > 0; }
+
+
+	/** @return	the number of lazily computed log probabilities cached, or 0 if they are computed up front. */
+	public int getProbabilityCacheSize()
+	{ return probabilityCacheSize; }
+
+
+	/** @return	the number of sentences whose scores are cached, or 0 if the sentence cache is disabled. */
+	public int getSentenceCacheSize()
+	{ return sentenceCacheSize; }
+
+
+	/** @return	true if the language models are kept outside the Java heap. */
+	public boolean isOffHeap()
+	{ return offHeap; }
+
+
+	/** @return	the number of bits (8 or 16) stored log probabilities are quantized to, or 0 if they are stored exactly. */
+	public int getQuantizationBits()
+	{ return quantizationBits; }
+
+
+	/** @return	the charset the datasets are read with, or null if it is detected for each file. */
+	public Charset getInputCharset()
+	{ return inputCharset; }
+
+
+	/** @return	the number of tokenizer threads (or of files evaluated at a time in batch mode), or 0 if none was given. */
+	public int getThreads()
+	{ return threads; }
+
+
+	/** @return	true if the tokenized datasets are written as compiled corpora. */
+	public boolean isCompile()
+	{ return compile; }
+
+
+	/** @return	true if unigrams are counted from the whitespace words scored, rather than from the CoreNLP tokens. */
+	public boolean isWhitespaceUnigrams()
+	{ return whitespaceUnigrams; }
+
+
+	/** @return	the largest bigram count cutoff of the model variants evaluated, or 0 if no variants are evaluated. */
+	public int getLargestCountCutoff()
+	{ return largestCountCutoff; }
+
+
+	/** @return	the filepath of the held-out dataset the smoothing hyperparameters are tuned on, or null if they are not tuned. */
+	public String getHeldOutDataFilePath()
+	{ return heldOutDataFilePath; }
+
+
+	/** @return	the width of the beam searched for the most likely sentences, or 0 if beam search is disabled. */
+	public int getBeamWidth()
+	{ return beamWidth; }
+
+
+	/** @return	the filepath the language models are written to as an ARPA file, or null if they are not written. */
+	public String getArpaOutputFilePath()
+	{ return arpaOutputFilePath; }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+	// No Private Methods
+
+
+
+	/**
+	 * This class gathers the settings of a run
+	 * configuration one at a time, and checks them
+	 * all when the configuration is built.
+	 *
+	 * @author David Olorundare
+	 *
+	 */
+	public static final class Builder
+	{
+
+		//============================================ PRIVATE VARIABLES =============================================================
+
+
+		// Represent the settings gathered so far, each as described by the matching field of the configuration.
+		private String trainDataFilePath;
+		private String testDataFilePath;
+		private String outputFilePath;
+		private boolean perplexity = false;
+		private boolean smoothing = false;
+		private int generatedSentences = 0;
+		private int generatorMaxLength = LanguageRandomGenerator.DEFAULT_MAX_LENGTH;
+		private int generatorTimeBudget = LanguageRandomGenerator.DEFAULT_TIME_BUDGET;
+		private int memoryBudget = 0;
+		private int probabilityCacheSize = 0;
+		private int sentenceCacheSize = 0;
+		private boolean offHeap = false;
+		private int quantizationBits = 0;
+		private Charset inputCharset;
+		private int threads = 0;
+		private boolean compile = false;
+		private boolean whitespaceUnigrams = false;
+		private int largestCountCutoff = 0;
+		private String heldOutDataFilePath;
+		private int beamWidth = 0;
+		private String arpaOutputFilePath;
+
+
+		//============================================ CONSTRUCTOR =============================================================
+
+
+		/**
+		 * Constructor of the class, which starts
+		 * with every setting at its default.
+		 */
+		public Builder()
+		{ }
+
+
+		/**
+		 * Constructor of the class, which starts
+		 * with the settings of a configuration.
+		 *
+		 * @param configuration	the configuration whose settings are copied.
+		 *
+		 */
+		public Builder(RunConfiguration configuration)
+		{
+			trainDataFilePath = configuration.trainDataFilePath;
+			testDataFilePath = configuration.testDataFilePath;
+			outputFilePath = configuration.outputFilePath;
+			perplexity = configuration.perplexity;
+			smoothing = configuration.smoothing;
+			generatedSentences = configuration.generatedSentences;
+			generatorMaxLength = configuration.generatorMaxLength;
+			generatorTimeBudget = configuration.generatorTimeBudget;
+			memoryBudget = configuration.memoryBudget;
+			probabilityCacheSize = configuration.probabilityCacheSize;
+			sentenceCacheSize = configuration.sentenceCacheSize;
+			offHeap = configuration.offHeap;
+			quantizationBits = configuration.quantizationBits;
+			inputCharset = configuration.inputCharset;
+			threads = configuration.threads;
+			compile = configuration.compile;
+			whitespaceUnigrams = configuration.whitespaceUnigrams;
+			largestCountCutoff = configuration.largestCountCutoff;
+			heldOutDataFilePath = configuration.heldOutDataFilePath;
+			beamWidth = configuration.beamWidth;
+			arpaOutputFilePath = configuration.arpaOutputFilePath;
+		}
+
+
+		//============================================ PUBLIC METHODS =============================================================
+
+
+		// Each setter sets one setting, and returns the builder so the setters can be chained.
+		public Builder setTrainDataFilePath(String filePath) { trainDataFilePath = filePath; return this; }
+
+		public Builder setTestDataFilePath(String filePath) { testDataFilePath = filePath; return this; }
+
+		public Builder setOutputFilePath(String filePath) { outputFilePath = filePath; return this; }
+
+		public Builder setPerplexity(boolean value) { perplexity = value; return this; }
+
+		public Builder setSmoothing(boolean value) { smoothing = value; return this; }
+
+		public Builder setGeneratedSentences(int value) { generatedSentences = value; return this; }
+
+		public Builder setGeneratorMaxLength(int value) { generatorMaxLength = value; return this; }
+
+		public Builder setGeneratorTimeBudget(int value) { generatorTimeBudget = value; return this; }
+
+		public Builder setMemoryBudget(int value) { memoryBudget = value; return this; }
+
+		public Builder setProbabilityCacheSize(int value) { probabilityCacheSize = value; return this; }
+
+		public Builder setSentenceCacheSize(int value) { sentenceCacheSize = value; return this; }
+
+		public Builder setOffHeap(boolean value) { offHeap = value; return this; }
+
+		public Builder setQuantizationBits(int value) { quantizationBits = value; return this; }
+
+		public Builder setInputCharset(Charset value) { inputCharset = value; return this; }
+
+		public Builder setThreads(int value) { threads = value; return this; }
+
+		public Builder setCompile(boolean value) { compile = value; return this; }
+
+		public Builder setWhitespaceUnigrams(boolean value) { whitespaceUnigrams = value; return this; }
+
+		public Builder setLargestCountCutoff(int value) { largestCountCutoff = value; return this; }
+
+		public Builder setHeldOutDataFilePath(String filePath) { heldOutDataFilePath = filePath; return this; }
+
+		public Builder setBeamWidth(int value) { beamWidth = value; return this; }
+
+		public Builder setArpaOutputFilePath(String filePath) { arpaOutputFilePath = filePath; return this; }
+
+
+		/**
+		 * Helper method that checks the settings
+		 * and builds the configuration holding them.
+		 *
+		 * @return	the new configuration.
+		 *
+		 * @throws IllegalArgumentException	if a setting is out of its range, or settings that cannot be combined are.
+		 */
+		public RunConfiguration build()
+		{
+			requireAtLeast("number of generated sentences", generatedSentences, 0);
+			requireAtLeast("largest sentence length", generatorMaxLength, 1);
+			requireAtLeast("generation time budget", generatorTimeBudget, 0);
+			requireAtLeast("counting memory budget", memoryBudget, 0);
+			requireAtLeast("probability cache size", probabilityCacheSize, 0);
+			requireAtLeast("sentence cache size", sentenceCacheSize, 0);
+			requireAtLeast("number of threads", threads, 0);
+			requireAtLeast("largest count cutoff", largestCountCutoff, 0);
+			requireAtLeast("beam width", beamWidth, 0);
+			if (quantizationBits != 0 && quantizationBits != 8 && quantizationBits != 16)
+			{ throw new IllegalArgumentException("Probabilities can only be quantized to 8 or 16 bits, not " + quantizationBits + "."); }
+			// A quantized store keeps no bigram counts, so lazy probabilities would have nothing to compute from.
+			if (quantizationBits > 0 && probabilityCacheSize > 0)
+			{ throw new IllegalArgumentException("Quantized probabilities cannot be combined with lazy probabilities, which are computed from the bigram counts a quantized store does not keep."); }
+			// Counts kept within a memory budget go straight from disk into the model store, but variants and tuning need them all in memory.
+			if (memoryBudget > 0 && (largestCountCutoff > 0 || heldOutDataFilePath != null))
+			{ throw new IllegalArgumentException("A counting memory budget cannot be combined with model variants or hyperparameter tuning, which need every bigram count in memory."); }
+			return new RunConfiguration(this);
+		}
+
+
+		//============================================ PRIVATE METHODS =============================================================
+
+
+		/**
+		 * Helper method that checks a setting
+		 * is not below its smallest value.
+		 */
+		private static void requireAtLeast(String name, int value, int smallest)
+		{
+			if (value < smallest) { throw new IllegalArgumentException("The " + name + " must be at least " + smallest + ", not " + value + "."); }
+		}
+
+	}
+
+}
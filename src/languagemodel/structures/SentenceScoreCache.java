@@ -0,0 +1,245 @@
+package languagemodel.structures;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * This class is a bounded cache of the scores of
+ * sentences that have already been evaluated, so
+ * repeated sentences are not tokenized and scored
+ * again.
+ * Sentences are keyed by a hash of their normalized
+ * text, and the least-recently-used entries are
+ * evicted once the cache is full. Every entry is
+ * tied to the language model it was scored against,
+ * so the cache must be invalidated when the model changes.
+ *
+ * @author David Olorundare
+ *
+ */
+public class SentenceScoreCache
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the FNV-1a 64-bit offset basis used in hashing sentences.
+	private static final long HASH_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	// Represents the FNV-1a 64-bit prime used in hashing sentences.
+	private static final long HASH_PRIME = 0x100000001b3L;
+
+	// Represents the cached sentences, keyed by the hash of their normalized text.
+	private final LinkedHashMap<Long, Entry> entries;
+
+	// Represents the number of lookups that found a cached sentence.
+	private long hits = 0;
+
+	// Represents the number of lookups that did not find a cached sentence.
+	private long misses = 0;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 * @param maximumSize	the maximum number of sentences held by the cache.
+	 *
+	 */
+	public SentenceScoreCache(final int maximumSize)
+	{
+		if (maximumSize <= 0) { throw new IllegalArgumentException("The sentence cache size must be positive: " + maximumSize); }
+
+		entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, SentenceScoreCache.Entry> eldest) { return size() > maximumSize; }
+		};
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the cached entry
+	 * of a sentence.
+	 *
+	 * @param sentence	the sentence to look up.
+	 *
+	 * @return	the cached entry of the sentence, or null if it is not in the cache.
+	 */
+	public synchronized Entry get(String sentence)
+	{
+		String normalizedSentence = normalize(sentence);
+		Entry entry = entries.get(hash(normalizedSentence));
+
+		// Guard against two different sentences sharing a hash.
+		if (entry != null && !entry.sentence.equals(normalizedSentence)) { entry = null; }
+
+		if (entry == null) { misses++; }
+		else { hits++; }
+		return entry;
+	}
+
+
+	/**
+	 * Helper method that stores the scores of a
+	 * sentence, evicting the least-recently-used
+	 * sentence if the cache is full.
+	 *
+	 * @param sentence	the sentence to be stored.
+	 *
+	 * @param scores	the scores computed for the sentence.
+	 *
+	 * @return	the new entry of the sentence.
+	 */
+	public synchronized Entry put(String sentence, float[] scores)
+	{
+		String normalizedSentence = normalize(sentence);
+		Entry entry = new Entry(normalizedSentence, scores);
+		entries.put(hash(normalizedSentence), entry);
+		return entry;
+	}
+
+
+	/**
+	 * Helper method that removes every sentence
+	 * from the cache. It must be called whenever
+	 * the language model the cached scores were
+	 * computed with changes.
+	 *
+	 */
+	public synchronized void invalidate()
+	{
+		entries.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+
+	/**
+	 * Helper method that returns the number of lookups that hit the cache.
+	 *
+	 * @return	the number of cache hits.
+	 */
+	public synchronized long getHitCount()
+	{ return hits; }
+
+
+	/**
+	 * Helper method that returns the number of lookups that missed the cache.
+	 *
+	 * @return	the number of cache misses.
+	 */
+	public synchronized long getMissCount()
+	{ return misses; }
+
+
+	/**
+	 * Helper method that returns the fraction of lookups that hit the cache.
+	 *
+	 * @return	the cache hit rate, or 0 if no lookups have been made.
+	 */
+	public synchronized float getHitRate()
+	{ return (hits + misses == 0) ? 0 : (float) hits / (hits + misses); }
+
+
+	/**
+	 * Helper method that normalizes a sentence so
+	 * that sentences scored the same share a cache
+	 * entry. Only the characters the scorer splits
+	 * words at count as whitespace (other Unicode
+	 * spaces are part of a word). Leading whitespace
+	 * is dropped, and every other run of it becomes a
+	 * single space; a trailing run is kept, since it
+	 * stops a final full stop being split off its word.
+	 * A run holding two or more line breaks becomes
+	 * two line breaks instead, since CoreNLP always
+	 * splits sentences there when a whole text is
+	 * scored.
+	 *
+	 * @param sentence	the sentence to be normalized.
+	 *
+	 * @return	the normalized sentence.
+	 */
+	public static String normalize(String sentence)
+	{
+		StringBuilder normalizedSentence = new StringBuilder(sentence.length());
+		int index = 0;
+		while (index < sentence.length())
+		{
+			char character = sentence.charAt(index);
+			if (!isWhitespace(character)) { normalizedSentence.append(character); index++; continue; }
+
+			int lineBreaks = 0;
+			for (; index < sentence.length() && isWhitespace(sentence.charAt(index)); index++)
+			{
+				// A carriage return followed by a line feed is one line break.
+				char space = sentence.charAt(index);
+				if (space != ' ' && space != '\t' && !(space == '\r' && index + 1 < sentence.length() && sentence.charAt(index + 1) == '\n')) { lineBreaks++; }
+			}
+			if (normalizedSentence.length() > 0) { normalizedSentence.append((lineBreaks > 1) ? "\n\n" : " "); }
+		}
+		return normalizedSentence.toString();
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns true if a character
+	 * separates words, matching the \s class of the
+	 * regular expression the n-gram split uses.
+	 */
+	private static boolean isWhitespace(char character)
+	{ return character == ' ' || character == '\t' || character == '\n' || character == '\u000B' || character == '\f' || character == '\r'; }
+
+
+	/**
+	 * Helper method that computes the 64-bit
+	 * FNV-1a hash of a normalized sentence.
+	 *
+	 * @param normalizedSentence	the sentence to be hashed.
+	 *
+	 * @return	the hash of the sentence.
+	 */
+	private static long hash(String normalizedSentence)
+	{
+		long hash = HASH_OFFSET_BASIS;
+		for (int index = 0; index < normalizedSentence.length(); index++)
+		{
+			hash ^= normalizedSentence.charAt(index);
+			hash *= HASH_PRIME;
+		}
+		return hash;
+	}
+
+
+	/**
+	 * This class represents one cached sentence:
+	 * its normalized text and scores.
+	 *
+	 */
+	public static final class Entry
+	{
+		// Represents the normalized text of the sentence.
+		public final String sentence;
+
+		// Represents the scores computed for the sentence.
+		public final float[] scores;
+
+		Entry(String normalizedSentence, float[] sentenceScores)
+		{
+			sentence = normalizedSentence;
+			scores = sentenceScores;
+		}
+	}
+
+}
@@ -0,0 +1,225 @@
+package languagemodel.structures;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * This class is a compact, read-only table of
+ * bigrams and their quantized log probabilities,
+ * laid out as sorted arrays rather than hashed slots.
+ * The bigrams are grouped by their first word: an
+ * offset per word marks where its run of second-word
+ * ids starts, each run is sorted so a bigram is found
+ * by binary search, and a parallel array holds the
+ * 8- or 16-bit codebook code of each bigram. Neither
+ * the first word nor a count is stored per bigram,
+ * so a bigram takes 5 or 6 bytes, where a slot of an
+ * NgramTable (kept at most half full) takes 13 or 14
+ * bytes and there are two to four slots per bigram.
+ * Like NgramTable, the arrays live in ByteBuffers, so
+ * the table can be kept outside the Java heap.
+ *
+ * @author David Olorundare
+ *
+ */
+public class SortedNgramTable
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents log2 of the number of bigrams held by each buffer of second-word ids and codes.
+	private static final int BUFFER_ENTRY_BITS = 28;
+
+	// Represents the codebook the log probabilities are quantized with.
+	private final ProbabilityCodebook codebook;
+
+	// Represents the number of bytes in one code.
+	private final int codeBytes;
+
+	// Represents the start of each word's run of bigrams, indexed by word id, followed by the number of bigrams.
+	private final int[] offsets;
+
+	// Represents the buffers holding the second-word id of every bigram, each run sorted by id.
+	private final ByteBuffer[] secondIds;
+
+	// Represents the buffers holding the code of the log probability of every bigram.
+	private final ByteBuffer[] codes;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which groups the
+	 * bigrams by their first word with a counting
+	 * sort, then sorts each run by second word.
+	 *
+	 * @param vocabularySize	the number of word ids.
+	 *
+	 * @param keys	the keys of the bigrams, as made by NgramTable.bigramKey; no key may occur twice.
+	 *
+	 * @param logProbabilities	the log probability of each bigram, in the order of the keys.
+	 *
+	 * @param size	the number of bigrams in the keys.
+	 *
+	 * @param direct	true if the table should be stored outside the Java heap.
+	 *
+	 * @param probabilityCodebook	the codebook the log probabilities are quantized with.
+	 *
+	 */
+	public SortedNgramTable(int vocabularySize, long[] keys, float[] logProbabilities, int size, boolean direct, ProbabilityCodebook probabilityCodebook)
+	{
+		codebook = probabilityCodebook;
+		codeBytes = codebook.getBits() / 8;
+
+		// Count the bigrams of each first word, then turn the counts into the start of each run.
+		offsets = new int[vocabularySize + 1];
+		for (int index = 0; index < size; index++) { offsets[(int) (keys[index] >>> 32) + 1]++; }
+		for (int id = 0; id < vocabularySize; id++) { offsets[id + 1] += offsets[id]; }
+
+		// Each bigram is sorted within its run as a long: its second-word id above its code.
+		long[] runs = new long[size];
+		int[] next = Arrays.copyOf(offsets, vocabularySize);
+		for (int index = 0; index < size; index++)
+		{
+			int firstId = (int) (keys[index] >>> 32);
+			runs[next[firstId]++] = ((keys[index] & 0xFFFFFFFFL) << 16) | codebook.encode(logProbabilities[index]);
+		}
+		for (int id = 0; id < vocabularySize; id++) { Arrays.sort(runs, offsets[id], offsets[id + 1]); }
+
+		secondIds = allocate(size, 4, direct);
+		codes = allocate(size, codeBytes, direct);
+		for (int index = 0; index < size; index++)
+		{
+			buffer(secondIds, index).putInt(offset(index, 4), (int) (runs[index] >>> 16));
+			int code = (int) (runs[index] & 0xFFFF);
+			if (codeBytes == 1) { buffer(codes, index).put(offset(index, 1), (byte) code); }
+			else { buffer(codes, index).putShort(offset(index, 2), (short) code); }
+		}
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that finds a bigram.
+	 *
+	 * @param firstId	the id of the first word of the bigram.
+	 *
+	 * @param secondId	the id of the second word of the bigram.
+	 *
+	 * @return	the index of the bigram, or -1 if it is not in the table.
+	 */
+	public int find(int firstId, int secondId)
+	{
+		if (firstId < 0 || firstId >= offsets.length - 1 || secondId < 0) { return -1; }
+
+		int low = offsets[firstId], high = offsets[firstId + 1] - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int id = getSecondId(middle);
+			if (id < secondId) { low = middle + 1; }
+			else if (id > secondId) { high = middle - 1; }
+			else { return middle; }
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Helper method that returns the index of the
+	 * first bigram starting with a word; the bigrams
+	 * starting with it run up to the first index of
+	 * the next word.
+	 *
+	 * @param firstId	the id of the first word, up to the vocabulary size.
+	 *
+	 * @return	the index of the first bigram starting with the word.
+	 */
+	public int getFirstIndex(int firstId)
+	{ return offsets[firstId]; }
+
+
+	/**
+	 * Helper method that returns the id of the
+	 * second word of a bigram.
+	 *
+	 * @param index	the index of the bigram.
+	 *
+	 * @return	the id of the second word of the bigram.
+	 */
+	public int getSecondId(int index)
+	{ return buffer(secondIds, index).getInt(offset(index, 4)); }
+
+
+	/**
+	 * Helper method that returns the log probability of a bigram.
+	 *
+	 * @param index	the index of the bigram.
+	 *
+	 * @return	the (quantized) log probability of the bigram.
+	 */
+	public float getLogProbability(int index)
+	{
+		if (codeBytes == 1) { return codebook.decode(buffer(codes, index).get(offset(index, 1)) & 0xFF); }
+		return codebook.decode(buffer(codes, index).getShort(offset(index, 2)) & 0xFFFF);
+	}
+
+
+	/**
+	 * Helper method that returns the number of bigrams in the table.
+	 *
+	 * @return	the number of bigrams in the table.
+	 */
+	public int size()
+	{ return offsets[offsets.length - 1]; }
+
+
+	/**
+	 * Helper method that returns the number of bytes occupied by the table.
+	 *
+	 * @return	the size of the table in bytes.
+	 */
+	public long byteSize()
+	{ return 4L * offsets.length + (4L + codeBytes) * size(); }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that allocates the buffers
+	 * holding a value of the given width for each
+	 * bigram, inside or outside the Java heap.
+	 */
+	private static ByteBuffer[] allocate(int size, int valueBytes, boolean direct)
+	{
+		int bufferEntries = 1 << BUFFER_ENTRY_BITS;
+		ByteBuffer[] buffers = new ByteBuffer[(int) Math.max(1, ((long) size + bufferEntries - 1) / bufferEntries)];
+		for (int index = 0; index < buffers.length; index++)
+		{
+			int bytes = Math.min(bufferEntries, size - index * bufferEntries) * valueBytes;
+			buffers[index] = direct ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+		}
+		return buffers;
+	}
+
+
+	/**
+	 * Helper method that returns the buffer holding the value of a bigram.
+	 */
+	private static ByteBuffer buffer(ByteBuffer[] buffers, int index)
+	{ return buffers[index >>> BUFFER_ENTRY_BITS]; }
+
+
+	/**
+	 * Helper method that returns the byte offset of the value of a bigram within its buffer.
+	 */
+	private static int offset(int index, int valueBytes)
+	{ return (index & ((1 << BUFFER_ENTRY_BITS) - 1)) * valueBytes; }
+
+}
@@ -0,0 +1,296 @@
+package languagemodel.structures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * This class indexes, for each word of a model
+ * store, the words that follow it in the bigram
+ * model, sorted by bigram probability, so the most
+ * likely next words after a history can be read off
+ * the front of its list instead of scanning every
+ * bigram. The lists are packed into flat arrays
+ * (one run per history word, found by offset), and
+ * the index never changes once built, so any number
+ * of threads may query it at the same time.
+ *
+ * When the history word has never been followed by
+ * another word, or by none starting with the typed
+ * prefix, suggestions back off to the words with the
+ * highest unigram probability. The </s> symbol is
+ * never suggested, though it stays in the successor
+ * runs sentence generation reads.
+ *
+ * @author David Olorundare
+ *
+ */
+public class SuccessorIndex
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the model store the index is built from.
+	private final ModelStore store;
+
+	// Represents each word of the vocabulary, indexed by word id.
+	private final String[] words;
+
+	// Represents the start of each word's successor run, indexed by word id, followed by the total number of successors.
+	private final int[] offsets;
+
+	// Represents the ids of the successors of every word, each run sorted by descending bigram probability.
+	private final int[] successorIds;
+
+	// Represents the bigram log probability of each successor.
+	private final float[] successorLogProbabilities;
+
+	// Represents the ids of the words seen as unigrams, sorted by descending unigram probability.
+	private final int[] unigramIds;
+
+	// Represents the id of the </s> symbol, which is never suggested.
+	private final int endId;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which walks the bigrams
+	 * of the store twice, to count and then group them
+	 * by their first word, then sorts each group by
+	 * probability.
+	 *
+	 * @param modelStore	the model store the index is built from.
+	 *
+	 */
+	SuccessorIndex(ModelStore modelStore)
+	{
+		store = modelStore;
+		int vocabularySize = store.getVocabularySize();
+		words = new String[vocabularySize];
+		for (int id = 0; id < vocabularySize; id++) { words[id] = store.getWord(id); }
+
+		// Count the successors of each word, then turn the counts into the start of each run.
+		offsets = new int[vocabularySize + 1];
+		store.forEachBigram(new ModelStore.BigramVisitor()
+		{
+			public void visit(int firstId, int secondId, float logProbability)
+			{ offsets[firstId + 1]++; }
+		});
+		for (int id = 0; id < vocabularySize; id++) { offsets[id + 1] += offsets[id]; }
+
+		// Each successor is sorted as a long: its negated log probability, made to compare as an int, above its id.
+		final long[] sortKeys = new long[offsets[vocabularySize]];
+		final int[] next = Arrays.copyOf(offsets, vocabularySize);
+		store.forEachBigram(new ModelStore.BigramVisitor()
+		{
+			public void visit(int firstId, int secondId, float logProbability)
+			{ sortKeys[next[firstId]++] = ((long) sortableBits(-logProbability) << 32) | (secondId & 0xFFFFFFFFL); }
+		});
+		for (int id = 0; id < vocabularySize; id++) { Arrays.sort(sortKeys, offsets[id], offsets[id + 1]); }
+
+		successorIds = new int[sortKeys.length];
+		successorLogProbabilities = new float[sortKeys.length];
+		for (int index = 0; index < sortKeys.length; index++)
+		{
+			successorIds[index] = (int) sortKeys[index];
+			successorLogProbabilities[index] = -Float.intBitsToFloat(sortableBits((int) (sortKeys[index] >> 32)));
+		}
+
+		// The unigram fallback leaves out the <s> and </s> symbols and words only seen within bigrams.
+		int startId = store.getId("<s>");
+		endId = store.getId("</s>");
+		long[] unigramKeys = new long[vocabularySize];
+		int unigrams = 0;
+		for (int id = 0; id < vocabularySize; id++)
+		{
+			if (id == startId || id == endId || store.getUnigramCount(id) == 0) { continue; }
+			unigramKeys[unigrams++] = ((long) sortableBits(-store.getUnigramLogProbability(id)) << 32) | id;
+		}
+		Arrays.sort(unigramKeys, 0, unigrams);
+		unigramIds = new int[unigrams];
+		for (int index = 0; index < unigrams; index++) { unigramIds[index] = (int) unigramKeys[index]; }
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that finds the most likely words
+	 * to follow a history, without allocating any
+	 * objects. Only the last word of the history is
+	 * used, since the model is a bigram model; an empty
+	 * history means the start of a sentence. If none of
+	 * the words following the history starts with the
+	 * prefix, the most likely unigrams are suggested.
+	 *
+	 * @param history	the text typed so far, before the word being predicted.
+	 *
+	 * @param prefix	the part of the next word typed so far, or null or empty to suggest any word.
+	 *
+	 * @param suggestions	receives the suggested words, most likely first; its length is the largest number returned.
+	 *
+	 * @param logProbabilities	receives the bigram (or, when backing off, unigram) log probability of each suggestion, or null if not needed.
+	 *
+	 * @return	the number of suggestions found.
+	 */
+	public int predictNext(CharSequence history, String prefix, String[] suggestions, float[] logProbabilities)
+	{
+		int historyId = lastWordId(history);
+		int found = 0;
+		if (historyId != Vocabulary.UNKNOWN_ID)
+		{
+			for (int index = offsets[historyId]; index < offsets[historyId + 1] && found < suggestions.length; index++)
+			{
+				if (successorIds[index] == endId) { continue; }
+				String word = words[successorIds[index]];
+				if (prefix != null && !word.startsWith(prefix)) { continue; }
+				if (logProbabilities != null) { logProbabilities[found] = successorLogProbabilities[index]; }
+				suggestions[found++] = word;
+			}
+			if (found > 0) { return found; }
+		}
+
+		for (int index = 0; index < unigramIds.length && found < suggestions.length; index++)
+		{
+			String word = words[unigramIds[index]];
+			if (prefix != null && !word.startsWith(prefix)) { continue; }
+			if (logProbabilities != null) { logProbabilities[found] = store.getUnigramLogProbability(unigramIds[index]); }
+			suggestions[found++] = word;
+		}
+		return found;
+	}
+
+
+	/**
+	 * Helper method that returns the most likely
+	 * words to follow a history.
+	 *
+	 * @param history	the text typed so far, before the word being predicted.
+	 *
+	 * @param prefix	the part of the next word typed so far, or null or empty to suggest any word.
+	 *
+	 * @param k	the largest number of suggestions returned.
+	 *
+	 * @return	the suggested words, most likely first.
+	 */
+	public List<String> predictNext(CharSequence history, String prefix, int k)
+	{
+		String[] suggestions = new String[k];
+		int found = predictNext(history, prefix, suggestions, null);
+		return new ArrayList<String>(Arrays.asList(suggestions).subList(0, found));
+	}
+
+
+	/**
+	 * Helper method that returns the number of successors of a word.
+	 *
+	 * @param word	the word whose successors are counted.
+	 *
+	 * @return	the number of distinct words that follow the word, 0 if it is not in the vocabulary.
+	 */
+	public int getSuccessorCount(CharSequence word)
+	{
+		int id = store.getId(word);
+		return (id == Vocabulary.UNKNOWN_ID) ? 0 : offsets[id + 1] - offsets[id];
+	}
+
+
+	/**
+	 * Helper method that returns where the successor
+	 * run of a word starts, for walking it directly.
+	 *
+	 * @param id	the id of the word.
+	 *
+	 * @return	the index of the word's most likely successor.
+	 */
+	public int getRunStart(int id)
+	{ return offsets[id]; }
+
+
+	/**
+	 * Helper method that returns where the successor
+	 * run of a word ends.
+	 *
+	 * @param id	the id of the word.
+	 *
+	 * @return	the index after the word's least likely successor.
+	 */
+	public int getRunEnd(int id)
+	{ return offsets[id + 1]; }
+
+
+	/**
+	 * Helper method that returns the word id of a successor.
+	 *
+	 * @param index	the index of the successor, within a run.
+	 *
+	 * @return	the id of the successor.
+	 */
+	public int getSuccessorId(int index)
+	{ return successorIds[index]; }
+
+
+	/**
+	 * Helper method that returns the bigram log probability of a successor.
+	 *
+	 * @param index	the index of the successor, within a run.
+	 *
+	 * @return	the log probability of the successor following the word whose run holds it.
+	 */
+	public float getSuccessorLogProbability(int index)
+	{ return successorLogProbabilities[index]; }
+
+
+	/**
+	 * Helper method that returns the word with the given id.
+	 *
+	 * @param id	the id of the word.
+	 *
+	 * @return	the word with the given id.
+	 */
+	public String getWord(int id)
+	{ return words[id]; }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the id of the last
+	 * whitespace-separated word of a history, or of
+	 * the <s> symbol if it has no words.
+	 */
+	private int lastWordId(CharSequence history)
+	{
+		int end = (history == null) ? 0 : history.length();
+		while (end > 0 && Character.isWhitespace(history.charAt(end - 1))) { end--; }
+		if (end == 0) { return store.getId("<s>"); }
+		int start = end;
+		while (start > 0 && !Character.isWhitespace(history.charAt(start - 1))) { start--; }
+		return store.getId(history, start, end);
+	}
+
+
+	/**
+	 * Helper method that converts a float into an
+	 * int that compares in the same order.
+	 */
+	private static int sortableBits(float value)
+	{
+		int bits = Float.floatToIntBits(value);
+		return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+	}
+
+
+	/**
+	 * Helper method that undoes sortableBits.
+	 */
+	private static int sortableBits(int bits)
+	{ return bits ^ ((bits >> 31) & 0x7FFFFFFF); }
+
+}
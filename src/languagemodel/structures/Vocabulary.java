@@ -0,0 +1,209 @@
+package languagemodel.structures;
+
+import java.util.ArrayList;
+
+
+/**
+ * This class represents the vocabulary of
+ * a language model, assigning each word type
+ * a dense integer id so sentences can be
+ * stored as token-id sequences.
+ * Words are found by a range of characters in
+ * an open-addressing table of ids, so looking
+ * a word up in a sentence copies nothing out of
+ * it; a String is only made for a word the first
+ * time it is added.
+ *
+ * @author David Olorundare
+ *
+ */
+public class Vocabulary
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the id given to words that are not in the vocabulary.
+	public static final int UNKNOWN_ID = -1;
+
+	// Represents the id of the word in each slot of the open-addressing table, plus one (0 marks an empty slot).
+	private int[] slotIds = new int[1 << 10];
+
+	// Represents the hash of the word in each slot, compared before the word itself.
+	private int[] slotHashes = new int[1 << 10];
+
+	// Represents the words in the vocabulary, indexed by their id.
+	private ArrayList<String> words = new ArrayList<String>();
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 */
+	public Vocabulary(){	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that adds a word to the
+	 * vocabulary, if it is not already present.
+	 *
+	 * @param word	the word to be added.
+	 *
+	 * @return	the id of the word.
+	 */
+	public int addWord(String word)
+	{ return addWord(word, 0, word.length()); }
+
+
+	/**
+	 * Helper method that adds the word spanning a
+	 * range of characters to the vocabulary, if it is
+	 * not already present. The range is only copied
+	 * out into a String when the word is new.
+	 *
+	 * @param text	the text holding the word.
+	 *
+	 * @param start	the index of the first character of the word.
+	 *
+	 * @param end	the index after the last character of the word.
+	 *
+	 * @return	the id of the word.
+	 */
+	public int addWord(CharSequence text, int start, int end)
+	{
+		int wordHash = hash(text, start, end);
+		int slot = findSlot(wordHash, text, start, end);
+		if (slotIds[slot] != 0) { return slotIds[slot] - 1; }
+
+		int id = words.size();
+		words.add(text.subSequence(start, end).toString());
+		slotIds[slot] = id + 1;
+		slotHashes[slot] = wordHash;
+		if (2 * words.size() > slotIds.length) { grow(); }
+		return id;
+	}
+
+
+	/**
+	 * Helper method that returns the id of a word.
+	 *
+	 * @param word	the word whose id is returned.
+	 *
+	 * @return	the id of the word, or UNKNOWN_ID if it is not in the vocabulary.
+	 */
+	public int getId(String word)
+	{ return getId(word, 0, word.length()); }
+
+
+	/**
+	 * Helper method that returns the id of the word
+	 * spanning a range of characters, without
+	 * copying the range out.
+	 *
+	 * @param text	the text holding the word.
+	 *
+	 * @param start	the index of the first character of the word.
+	 *
+	 * @param end	the index after the last character of the word.
+	 *
+	 * @return	the id of the word, or UNKNOWN_ID if it is not in the vocabulary.
+	 */
+	public int getId(CharSequence text, int start, int end)
+	{ return slotIds[findSlot(hash(text, start, end), text, start, end)] - 1; }
+
+
+	/**
+	 * Helper method that returns the word with the given id.
+	 *
+	 * @param id	the id of the word.
+	 *
+	 * @return	the word with the given id.
+	 */
+	public String getWord(int id)
+	{ return words.get(id); }
+
+
+	/**
+	 * Helper method that returns the number of words in the vocabulary.
+	 *
+	 * @return	the number of words in the vocabulary.
+	 */
+	public int size()
+	{ return words.size(); }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the slot holding
+	 * the word spanning a range of characters, or
+	 * the empty slot it would be added at.
+	 */
+	private int findSlot(int wordHash, CharSequence text, int start, int end)
+	{
+		int mask = slotIds.length - 1;
+		int slot = wordHash & mask;
+		while (slotIds[slot] != 0 && !(slotHashes[slot] == wordHash && wordEquals(words.get(slotIds[slot] - 1), text, start, end)))
+		{ slot = (slot + 1) & mask; }
+		return slot;
+	}
+
+
+	/**
+	 * Helper method that doubles the table,
+	 * re-inserting every id by its stored hash.
+	 */
+	private void grow()
+	{
+		int[] oldIds = slotIds;
+		int[] oldHashes = slotHashes;
+		slotIds = new int[oldIds.length * 2];
+		slotHashes = new int[oldIds.length * 2];
+		int mask = slotIds.length - 1;
+		for (int index = 0; index < oldIds.length; index++)
+		{
+			if (oldIds[index] == 0) { continue; }
+			int slot = oldHashes[index] & mask;
+			while (slotIds[slot] != 0) { slot = (slot + 1) & mask; }
+			slotIds[slot] = oldIds[index];
+			slotHashes[slot] = oldHashes[index];
+		}
+	}
+
+
+	/**
+	 * Helper method that returns true if a word
+	 * equals a range of characters.
+	 */
+	private static boolean wordEquals(String word, CharSequence text, int start, int end)
+	{
+		if (word.length() != end - start) { return false; }
+		for (int index = start; index < end; index++)
+		{
+			if (word.charAt(index - start) != text.charAt(index)) { return false; }
+		}
+		return true;
+	}
+
+
+	/**
+	 * Helper method that hashes a range of characters
+	 * as String.hashCode does, then scrambles the bits
+	 * so nearby hashes spread over the table.
+	 */
+	private static int hash(CharSequence text, int start, int end)
+	{
+		int hash = 0;
+		for (int index = start; index < end; index++) { hash = 31 * hash + text.charAt(index); }
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+}
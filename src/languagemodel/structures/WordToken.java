@@ -45,8 +45,9 @@ public class WordToken
 	 */
 	public void splitWords()
 	{
-		firstWord = bigramW.split(" ")[0];
-		secondWord = bigramW.split(" ")[1];
+		int separator = bigramW.indexOf(' ');
+		firstWord = bigramW.substring(0, separator);
+		secondWord = bigramW.substring(separator + 1);
 	}
 	
 	
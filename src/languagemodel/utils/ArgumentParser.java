@@ -0,0 +1,264 @@
+package languagemodel.utils;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Properties;
+import languagemodel.structures.RunConfiguration;
+
+
+/**
+ * This class parses the command-line arguments of the
+ * program, and optionally a properties file, into a run
+ * configuration. Every argument is checked here, so a
+ * misspelled switch or a malformed value is reported
+ * before any dataset is read.
+ *
+ * The first three arguments that are not switches are the
+ * training dataset, the test dataset and the output file.
+ * The switch '-F x' reads the properties file x first; its
+ * keys are the names of the settings below (such as
+ * 'perplexity=true' or 'threads=4'), and any setting
+ * given on the command line overrides it.
+ *
+ * @author David Olorundare
+ *
+ */
+public class ArgumentParser
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the switch that names the properties file.
+	private static final String PROPERTIES_SWITCH = "-F";
+
+	// Represents the settings set by switches: the switch, then the properties key.
+	private static final String[][] SETTINGS = {
+		{ "-P", "perplexity" }, { "-S", "smoothing" }, { "-G", "generator" }, { "-M", "memorybudget" },
+		{ "-L", "lazy" }, { "-C", "sentencecache" }, { "-O", "offheap" }, { "-Q", "quantize" },
+		{ "-E", "charset" }, { "-T", "threads" }, { "-K", "compile" }, { "-V", "variants" },
+		{ "-H", "heldout" }, { "-B", "beam" }, { "-X", "generatorlength" }, { "-W", "generatorbudget" },
+		{ "-A", "arpa" }, { "-U", "whitespaceunigrams" } };
+
+	// Represents the properties keys of the arguments that are not switches, in the order they are given.
+	private static final String[] POSITIONAL_KEYS = { "train", "test", "output" };
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	// No Constructor; the class only has static methods.
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that parses the command-line
+	 * arguments, and the properties file they name
+	 * if any, into a run configuration.
+	 *
+	 * @param args	the command-line arguments.
+	 *
+	 * @return	the run configuration.
+	 *
+	 * @throws IllegalArgumentException	if an argument or property is unknown or malformed, or a dataset or the output file is missing.
+	 *
+	 * @throws FileNotFoundException	if the properties file does not exist.
+	 *
+	 * @throws IOException	if the properties file cannot be read.
+	 */
+	public static RunConfiguration parse(String[] args) throws FileNotFoundException, IOException
+	{
+		RunConfiguration.Builder builder = new RunConfiguration.Builder();
+
+		// The properties file is read first, wherever its switch is, so the command line overrides it.
+		for (int index = 0; index < args.length; index++)
+		{
+			if (args[index].equals(PROPERTIES_SWITCH)) { applyProperties(builder, readProperties(valueOf(args, index))); }
+		}
+
+		int positional = 0;
+		for (int index = 0; index < args.length; index++)
+		{
+			String argument = args[index];
+			if (!argument.startsWith("-") || argument.length() == 1)
+			{
+				if (positional == POSITIONAL_KEYS.length) { throw new IllegalArgumentException("Unexpected argument: " + argument); }
+				apply(builder, POSITIONAL_KEYS[positional], argument, "argument " + (index + 1));
+				positional++;
+				continue;
+			}
+			if (argument.equals(PROPERTIES_SWITCH)) { index++; continue; }
+
+			String key = keyOf(argument);
+			if (key == null) { throw new IllegalArgumentException("Unknown switch: " + argument); }
+
+			// Switches of on/off settings take no value.
+			if (isFlag(key)) { apply(builder, key, "true", argument); }
+			else { apply(builder, key, valueOf(args, index++), argument); }
+		}
+
+		RunConfiguration configuration = builder.build();
+		if (configuration.getTrainDataFilePath() == null || configuration.getTestDataFilePath() == null || configuration.getOutputFilePath() == null)
+		{ throw new IllegalArgumentException("The training dataset, the test dataset and the output file must all be given."); }
+		return configuration;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that reads a properties file.
+	 */
+	private static Properties readProperties(String filePath) throws FileNotFoundException, IOException
+	{
+		Properties properties = new Properties();
+		InputStream stream = new FileInputStream(filePath);
+		try { properties.load(stream); }
+		finally { stream.close(); }
+		return properties;
+	}
+
+
+	/**
+	 * Helper method that applies every property
+	 * of a properties file to the builder.
+	 */
+	private static void applyProperties(RunConfiguration.Builder builder, Properties properties)
+	{
+		for (String key : properties.stringPropertyNames())
+		{
+			if (!isKey(key)) { throw new IllegalArgumentException("Unknown property: " + key); }
+			apply(builder, key, properties.getProperty(key).trim(), "property " + key);
+		}
+	}
+
+
+	/**
+	 * Helper method that applies one setting to the
+	 * builder, parsing its value by the setting's type.
+	 *
+	 * @param source	the switch or property the value came from, named in errors.
+	 */
+	private static void apply(RunConfiguration.Builder builder, String key, String value, String source)
+	{
+		switch (key)
+		{
+			case "perplexity": builder.setPerplexity(parseBoolean(value, source)); break;
+			case "smoothing": builder.setSmoothing(parseBoolean(value, source)); break;
+			case "generator": builder.setGeneratedSentences(parseInteger(value, source)); break;
+			case "memorybudget": builder.setMemoryBudget(parseInteger(value, source)); break;
+			case "lazy": builder.setProbabilityCacheSize(parseInteger(value, source)); break;
+			case "sentencecache": builder.setSentenceCacheSize(parseInteger(value, source)); break;
+			case "offheap": builder.setOffHeap(parseBoolean(value, source)); break;
+			case "quantize": builder.setQuantizationBits(parseInteger(value, source)); break;
+			case "charset": builder.setInputCharset(parseCharset(value, source)); break;
+			case "threads": builder.setThreads(parseInteger(value, source)); break;
+			case "compile": builder.setCompile(parseBoolean(value, source)); break;
+			case "variants": builder.setLargestCountCutoff(parseInteger(value, source)); break;
+			case "heldout": builder.setHeldOutDataFilePath(value); break;
+			case "beam": builder.setBeamWidth(parseInteger(value, source)); break;
+			case "generatorlength": builder.setGeneratorMaxLength(parseInteger(value, source)); break;
+			case "generatorbudget": builder.setGeneratorTimeBudget(parseInteger(value, source)); break;
+			case "arpa": builder.setArpaOutputFilePath(value); break;
+			case "whitespaceunigrams": builder.setWhitespaceUnigrams(parseBoolean(value, source)); break;
+			case "train": builder.setTrainDataFilePath(value); break;
+			case "test": builder.setTestDataFilePath(value); break;
+			case "output": builder.setOutputFilePath(value); break;
+			default: throw new IllegalArgumentException("Unknown setting: " + key);
+		}
+	}
+
+
+	/**
+	 * Helper method that returns the properties
+	 * key of a switch, or null if it is unknown.
+	 */
+	private static String keyOf(String argument)
+	{
+		for (String[] setting : SETTINGS)
+		{
+			if (argument.equals(setting[0])) { return setting[1]; }
+		}
+		return null;
+	}
+
+
+	/**
+	 * Helper method that returns true if a
+	 * properties key names a setting.
+	 */
+	private static boolean isKey(String key)
+	{
+		for (String[] setting : SETTINGS)
+		{
+			if (key.equals(setting[1])) { return true; }
+		}
+		for (String positionalKey : POSITIONAL_KEYS)
+		{
+			if (key.equals(positionalKey)) { return true; }
+		}
+		return false;
+	}
+
+
+	/**
+	 * Helper method that returns true if a setting
+	 * is switched on or off, and so its switch
+	 * takes no value.
+	 */
+	private static boolean isFlag(String key)
+	{
+		return key.equals("perplexity") || key.equals("smoothing") || key.equals("offheap") || key.equals("compile") || key.equals("whitespaceunigrams");
+	}
+
+
+	/**
+	 * Helper method that returns the value
+	 * following a switch.
+	 */
+	private static String valueOf(String[] args, int index)
+	{
+		if (index + 1 >= args.length) { throw new IllegalArgumentException("The switch " + args[index] + " needs a value."); }
+		return args[index + 1];
+	}
+
+
+	/**
+	 * Helper method that parses a whole number.
+	 */
+	private static int parseInteger(String value, String source)
+	{
+		try { return Integer.parseInt(value); }
+		catch (NumberFormatException e) { throw new IllegalArgumentException("The value of " + source + " must be a whole number, not '" + value + "'."); }
+	}
+
+
+	/**
+	 * Helper method that parses 'true' or 'false'.
+	 */
+	private static boolean parseBoolean(String value, String source)
+	{
+		if (value.equalsIgnoreCase("true")) { return true; }
+		if (value.equalsIgnoreCase("false")) { return false; }
+		throw new IllegalArgumentException("The value of " + source + " must be true or false, not '" + value + "'.");
+	}
+
+
+	/**
+	 * Helper method that parses the name of a
+	 * charset, or 'auto' to detect it for each file.
+	 */
+	private static Charset parseCharset(String value, String source)
+	{
+		if (value.equalsIgnoreCase("auto")) { return null; }
+		try { return Charset.forName(value); }
+		catch (IllegalArgumentException e) { throw new IllegalArgumentException("The value of " + source + " is not a supported charset: '" + value + "'."); }
+	}
+
+}
@@ -0,0 +1,831 @@
+package languagemodel.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import languagemodel.structures.ModelStore;
+import languagemodel.structures.NgramCounts;
+import languagemodel.structures.SuccessorIndex;
+
+
+/**
+ * This class reads and writes language models in the
+ * ARPA back-off format shared by most language modeling
+ * tools, so models can be exchanged with them and large
+ * prebuilt models can be loaded without tokenizing and
+ * counting a training dataset.
+ *
+ * An ARPA file starts with a "\data\" header giving the
+ * number of n-grams of each order, followed by one section
+ * per order ("\1-grams:", "\2-grams:", ...) and "\end\".
+ * Each n-gram line holds its base-10 log probability, its
+ * words and, optionally, its back-off weight, separated by
+ * whitespace. The models here are stored with natural log
+ * probabilities, so values are converted on the way in and
+ * out. Only unigrams and bigrams are held by the model
+ * store: the sections of higher orders are skipped, and
+ * back-off weights are ignored, since unseen bigrams are
+ * never backed off here.
+ *
+ * The reader streams the file through a byte buffer and
+ * parses it by hand, without decoding lines to Strings or
+ * splitting them: the numbers are parsed from their digits,
+ * and the words of each bigram are looked up by their UTF-8
+ * bytes in a table filled from the unigram section, so only
+ * the unigrams allocate anything. Bigrams go straight into
+ * the model store, which is sized from the header.
+ *
+ * @author David Olorundare
+ *
+ */
+public class ArpaFile
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the file name extension given to ARPA files.
+	public static final String EXTENSION = ".arpa";
+
+	// Represents the line an ARPA file starts with.
+	private static final String DATA_HEADER = "\\data\\";
+
+	// Represents the line an ARPA file ends with.
+	private static final String END_MARKER = "\\end\\";
+
+	// Represents the base-10 log probability written for words that are never predicted, such as <s>.
+	private static final float NEVER_PREDICTED = -99;
+
+	// Represents the natural log of 10, which converts base-10 log probabilities to natural ones.
+	private static final double LN_10 = Math.log(10);
+
+	// Represents the size of the buffer the file is read through, in bytes.
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	// Represents the powers of 10 that are exactly representable as doubles.
+	private static final double[] POWERS_OF_10 = new double[23];
+
+	static
+	{
+		POWERS_OF_10[0] = 1;
+		for (int index = 1; index < POWERS_OF_10.length; index++) { POWERS_OF_10[index] = POWERS_OF_10[index - 1] * 10; }
+	}
+
+	// Represents the model store the file was loaded into.
+	private ModelStore store;
+
+	// Represents the number of unigrams loaded.
+	private int unigramCount = 0;
+
+	// Represents the number of bigrams loaded.
+	private long bigramCount = 0;
+
+	// Represents the number of n-grams of higher orders skipped.
+	private long skippedCount = 0;
+
+	// Represents the size of the ARPA file in bytes.
+	private final long byteSize;
+
+	// Represents the time taken to read and load the ARPA file, in nanoseconds.
+	private final long readTime;
+
+	// Represents the stream the file is read from.
+	private InputStream input;
+
+	// Represents the buffer the file is read through.
+	private byte[] buffer = new byte[BUFFER_SIZE];
+
+	// Represents the position of the next unread byte in the buffer.
+	private int position = 0;
+
+	// Represents the number of bytes held by the buffer.
+	private int limit = 0;
+
+	// Represents true once the whole file has been read into the buffer.
+	private boolean endOfFile = false;
+
+	// Represents the index of the first byte of the current line in the buffer.
+	private int lineStart;
+
+	// Represents the index after the last byte of the current line in the buffer, not counting its line break.
+	private int lineEnd;
+
+	// Represents the number of the current line, counting from 1.
+	private long lineNumber = 0;
+
+	// Represents the index of the next byte of the current line to be parsed.
+	private int cursor;
+
+	// Represents the UTF-8 bytes of the unigram words, one after another.
+	private byte[] wordBytes = new byte[1 << 16];
+
+	// Represents the number of bytes used in wordBytes.
+	private int wordBytesUsed = 0;
+
+	// Represents, for each unigram word in the order they were read, where its bytes start in wordBytes and its id in the model store.
+	private int[] wordInfo = new int[2048];
+
+	// Represents the open-addressing table finding a unigram word by its bytes; each slot holds the word's hash above its read order plus 1, or 0 if empty.
+	private long[] wordSlots = new long[2048];
+
+	// Represents the number of n-grams of each order given by the header.
+	private long[] declaredCounts = new long[3];
+
+	// Represents the unigram words, in the order they were read.
+	private ArrayList<String> words;
+
+	// Represents the log probability of each unigram word, in the order they were read.
+	private float[] unigramLogProbabilities;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which reads an ARPA
+	 * file and loads its unigrams and bigrams into a
+	 * new model store.
+	 *
+	 * @param filePath	the path of the ARPA file to be read.
+	 *
+	 * @param offHeap	true if the model store should be kept outside the Java heap.
+	 *
+	 * @throws FileNotFoundException	if the file does not exist.
+	 *
+	 * @throws IOException	if an error occurs while reading the file, or if it is not a well-formed ARPA file.
+	 *
+	 */
+	public ArpaFile(String filePath, boolean offHeap) throws FileNotFoundException, IOException
+	{
+		long startTime = System.nanoTime();
+		byteSize = Files.size(Paths.get(filePath));
+		input = new FileInputStream(filePath);
+		try
+		{
+			boolean more = readHeader();
+			boolean ended = false;
+			while (more && !(ended = lineEquals(END_MARKER)))
+			{
+				int order = sectionOrder();
+				if (order == 1) { more = readUnigrams(); continue; }
+
+				// The store is built once every word is known, since bigrams refer to the words of the unigram section.
+				if (store == null) { buildStore(offHeap); }
+				more = (order == 2) ? readBigrams() : skipSection();
+			}
+			if (!ended) { throw error("The file has no \\end\\ marker"); }
+			if (store == null) { buildStore(offHeap); }
+		}
+		finally
+		{
+			input.close();
+			input = null;
+			buffer = null;
+			wordBytes = null;
+			wordInfo = null;
+			wordSlots = null;
+			words = null;
+			unigramLogProbabilities = null;
+		}
+		readTime = System.nanoTime() - startTime;
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the model store the
+	 * unigrams and bigrams of the file were loaded into.
+	 * ARPA files hold no counts, so every n-gram loaded
+	 * has a count of 1.
+	 *
+	 * @return	the model store of the file.
+	 */
+	public ModelStore getModelStore()
+	{ return store; }
+
+
+	/**
+	 * Helper method that returns the number of unigrams loaded.
+	 *
+	 * @return	the number of unigrams.
+	 */
+	public int getUnigramCount()
+	{ return unigramCount; }
+
+
+	/**
+	 * Helper method that returns the number of bigrams loaded.
+	 *
+	 * @return	the number of bigrams.
+	 */
+	public long getBigramCount()
+	{ return bigramCount; }
+
+
+	/**
+	 * Helper method that returns the number of n-grams
+	 * of orders above 2 that were skipped.
+	 *
+	 * @return	the number of n-grams skipped.
+	 */
+	public long getSkippedCount()
+	{ return skippedCount; }
+
+
+	/**
+	 * Helper method that returns the size of the ARPA file in bytes.
+	 *
+	 * @return	the size of the ARPA file.
+	 */
+	public long getByteSize()
+	{ return byteSize; }
+
+
+	/**
+	 * Helper method that returns the time taken to read and load the ARPA file.
+	 *
+	 * @return	the read time, in nanoseconds.
+	 */
+	public long getReadTime()
+	{ return readTime; }
+
+
+	/**
+	 * Helper method that checks whether a file is
+	 * an ARPA file, by the "\data\" header its first
+	 * non-blank line holds.
+	 *
+	 * @param filePath	the path of the file to be checked.
+	 *
+	 * @return	true if the file starts with the header of an ARPA file.
+	 *
+	 * @throws FileNotFoundException	if the file does not exist.
+	 *
+	 * @throws IOException	if an error occurs while reading the file.
+	 */
+	public static boolean isArpa(String filePath) throws FileNotFoundException, IOException
+	{
+		byte[] start = new byte[256];
+		int length = 0;
+		InputStream stream = new FileInputStream(filePath);
+		try
+		{
+			int read;
+			while (length < start.length && (read = stream.read(start, length, start.length - length)) != -1) { length += read; }
+		}
+		finally { stream.close(); }
+
+		int index = 0;
+		while (index < length && (start[index] == ' ' || start[index] == '\t' || start[index] == '\r' || start[index] == '\n')) { index++; }
+		if (length - index < DATA_HEADER.length()) { return false; }
+		for (int offset = 0; offset < DATA_HEADER.length(); offset++)
+		{
+			if (start[index + offset] != DATA_HEADER.charAt(offset)) { return false; }
+		}
+		return true;
+	}
+
+
+	/**
+	 * Helper method that writes the unigram and bigram
+	 * models held by a model store as an ARPA file,
+	 * streaming it out word by word. Each word's bigrams
+	 * are written together, most likely first. Words that
+	 * are never predicted, such as <s>, are given the
+	 * customary log probability of -99.
+	 *
+	 * @param store	the model store to be written; it must hold the log probabilities.
+	 *
+	 * @param filePath	the path the ARPA file is written to.
+	 *
+	 * @return	the number of unigrams and bigrams written, followed by the size of the file in bytes.
+	 *
+	 * @throws IOException	if an error occurs while writing the file.
+	 */
+	public static float[] write(ModelStore store, String filePath) throws IOException
+	{
+		int vocabularySize = store.getVocabularySize();
+		int startId = store.getId(NgramCounts.START_SYMBOL);
+		SuccessorIndex successors = store.getSuccessorIndex();
+
+		// Encode each word once, since every bigram repeats two of them.
+		byte[][] encodedWords = new byte[vocabularySize][];
+		for (int id = 0; id < vocabularySize; id++) { encodedWords[id] = store.getWord(id).getBytes(StandardCharsets.UTF_8); }
+
+		long bigrams = 0;
+		for (int id = 0; id < vocabularySize; id++) { bigrams += successors.getRunEnd(id) - successors.getRunStart(id); }
+
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(filePath), 1 << 16);
+		try
+		{
+			writeAscii(output, DATA_HEADER + "\nngram 1=" + vocabularySize + "\nngram 2=" + bigrams + "\n\n\\1-grams:\n");
+			for (int id = 0; id < vocabularySize; id++)
+			{
+				boolean predicted = id != startId && store.getUnigramCount(id) != 0;
+				writeAscii(output, Float.toString(predicted ? (float) (store.getUnigramLogProbability(id) / LN_10) : NEVER_PREDICTED));
+				output.write('\t');
+				output.write(encodedWords[id]);
+				output.write('\n');
+			}
+
+			writeAscii(output, "\n\\2-grams:\n");
+			for (int id = 0; id < vocabularySize; id++)
+			{
+				for (int index = successors.getRunStart(id); index < successors.getRunEnd(id); index++)
+				{
+					writeAscii(output, Float.toString((float) (successors.getSuccessorLogProbability(index) / LN_10)));
+					output.write('\t');
+					output.write(encodedWords[id]);
+					output.write(' ');
+					output.write(encodedWords[successors.getSuccessorId(index)]);
+					output.write('\n');
+				}
+			}
+			writeAscii(output, "\n" + END_MARKER + "\n");
+		}
+		finally { output.close(); }
+
+		float[] stats = { vocabularySize, bigrams, Files.size(Paths.get(filePath)) };
+		return stats;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that reads the header of the file,
+	 * which gives the number of n-grams of each order.
+	 *
+	 * @return	true if a section header follows it.
+	 */
+	private boolean readHeader() throws IOException
+	{
+		boolean more;
+		while ((more = nextLine()) && !lineEquals(DATA_HEADER)) { }
+		if (!more) { throw error("The file has no \\data\\ header"); }
+		while ((more = nextLine()) && !isSectionHeader())
+		{
+			if (lineStart == lineEnd) { continue; }
+			if (!lineStartsWith("ngram ")) { throw error("Expected an 'ngram N=count' line"); }
+			cursor = lineStart + 6;
+			int order = (int) parseInteger();
+			if (cursor >= lineEnd || buffer[cursor++] != '=') { throw error("Expected '=' after the n-gram order"); }
+			long count = parseInteger();
+			if (order >= declaredCounts.length) { declaredCounts = Arrays.copyOf(declaredCounts, order + 1); }
+			declaredCounts[order] = count;
+		}
+
+		int expectedWords = (int) Math.min(declaredCounts[1], Integer.MAX_VALUE - 8);
+		words = new ArrayList<String>(expectedWords);
+		unigramLogProbabilities = new float[Math.max(16, expectedWords)];
+		return more;
+	}
+
+
+	/**
+	 * Helper method that reads the unigram section,
+	 * adding each word to the word table.
+	 *
+	 * @return	true if another section header follows it.
+	 */
+	private boolean readUnigrams() throws IOException
+	{
+		boolean more;
+		while ((more = nextLine()) && !isSectionHeader())
+		{
+			if (lineStart == lineEnd) { continue; }
+			cursor = lineStart;
+			float logProbability = parseLogProbability();
+			int start = nextWord(), end = cursor;
+			if (start == end) { throw error("The unigram has no word"); }
+			if (unigramCount == unigramLogProbabilities.length) { unigramLogProbabilities = Arrays.copyOf(unigramLogProbabilities, unigramCount * 2); }
+			unigramLogProbabilities[unigramCount] = logProbability;
+			addWord(start, end);
+			words.add(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+			unigramCount++;
+		}
+		return more;
+	}
+
+
+	/**
+	 * Helper method that reads the bigram section
+	 * straight into the model store. Bigrams are usually
+	 * listed by their first word, so the first word of
+	 * the previous bigram is tried before the word table.
+	 *
+	 * @return	true if another section header follows it.
+	 */
+	private boolean readBigrams() throws IOException
+	{
+		boolean more;
+		int previousFirst = -1;
+		while ((more = nextLine()) && !isSectionHeader())
+		{
+			if (lineStart == lineEnd) { continue; }
+			cursor = lineStart;
+			float logProbability = parseLogProbability();
+			int firstStart = nextWord(), firstEnd = cursor;
+			int secondStart = nextWord(), secondEnd = cursor;
+
+			int first = (previousFirst >= 0 && isWord(previousFirst, firstStart, firstEnd)) ? previousFirst : findWord(firstStart, firstEnd);
+			int second = findWord(secondStart, secondEnd);
+			if (first < 0 || second < 0) { throw error("The bigram has a word that is not a unigram"); }
+			store.putBigram(wordInfo[2 * first + 1], wordInfo[2 * second + 1], 1, logProbability);
+			bigramCount++;
+			previousFirst = first;
+		}
+		return more;
+	}
+
+
+	/**
+	 * Helper method that skips a section of n-grams
+	 * of an order the model store does not hold.
+	 *
+	 * @return	true if another section header follows it.
+	 */
+	private boolean skipSection() throws IOException
+	{
+		boolean more;
+		while ((more = nextLine()) && !isSectionHeader())
+		{
+			if (lineStart != lineEnd) { skippedCount++; }
+		}
+		return more;
+	}
+
+
+	/**
+	 * Helper method that builds the model store from
+	 * the unigram section, and records each word's
+	 * id in the store.
+	 */
+	private void buildStore(boolean offHeap)
+	{
+		store = new ModelStore(words, unigramLogProbabilities, declaredCounts[2], offHeap);
+		for (int word = 0; word < unigramCount; word++) { wordInfo[2 * word + 1] = store.getId(words.get(word)); }
+	}
+
+
+	/**
+	 * Helper method that advances to the next line of
+	 * the file, refilling the buffer as needed.
+	 *
+	 * @return	true if there was another line.
+	 */
+	private boolean nextLine() throws IOException
+	{
+		int scanned = position;
+		while (true)
+		{
+			for (int index = scanned; index < limit; index++)
+			{
+				if (buffer[index] == '\n')
+				{
+					startLine(position, index);
+					position = index + 1;
+					return true;
+				}
+			}
+			if (endOfFile)
+			{
+				if (position == limit) { lineStart = lineEnd = limit; return false; }
+				startLine(position, limit);
+				position = limit;
+				return true;
+			}
+			scanned = limit - position;
+			fill();
+		}
+	}
+
+
+	/**
+	 * Helper method that marks the current line,
+	 * leaving out a carriage return before its end.
+	 */
+	private void startLine(int start, int end)
+	{
+		if (end > start && buffer[end - 1] == '\r') { end--; }
+		lineStart = start;
+		lineEnd = end;
+		lineNumber++;
+	}
+
+
+	/**
+	 * Helper method that moves the unread bytes to the
+	 * front of the buffer and reads more of the file
+	 * after them, growing the buffer if a single line
+	 * fills it.
+	 */
+	private void fill() throws IOException
+	{
+		int unread = limit - position;
+		if (unread == buffer.length) { buffer = Arrays.copyOf(buffer, buffer.length * 2); }
+		else { System.arraycopy(buffer, position, buffer, 0, unread); }
+		position = 0;
+		limit = unread;
+		int read = input.read(buffer, limit, buffer.length - limit);
+		if (read == -1) { endOfFile = true; }
+		else { limit += read; }
+	}
+
+
+	/**
+	 * Helper method that returns true if the current
+	 * line, without surrounding whitespace, is the given text.
+	 */
+	private boolean lineEquals(String text)
+	{
+		int start = lineStart, end = lineEnd;
+		while (start < end && isWhitespace(buffer[start])) { start++; }
+		while (end > start && isWhitespace(buffer[end - 1])) { end--; }
+		if (end - start != text.length()) { return false; }
+		for (int index = 0; index < text.length(); index++)
+		{
+			if (buffer[start + index] != text.charAt(index)) { return false; }
+		}
+		return true;
+	}
+
+
+	/**
+	 * Helper method that returns true if the current line starts with the given text.
+	 */
+	private boolean lineStartsWith(String text)
+	{
+		if (lineEnd - lineStart < text.length()) { return false; }
+		for (int index = 0; index < text.length(); index++)
+		{
+			if (buffer[lineStart + index] != text.charAt(index)) { return false; }
+		}
+		return true;
+	}
+
+
+	/**
+	 * Helper method that returns true if the current
+	 * line starts a section, or ends the file.
+	 */
+	private boolean isSectionHeader()
+	{ return lineEnd > lineStart && buffer[lineStart] == '\\'; }
+
+
+	/**
+	 * Helper method that returns the order of the
+	 * n-grams of the section the current line starts.
+	 */
+	private int sectionOrder() throws IOException
+	{
+		cursor = lineStart + 1;
+		int order = (int) parseInteger();
+		if (order < 1 || !lineEndsWith("-grams:")) { throw error("Expected an '\\N-grams:' section header"); }
+		return order;
+	}
+
+
+	/**
+	 * Helper method that returns true if the current
+	 * line, without trailing whitespace, ends with the given text.
+	 */
+	private boolean lineEndsWith(String text)
+	{
+		int end = lineEnd;
+		while (end > lineStart && isWhitespace(buffer[end - 1])) { end--; }
+		if (end - lineStart < text.length()) { return false; }
+		for (int index = 0; index < text.length(); index++)
+		{
+			if (buffer[end - text.length() + index] != text.charAt(index)) { return false; }
+		}
+		return true;
+	}
+
+
+	/**
+	 * Helper method that skips whitespace and returns
+	 * where the next word of the current line starts,
+	 * leaving the cursor after its end.
+	 */
+	private int nextWord()
+	{
+		while (cursor < lineEnd && isWhitespace(buffer[cursor])) { cursor++; }
+		int start = cursor;
+		while (cursor < lineEnd && !isWhitespace(buffer[cursor])) { cursor++; }
+		return start;
+	}
+
+
+	/**
+	 * Helper method that parses a non-negative integer
+	 * at the cursor, after any spaces.
+	 */
+	private long parseInteger() throws IOException
+	{
+		while (cursor < lineEnd && isWhitespace(buffer[cursor])) { cursor++; }
+		int start = cursor;
+		long value = 0;
+		while (cursor < lineEnd && buffer[cursor] >= '0' && buffer[cursor] <= '9') { value = value * 10 + (buffer[cursor++] - '0'); }
+		if (cursor == start) { throw error("Expected a number"); }
+		return value;
+	}
+
+
+	/**
+	 * Helper method that parses the base-10 log
+	 * probability at the cursor and returns it as a
+	 * natural log probability. Plain decimals, with or
+	 * without an exponent, are parsed from their digits;
+	 * anything else (such as "-inf") is handed to
+	 * Float.parseFloat.
+	 */
+	private float parseLogProbability() throws IOException
+	{
+		int start = nextWord(), end = cursor;
+		int index = start;
+		boolean negative = index < end && buffer[index] == '-';
+		if (negative || (index < end && buffer[index] == '+')) { index++; }
+
+		long mantissa = 0;
+		int exponent = 0, digits = 0;
+		for (; index < end && buffer[index] >= '0' && buffer[index] <= '9'; index++, digits++)
+		{
+			if (mantissa < 100000000000000000L) { mantissa = mantissa * 10 + (buffer[index] - '0'); }
+			else { exponent++; }
+		}
+		if (index < end && buffer[index] == '.')
+		{
+			for (index++; index < end && buffer[index] >= '0' && buffer[index] <= '9'; index++, digits++)
+			{
+				if (mantissa < 100000000000000000L) { mantissa = mantissa * 10 + (buffer[index] - '0'); exponent--; }
+			}
+		}
+		if (digits > 0 && index < end && (buffer[index] == 'e' || buffer[index] == 'E'))
+		{
+			index++;
+			boolean negativeExponent = index < end && buffer[index] == '-';
+			if (negativeExponent || (index < end && buffer[index] == '+')) { index++; }
+			int exponentStart = index, value = 0;
+			for (; index < end && buffer[index] >= '0' && buffer[index] <= '9'; index++) { value = Math.min(value * 10 + (buffer[index] - '0'), 1000); }
+			if (index == exponentStart) { digits = 0; }
+			exponent += negativeExponent ? -value : value;
+		}
+
+		double logProbability;
+		if (digits == 0 || index != end) { logProbability = parseOther(start, end); }
+		else
+		{
+			logProbability = mantissa;
+			if (exponent > 0) { logProbability *= (exponent < POWERS_OF_10.length) ? POWERS_OF_10[exponent] : Math.pow(10, exponent); }
+			else if (exponent < 0) { logProbability /= (-exponent < POWERS_OF_10.length) ? POWERS_OF_10[-exponent] : Math.pow(10, -exponent); }
+			if (negative) { logProbability = -logProbability; }
+		}
+		return (float) (logProbability * LN_10);
+	}
+
+
+	/**
+	 * Helper method that parses a number that is not
+	 * a plain decimal, such as "-inf", from its text.
+	 */
+	private double parseOther(int start, int end) throws IOException
+	{
+		String text = new String(buffer, start, end - start, StandardCharsets.US_ASCII);
+		if (text.equalsIgnoreCase("-inf") || text.equalsIgnoreCase("-infinity")) { return Double.NEGATIVE_INFINITY; }
+		try { return Double.parseDouble(text); }
+		catch (NumberFormatException e) { throw error("Expected a log probability, found '" + text + "'"); }
+	}
+
+
+	/**
+	 * Helper method that adds the word spanning a
+	 * range of the buffer to the word table, in the
+	 * order the words are read.
+	 */
+	private void addWord(int start, int end) throws IOException
+	{
+		int length = end - start;
+		if (findWord(start, end) >= 0) { throw error("The unigram is listed twice"); }
+		if (wordBytesUsed + length > wordBytes.length) { wordBytes = Arrays.copyOf(wordBytes, Math.max(wordBytesUsed + length, wordBytes.length * 2)); }
+		if (2 * unigramCount + 2 >= wordInfo.length) { wordInfo = Arrays.copyOf(wordInfo, wordInfo.length * 2); }
+		System.arraycopy(buffer, start, wordBytes, wordBytesUsed, length);
+		wordInfo[2 * unigramCount] = wordBytesUsed;
+		wordBytesUsed += length;
+		wordInfo[2 * unigramCount + 2] = wordBytesUsed;
+
+		if ((unigramCount + 1) * 2 > wordSlots.length) { growWordSlots(); }
+		insertWord(hash(buffer, start, end), unigramCount);
+	}
+
+
+	/**
+	 * Helper method that finds the word spanning a
+	 * range of the buffer in the word table. Each slot
+	 * holds the word's hash, so the bytes of other words
+	 * are only compared when their hashes match.
+	 *
+	 * @return	the order the word was read in, or -1 if it is not in the table.
+	 */
+	private int findWord(int start, int end)
+	{
+		int hash = hash(buffer, start, end);
+		int mask = wordSlots.length - 1;
+		int slot = hash & mask;
+		long entry;
+		while ((entry = wordSlots[slot]) != 0)
+		{
+			int word = (int) entry - 1;
+			if ((int) (entry >>> 32) == hash && isWord(word, start, end)) { return word; }
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Helper method that returns true if the word
+	 * read in the given order spans a range of the buffer.
+	 */
+	private boolean isWord(int word, int start, int end)
+	{
+		int wordStart = wordInfo[2 * word], wordEnd = wordInfo[2 * word + 2];
+		return wordEnd - wordStart == end - start && Arrays.equals(wordBytes, wordStart, wordEnd, buffer, start, end);
+	}
+
+
+	/**
+	 * Helper method that puts a word into the first
+	 * free slot of its probe sequence.
+	 */
+	private void insertWord(int hash, int word)
+	{
+		int mask = wordSlots.length - 1;
+		int slot = hash & mask;
+		while (wordSlots[slot] != 0) { slot = (slot + 1) & mask; }
+		wordSlots[slot] = ((long) hash << 32) | (word + 1);
+	}
+
+
+	/**
+	 * Helper method that doubles the word table,
+	 * re-inserting every word by its stored hash.
+	 */
+	private void growWordSlots()
+	{
+		long[] oldSlots = wordSlots;
+		wordSlots = new long[oldSlots.length * 2];
+		for (long entry : oldSlots)
+		{
+			if (entry != 0) { insertWord((int) (entry >>> 32), (int) entry - 1); }
+		}
+	}
+
+
+	/**
+	 * Helper method that returns an error naming the current line of the file.
+	 */
+	private IOException error(String message)
+	{ return new IOException(message + " at line " + lineNumber + " of the ARPA file."); }
+
+
+	/**
+	 * Helper method that hashes a range of bytes
+	 * (32-bit FNV-1a, with its bits scrambled after).
+	 */
+	private static int hash(byte[] bytes, int start, int end)
+	{
+		int hash = 0x811C9DC5;
+		for (int index = start; index < end; index++) { hash = (hash ^ bytes[index]) * 0x01000193; }
+		return hash ^ (hash >>> 16);
+	}
+
+
+	/**
+	 * Helper method that returns true if a byte separates the fields of an ARPA line.
+	 */
+	private static boolean isWhitespace(byte character)
+	{ return character == ' ' || character == '\t' || character == '\r'; }
+
+
+	/**
+	 * Helper method that writes ASCII text to a stream.
+	 */
+	private static void writeAscii(OutputStream output, String text) throws IOException
+	{
+		for (int index = 0; index < text.length(); index++) { output.write(text.charAt(index)); }
+	}
+
+}
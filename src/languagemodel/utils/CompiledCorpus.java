@@ -0,0 +1,406 @@
+package languagemodel.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import edu.stanford.nlp.ling.CoreAnnotations.LineNumberAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+
+
+/**
+ * This class reads and writes compiled corpora: a
+ * dataset that CoreNLP has already tokenized and split
+ * into sentences, stored as a binary stream of ids so
+ * later runs skip CoreNLP entirely.
+ *
+ * A compiled corpus starts with the magic bytes "LMCC"
+ * and a format version, followed by its vocabulary (each
+ * entry a varint UTF-8 byte length and the bytes, the most
+ * frequent entries first so they get the shortest ids) and
+ * its sentence count. Each sentence is then stored as the
+ * varint number of lines since the previous sentence started
+ * (from version 2), followed by two varint-encoded id
+ * sequences, each preceded by its length:
+ * the words of its CoreNLP tokens, which are what unigrams
+ * are counted from, and its text split into alternating
+ * runs of whitespace and non-whitespace characters, which
+ * reproduces the sentence text exactly.
+ * Version 3 left the token words out; a sentence read
+ * from it has no tokens, so it can only be counted with
+ * unigrams taken from its whitespace words.
+ *
+ * @author David Olorundare
+ *
+ */
+public class CompiledCorpus
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the file name extension given to compiled corpora.
+	public static final String EXTENSION = ".lmc";
+
+	// Represents the magic bytes a compiled corpus starts with.
+	private static final byte[] MAGIC = { 'L', 'M', 'C', 'C' };
+
+	// Represents the version of the compiled corpus format; version 1 has no line numbers, and version 3 has no token words.
+	private static final int VERSION = 4;
+
+	// Represents the document holding the sentences of the corpus.
+	private final Annotation document;
+
+	// Represents the number of sentences in the corpus.
+	private final int sentenceCount;
+
+	// Represents the size of the compiled corpus in bytes.
+	private final long byteSize;
+
+	// Represents the time taken to map and decode the compiled corpus, in nanoseconds.
+	private final long readTime;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which maps and decodes the compiled corpus.
+	 *
+	 * @param filePath	the path of the compiled corpus to be read.
+	 *
+	 * @throws FileNotFoundException	if the file does not exist.
+	 *
+	 * @throws IOException	if an error occurs while reading the file, or if it is not a compiled corpus.
+	 *
+	 */
+	public CompiledCorpus(String filePath) throws FileNotFoundException, IOException
+	{
+		long startTime = System.nanoTime();
+		FileChannel channel;
+		try { channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ); }
+		catch (NoSuchFileException e) { throw new FileNotFoundException(filePath); }
+
+		try
+		{
+			byteSize = channel.size();
+			if (byteSize > Integer.MAX_VALUE) { throw new IOException("The file is too large to be mapped: " + filePath + " (" + byteSize + " bytes)."); }
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, byteSize);
+			if (!hasMagic(bytes)) { throw new IOException("The file is not a compiled corpus: " + filePath); }
+			bytes.position(MAGIC.length);
+			int version = bytes.get();
+			if (version < 1 || version > VERSION) { throw new IOException("Unsupported compiled corpus version " + version + ": " + filePath); }
+
+			String[] vocabulary = new String[readVarint(bytes)];
+			byte[] entry = new byte[64];
+			for (int id = 0; id < vocabulary.length; id++)
+			{
+				int length = readVarint(bytes);
+				if (length > entry.length) { entry = new byte[Math.max(length, entry.length * 2)]; }
+				bytes.get(entry, 0, length);
+				vocabulary[id] = new String(entry, 0, length, StandardCharsets.UTF_8);
+			}
+
+			// Tokens are only ever read, so one label per vocabulary entry is shared by all its occurrences.
+			CoreLabel[] labels = new CoreLabel[vocabulary.length];
+			sentenceCount = readVarint(bytes);
+			List<CoreMap> sentences = new ArrayList<CoreMap>(sentenceCount);
+			StringBuilder text = new StringBuilder();
+			int line = 0;
+			for (int index = 0; index < sentenceCount; index++)
+			{
+				if (version > 1) { line += readVarint(bytes); }
+				CoreLabel[] tokens = null;
+				if (version != 3)
+				{
+					tokens = new CoreLabel[readVarint(bytes)];
+					for (int position = 0; position < tokens.length; position++)
+					{
+						int id = readVarint(bytes);
+						if (labels[id] == null) { labels[id] = new CoreLabel(); labels[id].setWord(vocabulary[id]); labels[id].setValue(vocabulary[id]); }
+						tokens[position] = labels[id];
+					}
+				}
+
+				text.setLength(0);
+				int pieces = readVarint(bytes);
+				for (int position = 0; position < pieces; position++) { text.append(vocabulary[readVarint(bytes)]); }
+
+				Annotation sentence = new Annotation(text.toString());
+				if (tokens != null) { sentence.set(TokensAnnotation.class, Arrays.asList(tokens)); }
+				if (version > 1) { sentence.set(LineNumberAnnotation.class, line); }
+				sentences.add(sentence);
+			}
+
+			document = new Annotation("");
+			document.set(SentencesAnnotation.class, sentences);
+		}
+		finally { channel.close(); }
+		readTime = System.nanoTime() - startTime;
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the document holding
+	 * the sentences of the corpus; it is already split
+	 * into sentences and tokenized, so it must not be
+	 * annotated again.
+	 *
+	 * @return	the document of the corpus.
+	 */
+	public Annotation getDocument()
+	{ return document; }
+
+
+	/**
+	 * Helper method that returns the number of sentences in the corpus.
+	 *
+	 * @return	the number of sentences.
+	 */
+	public int getSentenceCount()
+	{ return sentenceCount; }
+
+
+	/**
+	 * Helper method that returns the size of the compiled corpus in bytes.
+	 *
+	 * @return	the size of the compiled corpus.
+	 */
+	public long getByteSize()
+	{ return byteSize; }
+
+
+	/**
+	 * Helper method that returns the time taken to map and decode the compiled corpus.
+	 *
+	 * @return	the read time, in nanoseconds.
+	 */
+	public long getReadTime()
+	{ return readTime; }
+
+
+	/**
+	 * Helper method that checks whether a file
+	 * is a compiled corpus, by its magic bytes.
+	 *
+	 * @param filePath	the path of the file to be checked.
+	 *
+	 * @return	true if the file starts with the magic bytes of a compiled corpus.
+	 *
+	 * @throws FileNotFoundException	if the file does not exist.
+	 *
+	 * @throws IOException	if an error occurs while reading the file.
+	 */
+	public static boolean isCompiled(String filePath) throws FileNotFoundException, IOException
+	{
+		ByteBuffer start = ByteBuffer.allocate(MAGIC.length);
+		FileChannel channel;
+		try { channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ); }
+		catch (NoSuchFileException e) { throw new FileNotFoundException(filePath); }
+		try { while (start.hasRemaining() && channel.read(start) != -1) { } }
+		finally { channel.close(); }
+		start.flip();
+		return hasMagic(start);
+	}
+
+
+	/**
+	 * Helper method that compiles a tokenized and
+	 * sentence-split document into a compiled corpus.
+	 *
+	 * @param doc	the document to be compiled; it must have been annotated by CoreNLP.
+	 *
+	 * @param filePath	the path the compiled corpus is written to.
+	 *
+	 * @return	the number of sentences, words (as they are scored) and vocabulary entries in the corpus, followed by its size in bytes.
+	 *
+	 * @throws IOException	if an error occurs while writing the file.
+	 */
+	public static float[] write(Annotation doc, String filePath) throws IOException
+	{
+		List<CoreMap> sentences = doc.get(SentencesAnnotation.class);
+
+		// Count every text piece, so the most frequent ones can be given the shortest ids.
+		HashMap<String, int[]> counts = new HashMap<String, int[]>();
+		ArrayList<String> pieces = new ArrayList<String>();
+		long words = 0;
+		for (CoreMap sentence : sentences)
+		{
+			words += FileHandler.getInstance().countWords(sentence);
+			for (CoreLabel token : sentence.get(TokensAnnotation.class)) { countEntry(counts, token.word()); }
+			splitPieces(sentence.toString(), pieces);
+			for (String piece : pieces) { countEntry(counts, piece); }
+		}
+
+		ArrayList<Map.Entry<String, int[]>> entries = new ArrayList<Map.Entry<String, int[]>>(counts.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, int[]>>()
+		{
+			public int compare(Map.Entry<String, int[]> first, Map.Entry<String, int[]> second)
+			{
+				int order = Integer.compare(second.getValue()[0], first.getValue()[0]);
+				return (order != 0) ? order : first.getKey().compareTo(second.getKey());
+			}
+		});
+
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(filePath), 1 << 16);
+		try
+		{
+			output.write(MAGIC);
+			output.write(VERSION);
+
+			// Write the vocabulary; from here on each entry's count is replaced by its id.
+			writeVarint(output, entries.size());
+			for (int id = 0; id < entries.size(); id++)
+			{
+				byte[] entry = entries.get(id).getKey().getBytes(StandardCharsets.UTF_8);
+				writeVarint(output, entry.length);
+				output.write(entry);
+				entries.get(id).getValue()[0] = id;
+			}
+
+			writeVarint(output, sentences.size());
+			int line = 0;
+			for (CoreMap sentence : sentences)
+			{
+				// Sentences without a line number are all counted as starting on the line of the sentence before.
+				Integer sentenceLine = sentence.get(LineNumberAnnotation.class);
+				int nextLine = (sentenceLine == null) ? line : sentenceLine;
+				writeVarint(output, nextLine - line);
+				line = nextLine;
+
+				List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
+				writeVarint(output, tokens.size());
+				for (CoreLabel token : tokens) { writeVarint(output, counts.get(token.word())[0]); }
+
+				splitPieces(sentence.toString(), pieces);
+				writeVarint(output, pieces.size());
+				for (String piece : pieces) { writeVarint(output, counts.get(piece)[0]); }
+			}
+		}
+		finally { output.close(); }
+
+		float[] stats = { sentences.size(), words, entries.size(), Files.size(Paths.get(filePath)) };
+		return stats;
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns true if some bytes
+	 * start with the magic bytes of a compiled corpus.
+	 */
+	private static boolean hasMagic(ByteBuffer bytes)
+	{
+		if (bytes.limit() < MAGIC.length) { return false; }
+		for (int index = 0; index < MAGIC.length; index++)
+		{
+			if (bytes.get(index) != MAGIC[index]) { return false; }
+		}
+		return true;
+	}
+
+
+	/**
+	 * Helper method that adds one occurrence of
+	 * a vocabulary entry to the entry counts.
+	 */
+	private static void countEntry(HashMap<String, int[]> counts, String entry)
+	{
+		int[] count = counts.get(entry);
+		if (count == null) { counts.put(entry, new int[] { 1 }); }
+		else { count[0]++; }
+	}
+
+
+	/**
+	 * Helper method that splits the text of a
+	 * sentence into its alternating runs of
+	 * whitespace and non-whitespace characters.
+	 *
+	 * @param text	the text of the sentence.
+	 *
+	 * @param pieces	receives the runs of the text, in order.
+	 */
+	private static void splitPieces(String text, ArrayList<String> pieces)
+	{
+		pieces.clear();
+		int start = 0;
+		for (int index = 1; index <= text.length(); index++)
+		{
+			if (index == text.length() || isWhitespace(text.charAt(index)) != isWhitespace(text.charAt(start)))
+			{
+				pieces.add(text.substring(start, index));
+				start = index;
+			}
+		}
+	}
+
+
+	/**
+	 * Helper method that returns true if a character
+	 * separates words, matching the \s class of the
+	 * regular expression the n-gram split uses.
+	 */
+	private static boolean isWhitespace(char character)
+	{ return character == ' ' || character == '\t' || character == '\n' || character == '\u000B' || character == '\f' || character == '\r'; }
+
+
+	/**
+	 * Helper method that writes a non-negative
+	 * integer as a varint: seven bits per byte,
+	 * lowest bits first, with the high bit set
+	 * on every byte but the last.
+	 */
+	private static void writeVarint(OutputStream output, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			output.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.write(value);
+	}
+
+
+	/**
+	 * Helper method that reads a varint written
+	 * by writeVarint.
+	 */
+	private static int readVarint(ByteBuffer bytes) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			int next = bytes.get();
+			value |= (next & 0x7F) << shift;
+			if ((next & 0x80) == 0) { return value; }
+		}
+		throw new IOException("Malformed varint in compiled corpus.");
+	}
+
+}
@@ -1,20 +1,33 @@
 package languagemodel.utils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.io.Writer;
-import java.util.HashMap;
-import edu.stanford.nlp.ling.DocumentReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.CoreMap;
+import languagemodel.compute.BatchEvaluator;
 import languagemodel.compute.LanguageModeler;
 import languagemodel.structures.AnalyzedData;
+import languagemodel.structures.ModelStore;
+import languagemodel.structures.NgramCounts;
+import languagemodel.structures.RunConfiguration;
 
 
 /**
@@ -59,6 +72,18 @@ public final class FileHandler
 	
 	// Represents the data structure used for storing all the results of the text analysis.
 	private AnalyzedData processedResults = new AnalyzedData();
+	
+	// Represents the charset the datasets are read with, or null if it is detected for each file.
+	private Charset inputCharset;
+	
+	// Represents the charset the last dataset was read with.
+	private Charset lastReadCharset;
+	
+	// Represents the total number of bytes of the datasets read so far.
+	private long bytesRead = 0;
+	
+	// Represents the total time spent reading the datasets so far, in nanoseconds.
+	private long readTime = 0;
 
 	
 	//============================================ CONSTRUCTOR =============================================================
@@ -99,6 +124,10 @@ public final class FileHandler
 	 * Helper method that reads in a 
 	 * dataset and creates a CoreNLP annotation
 	 * from it uses for further language model processing.
+	 * The file is memory-mapped and decoded with the
+	 * configured charset, or with the one detected for it.
+	 * A compiled corpus is read as the already tokenized
+	 * and sentence-split annotation it holds instead.
 	 * 
 	 * @param textData	the dataset to be read.
 	 * 
@@ -111,17 +140,129 @@ public final class FileHandler
 	 */
 	public Annotation readData(String textData) throws FileNotFoundException, IOException
 	{
-        String text =   " ";        
-        InputStream input = new FileInputStream(textData);
-        Reader dataReader = new InputStreamReader(input, "WINDOWS-1252");
+		if (CompiledCorpus.isCompiled(textData))
+		{
+			// The vocabulary of a compiled corpus is stored as UTF-8.
+			CompiledCorpus corpus = new CompiledCorpus(textData);
+			lastReadCharset = StandardCharsets.UTF_8;
+			bytesRead += corpus.getByteSize();
+			readTime += corpus.getReadTime();
+			return corpus.getDocument();
+		}
 		
-		text = DocumentReader.readText(dataReader);
+		MappedTextFile file = new MappedTextFile(textData, inputCharset);
+		lastReadCharset = file.getCharset();
+		bytesRead += file.getByteSize();
+		readTime += file.getReadTime();
 		
-        // create an empty Annotation just with the given text
-        Annotation document = new Annotation(text);
-		
-        input.close();
-		return document;	
+        // CoreNLP annotates Strings, so the file is decoded straight into one.
+        return new Annotation(file.getText());
+	}
+	
+	
+	/**
+	 * Helper method that reads in a dataset
+	 * already split into sentences and tokenized,
+	 * with each sentence numbered with the line it
+	 * starts on. The file is memory-mapped, decoded
+	 * and annotated a slice at a time, so its whole
+	 * text is never held in one String; only the time
+	 * taken to decode it is counted as read time.
+	 * A compiled corpus is read as the already tokenized
+	 * and sentence-split annotation it holds instead.
+	 *
+	 * @param textData	the dataset to be read.
+	 *
+	 * @param pipeline	the CoreNLP pipeline the dataset is annotated with.
+	 *
+	 * @return	a CoreNLP annotation of the sentences of the given dataset.
+	 *
+	 * @throws FileNotFoundException if the file containing the data does not exist.
+	 *
+	 * @throws IOException	if an error occurs while reading the data.
+	 *
+	 */
+	public Annotation readAnnotatedData(String textData, StanfordCoreNLP pipeline) throws FileNotFoundException, IOException
+	{
+		if (CompiledCorpus.isCompiled(textData)) { return readData(textData); }
+	
+		MappedTextDocument file = new MappedTextDocument(textData, inputCharset, pipeline, MappedTextDocument.SLICE_CHARACTERS);
+		lastReadCharset = file.getCharset();
+		bytesRead += file.getByteSize();
+		readTime += file.getReadTime();
+		return file.getDocument();
+	}
+	
+	
+	/**
+	 * Helper method that sets the charset the
+	 * datasets are read with.
+	 * 
+	 * @param charset	the charset (such as UTF-8 or windows-1252), or null to detect it for each file.
+	 * 
+	 */
+	public void setInputCharset(Charset charset)
+	{
+		inputCharset = charset;
+	}
+	
+	
+	/**
+	 * Helper method that returns the charset
+	 * the datasets are read with.
+	 * 
+	 * @return	the charset of the datasets, or null if it is detected for each file.
+	 * 
+	 */
+	public Charset getInputCharset()
+	{
+		return inputCharset;
+	}
+	
+	
+	/**
+	 * Helper method that records a dataset read
+	 * outside of readData, so it is included in
+	 * the read statistics.
+	 * 
+	 * @param bytes	the number of bytes read.
+	 * 
+	 * @param nanoseconds	the time spent reading them, in nanoseconds.
+	 * 
+	 */
+	public void recordRead(long bytes, long nanoseconds)
+	{
+		bytesRead += bytes;
+		readTime += nanoseconds;
+	}
+	
+	
+	/**
+	 * Helper method that returns the charset
+	 * the last dataset was read with.
+	 * 
+	 * @return	the charset of the last dataset read.
+	 * 
+	 */
+	public Charset getLastReadCharset()
+	{
+		return lastReadCharset;
+	}
+	
+	
+	/**
+	 * Helper method that returns how much data
+	 * has been read so far, and how fast.
+	 * 
+	 * @return	the number of bytes read, the time spent reading them (in milliseconds) and the read throughput (in megabytes per second).
+	 * 
+	 */
+	public float[] getReadStats()
+	{
+		float milliseconds = readTime / 1e6f;
+		float throughput = (readTime == 0) ? 0 : (bytesRead / (1024f * 1024f)) / (readTime / 1e9f);
+		float[] stats = { bytesRead, milliseconds, throughput };
+		return stats;
 	}
 	
 	/**
@@ -173,7 +314,7 @@ public final class FileHandler
 	 * @param	analyzer	the language model implementation used to 
 	 * 						analyze the given dataset from a file.
 	 * 
-	 * @param	ops			additional operations that should be performed on the language model.
+	 * @param	configuration	the datasets, and the operations that should be performed on the language model.
 	 * 
 	 * @return	a structure containing the results of the 
 	 * 			language model operations.
@@ -182,18 +323,103 @@ public final class FileHandler
 	 * @throws FileNotFoundException	if the input or output text files are empty or cannot be found.
 	 * 
 	 */
-	public AnalyzedData loadAndCompute(LanguageModeler analyzer, HashMap<String, Integer> ops) throws IOException, FileNotFoundException
+	public AnalyzedData loadAndCompute(LanguageModeler analyzer, RunConfiguration configuration) throws IOException, FileNotFoundException
 	{
 		textProcessor = analyzer;
+		configure(configuration);
 		
         // Pass the datasets into CoreNLP to begin language model operations.
-        processedResults = textProcessor.analyzeText(trainingDataSource, testingDataSource, ops);
+        processedResults = textProcessor.analyzeText(trainingDataSource, testingDataSource, configuration);
                  
         // Return the text analysis for printing/storage into an external file. 
         return processedResults;
 	}
 	
 	
+	/**
+	 * Builds the language models from the training
+	 * dataset once, then evaluates every test dataset
+	 * in the test directory or glob pattern, several at
+	 * a time, writing one result file per test dataset
+	 * and a summary to the output directory.
+	 * 
+	 * @param	analyzer	the language model implementation used to build the language models.
+	 * 
+	 * @param	configuration	the datasets, and the operations that should be performed on the language model; its threads set the number of files evaluated at a time.
+	 * 
+	 * @return	the text of the summary of all test datasets.
+	 *
+	 * @throws IOException	if an error occurs while reading a dataset or writing a result.
+	 * @throws FileNotFoundException	if the training dataset does not exist, or no test datasets match.
+	 * 
+	 */
+	public String loadAndEvaluateBatch(LanguageModeler analyzer, RunConfiguration configuration) throws IOException, FileNotFoundException
+	{
+		configure(configuration);
+		List<String> testFiles = listBatchFiles(testingDataSource);
+		if (testFiles.isEmpty()) { throw new FileNotFoundException("No test datasets match " + testingDataSource); }
+		
+		ModelStore store = analyzer.trainModels(trainingDataSource, configuration);
+		int threads = (configuration.getThreads() > 0) ? configuration.getThreads() : Runtime.getRuntime().availableProcessors();
+		return new BatchEvaluator(analyzer.getPipeline(), store, threads, inputCharset).evaluate(testFiles, outputDestination);
+	}
+	
+	
+	/**
+	 * Helper method that checks whether a test
+	 * dataset path names several datasets: a
+	 * directory, or a glob pattern (such as
+	 * 'data/test/*.txt') over file names.
+	 * 
+	 * @param filePath	the path given for the test dataset.
+	 * 
+	 * @return	true if the path is a directory or a glob pattern.
+	 * 
+	 */
+	public static boolean isBatchInput(String filePath)
+	{
+		return new File(filePath).isDirectory() || filePath.indexOf('*') >= 0 || filePath.indexOf('?') >= 0 || filePath.indexOf('[') >= 0 || filePath.indexOf('{') >= 0;
+	}
+	
+	
+	/**
+	 * Helper method that lists the files named
+	 * by a directory (its visible files) or by a
+	 * glob pattern over the file names of a directory,
+	 * in name order.
+	 * 
+	 * @param filePath	the directory or glob pattern.
+	 * 
+	 * @return	the paths of the files named.
+	 * 
+	 * @throws IOException	if the directory cannot be listed.
+	 */
+	private List<String> listBatchFiles(String filePath) throws IOException
+	{
+		Path directory = Paths.get(filePath);
+		PathMatcher matcher = null;
+		if (!Files.isDirectory(directory))
+		{
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + directory.getFileName());
+			directory = (directory.getParent() == null) ? Paths.get(".") : directory.getParent();
+		}
+		
+		List<String> files = new ArrayList<String>();
+		DirectoryStream<Path> entries = Files.newDirectoryStream(directory);
+		try
+		{
+			for (Path entry : entries)
+			{
+				if (!Files.isRegularFile(entry) || entry.getFileName().toString().startsWith(".")) { continue; }
+				if (matcher == null || matcher.matches(entry.getFileName())) { files.add(entry.toString()); }
+			}
+		}
+		finally { entries.close(); }
+		Collections.sort(files);
+		return files;
+	}
+	
+	
 	/**
 	 * Helper method that writes some string data
 	 * to the given external output file.
@@ -222,40 +448,105 @@ public final class FileHandler
 	 * @return	a pre-processed sentence.
 	 */
 	public String appendToSentence(CoreMap sentence)
+	{ return appendToSentence(sentence.toString()); }
+	
+	
+	/**
+	 * Helper method that pre-processes the text
+	 * of a sentence by appending the <s> start and
+	 * end </s> sentence symbols to it, splitting a
+	 * trailing full stop off its word.
+	 * 
+	 * @param sentence	the text of the sentence that is to be appended with <s> and </s>
+	 * 
+	 * @return	a pre-processed sentence.
+	 */
+	public String appendToSentence(String sentence)
 	{
-		String prefix = "<s> ";
-    	String suffix = " </s>";
-		
-		// Preprocess by appending the <s> and </s> symbols to each sentence.
-    	String prefixSentence = prefix.concat(sentence.toString());
-    	if (prefixSentence.endsWith(".")) { prefixSentence = prefixSentence.substring(0,prefixSentence.length() - 1) + " ."; }		
-    	String AppendedSentence = prefixSentence.concat(suffix);
-		
-    	return AppendedSentence;
+		StringBuilder appendedSentence = new StringBuilder(sentence.length() + 10).append(NgramCounts.START_SYMBOL).append(' ');
+		if (sentence.endsWith(".")) { appendedSentence.append(sentence, 0, sentence.length() - 1).append(" ."); }
+		else { appendedSentence.append(sentence); }
+		return appendedSentence.append(' ').append(NgramCounts.END_SYMBOL).toString();
 	}
 	
 	
 	/**
-	 * Helper method that pre-processes a given
-	 * sentence by appending the <s> start symbol
-	 * to the sentence.
+	 * Helper method that counts the words of a
+	 * given sentence as they are scored: split on
+	 * whitespace, with a trailing full stop split
+	 * off its word. The <s> and </s> symbols are
+	 * not counted.
 	 * 
-	 * @param sentence	the sentence that is to be appended with <s>
+	 * @param sentence	the sentence whose words are to be counted.
 	 * 
-	 * @return	a pre-processed sentence.
+	 * @return	the number of words in the sentence.
+	 */
+	public int countWords(CoreMap sentence)
+	{ return countWords(sentence.toString()); }
+	
+	
+	/**
+	 * Helper method that counts the words of the
+	 * text of a sentence, already taken from it, as
+	 * countWords(CoreMap) does.
+	 * 
+	 * @param text	the text of the sentence whose words are to be counted.
+	 * 
+	 * @return	the number of words in the sentence.
 	 */
-	public String appendPrefixToSentence(CoreMap sentence)
+	public int countWords(CharSequence text)
 	{
-		String prefix = "<s> ";	
-		// Preprocess by appending the <s> start symbol to each sentence.
-    	String prefixSentence = prefix.concat(sentence.toString());
-    	if (prefixSentence.endsWith(".")) { prefixSentence = prefixSentence.substring(0,prefixSentence.length() - 1) + " ."; }
-    	return prefixSentence;
+		int end = text.length(), words = 0;
+		if (end > 0 && text.charAt(end - 1) == '.') { end--; words++; }
+		boolean inWord = false;
+		for (int index = 0; index < end; index++)
+		{
+			// The whitespace characters are those of the \\s class the n-gram split uses.
+			boolean whitespace = " \t\n\u000B\f\r".indexOf(text.charAt(index)) >= 0;
+			if (!whitespace && !inWord) { words++; }
+			inWord = !whitespace;
+		}
+		return words;
+	}
+	
+	
+	/**
+	 * Helper method that returns the words of the
+	 * CoreNLP tokens of a given sentence, which its
+	 * unigrams are counted from.
+	 * 
+	 * @param sentence	the sentence whose token words are returned.
+	 * 
+	 * @return	the words of the sentence's tokens, or null if it was not tokenized (as in a compiled corpus of version 3).
+	 */
+	public String[] tokenWords(CoreMap sentence)
+	{
+		List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
+		if (tokens == null) { return null; }
+		String[] words = new String[tokens.size()];
+		for (int index = 0; index < words.length; index++) { words[index] = tokens.get(index).word(); }
+		return words;
 	}
 
 	
 	//============================================ PRIVATE METHODS =============================================================
 	
-	// No Private Methods
+	
+	/**
+	 * Helper method that takes the locations of the
+	 * datasets and output, and the charset the datasets
+	 * are read with, from a run configuration.
+	 * 
+	 * @param configuration	the run configuration.
+	 * 
+	 */
+	private void configure(RunConfiguration configuration)
+	{
+		setTrainDataFilePath(configuration.getTrainDataFilePath());
+		setTestDataFilePath(configuration.getTestDataFilePath());
+		setOutputResultFilePath(configuration.getOutputFilePath());
+		setInputCharset(configuration.getInputCharset());
+	}
+	
 
 }
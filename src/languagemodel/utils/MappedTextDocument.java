@@ -0,0 +1,225 @@
+package languagemodel.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetEndAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.LineNumberAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+
+
+/**
+ * This class reads a text file into a document
+ * split into sentences and tokenized by CoreNLP, a
+ * slice at a time, so the text of the file is never
+ * held in one String: each slice decoded by a
+ * MappedTextReader is annotated by itself, and only
+ * its sentences are kept, each numbered with the
+ * line of the file it starts on.
+ * CoreNLP tokenizes the end of a text differently,
+ * and a sentence may run on into the next slice, so
+ * only the sentences ending before the last whole
+ * line of the slice are kept; the rest are annotated
+ * again at the start of the next slice. Sentences
+ * longer than MAX_CARRY characters together are not
+ * held back, and are kept as cut.
+ * The document holds the text of its sentences and
+ * their tokens, which take more memory than the text
+ * of the file, so a dataset read this way must still
+ * fit in memory once annotated; only the copy of its
+ * whole text is saved. The character offsets of the
+ * sentences and their tokens are within their slice.
+ *
+ * @author David Olorundare
+ *
+ */
+public class MappedTextDocument
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the number of characters decoded and annotated at a time, unless another number is given.
+	public static final int SLICE_CHARACTERS = 1 << 16;
+
+	// Represents the length of the longest text held back for the next slice, beyond which it is kept as cut.
+	private static final int MAX_CARRY = 1 << 18;
+
+	// Represents the charset the file was decoded with.
+	private final Charset charset;
+
+	// Represents the document holding the sentences of the file.
+	private final Annotation document;
+
+	// Represents the size of the file in bytes.
+	private final long byteSize;
+
+	// Represents the time taken to map and decode the file, in nanoseconds, without the time taken to annotate it.
+	private long readTime = 0;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which maps, decodes
+	 * and annotates the file.
+	 *
+	 * @param filePath	the path of the file to be read.
+	 *
+	 * @param fileCharset	the charset of the file, or null to detect it.
+	 *
+	 * @param pipeline	the CoreNLP pipeline the slices are annotated with.
+	 *
+	 * @param sliceCharacters	the number of characters decoded and annotated at a time.
+	 *
+	 * @throws FileNotFoundException	if the file does not exist.
+	 *
+	 * @throws IOException	if an error occurs while reading the file.
+	 *
+	 */
+	public MappedTextDocument(String filePath, Charset fileCharset, StanfordCoreNLP pipeline, int sliceCharacters) throws FileNotFoundException, IOException
+	{
+		MappedTextReader reader = new MappedTextReader(filePath, fileCharset);
+		List<CoreMap> sentences = new ArrayList<CoreMap>();
+		try
+		{
+			byteSize = reader.getByteSize();
+			charset = reader.getCharset();
+
+			CharBuffer slice = CharBuffer.allocate(sliceCharacters);
+			String carry = "";
+			int line = 1;
+			boolean more = true;
+			while (more)
+			{
+				long startTime = System.nanoTime();
+				slice.clear();
+				more = reader.read(slice);
+				slice.flip();
+				String text = carry + slice.toString();
+				readTime += System.nanoTime() - startTime;
+
+				Annotation annotation = new Annotation(text);
+				pipeline.annotate(annotation);
+				List<CoreMap> sliceSentences = annotation.get(SentencesAnnotation.class);
+
+				// Hold back the sentences from the first one crossing the cut, unless the file has been read to its end.
+				int kept = sliceSentences.size(), end = text.length();
+				if (more)
+				{
+					int cut = cutPosition(text);
+					kept = 0;
+					while (kept < sliceSentences.size() && sliceSentences.get(kept).get(CharacterOffsetEndAnnotation.class) <= cut) { kept++; }
+					end = (kept < sliceSentences.size()) ? sliceSentences.get(kept).get(CharacterOffsetBeginAnnotation.class) : cut;
+
+					// A run of sentences too long to hold back is kept, all but the last, as cut.
+					if (text.length() - end > MAX_CARRY)
+					{
+						kept = sliceSentences.size() - 1;
+						if (kept <= 0 || text.length() - (end = sliceSentences.get(kept).get(CharacterOffsetBeginAnnotation.class)) > MAX_CARRY)
+						{ kept = sliceSentences.size(); end = text.length(); }
+					}
+				}
+
+				// Number each sentence kept with the line it starts on, scanning the text once.
+				int position = 0;
+				for (int index = 0; index < kept; index++)
+				{
+					CoreMap sentence = sliceSentences.get(index);
+					int start = sentence.get(CharacterOffsetBeginAnnotation.class);
+					for (; position < start; position++) { if (text.charAt(position) == '\n') { line++; } }
+					sentence.set(LineNumberAnnotation.class, line);
+					sentences.add(sentence);
+				}
+				for (; position < end; position++) { if (text.charAt(position) == '\n') { line++; } }
+				carry = text.substring(end);
+			}
+		}
+		finally { reader.close(); }
+
+		document = new Annotation("");
+		document.set(SentencesAnnotation.class, sentences);
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the document holding
+	 * the sentences of the file; it is already split
+	 * into sentences and tokenized, so it must not be
+	 * annotated again.
+	 *
+	 * @return	the document of the file.
+	 */
+	public Annotation getDocument()
+	{ return document; }
+
+
+	/**
+	 * Helper method that returns the charset the file was decoded with.
+	 *
+	 * @return	the charset of the file.
+	 */
+	public Charset getCharset()
+	{ return charset; }
+
+
+	/**
+	 * Helper method that returns the size of the file in bytes.
+	 *
+	 * @return	the size of the file.
+	 */
+	public long getByteSize()
+	{ return byteSize; }
+
+
+	/**
+	 * Helper method that returns the time taken to
+	 * map and decode the file, without the time taken
+	 * to annotate it.
+	 *
+	 * @return	the read time, in nanoseconds.
+	 */
+	public long getReadTime()
+	{ return readTime; }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that finds where the annotated
+	 * part of a slice ends: at the last line break
+	 * followed by a whole line that is not blank, so
+	 * every sentence kept was tokenized with the text
+	 * that follows it in the file, or at the start of
+	 * the slice if it has no such line break.
+	 *
+	 * @param text	the text annotated, ending where the slice does.
+	 *
+	 * @return	the position the sentences kept must end by.
+	 */
+	private static int cutPosition(String text)
+	{
+		int lineEnd = text.lastIndexOf('\n');
+		while (lineEnd > 0)
+		{
+			int lineStart = text.lastIndexOf('\n', lineEnd - 1);
+			for (int position = lineStart + 1; position < lineEnd; position++)
+			{ if (!Character.isWhitespace(text.charAt(position))) { return Math.max(0, lineStart); } }
+			lineEnd = lineStart;
+		}
+		return 0;
+	}
+
+}
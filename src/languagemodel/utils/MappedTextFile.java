@@ -0,0 +1,137 @@
+package languagemodel.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+
+/**
+ * This class reads a whole text file into the
+ * String CoreNLP annotates, decoding it a chunk
+ * at a time with a MappedTextReader, so the file
+ * is never copied through stream and reader buffers
+ * nor held whole in an intermediate CharBuffer.
+ * The charset of the file is either given, or
+ * detected as the MappedTextReader does.
+ * The text of a file read whole must fit in one
+ * String; the language modeller reads its datasets
+ * with a MappedTextDocument instead, which annotates
+ * them a slice at a time, and larger training datasets
+ * are counted by the pipelined reader.
+ *
+ * @author David Olorundare
+ *
+ */
+public class MappedTextFile
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the number of characters decoded at a time.
+	private static final int DECODE_CHUNK = 1 << 16;
+
+	// Represents the largest number of characters a String can hold.
+	private static final int MAX_TEXT_LENGTH = Integer.MAX_VALUE - 8;
+
+	// Represents the charset the file was decoded with.
+	private final Charset charset;
+
+	// Represents the decoded text of the file.
+	private final String text;
+
+	// Represents the size of the file in bytes.
+	private final long byteSize;
+
+	// Represents the time taken to map and decode the file, in nanoseconds.
+	private final long readTime;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which maps and decodes the file.
+	 *
+	 * @param filePath	the path of the file to be read.
+	 *
+	 * @param fileCharset	the charset of the file, or null to detect it.
+	 *
+	 * @throws FileNotFoundException	if the file does not exist.
+	 *
+	 * @throws IOException	if an error occurs while reading the file, or if its text is too long to be held in one String.
+	 *
+	 */
+	public MappedTextFile(String filePath, Charset fileCharset) throws FileNotFoundException, IOException
+	{
+		long startTime = System.nanoTime();
+		MappedTextReader reader = new MappedTextReader(filePath, fileCharset);
+		try
+		{
+			byteSize = reader.getByteSize();
+			charset = reader.getCharset();
+
+			// The usual charsets decode to at most one character per byte, so the builder seldom has to grow.
+			StringBuilder decoded = new StringBuilder((int) Math.min(byteSize, MAX_TEXT_LENGTH));
+			CharBuffer chunk = CharBuffer.allocate(DECODE_CHUNK);
+			boolean more = true;
+			while (more)
+			{
+				chunk.clear();
+				more = reader.read(chunk);
+				if (decoded.length() > MAX_TEXT_LENGTH - chunk.position())
+				{ throw new IOException("The text of the file is too long to be read whole: " + filePath + " (" + byteSize + " bytes); count it with the pipelined reader ('-T') instead."); }
+				decoded.append(chunk.array(), 0, chunk.position());
+			}
+			text = decoded.toString();
+		}
+		finally { reader.close(); }
+		readTime = System.nanoTime() - startTime;
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that returns the decoded text of the file.
+	 *
+	 * @return	the text of the file.
+	 */
+	public String getText()
+	{ return text; }
+
+
+	/**
+	 * Helper method that returns the charset the file was decoded with.
+	 *
+	 * @return	the charset of the file.
+	 */
+	public Charset getCharset()
+	{ return charset; }
+
+
+	/**
+	 * Helper method that returns the size of the file in bytes.
+	 *
+	 * @return	the size of the file.
+	 */
+	public long getByteSize()
+	{ return byteSize; }
+
+
+	/**
+	 * Helper method that returns the time taken to map and decode the file.
+	 *
+	 * @return	the read time, in nanoseconds.
+	 */
+	public long getReadTime()
+	{ return readTime; }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+	// No Private Methods.
+
+}
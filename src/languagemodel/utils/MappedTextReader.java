@@ -0,0 +1,253 @@
+package languagemodel.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * This class decodes a text file a buffer at a
+ * time by mapping it into memory one window at a
+ * time, so files larger than a single mapping (2 GB)
+ * can be read, and no more of the file is decoded
+ * than the caller has room for. A character split
+ * across two windows is decoded whole, since each
+ * window is mapped from the first byte the decoder
+ * has not consumed.
+ * The charset of the file is either given, or
+ * detected from the start of the file: if its first
+ * megabyte holds valid UTF-8 (or it starts with a
+ * UTF-8 byte order mark) it is read as UTF-8, and
+ * otherwise as Windows-1252.
+ *
+ * @author David Olorundare
+ *
+ */
+public class MappedTextReader
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the charset files are read with when they do not hold valid UTF-8.
+	public static final Charset FALLBACK_CHARSET = Charset.forName("windows-1252");
+
+	// Represents the number of bytes mapped at a time.
+	private static final long WINDOW_BYTES = 1L << 30;
+
+	// Represents the number of bytes at the start of a file checked for valid UTF-8.
+	private static final int DETECTION_BYTES = 1 << 20;
+
+	// Represents the number of characters decoded at a time while checking whether bytes are valid UTF-8.
+	private static final int DETECTION_CHUNK = 8192;
+
+	// Represents the channel the file is mapped through.
+	private final FileChannel channel;
+
+	// Represents the size of the file in bytes.
+	private final long byteSize;
+
+	// Represents the charset the file is decoded with.
+	private final Charset charset;
+
+	// Represents the decoder of the file, which replaces undecodable bytes as an InputStreamReader does.
+	private final CharsetDecoder decoder;
+
+	// Represents the window of the file currently mapped.
+	private MappedByteBuffer window;
+
+	// Represents the offset in the file of the start of the current window.
+	private long windowStart = 0;
+
+	// Represents true once the whole file has been decoded.
+	private boolean finished = false;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class, which opens the file,
+	 * maps its first window and settles its charset.
+	 *
+	 * @param filePath	the path of the file to be read.
+	 *
+	 * @param fileCharset	the charset of the file, or null to detect it.
+	 *
+	 * @throws FileNotFoundException	if the file does not exist.
+	 *
+	 * @throws IOException	if an error occurs while mapping the file.
+	 *
+	 */
+	public MappedTextReader(String filePath, Charset fileCharset) throws FileNotFoundException, IOException
+	{
+		try { channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ); }
+		catch (NoSuchFileException e) { throw new FileNotFoundException(filePath); }
+
+		try
+		{
+			byteSize = channel.size();
+			mapWindow(0);
+		}
+		catch (IOException e) { channel.close(); throw e; }
+
+		charset = (fileCharset != null) ? fileCharset : detectCharset(window);
+		skipByteOrderMark(window, charset);
+		decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that decodes the next part of
+	 * the file into a buffer, until the buffer is full
+	 * or the file has been decoded to its end.
+	 *
+	 * @param characters	the buffer the characters are put into, from its position.
+	 *
+	 * @return	true if some of the file is left to decode, or false once it has been decoded to its end.
+	 *
+	 * @throws IOException	if an error occurs while mapping the next window of the file.
+	 */
+	public boolean read(CharBuffer characters) throws IOException
+	{
+		while (!finished)
+		{
+			boolean lastWindow = (windowStart + window.limit() == byteSize);
+			CoderResult result = decoder.decode(window, characters, lastWindow);
+			if (result.isOverflow()) { return true; }
+
+			// The decoder stops short of a character split by the end of the window, so the next window starts with it.
+			if (!lastWindow) { mapWindow(windowStart + window.position()); continue; }
+			if (decoder.flush(characters).isOverflow()) { return true; }
+			finished = true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Helper method that returns the charset the file is decoded with.
+	 *
+	 * @return	the charset of the file.
+	 */
+	public Charset getCharset()
+	{ return charset; }
+
+
+	/**
+	 * Helper method that returns the size of the file in bytes.
+	 *
+	 * @return	the size of the file.
+	 */
+	public long getByteSize()
+	{ return byteSize; }
+
+
+	/**
+	 * Helper method that closes the file; the
+	 * window already mapped stays readable.
+	 *
+	 * @throws IOException	if an error occurs while closing the file.
+	 */
+	public void close() throws IOException
+	{ channel.close(); }
+
+
+	/**
+	 * Helper method that detects the charset of
+	 * some bytes from their first megabyte: UTF-8 if
+	 * they start with a UTF-8 byte order mark or that
+	 * prefix is valid UTF-8, and Windows-1252 otherwise.
+	 *
+	 * @param bytes	the bytes whose charset is detected; their position is left unchanged.
+	 *
+	 * @return	the charset of the bytes.
+	 */
+	public static Charset detectCharset(ByteBuffer bytes)
+	{ return (hasByteOrderMark(bytes) || isValidUtf8Prefix(bytes)) ? StandardCharsets.UTF_8 : FALLBACK_CHARSET; }
+
+
+	/**
+	 * Helper method that moves the position of
+	 * some bytes past their UTF-8 byte order mark,
+	 * if they have one and are decoded as UTF-8.
+	 *
+	 * @param bytes	the bytes about to be decoded.
+	 *
+	 * @param bytesCharset	the charset the bytes are decoded with.
+	 */
+	public static void skipByteOrderMark(ByteBuffer bytes, Charset bytesCharset)
+	{
+		if (hasByteOrderMark(bytes) && bytesCharset.equals(StandardCharsets.UTF_8)) { bytes.position(bytes.position() + 3); }
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that maps the window of the
+	 * file starting at the given offset.
+	 */
+	private void mapWindow(long start) throws IOException
+	{
+		windowStart = start;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, byteSize - start));
+	}
+
+
+	/**
+	 * Helper method that returns true if some
+	 * bytes start with a UTF-8 byte order mark.
+	 */
+	private static boolean hasByteOrderMark(ByteBuffer bytes)
+	{
+		int start = bytes.position();
+		return bytes.limit() - start >= 3 && (bytes.get(start) & 0xFF) == 0xEF && (bytes.get(start + 1) & 0xFF) == 0xBB && (bytes.get(start + 2) & 0xFF) == 0xBF;
+	}
+
+
+	/**
+	 * Helper method that checks whether the first
+	 * megabyte of some bytes is valid UTF-8, decoding
+	 * it a chunk at a time so the check holds no copy
+	 * of the text. A character cut off by the end of
+	 * the prefix is not counted as malformed.
+	 *
+	 * @param bytes	the bytes to be checked.
+	 *
+	 * @return	true if the start of the bytes is valid UTF-8.
+	 */
+	private static boolean isValidUtf8Prefix(ByteBuffer bytes)
+	{
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+		ByteBuffer input = bytes.duplicate();
+		boolean whole = (input.remaining() <= DETECTION_BYTES);
+		if (!whole) { input.limit(input.position() + DETECTION_BYTES); }
+		CharBuffer chunk = CharBuffer.allocate(DETECTION_CHUNK);
+		while (true)
+		{
+			chunk.clear();
+			CoderResult result = decoder.decode(input, chunk, whole);
+			if (result.isError()) { return false; }
+			if (result.isUnderflow()) { break; }
+		}
+		chunk.clear();
+		return !whole || !decoder.flush(chunk).isError();
+	}
+
+}
@@ -0,0 +1,214 @@
+package languagemodel.utils;
+
+
+/**
+ * This class extracts the n-grams of any order
+ * from a sequence of token ids, by sliding a window
+ * over the id array and handing each position to a
+ * visitor, either as the window itself (the array,
+ * the start of the n-gram and its order) or as the
+ * ids of the n-gram packed into one long key. No
+ * n-gram Strings are built and nothing is allocated,
+ * so token ids (and tokens holding spaces) pass
+ * through unchanged.
+ *
+ * A key packs each id into a fixed number of bits,
+ * first id highest, so the ids of an order-n n-gram
+ * must fit in 64 / n bits; with 32 bits per id, a
+ * bigram key is the same as NgramTable.bigramKey.
+ *
+ * @author David Olorundare
+ *
+ */
+public final class NgramExtractor
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// No Private Variables
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 *  Private Constructor of the NgramExtractor class, which only has static methods.
+	 */
+	private NgramExtractor(){	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * This interface receives each n-gram of a
+	 * token-id sequence as a window of the sequence.
+	 */
+	public interface NgramVisitor
+	{
+		/**
+		 * Receives one n-gram.
+		 *
+		 * @param tokenIds	the token-id sequence; the n-gram is tokenIds[start] to tokenIds[start + order - 1].
+		 *
+		 * @param start	the index of the first id of the n-gram.
+		 *
+		 * @param order	the number of ids in the n-gram.
+		 */
+		void visit(int[] tokenIds, int start, int order);
+	}
+
+
+	/**
+	 * This interface receives each n-gram of a
+	 * token-id sequence as a packed key.
+	 */
+	public interface KeyVisitor
+	{
+		/**
+		 * Receives the key of one n-gram.
+		 *
+		 * @param key	the ids of the n-gram, packed by packKey.
+		 */
+		void visit(long key);
+	}
+
+
+	/**
+	 * Helper method that hands every n-gram of an
+	 * order in a token-id sequence to a visitor,
+	 * from first to last.
+	 *
+	 * @param tokenIds	the token-id sequence.
+	 *
+	 * @param length	the number of ids used from the start of the sequence.
+	 *
+	 * @param order	the order n of the n-grams, at least 1.
+	 *
+	 * @param visitor	the visitor receiving each n-gram.
+	 *
+	 * @return	the number of n-grams visited.
+	 */
+	public static int forEachNgram(int[] tokenIds, int length, int order, NgramVisitor visitor)
+	{
+		checkOrder(order);
+		int last = length - order;
+		for (int start = 0; start <= last; start++) { visitor.visit(tokenIds, start, order); }
+		return Math.max(0, last + 1);
+	}
+
+
+	/**
+	 * Helper method that hands the packed key of
+	 * every n-gram of an order in a token-id sequence
+	 * to a visitor, from first to last. Each key is
+	 * rolled from the previous one, so a key costs a
+	 * shift and a mask whatever the order.
+	 *
+	 * @param tokenIds	the token-id sequence; every id must be at least 0 and fit in bitsPerId bits.
+	 *
+	 * @param length	the number of ids used from the start of the sequence.
+	 *
+	 * @param order	the order n of the n-grams, at least 1.
+	 *
+	 * @param bitsPerId	the number of bits each id is packed into, at most 32; order * bitsPerId must be at most 64.
+	 *
+	 * @param visitor	the visitor receiving the key of each n-gram.
+	 *
+	 * @return	the number of n-grams visited.
+	 */
+	public static int forEachKey(int[] tokenIds, int length, int order, int bitsPerId, KeyVisitor visitor)
+	{
+		checkOrder(order);
+		checkBits(order, bitsPerId);
+		if (length < order) { return 0; }
+
+		long mask = (order * bitsPerId >= 64) ? -1L : (1L << (order * bitsPerId)) - 1;
+		long key = packKey(tokenIds, 0, order - 1, bitsPerId);
+		for (int index = order - 1; index < length; index++)
+		{
+			key = ((key << bitsPerId) | (tokenIds[index] & 0xFFFFFFFFL)) & mask;
+			visitor.visit(key);
+		}
+		return length - order + 1;
+	}
+
+
+	/**
+	 * Helper method that packs the ids of an n-gram
+	 * into one key, first id highest.
+	 *
+	 * @param tokenIds	the token-id sequence holding the n-gram.
+	 *
+	 * @param start	the index of the first id of the n-gram.
+	 *
+	 * @param order	the number of ids in the n-gram.
+	 *
+	 * @param bitsPerId	the number of bits each id is packed into.
+	 *
+	 * @return	the key of the n-gram.
+	 */
+	public static long packKey(int[] tokenIds, int start, int order, int bitsPerId)
+	{
+		long key = 0;
+		for (int index = start; index < start + order; index++) { key = (key << bitsPerId) | (tokenIds[index] & 0xFFFFFFFFL); }
+		return key;
+	}
+
+
+	/**
+	 * Helper method that unpacks one id of a key.
+	 *
+	 * @param key	the key of the n-gram.
+	 *
+	 * @param position	the position of the id in the n-gram, 0 for the first.
+	 *
+	 * @param order	the number of ids in the n-gram.
+	 *
+	 * @param bitsPerId	the number of bits each id is packed into.
+	 *
+	 * @return	the id at the position.
+	 */
+	public static int unpackId(long key, int position, int order, int bitsPerId)
+	{
+		long mask = (bitsPerId >= 64) ? -1L : (1L << bitsPerId) - 1;
+		return (int) ((key >>> ((order - 1 - position) * bitsPerId)) & mask);
+	}
+
+
+	/**
+	 * Helper method that returns the number of bits
+	 * needed to pack every id of a vocabulary.
+	 *
+	 * @param vocabularySize	the number of ids, numbered from 0.
+	 *
+	 * @return	the number of bits per id, at least 1.
+	 */
+	public static int bitsFor(int vocabularySize)
+	{ return Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(0, vocabularySize - 1))); }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that rejects an order below 1.
+	 */
+	private static void checkOrder(int order)
+	{
+		if (order < 1) { throw new IllegalArgumentException("The n-gram order must be at least 1, not " + order + "."); }
+	}
+
+
+	/**
+	 * Helper method that rejects keys that do not
+	 * fit in a long.
+	 */
+	private static void checkBits(int order, int bitsPerId)
+	{
+		if (bitsPerId < 1 || bitsPerId > 32 || order * bitsPerId > 64)
+		{ throw new IllegalArgumentException("Order-" + order + " keys of " + bitsPerId + "-bit ids do not fit in a long."); }
+	}
+
+}
@@ -2,6 +2,7 @@ package languagemodel.utils;
 
 import java.io.IOException;
 import languagemodel.structures.AnalyzedData;
+import languagemodel.structures.PerplexityReport;
 
 
 /**
@@ -88,6 +89,39 @@ public final class OutputPrinter
 		// Append randomly generated sentences. 
 		appendGeneratedSentences(data);
 		
+		// Append lazy probability cache metrics.
+		appendProbabilityCacheInfo(data);
+		
+		// Append sentence score cache metrics.
+		appendSentenceCacheInfo(data);
+		
+		// Append model store and quantization information.
+		appendModelStoreInfo(data);
+		
+		// Append input charset and read throughput information.
+		appendInputInfo(data);
+		
+		// Append counting pipeline stage metrics.
+		appendPipelineInfo(data);
+		
+		// Append the compiled corpora written.
+		appendCompiledInfo(data);
+		
+		// Append the ARPA files loaded or written.
+		appendArpaInfo(data);
+		
+		// Append the side-by-side evaluation of the model variants.
+		appendVariantInfo(data);
+		
+		// Append the smoothing hyperparameters tuned on the held-out dataset.
+		appendTuningInfo(data);
+		
+		// Append sentence, document and corpus perplexities.
+		appendPerplexityReportInfo(data);
+		
+		// Append the most likely sentences found by beam search.
+		appendBeamInfo(data);
+		
 		// Print the analysis results to the console.
 		System.out.println(output.toString());
 		
@@ -118,6 +152,297 @@ public final class OutputPrinter
 			{
 				output.append(sentence + "\n");
 			}
+			
+			// Report the generations that hit the length cap, a dead end or the time budget.
+			float[] stats = data.getGenerationStats();
+			if (stats != null)
+			{
+				output.append(String.format("%n- Generated %d sentences in %.1f ms: %d cut off at the largest length, %d stopped at a dead end, %d left ungenerated by the time budget.%n",
+						(long) stats[0], stats[4], (long) stats[1], (long) stats[2], (long) stats[3]));
+			}
+		}
+	}
+
+
+	/**
+	 * Helper method that appends to the output 
+	 * the hit rate of the lazy probability cache.
+	 * 
+	 * @param data	the structure containing the lazy probability cache metrics.
+	 * 
+	 */
+	private void appendProbabilityCacheInfo(AnalyzedData data) 
+	{
+		// Output probability cache information.
+		if (data.getProbabilityCacheStats() != null)
+		{
+			output.append("\n------------\n");
+			output.append("*Probability Cache:\n");
+			output.append("- Hits: " + (long) data.getProbabilityCacheStats()[0] + "\n");
+			output.append("- Misses: " + (long) data.getProbabilityCacheStats()[1] + "\n");
+			output.append("- Hit rate: " + data.getProbabilityCacheStats()[2] + "\n");
+		}
+	}
+
+
+	/**
+	 * Helper method that appends to the output 
+	 * the hit rate of the sentence score cache.
+	 * 
+	 * @param data	the structure containing the sentence score cache metrics.
+	 * 
+	 */
+	private void appendSentenceCacheInfo(AnalyzedData data) 
+	{
+		// Output sentence cache information.
+		if (data.getSentenceCacheStats() != null)
+		{
+			output.append("\n------------\n");
+			output.append("*Sentence Cache:\n");
+			output.append("- Hits: " + (long) data.getSentenceCacheStats()[0] + "\n");
+			output.append("- Misses: " + (long) data.getSentenceCacheStats()[1] + "\n");
+			output.append("- Hit rate: " + data.getSentenceCacheStats()[2] + "\n");
+		}
+	}
+
+
+	/**
+	 * Helper method that appends to the output 
+	 * the corpus perplexities, the percentiles of 
+	 * the sentence and document perplexities, the 
+	 * outlier sentences and each document's perplexities.
+	 * 
+	 * @param data	the structure containing the perplexity report.
+	 * 
+	 */
+	private void appendPerplexityReportInfo(AnalyzedData data) 
+	{
+		// Output the perplexity report.
+		PerplexityReport report = data.getPerplexityReport();
+		if (report != null)
+		{
+			float[] corpus = report.getCorpusPerplexity();
+			float[][] documents = report.getDocumentPerplexities();
+			output.append("\n------------\n");
+			output.append("*Perplexity Report:\n");
+			if (report.getSentenceCount() == 0) { output.append("- The test dataset holds no sentences.\n"); return; }
+			output.append("- Corpus: unigram " + corpus[0] + ", bigram " + corpus[1] + " (" + report.getSentenceCount() + " sentences, " + documents.length + " documents)\n");
+			appendPercentiles("Sentence", report.getSentencePercentiles());
+			appendPercentiles("Document", report.getDocumentPercentiles());
+			
+			output.append("- Highest bigram perplexity sentences:\n");
+			String[] outliers = report.getOutlierSentences();
+			for (int index = 0; index < outliers.length; index++)
+			{ output.append("  " + report.getOutlierPerplexities()[index] + ": " + outliers[index] + "\n"); }
+			
+			output.append("- Documents (by starting line):\n");
+			for (float[] document : documents)
+			{
+				output.append("  Line " + (int) document[0] + ": " + (int) document[1] + " sentences, unigram " + document[2] + ", bigram " + document[3] + "\n");
+			}
+		}
+	}
+	
+	
+	/**
+	 * Helper method that appends to the output
+	 * the unigram and bigram perplexities at each
+	 * reported percentile.
+	 * 
+	 * @param level	the name of what the perplexities are of.
+	 * 
+	 * @param percentiles	the unigram perplexity at each reported percentile, followed by the bigram perplexity at each.
+	 * 
+	 */
+	private void appendPercentiles(String level, float[] percentiles) 
+	{
+		int count = PerplexityReport.PERCENTILES.length;
+		output.append("- " + level + " perplexity percentiles:");
+		for (int index = 0; index < count; index++)
+		{
+			output.append(" p" + (int) PerplexityReport.PERCENTILES[index] + " unigram " + percentiles[index] + " / bigram " + percentiles[count + index]
+					+ ((index < count - 1) ? ";" : "\n"));
+		}
+	}
+	
+	
+	/**
+	 * Helper method that appends to the output 
+	 * the tuned hyperparameter of each smoothing 
+	 * method and its held-out and test perplexities.
+	 * 
+	 * @param data	the structure containing the tuning results.
+	 * 
+	 */
+	private void appendTuningInfo(AnalyzedData data) 
+	{
+		// Output hyperparameter tuning results.
+		if (data.getTuningNames() != null)
+		{
+			output.append("\n------------\n");
+			output.append("*Held-out Tuning:\n");
+			output.append(String.format("%-26s %12s %14s %14s %12s%n", "method", "value", "held-out PPL", "test PPL", "evaluations"));
+			for (int index = 0; index < data.getTuningNames().length; index++)
+			{
+				float[] results = data.getTuningResults()[index];
+				output.append(String.format("%-26s %12.6g %14.4f %14.4f %12d%n", data.getTuningNames()[index], results[0], results[1], results[2], (long) results[3]));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Helper method that appends to the output 
+	 * the evaluation of each model variant on the 
+	 * test dataset, one row per variant.
+	 * 
+	 * @param data	the structure containing the model variant results.
+	 * 
+	 */
+	private void appendVariantInfo(AnalyzedData data) 
+	{
+		// Output model variant results.
+		if (data.getVariantNames() != null)
+		{
+			output.append("\n------------\n");
+			output.append("*Model Variants:\n");
+			output.append(String.format("%-22s %12s %14s %14s %16s %16s%n", "variant", "bigrams kept", "unigram PPL", "bigram PPL", "avg unigram SP", "avg bigram SP"));
+			for (int index = 0; index < data.getVariantNames().length; index++)
+			{
+				float[] results = data.getVariantResults()[index];
+				output.append(String.format("%-22s %12d %14.4f %14.4f %16.6e %16.6e%n", data.getVariantNames()[index], (long) results[0],
+						results[1], results[2], results[3], results[4]));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Helper method that appends to the output 
+	 * the ARPA files loaded or written, their n-grams
+	 * and their throughput.
+	 * 
+	 * @param data	the structure containing the ARPA files.
+	 * 
+	 */
+	private void appendArpaInfo(AnalyzedData data) 
+	{
+		// Output ARPA files.
+		if (data.getArpaFiles() != null)
+		{
+			output.append("\n------------\n");
+			output.append("*ARPA Models:\n");
+			for (int index = 0; index < data.getArpaFiles().size(); index++)
+			{
+				float[] stats = data.getArpaFileStats().get(index);
+				output.append("- " + ((stats[0] == 1) ? "Loaded " : "Wrote ") + data.getArpaFiles().get(index) + ": " + (long) stats[1] + " unigrams, " + (long) stats[2] + " bigrams"
+						+ ((stats[3] > 0) ? " (" + (long) stats[3] + " higher-order n-grams skipped)" : "") + ", " + (long) stats[4] + " bytes in " + stats[5] + " ms ("
+						+ String.format("%.1f", stats[4] / 1048576f / Math.max(stats[5], 0.001f) * 1000) + " MB/s)\n");
+			}
+		}
+	}
+	
+	
+	/**
+	 * Helper method that appends to the output 
+	 * the compiled corpora written and their sizes.
+	 * 
+	 * @param data	the structure containing the compiled corpora.
+	 * 
+	 */
+	private void appendCompiledInfo(AnalyzedData data) 
+	{
+		// Output compiled corpora.
+		if (data.getCompiledCorpora() != null)
+		{
+			output.append("\n------------\n");
+			output.append("*Compiled Corpora:\n");
+			for (int index = 0; index < data.getCompiledCorpora().length; index++)
+			{
+				float[] stats = data.getCompiledCorpusStats()[index];
+				output.append("- " + data.getCompiledCorpora()[index] + ": " + (long) stats[0] + " sentences, " + (long) stats[1] + " words, "
+						+ (long) stats[2] + " vocabulary entries, " + (long) stats[3] + " bytes\n");
+			}
+		}
+	}
+	
+	
+	/**
+	 * Helper method that appends to the output 
+	 * the utilization and input queue depth of each 
+	 * stage of the counting pipeline; the stage with 
+	 * the highest utilization is the bottleneck.
+	 * 
+	 * @param data	the structure containing the counting pipeline statistics.
+	 * 
+	 */
+	private void appendPipelineInfo(AnalyzedData data) 
+	{
+		// Output counting pipeline metrics.
+		if (data.getPipelineStats() != null)
+		{
+			String[] stageNames = { "Read", "Tokenize", "Count" };
+			float[][] stats = data.getPipelineStats();
+			output.append("\n------------\n");
+			output.append("*Counting Pipeline:\n");
+			for (int stage = 0; stage < stats.length; stage++)
+			{
+				output.append("- " + stageNames[stage] + ": " + (int) stats[stage][0] + " worker(s), " + (long) stats[stage][1] + " batches, "
+						+ (stats[stage][2] * 100) + "% utilization");
+				if (stage > 0) { output.append(", input queue depth " + stats[stage][3] + " average / " + (int) stats[stage][4] + " largest"); }
+				output.append("\n");
+			}
+		}
+	}
+
+
+	/**
+	 * Helper method that appends to the output 
+	 * the charsets the datasets were read with 
+	 * and how fast they were read.
+	 * 
+	 * @param data	the structure containing the input charsets and read statistics.
+	 * 
+	 */
+	private void appendInputInfo(AnalyzedData data) 
+	{
+		// Output input information.
+		if (data.getReadStats() != null)
+		{
+			float[] stats = data.getReadStats();
+			output.append("\n------------\n");
+			output.append("*Input:\n");
+			output.append("- Training dataset charset: " + data.getInputCharsets()[0] + "\n");
+			output.append("- Test dataset charset: " + data.getInputCharsets()[1] + "\n");
+			output.append("- Read: " + (long) stats[0] + " bytes in " + stats[1] + " ms (" + stats[2] + " MB/s)\n");
+		}
+	}
+
+
+	/**
+	 * Helper method that appends to the output 
+	 * the size of the compact model store and the 
+	 * perplexity cost of quantizing its probabilities.
+	 * 
+	 * @param data	the structure containing the model store size and quantization statistics.
+	 * 
+	 */
+	private void appendModelStoreInfo(AnalyzedData data) 
+	{
+		// Output model store information.
+		if (data.getModelStoreSize() > 0)
+		{
+			output.append("\n------------\n");
+			output.append("*Model Store:\n");
+			output.append("- Size: " + data.getModelStoreSize() + " bytes\n");
+			
+			float[] stats = data.getQuantizationStats();
+			if (stats != null)
+			{
+				output.append("- Quantization: " + (int) stats[0] + "-bit log probabilities\n");
+				output.append("- Unigram perplexity (exact/quantized/delta): " + stats[1] + " / " + stats[2] + " / " + (stats[2] - stats[1]) + "\n");
+				output.append("- Bigram perplexity (exact/quantized/delta):  " + stats[3] + " / " + stats[4] + " / " + (stats[4] - stats[3]) + "\n");
+			}
 		}
 	}
 
@@ -161,6 +486,29 @@ public final class OutputPrinter
 	}
 
 
+	/**
+	 * Helper method that appends to the output 
+	 * the most likely sentences found by beam 
+	 * search, with their bigram log probabilities.
+	 * 
+	 * @param data	the structure containing the beam search sentences.
+	 * 
+	 */
+	private void appendBeamInfo(AnalyzedData data) 
+	{
+		// Output the most likely sentences.
+		if (data.getBeamSentences() != null)
+		{
+			output.append("\n------------\n");
+			output.append("*Most Likely Sentences (beam search):\n\n");
+			for (int index = 0; index < data.getBeamSentences().size(); index++)
+			{
+				output.append(String.format("%10.4f  %s%n", data.getBeamLogProbabilities()[index], data.getBeamSentences().get(index)));
+			}
+		}
+	}
+	
+	
 	/**
 	 * Helper method that appends to the output 
 	 * sentences in a dataset and their unigram
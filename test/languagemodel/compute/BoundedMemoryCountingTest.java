@@ -0,0 +1,133 @@
+package languagemodel.compute;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * This class checks that a training dataset larger
+ * than the Java heap can be counted within a memory
+ * budget (-M). A synthetic corpus of Zipf-distributed
+ * words is written, and the language modeller is run
+ * on it in a child JVM whose heap is smaller than the
+ * corpus, so it only passes if the corpus is streamed
+ * rather than held whole, as a String, an Annotation
+ * or the texts of its sentences.
+ * The vocabulary is kept small, so the models built
+ * from the corpus fit in the heap; only counting is
+ * checked, not the size of the models.
+ *
+ * @author David Olorundare
+ *
+ */
+public class BoundedMemoryCountingTest
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the size of the synthetic training corpus in bytes.
+	private static final long CORPUS_BYTES = 48L << 20;
+
+	// Represents the largest heap of the child JVM, in megabytes; the corpus is larger.
+	private static final int HEAP_MEGABYTES = 32;
+
+	// Represents the memory budget the bigrams are counted within, in megabytes.
+	private static final int BUDGET_MEGABYTES = 4;
+
+	// Represents the number of words in the synthetic vocabulary.
+	private static final int VOCABULARY_SIZE = 500;
+
+	// Represents the longest time the child JVM is given, in minutes.
+	private static final int TIMEOUT_MINUTES = 10;
+
+	// Represents a directory the corpora and the output are written to.
+	@TempDir
+	Path directory;
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Checks that the language modeller counts a
+	 * corpus larger than its heap within a memory
+	 * budget, and evaluates a test dataset on the
+	 * models built from it.
+	 */
+	@Test
+	public void countsCorpusLargerThanHeap() throws IOException, InterruptedException
+	{
+		Path trainFile = directory.resolve("train.txt");
+		Path testFile = directory.resolve("test.txt");
+		Path outputFile = directory.resolve("output.txt");
+		Path logFile = directory.resolve("log.txt");
+		writeCorpus(trainFile);
+		Files.write(testFile, Arrays.asList("w0 w1 w2.", "w3 w4 w0 w1."), StandardCharsets.UTF_8);
+		assertTrue(Files.size(trainFile) > ((long) HEAP_MEGABYTES << 20), "The corpus must be larger than the heap.");
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process child = new ProcessBuilder(java, "-Xmx" + HEAP_MEGABYTES + "m", "-cp", System.getProperty("java.class.path"),
+				"languagemodel.core.LanguageModelerMain", trainFile.toString(), testFile.toString(), outputFile.toString(),
+				"-P", "-M", Integer.toString(BUDGET_MEGABYTES))
+			.redirectErrorStream(true).redirectOutput(logFile.toFile()).start();
+		if (!child.waitFor(TIMEOUT_MINUTES, TimeUnit.MINUTES))
+		{
+			child.destroyForcibly();
+			throw new AssertionError("The language modeller did not finish within " + TIMEOUT_MINUTES + " minutes.");
+		}
+
+		String log = new String(Files.readAllBytes(logFile), StandardCharsets.UTF_8);
+		assertEquals(0, child.exitValue(), "The language modeller failed:\n" + log);
+		String output = new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8);
+		assertTrue(output.contains("- Bigram perplexiy: "), "The output reports no bigram perplexity:\n" + output);
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that writes a corpus of
+	 * sentences of 5 to 20 Zipf-distributed words,
+	 * each ending with a full stop on its own line,
+	 * until it reaches CORPUS_BYTES.
+	 */
+	private static void writeCorpus(Path file) throws IOException
+	{
+		Random random = new Random(42);
+		double[] cumulativeWeights = new double[VOCABULARY_SIZE];
+		double total = 0;
+		for (int rank = 0; rank < VOCABULARY_SIZE; rank++) { cumulativeWeights[rank] = (total += 1.0 / (rank + 1)); }
+
+		long written = 0;
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+		{
+			StringBuilder sentence = new StringBuilder();
+			while (written < CORPUS_BYTES)
+			{
+				sentence.setLength(0);
+				for (int word = 5 + random.nextInt(16); word > 0; word--)
+				{
+					int rank = Arrays.binarySearch(cumulativeWeights, random.nextDouble() * total);
+					sentence.append('w').append((rank < 0) ? -rank - 1 : rank).append((word > 1) ? " " : ".\n");
+				}
+				writer.append(sentence);
+				written += sentence.length();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,836 @@
+package languagemodel.compute;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.StringUtils;
+import languagemodel.structures.ModelStore;
+import languagemodel.structures.NgramCounts;
+import languagemodel.structures.RunConfiguration;
+import languagemodel.structures.Vocabulary;
+import languagemodel.structures.WordToken;
+import languagemodel.utils.FileHandler;
+
+
+/**
+ * This class checks, on randomly generated Zipfian
+ * corpora, that every engine counting and scoring
+ * n-grams produces exactly the counts and log
+ * probabilities of the reference path: each sentence
+ * preprocessed by appendToSentence, split on whitespace,
+ * and its unigrams and bigrams counted in HashMaps.
+ *
+ * The reference path is a plain re-implementation of
+ * the counting rules, with <s> and </s> as reserved
+ * symbols and bigrams taken at whitespace. For the
+ * language modeller, it counts the unigrams from the
+ * words of the CoreNLP tokens, as countAllUnigrams did
+ * and the modeller does by default, or from the
+ * whitespace words for the runs given -U. The n-gram
+ * counts tables are checked with whitespace unigrams.
+ * The original program's numbers themselves are
+ * pinned by the regression tests.
+ *
+ * When an engine differs on a corpus, the corpus is
+ * shrunk, by dropping runs of sentences and then single
+ * words for as long as the engine still differs, and the
+ * smallest failing corpus is reported with its seed. A
+ * failing seed is run again on its own with:
+ *
+ * >> mvn test -Dtest=CountingEquivalenceTest -Dequivalence.seed=<seed> -Dequivalence.trials=1
+ *
+ * Shrinking stops after a minute, or the number of
+ * seconds given by -Dequivalence.shrinkSeconds, and
+ * the smallest failing corpus found by then is reported.
+ *
+ * @author David Olorundare
+ *
+ */
+public class CountingEquivalenceTest
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the seed of the first corpus; each trial after it takes the next seed.
+	private static final long SEED = Long.getLong("equivalence.seed", 1);
+
+	// Represents the number of corpora each in-memory engine is checked on.
+	private static final int TRIALS = Integer.getInteger("equivalence.trials", 200);
+
+	// Represents the number of corpora the language modeller is checked on, each read and annotated from files.
+	private static final int MODELER_TRIALS = Integer.getInteger("equivalence.trials", 6);
+
+	// Represents the time a failing corpus may be shrunk for; the smallest corpus found by then is reported.
+	private static final long SHRINK_MILLISECONDS = 1000L * Integer.getInteger("equivalence.shrinkSeconds", 60);
+
+	// Represents the largest number of sentences of each part of a failing corpus written in the failure message.
+	private static final int PRINTED_SENTENCES = 100;
+
+	// Represents the runs of the language modeller checked, by their switches.
+	private static final Map<String, RunConfiguration> MODELER_RUNS = new TreeMap<String, RunConfiguration>();
+	static
+	{
+		RunConfiguration run = new RunConfiguration.Builder().setPerplexity(true).build();
+		MODELER_RUNS.put("(none)", run);
+		MODELER_RUNS.put("-S", run.toBuilder().setSmoothing(true).build());
+		MODELER_RUNS.put("-T 2", run.toBuilder().setThreads(2).build());
+		MODELER_RUNS.put("-T 2 -M 1", run.toBuilder().setThreads(2).setMemoryBudget(1).build());
+		MODELER_RUNS.put("-M 1 -S", run.toBuilder().setMemoryBudget(1).setSmoothing(true).build());
+		MODELER_RUNS.put("-L 64", run.toBuilder().setProbabilityCacheSize(64).build());
+		MODELER_RUNS.put("-L 64 -S", run.toBuilder().setProbabilityCacheSize(64).setSmoothing(true).build());
+		MODELER_RUNS.put("-L 64 -O", run.toBuilder().setProbabilityCacheSize(64).setOffHeap(true).build());
+		MODELER_RUNS.put("-O -S", run.toBuilder().setOffHeap(true).setSmoothing(true).build());
+		MODELER_RUNS.put("-C 16", run.toBuilder().setSentenceCacheSize(16).build());
+		MODELER_RUNS.put("-U", run.toBuilder().setWhitespaceUnigrams(true).build());
+		MODELER_RUNS.put("-U -T 2 -M 1", run.toBuilder().setWhitespaceUnigrams(true).setThreads(2).setMemoryBudget(1).build());
+	}
+
+	// Represents a directory the corpora of the language modeller are written to.
+	@TempDir
+	Path corpusDirectory;
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Checks the counts of one n-gram counts
+	 * table against the reference counts.
+	 */
+	@Test
+	public void ngramCountsMatchReference() throws Exception
+	{
+		checkProperty("NgramCounts", TRIALS, this::trainingCorpus, (corpus, seed) ->
+		{
+			NgramCounts counts = new NgramCounts();
+			for (String sentence : corpus.get(0)) { counts.addSentence(sentence, null); }
+			return countDifference(new ReferenceCounts(corpus.get(0)), mergedCounts(Arrays.asList(counts), null), counts.getSentenceCount(), counts.getWordCount());
+		});
+	}
+
+
+	/**
+	 * Checks the counts of several n-gram counts
+	 * tables, each counting a share of the sentences
+	 * as the workers of the counting pipeline do,
+	 * merged together against the reference counts.
+	 */
+	@Test
+	public void shardedCountsMatchReference() throws Exception
+	{
+		checkProperty("sharded NgramCounts", TRIALS, this::trainingCorpus, (corpus, seed) ->
+		{
+			List<NgramCounts> shards = shards(corpus.get(0), seed, null);
+			return countDifference(new ReferenceCounts(corpus.get(0)), mergedCounts(shards, null), sentenceCount(shards), wordCount(shards));
+		});
+	}
+
+
+	/**
+	 * Checks the counts of the disk-spilling bigram
+	 * counter, with budgets small enough to spill
+	 * many runs and merge them in several passes,
+	 * fed by one or several n-gram counts tables.
+	 */
+	@Test
+	public void spilledCountsMatchReference() throws Exception
+	{
+		checkProperty("ExternalBigramCounter", TRIALS, this::trainingCorpus, (corpus, seed) ->
+		{
+			// A budget below the cost of one entry spills the counts after every sentence that adds a bigram.
+			ExternalBigramCounter counter = new ExternalBigramCounter(1 + new SyntheticCorpus(seed).nextInt(4000));
+			try
+			{
+				List<NgramCounts> shards = shards(corpus.get(0), seed, counter);
+				return countDifference(new ReferenceCounts(corpus.get(0)), mergedCounts(shards, counter), sentenceCount(shards), wordCount(shards));
+			}
+			finally { counter.close(); }
+		});
+	}
+
+
+	/**
+	 * Checks the counts held by the model store,
+	 * and the log probabilities the sentence scorer
+	 * computes from it, on and off the Java heap and
+	 * quantized to 16 bits, against those of the
+	 * reference path.
+	 */
+	@Test
+	public void modelStoreScoresMatchReference() throws Exception
+	{
+		checkProperty("ModelStore and SentenceScorer", TRIALS, this::scoringCorpus, (corpus, seed) ->
+		{
+			ReferenceCounts reference = new ReferenceCounts(corpus.get(0));
+			int fill = new SyntheticCorpus(seed).nextInt(2);
+			for (boolean offHeap : new boolean[] { false, true })
+			{
+				ModelStore store = new ModelStore(reference.unigramModel(), reference.bigramModel(fill), reference.unigramTotal, offHeap, 0);
+				String difference = storeDifference(reference, store);
+				if (difference != null) { return "off heap " + offHeap + ": " + difference; }
+
+				SentenceScorer scorer = new SentenceScorer(store);
+				float[] scores = new float[4];
+				for (String sentence : corpus.get(1))
+				{
+					scorer.score(sentence, scores);
+					difference = scoreDifference(sentence, reference.score(sentence, fill), new float[] { scores[1], scores[3] });
+					if (difference != null) { return "off heap " + offHeap + ", smoothing " + (fill == 1) + ": " + difference; }
+				}
+
+				// A small corpus has fewer distinct log probabilities than 16-bit codes, so quantizing keeps them exact.
+				ModelStore quantized = new ModelStore(reference.unigramModel(), reference.bigramModel(fill), reference.unigramTotal, offHeap, 16);
+				if (quantized.getBigramSize() != reference.bigrams.size()) { return "off heap " + offHeap + ": the quantized store holds " + quantized.getBigramSize() + " bigrams, not " + reference.bigrams.size(); }
+				for (String bigram : reference.bigrams.keySet())
+				{
+					String[] words = bigram.split(" ");
+					if (!quantized.containsBigram(quantized.getId(words[0]), quantized.getId(words[1]))) { return "off heap " + offHeap + ": the quantized store lacks the bigram [" + escape(bigram) + "]"; }
+				}
+				SentenceScorer quantizedScorer = new SentenceScorer(quantized);
+				for (String sentence : corpus.get(1))
+				{
+					quantizedScorer.score(sentence, scores);
+					difference = scoreDifference(sentence, reference.score(sentence, fill), new float[] { scores[1], scores[3] });
+					if (difference != null) { return "off heap " + offHeap + ", quantized, smoothing " + (fill == 1) + ": " + difference; }
+				}
+			}
+			return null;
+		});
+	}
+
+
+	/**
+	 * Checks the language modeller, run with one
+	 * of its counting or scoring switches, against
+	 * the reference path applied to the sentences
+	 * CoreNLP splits the training and test corpora
+	 * into: the log probabilities of every test
+	 * sentence, and the counts of the model store
+	 * it trains when it trains one from counts.
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "(none)", "-S", "-T 2", "-T 2 -M 1", "-M 1 -S", "-L 64", "-L 64 -S", "-L 64 -O", "-O -S", "-C 16", "-U", "-U -T 2 -M 1" })
+	public void languageModelerMatchesReference(String switches) throws Exception
+	{
+		final RunConfiguration run = MODELER_RUNS.get(switches);
+		checkProperty("LanguageModeler " + switches, MODELER_TRIALS, this::modelerCorpus, (corpus, seed) ->
+		{
+			Path trainFile = corpusDirectory.resolve("train.txt"), testFile = corpusDirectory.resolve("test.txt");
+			Files.write(trainFile, corpus.get(0), StandardCharsets.UTF_8);
+			Files.write(testFile, corpus.get(1), StandardCharsets.UTF_8);
+			LanguageModeler modeler = LanguageModeler.getInstance();
+			Map<String, float[]> sentences = modeler.analyzeText(trainFile.toString(), testFile.toString(), run).getDocumentSentenceInfo();
+
+			// The pipeline exists once the modeller has run, so the reference splits the corpora with the same one.
+			ModelerReference reference = ModelerReference.of(corpus, trainFile, testFile);
+			if (!sentences.keySet().equals(new TreeSet<String>(reference.testSentences)))
+			{ return "the test corpus was split into " + sentences.keySet() + ", not " + reference.testSentences; }
+			ReferenceCounts counts = run.isWhitespaceUnigrams() ? reference.whitespaceCounts : reference.tokenCounts;
+			int fill = run.isSmoothing() ? 1 : 0;
+			for (String sentence : reference.testSentences)
+			{
+				float[] scores = sentences.get(sentence);
+				String difference = scoreDifference(sentence, counts.score(sentence, fill), new float[] { scores[2], scores[3] });
+				if (difference != null) { return difference; }
+			}
+
+			// Training reads the whole training corpus, and always computes the probabilities up front.
+			if (run.isLazyProbabilities() || run.getThreads() > 0) { return null; }
+			String difference = storeDifference(counts, modeler.trainModels(trainFile.toString(), run));
+			return (difference != null) ? "trained model store: " + difference : null;
+		});
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that checks a property on
+	 * one corpus per trial, and on the first corpus
+	 * it fails on, shrinks the corpus and fails with
+	 * the smallest corpus it still fails on.
+	 */
+	private static void checkProperty(String engine, int trials, CorpusGenerator generator, EquivalenceCheck check) throws Exception
+	{
+		for (int trial = 0; trial < trials; trial++)
+		{
+			final long seed = SEED + trial;
+			List<List<String>> corpus = generator.generate(seed);
+			if (check.difference(corpus, seed) == null) { continue; }
+
+			long deadline = System.currentTimeMillis() + SHRINK_MILLISECONDS;
+			List<List<String>> shrunk = shrink(corpus, candidate -> check.difference(candidate, seed) != null, deadline);
+			StringBuilder message = new StringBuilder(engine + " differs from the reference path on the corpus of seed " + seed + ". Shrunk from "
+				+ sentenceTotal(corpus) + " to " + sentenceTotal(shrunk) + " sentences"
+				+ ((System.currentTimeMillis() > deadline) ? " before shrinking ran out of time" : "") + ":\n");
+			for (int part = 0; part < shrunk.size(); part++)
+			{
+				message.append((part == 0) ? "training corpus" : "test corpus").append(":\n");
+				List<String> sentences = shrunk.get(part);
+				for (String sentence : sentences.subList(0, Math.min(sentences.size(), PRINTED_SENTENCES))) { message.append("  [").append(escape(sentence)).append("]\n"); }
+				if (sentences.size() > PRINTED_SENTENCES) { message.append("  ... and ").append(sentences.size() - PRINTED_SENTENCES).append(" more\n"); }
+			}
+			fail(message.append(check.difference(shrunk, seed)).toString());
+		}
+	}
+
+
+	/**
+	 * Helper method that shrinks a failing corpus:
+	 * it drops runs of sentences, halving the length
+	 * of the runs down to one sentence, then single
+	 * words, keeping every change after which the
+	 * corpus still fails, until no change is kept or
+	 * the deadline passes.
+	 */
+	private static List<List<String>> shrink(List<List<String>> corpus, FailurePredicate fails, long deadline) throws Exception
+	{
+		List<List<String>> current = corpus;
+		boolean shrunk = true;
+		while (shrunk && System.currentTimeMillis() < deadline)
+		{
+			shrunk = false;
+			for (int part = 0; part < current.size(); part++)
+			{
+				for (int runLength = Math.max(1, current.get(part).size() / 2); runLength >= 1; runLength /= 2)
+				{
+					int start = 0;
+					while (start + runLength <= current.get(part).size() && System.currentTimeMillis() < deadline)
+					{
+						List<String> sentences = new ArrayList<String>(current.get(part));
+						sentences.subList(start, start + runLength).clear();
+						List<List<String>> candidate = replacePart(current, part, sentences);
+						if (fails.test(candidate)) { current = candidate; shrunk = true; }
+						else { start += runLength; }
+					}
+				}
+
+				for (int index = 0; index < current.get(part).size() && System.currentTimeMillis() < deadline; index++)
+				{
+					int word = 0;
+					String[] words;
+					while (word < (words = current.get(part).get(index).split(" ", -1)).length && System.currentTimeMillis() < deadline)
+					{
+						List<String> wordList = new ArrayList<String>(Arrays.asList(words));
+						wordList.remove(word);
+						List<String> sentences = new ArrayList<String>(current.get(part));
+						sentences.set(index, String.join(" ", wordList));
+						List<List<String>> candidate = replacePart(current, part, sentences);
+						if (words.length > 1 && fails.test(candidate)) { current = candidate; shrunk = true; }
+						else { word++; }
+					}
+				}
+			}
+		}
+		return current;
+	}
+
+
+	/**
+	 * Helper method that returns a copy of a corpus
+	 * with one of its parts replaced.
+	 */
+	private static List<List<String>> replacePart(List<List<String>> corpus, int part, List<String> sentences)
+	{
+		List<List<String>> replaced = new ArrayList<List<String>>(corpus);
+		replaced.set(part, sentences);
+		return replaced;
+	}
+
+
+	/**
+	 * Helper method that generates a training
+	 * corpus of sentences.
+	 */
+	private List<List<String>> trainingCorpus(long seed)
+	{
+		SyntheticCorpus generator = new SyntheticCorpus(seed, " ", "  ", "\t", "\u000B", "\f");
+		return Arrays.asList(generator.sentences(300, 30, 0));
+	}
+
+
+	/**
+	 * Helper method that generates a training
+	 * corpus and a test corpus, whose sentences
+	 * also hold words the training corpus lacks.
+	 */
+	private List<List<String>> scoringCorpus(long seed)
+	{
+		SyntheticCorpus generator = new SyntheticCorpus(seed, " ", "  ", "\t", "\u000B", "\f");
+		return Arrays.asList(generator.sentences(300, 30, 0), generator.sentences(50, 30, 0.1));
+	}
+
+
+	/**
+	 * Helper method that generates the lines of a
+	 * training and a test corpus for the language
+	 * modeller. Lines not ending a sentence are joined
+	 * to the next line's sentence by CoreNLP, and
+	 * every third corpus is long enough to be counted
+	 * by the counting pipeline in several batches.
+	 */
+	private List<List<String>> modelerCorpus(long seed)
+	{
+		SyntheticCorpus generator = new SyntheticCorpus(seed, " ", "  ", "\t");
+		List<String> training = generator.sentences(200, 25, 0);
+		// The counting pipeline reads batches of 64K characters.
+		int characters = 0;
+		while (seed % 3 == 0 && characters < 200000)
+		{
+			List<String> sentences = generator.sentences(200, 25, 0);
+			for (String sentence : sentences) { characters += sentence.length() + 1; }
+			training.addAll(sentences);
+		}
+		return Arrays.asList(training, generator.sentences(40, 25, 0.1));
+	}
+
+
+	/**
+	 * Helper method that deals the sentences of a
+	 * corpus out to between one and five n-gram
+	 * counts tables, in runs of random lengths, as
+	 * the counting pipeline deals out its batches.
+	 */
+	private static List<NgramCounts> shards(List<String> sentences, long seed, ExternalBigramCounter counter) throws IOException
+	{
+		SyntheticCorpus random = new SyntheticCorpus(seed);
+		List<NgramCounts> shards = new ArrayList<NgramCounts>();
+		int shardCount = 1 + random.nextInt(5);
+		for (int index = 0; index < shardCount; index++) { shards.add(new NgramCounts()); }
+
+		int index = 0;
+		while (index < sentences.size())
+		{
+			NgramCounts shard = shards.get(random.nextInt(shardCount));
+			int end = Math.min(sentences.size(), index + 1 + random.nextInt(20));
+			for (; index < end; index++)
+			{
+				if (counter != null) { counter.addSentence(shard, sentences.get(index), null); }
+				else { shard.addSentence(sentences.get(index), null); }
+			}
+		}
+		if (counter != null)
+		{
+			for (NgramCounts shard : shards) { counter.drain(shard); }
+		}
+		return shards;
+	}
+
+
+	/**
+	 * Helper method that merges n-gram counts tables,
+	 * and the bigrams of a disk-spilling counter if
+	 * one was used, into unigram and bigram models.
+	 *
+	 * @return	the unigram model followed by the bigram model.
+	 */
+	private static List<HashMap<String, WordToken>> mergedCounts(List<NgramCounts> shards, ExternalBigramCounter counter) throws IOException
+	{
+		HashMap<String, WordToken> unigramModel = new HashMap<String, WordToken>();
+		HashMap<String, WordToken> bigramModel = new HashMap<String, WordToken>();
+		for (NgramCounts shard : shards) { shard.mergeInto(unigramModel, bigramModel); }
+		if (counter != null)
+		{
+			counter.forEachCount((line, wordEnd, bigramEnd, count) ->
+			{
+				String bigram = line.substring(0, bigramEnd);
+				WordToken gram = bigramModel.computeIfAbsent(bigram, key -> new WordToken());
+				gram.bigramW = bigram;
+				gram.count += count;
+			});
+		}
+		return Arrays.asList(unigramModel, bigramModel);
+	}
+
+
+	/**
+	 * Helper method that returns the number of
+	 * sentences counted by n-gram counts tables.
+	 */
+	private static int sentenceCount(List<NgramCounts> shards)
+	{
+		int sentences = 0;
+		for (NgramCounts shard : shards) { sentences += shard.getSentenceCount(); }
+		return sentences;
+	}
+
+
+	/**
+	 * Helper method that returns the number of
+	 * words counted by n-gram counts tables.
+	 */
+	private static long wordCount(List<NgramCounts> shards)
+	{
+		long words = 0;
+		for (NgramCounts shard : shards) { words += shard.getWordCount(); }
+		return words;
+	}
+
+
+	/**
+	 * Helper method that describes the first
+	 * difference between the reference counts and
+	 * an engine's, or returns null if there is none.
+	 */
+	private static String countDifference(ReferenceCounts reference, List<HashMap<String, WordToken>> models, int sentences, long words)
+	{
+		if (sentences != reference.sentences) { return "counted " + sentences + " sentences, not " + reference.sentences; }
+		if (words != reference.words) { return "counted " + words + " words, not " + reference.words; }
+		String difference = mapDifference("unigram", reference.unigrams, models.get(0));
+		return (difference != null) ? difference : mapDifference("bigram", reference.bigrams, models.get(1));
+	}
+
+
+	/**
+	 * Helper method that describes the first
+	 * difference between reference counts and
+	 * a count model, or returns null if there is none.
+	 */
+	private static String mapDifference(String order, Map<String, Integer> reference, HashMap<String, WordToken> model)
+	{
+		TreeSet<String> keys = new TreeSet<String>(reference.keySet());
+		keys.addAll(model.keySet());
+		for (String key : keys)
+		{
+			Integer expected = reference.get(key);
+			WordToken actual = model.get(key);
+			if (expected == null || actual == null || expected != actual.count)
+			{ return "the " + order + " [" + escape(key) + "] was counted " + ((actual == null) ? 0 : actual.count) + " times, not " + ((expected == null) ? 0 : expected); }
+		}
+		return null;
+	}
+
+
+	/**
+	 * Helper method that describes the first
+	 * difference between the reference counts and
+	 * those held by a model store, or returns null
+	 * if there is none.
+	 */
+	private static String storeDifference(ReferenceCounts reference, ModelStore store)
+	{
+		if (store.getUnigramTotal() != reference.unigramTotal) { return "the unigram total is " + store.getUnigramTotal() + ", not " + reference.unigramTotal; }
+		if (store.getVocabularySize() != reference.unigrams.size()) { return "the vocabulary holds " + store.getVocabularySize() + " words, not " + reference.unigrams.size(); }
+		if (store.getBigramSize() != reference.bigrams.size()) { return "the store holds " + store.getBigramSize() + " bigrams, not " + reference.bigrams.size(); }
+		for (Map.Entry<String, Integer> unigram : reference.unigrams.entrySet())
+		{
+			int id = store.getId(unigram.getKey());
+			int count = (id == Vocabulary.UNKNOWN_ID) ? 0 : store.getUnigramCount(id);
+			if (count != unigram.getValue()) { return "the unigram [" + escape(unigram.getKey()) + "] has a stored count of " + count + ", not " + unigram.getValue(); }
+		}
+		for (Map.Entry<String, Integer> bigram : reference.bigrams.entrySet())
+		{
+			String[] words = bigram.getKey().split(" ");
+			int count = store.getBigramCount(store.getId(words[0]), store.getId(words[1]));
+			if (count != bigram.getValue()) { return "the bigram [" + escape(bigram.getKey()) + "] has a stored count of " + count + ", not " + bigram.getValue(); }
+		}
+		return null;
+	}
+
+
+	/**
+	 * Helper method that describes how an engine's
+	 * unigram and bigram log probabilities of a
+	 * sentence differ from the reference ones, or
+	 * returns null if they are the same.
+	 */
+	private static String scoreDifference(String sentence, float[] expected, float[] actual)
+	{
+		if (Float.compare(expected[0], actual[0]) == 0 && Float.compare(expected[1], actual[1]) == 0) { return null; }
+		return "the sentence [" + escape(sentence) + "] was scored " + Arrays.toString(actual) + ", not " + Arrays.toString(expected);
+	}
+
+
+	/**
+	 * Helper method that returns the sentences
+	 * CoreNLP splits a corpus file into, with the
+	 * pipeline of the language modeller.
+	 */
+	private static List<CoreMap> annotatedSentences(Path file) throws IOException
+	{
+		Annotation document = FileHandler.getInstance().readData(file.toString());
+		LanguageModeler.getInstance().getPipeline().annotate(document);
+		return document.get(SentencesAnnotation.class);
+	}
+
+
+	/**
+	 * Helper method that returns the texts of sentences.
+	 */
+	private static List<String> texts(List<CoreMap> sentences)
+	{
+		List<String> texts = new ArrayList<String>();
+		for (CoreMap sentence : sentences) { texts.add(sentence.toString()); }
+		return texts;
+	}
+
+
+	/**
+	 * Helper method that returns the words of the
+	 * CoreNLP tokens of sentences.
+	 */
+	private static List<String[]> tokenWords(List<CoreMap> sentences)
+	{
+		List<String[]> words = new ArrayList<String[]>();
+		for (CoreMap sentence : sentences) { words.add(FileHandler.getInstance().tokenWords(sentence)); }
+		return words;
+	}
+
+
+	/**
+	 * Helper method that returns the number of
+	 * sentences in all parts of a corpus.
+	 */
+	private static int sentenceTotal(List<List<String>> corpus)
+	{
+		int sentences = 0;
+		for (List<String> part : corpus) { sentences += part.size(); }
+		return sentences;
+	}
+
+
+	/**
+	 * Helper method that makes the whitespace of
+	 * a sentence visible in a failure message.
+	 */
+	private static String escape(String text)
+	{
+		return text.replace("\t", "\\t").replace("\u000B", "\\v").replace("\f", "\\f").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+
+	//============================================ NESTED TYPES =============================================================
+
+
+	/**
+	 * This class counts the unigrams and bigrams of
+	 * a corpus in the most direct way: each sentence
+	 * is preprocessed by appendToSentence and split on
+	 * whitespace, and each unigram and bigram String is
+	 * counted in a HashMap. If the words of the CoreNLP
+	 * tokens of the sentences are given, the unigrams
+	 * are counted from them instead, and a whitespace
+	 * word that is not a token word is given a count of
+	 * 0. It also scores sentences from these counts, the
+	 * way the models compute their log probabilities.
+	 *
+	 */
+	private static final class ReferenceCounts
+	{
+		// Represents the count of every unigram, <s> included.
+		final HashMap<String, Integer> unigrams = new HashMap<String, Integer>();
+
+		// Represents the count of every bigram, its words separated by a space.
+		final HashMap<String, Integer> bigrams = new HashMap<String, Integer>();
+
+		// Represents the number of sentences counted.
+		int sentences = 0;
+
+		// Represents the number of words counted, without the start and end symbols.
+		long words = 0;
+
+		// Represents the number of unigrams predicted, which is every unigram but <s>.
+		int unigramTotal = 0;
+
+		ReferenceCounts(List<String> corpus)
+		{ this(corpus, null); }
+
+		ReferenceCounts(List<String> corpus, List<String[]> tokenWords)
+		{
+			for (int sentence = 0; sentence < corpus.size(); sentence++)
+			{
+				List<String> tokens = StringUtils.split(FileHandler.getInstance().appendToSentence(corpus.get(sentence)));
+				sentences++;
+				words += tokens.size() - 2;
+				for (int index = 0; index < tokens.size(); index++)
+				{
+					unigrams.merge(tokens.get(index), (tokenWords == null) ? 1 : 0, Integer::sum);
+					if (index > 0) { bigrams.merge(tokens.get(index - 1) + " " + tokens.get(index), 1, Integer::sum); }
+				}
+				if (tokenWords == null) { continue; }
+				unigrams.merge(NgramCounts.START_SYMBOL, 1, Integer::sum);
+				unigrams.merge(NgramCounts.END_SYMBOL, 1, Integer::sum);
+				for (String word : tokenWords.get(sentence)) { unigrams.merge(word, 1, Integer::sum); }
+			}
+			for (int count : unigrams.values()) { unigramTotal += count; }
+			unigramTotal -= unigrams.getOrDefault(NgramCounts.START_SYMBOL, 0);
+		}
+
+		/**
+		 * Helper method that returns the unigram model
+		 * of the counts, with its log probabilities.
+		 */
+		HashMap<String, WordToken> unigramModel()
+		{
+			HashMap<String, WordToken> model = new HashMap<String, WordToken>();
+			for (Map.Entry<String, Integer> unigram : unigrams.entrySet())
+			{
+				WordToken token = new WordToken();
+				token.unigram = unigram.getKey();
+				token.count = unigram.getValue();
+				token.probability = logProbability(token.count, unigramTotal);
+				model.put(unigram.getKey(), token);
+			}
+			return model;
+		}
+
+		/**
+		 * Helper method that returns the bigram model
+		 * of the counts, with its log probabilities.
+		 */
+		HashMap<String, WordToken> bigramModel(int fill)
+		{
+			HashMap<String, WordToken> model = new HashMap<String, WordToken>();
+			for (Map.Entry<String, Integer> bigram : bigrams.entrySet())
+			{
+				WordToken gram = new WordToken();
+				gram.bigramW = bigram.getKey();
+				gram.splitWords();
+				gram.count = bigram.getValue();
+				gram.probability = logProbability(gram.count + fill, unigrams.get(gram.firstWord));
+				model.put(bigram.getKey(), gram);
+			}
+			return model;
+		}
+
+		/**
+		 * Helper method that returns the unigram and
+		 * bigram log probabilities of a sentence.
+		 * Unigrams and bigrams never counted have a
+		 * log probability of 0.
+		 */
+		float[] score(String sentence, int fill)
+		{
+			List<String> tokens = StringUtils.split(FileHandler.getInstance().appendToSentence(sentence));
+			float unigramLogProbability = 0, bigramLogProbability = 0;
+			for (int index = 1; index < tokens.size(); index++)
+			{
+				Integer count = unigrams.get(tokens.get(index));
+				if (count != null) { unigramLogProbability += logProbability(count, unigramTotal); }
+			}
+			for (int index = 1; index < tokens.size(); index++)
+			{
+				Integer count = bigrams.get(tokens.get(index - 1) + " " + tokens.get(index));
+				if (count != null) { bigramLogProbability += logProbability(count + fill, unigrams.get(tokens.get(index - 1))); }
+			}
+			return new float[] { unigramLogProbability, bigramLogProbability };
+		}
+
+		/**
+		 * Helper method that returns the natural log of
+		 * a count divided by a total, in single precision;
+		 * a probability of 0 or 1, or a total of 0, has a
+		 * log probability of 0.
+		 */
+		static float logProbability(int count, int total)
+		{
+			if (total == 0) { return 0; }
+			float probability = (float) count / (float) total;
+			return (probability == 0 || probability == 1) ? 0 : (float) Math.log(probability);
+		}
+	}
+
+
+	/**
+	 * This class holds the reference counts of the
+	 * training corpus of the language modeller, and
+	 * the sentences of its test corpus, as CoreNLP
+	 * splits them. The last one made is kept, since
+	 * every run of the modeller is checked on the
+	 * same corpora.
+	 *
+	 */
+	private static final class ModelerReference
+	{
+		// Represents the reference made last.
+		private static ModelerReference last;
+
+		// Represents the corpus the reference was made from.
+		final List<List<String>> corpus;
+
+		// Represents the reference counts of the training corpus, with unigrams counted from the CoreNLP token words.
+		final ReferenceCounts tokenCounts;
+
+		// Represents the reference counts of the training corpus, with unigrams counted from the whitespace words.
+		final ReferenceCounts whitespaceCounts;
+
+		// Represents the sentences of the test corpus.
+		final List<String> testSentences;
+
+		private ModelerReference(List<List<String>> corpus, Path trainFile, Path testFile) throws IOException
+		{
+			this.corpus = corpus;
+			List<CoreMap> trainingSentences = annotatedSentences(trainFile);
+			tokenCounts = new ReferenceCounts(texts(trainingSentences), tokenWords(trainingSentences));
+			whitespaceCounts = new ReferenceCounts(texts(trainingSentences));
+			testSentences = texts(annotatedSentences(testFile));
+		}
+
+		/**
+		 * Helper method that returns the reference of
+		 * a corpus, whose files have been written.
+		 */
+		static ModelerReference of(List<List<String>> corpus, Path trainFile, Path testFile) throws IOException
+		{
+			if (last == null || !last.corpus.equals(corpus)) { last = new ModelerReference(corpus, trainFile, testFile); }
+			return last;
+		}
+	}
+
+
+	/**
+	 * This interface generates the corpus of a
+	 * trial: its training sentences, then its test
+	 * sentences if it has any.
+	 *
+	 */
+	private interface CorpusGenerator
+	{
+		List<List<String>> generate(long seed);
+	}
+
+
+	/**
+	 * This interface runs an engine on a corpus and
+	 * describes its first difference from the reference
+	 * path, or returns null if there is none. Any other
+	 * setting of the engine is drawn from the seed, so
+	 * the shrunk corpus is run with the same settings.
+	 *
+	 */
+	private interface EquivalenceCheck
+	{
+		String difference(List<List<String>> corpus, long seed) throws Exception;
+	}
+
+
+	/**
+	 * This interface tells whether a shrunk corpus
+	 * still fails.
+	 *
+	 */
+	private interface FailurePredicate
+	{
+		boolean test(List<List<String>> corpus) throws Exception;
+	}
+
+}
@@ -0,0 +1,626 @@
+package languagemodel.compute;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import edu.stanford.nlp.ling.CoreAnnotations.LineNumberAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+import languagemodel.structures.AnalyzedData;
+import languagemodel.structures.ModelStore;
+import languagemodel.structures.NgramCounts;
+import languagemodel.structures.RunConfiguration;
+import languagemodel.structures.WordToken;
+import languagemodel.utils.FileHandler;
+import languagemodel.utils.MappedTextDocument;
+
+
+/**
+ * This class pins the numbers the language models
+ * produce on the bundled datasets, so a rewrite of
+ * how they are counted or scored cannot change them
+ * unnoticed. Every sentence's unigram and bigram log
+ * probabilities and the perplexities of the test
+ * dataset are checked against golden values within a
+ * tolerance, and against those of a naive maximum
+ * likelihood estimate, and the sequential, parallel
+ * and cached ways of scoring are checked to agree
+ * exactly.
+ *
+ * The golden values are kept in test/golden/*.golden.
+ * They were generated by the original program, at the
+ * baseline commit a9649f4, and are never regenerated:
+ * a default run must still give its numbers.
+ *
+ * The numbers the program gives on purpose where
+ * the original gave none, or gave others, are kept
+ * apart in test/golden/*.deltas, each explained there:
+ * the corpus perplexities, which the original did not
+ * compute, and the summary values of a run counting
+ * unigrams from whitespace words (-U) rather than
+ * CoreNLP tokens. When a change is meant to alter
+ * these, rewrite them with:
+ *
+ * >> mvn test -Dtest=LanguageModelerRegressionTest -DregenerateDeltas=true
+ *
+ * @author David Olorundare
+ *
+ */
+public class LanguageModelerRegressionTest
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the directory the bundled datasets are in.
+	private static final String DATA_DIRECTORY = "build/data/";
+
+	// Represents the directory the golden values are kept in.
+	private static final String GOLDEN_DIRECTORY = "test/golden/";
+
+	// Represents the system property that rewrites the intended differences instead of checking them.
+	private static final String REGENERATE_PROPERTY = "regenerateDeltas";
+
+	// Represents the largest relative difference allowed between a value and its golden value.
+	private static final double TOLERANCE = 1e-4;
+
+	// Represents the number of characters of a sentence written to a golden file to name it.
+	private static final int SENTENCE_PREFIX = 60;
+
+	// Represents the summary values of a run, in the order of summaryValues.
+	private static final String[] SUMMARY_KEYS = { "unigramPerplexity", "bigramPerplexity", "unigramCorpusPerplexity",
+		"bigramCorpusPerplexity", "averageUnigramProbability", "averageBigramProbability" };
+
+	// Represents the indexes in SUMMARY_KEYS of the corpus perplexities, which the original program did not compute.
+	private static final int[] CORPUS_PERPLEXITIES = { 2, 3 };
+
+	// Represents the prefix of the keys of the intended differences of a run counting whitespace unigrams.
+	private static final String WHITESPACE_PREFIX = "whitespaceUnigrams.";
+
+	// Represents the results of the sequential runs already made, by dataset, smoothing and unigram words.
+	private static final Map<String, AnalyzedData> sequentialRuns = new HashMap<String, AnalyzedData>();
+
+	// Represents a directory the result files of batch evaluations are written to.
+	@TempDir
+	Path outputDirectory;
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Checks every sentence's log probabilities and the
+	 * perplexities of a test dataset against the golden
+	 * values of the original program.
+	 */
+	@ParameterizedTest
+	@CsvSource({ "tiny, false", "tiny, true", "HG, false", "HG, true" })
+	public void matchesGoldenValues(String dataset, boolean smoothing) throws IOException
+	{
+		AnalyzedData results = sequentialRun(dataset, smoothing, false);
+		File golden = new File(GOLDEN_DIRECTORY + dataset + (smoothing ? "-smoothed" : "") + ".golden");
+		assertTrue(golden.isFile(), "Missing golden file " + golden);
+
+		List<String> expectedPrefixes = new ArrayList<String>();
+		List<float[]> expectedSentences = new ArrayList<float[]>();
+		Map<String, Float> expectedSummary = new LinkedHashMap<String, Float>();
+		for (String line : Files.readAllLines(golden.toPath(), StandardCharsets.UTF_8))
+		{
+			if (line.isEmpty() || line.startsWith("#")) { continue; }
+			String[] fields = line.split("\t", 3);
+			if (fields.length == 3)
+			{
+				expectedSentences.add(new float[] { Float.parseFloat(fields[0]), Float.parseFloat(fields[1]) });
+				expectedPrefixes.add(fields[2]);
+			}
+			else { putValue(expectedSummary, line); }
+		}
+
+		// The original program gave every summary value but the corpus perplexities.
+		float[] summary = summaryValues(results);
+		for (int index = 0; index < SUMMARY_KEYS.length; index++)
+		{
+			if (Arrays.binarySearch(CORPUS_PERPLEXITIES, index) < 0) { assertClose(expectedSummary.get(SUMMARY_KEYS[index]), summary[index], SUMMARY_KEYS[index]); }
+		}
+
+		// The sentences are compared in the order of their texts, each named by the start of its text.
+		List<Map.Entry<String, float[]>> sentences = new ArrayList<Map.Entry<String, float[]>>(new TreeMap<String, float[]>(results.getDocumentSentenceInfo()).entrySet());
+		assertEquals(expectedSentences.size(), sentences.size(), "The test dataset was split into a different number of sentences.");
+		for (int index = 0; index < sentences.size(); index++)
+		{
+			String text = sentences.get(index).getKey();
+			float[] actual = sentences.get(index).getValue();
+			assertTrue(escape(text).startsWith(expectedPrefixes.get(index)), "The test dataset was split into different sentences, at: " + text);
+			assertClose(expectedSentences.get(index)[0], actual[2], "unigram log probability of: " + text);
+			assertClose(expectedSentences.get(index)[1], actual[3], "bigram log probability of: " + text);
+		}
+	}
+
+
+	/**
+	 * Checks the numbers the program gives on purpose
+	 * where the original program gave none, or gave
+	 * others, against the intended differences kept
+	 * beside the golden values: the corpus perplexities
+	 * of a default run, and the summary values of a run
+	 * counting unigrams from whitespace words (-U).
+	 */
+	@ParameterizedTest
+	@CsvSource({ "tiny, false", "tiny, true", "HG, false", "HG, true" })
+	public void matchesIntendedDeltas(String dataset, boolean smoothing) throws IOException
+	{
+		float[] summary = summaryValues(sequentialRun(dataset, smoothing, false));
+		float[] whitespaceSummary = summaryValues(sequentialRun(dataset, smoothing, true));
+		File deltas = new File(GOLDEN_DIRECTORY + dataset + (smoothing ? "-smoothed" : "") + ".deltas");
+
+		if (Boolean.getBoolean(REGENERATE_PROPERTY))
+		{
+			Files.write(deltas.toPath(), deltaLines(dataset, smoothing, summary, whitespaceSummary), StandardCharsets.UTF_8);
+			return;
+		}
+		assertTrue(deltas.isFile(), "Missing file " + deltas + "; generate it with -D" + REGENERATE_PROPERTY + "=true.");
+
+		Map<String, Float> expected = new LinkedHashMap<String, Float>();
+		for (String line : Files.readAllLines(deltas.toPath(), StandardCharsets.UTF_8))
+		{
+			if (!line.isEmpty() && !line.startsWith("#")) { putValue(expected, line); }
+		}
+		for (int index : CORPUS_PERPLEXITIES) { assertClose(expected.get(SUMMARY_KEYS[index]), summary[index], SUMMARY_KEYS[index]); }
+		for (int index = 0; index < SUMMARY_KEYS.length; index++)
+		{ assertClose(expected.get(WHITESPACE_PREFIX + SUMMARY_KEYS[index]), whitespaceSummary[index], WHITESPACE_PREFIX + SUMMARY_KEYS[index]); }
+	}
+
+
+	/**
+	 * Checks the corpus perplexities of a test
+	 * dataset against those of a naive maximum
+	 * likelihood estimate: every sentence of the
+	 * training dataset is split at whitespace, with
+	 * a trailing full stop split off and <s> and </s>
+	 * around it, and its unigrams and bigrams are
+	 * counted in HashMaps. Every token after <s> is
+	 * predicted, </s> included, over a unigram total
+	 * that leaves <s> out; unseen n-grams add nothing.
+	 * The estimate counts whitespace unigrams, so the
+	 * models are built with -U.
+	 */
+	@ParameterizedTest
+	@CsvSource({ "tiny, false", "tiny, true", "HG, false", "HG, true" })
+	public void perplexityMatchesNaiveEstimate(String dataset, boolean smoothing) throws IOException
+	{
+		AnalyzedData results = sequentialRun(dataset, smoothing, true);
+		int fill = smoothing ? 1 : 0;
+
+		Map<String, Integer> unigrams = new HashMap<String, Integer>();
+		Map<String, Integer> bigrams = new HashMap<String, Integer>();
+		long unigramTotal = 0;
+		for (String sentence : sentences(DATA_DIRECTORY + "train/" + dataset + "-train.txt"))
+		{
+			List<String> tokens = naiveTokens(sentence);
+			unigrams.merge(tokens.get(0), 1, Integer::sum);
+			for (int index = 1; index < tokens.size(); index++)
+			{
+				unigrams.merge(tokens.get(index), 1, Integer::sum);
+				bigrams.merge(tokens.get(index - 1) + " " + tokens.get(index), 1, Integer::sum);
+				unigramTotal++;
+			}
+		}
+
+		double unigramLogProbability = 0, bigramLogProbability = 0;
+		long steps = 0;
+		for (String sentence : sentences(DATA_DIRECTORY + "test/" + dataset + "-test.txt"))
+		{
+			List<String> tokens = naiveTokens(sentence);
+			for (int index = 1; index < tokens.size(); index++)
+			{
+				Integer unigram = unigrams.get(tokens.get(index));
+				if (unigram != null) { unigramLogProbability += Math.log((double) unigram / unigramTotal); }
+				Integer bigram = bigrams.get(tokens.get(index - 1) + " " + tokens.get(index));
+				if (bigram != null) { bigramLogProbability += Math.log((double) (bigram + fill) / unigrams.get(tokens.get(index - 1))); }
+				steps++;
+			}
+		}
+
+		float[] corpusPerplexity = results.getPerplexityReport().getCorpusPerplexity();
+		assertClose((float) Math.exp(-unigramLogProbability / steps), corpusPerplexity[0], "unigram corpus perplexity");
+		assertClose((float) Math.exp(-bigramLogProbability / steps), corpusPerplexity[1], "bigram corpus perplexity");
+	}
+
+
+	/**
+	 * Checks that counting the training dataset
+	 * on a pipeline of threads gives exactly the
+	 * numbers counting it on one thread gives.
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "tiny", "HG" })
+	public void parallelCountingAgrees(String dataset) throws IOException
+	{
+		AnalyzedData sequential = sequentialRun(dataset, true, false);
+		AnalyzedData parallel = run(dataset, configuration(true).setThreads(2).build());
+		assertSameResults(sequential, parallel);
+	}
+
+
+	/**
+	 * Checks that a counting pipeline cutting the
+	 * training dataset into small batches, so that
+	 * thousands of cuts fall within it, splits it into
+	 * the sentences of the whole dataset, and counts
+	 * exactly the same unigrams and bigrams.
+	 */
+	@Test
+	public void smallBatchesCountLikeWholeDataset() throws IOException
+	{
+		String file = DATA_DIRECTORY + "train/HG-train.txt";
+		sequentialRun("HG", true, false);
+		CountingPipeline pipeline = new CountingPipeline(LanguageModeler.getInstance().getPipeline(), 2, 1, null, true, true, 512);
+		pipeline.start(file, null);
+		HashMap<String, WordToken> unigrams = new HashMap<String, WordToken>(), bigrams = new HashMap<String, WordToken>();
+		pipeline.finish(unigrams, bigrams);
+
+		Annotation document = FileHandler.getInstance().readData(file);
+		LanguageModeler.getInstance().getPipeline().annotate(document);
+		List<String> sentences = new ArrayList<String>();
+		NgramCounts counts = new NgramCounts();
+		for (CoreMap sentence : document.get(SentencesAnnotation.class))
+		{
+			sentences.add(sentence.toString());
+			counts.addSentence(sentence.toString(), FileHandler.getInstance().tokenWords(sentence), null);
+		}
+		HashMap<String, WordToken> expectedUnigrams = new HashMap<String, WordToken>(), expectedBigrams = new HashMap<String, WordToken>();
+		counts.mergeInto(expectedUnigrams, expectedBigrams);
+
+		assertEquals(sentences, Arrays.asList(pipeline.getSentences()), "The batches were split into different sentences.");
+		assertSameCounts(expectedUnigrams, unigrams, "unigram");
+		assertSameCounts(expectedBigrams, bigrams, "bigram");
+	}
+
+
+	/**
+	 * Checks that a dataset annotated a small slice
+	 * at a time is split into the same sentences, with
+	 * the same tokens and line numbers, as the dataset
+	 * annotated in one slice holding all of it.
+	 */
+	@Test
+	public void smallSlicesAnnotateLikeWholeDataset() throws IOException
+	{
+		String file = DATA_DIRECTORY + "train/HG-train.txt";
+		sequentialRun("HG", true, false);
+		StanfordCoreNLP pipeline = LanguageModeler.getInstance().getPipeline();
+		Annotation whole = new MappedTextDocument(file, null, pipeline, (int) new File(file).length() + 1).getDocument();
+		Annotation sliced = new MappedTextDocument(file, null, pipeline, 512).getDocument();
+		assertEquals(sentenceLines(whole), sentenceLines(sliced), "The slices were split into different sentences.");
+	}
+
+
+	/**
+	 * Checks that scoring with the sentence cache
+	 * gives exactly the numbers scoring without it
+	 * gives, both for the test dataset and for the
+	 * sentences then scored from the cache.
+	 */
+	@Test
+	public void cachedScoringAgrees() throws IOException
+	{
+		AnalyzedData sequential = sequentialRun("HG", true, false);
+		AnalyzedData cached = run("HG", configuration(true).setSentenceCacheSize(10000).build());
+		assertSameResults(sequential, cached);
+
+		for (Map.Entry<String, float[]> sentence : sequential.getDocumentSentenceInfo().entrySet())
+		{
+			float[] scores = LanguageModeler.getInstance().scoreText(sentence.getKey());
+			assertEquals(sentence.getValue()[0], scores[0], "cached unigram probability of: " + sentence.getKey());
+			assertEquals(sentence.getValue()[1], scores[1], "cached bigram probability of: " + sentence.getKey());
+		}
+	}
+
+
+	/**
+	 * Checks that evaluating several test datasets
+	 * at a time against trained models gives exactly
+	 * the numbers evaluating each on its own gives.
+	 */
+	@Test
+	public void batchEvaluationAgrees() throws IOException
+	{
+		AnalyzedData tiny = run("HG", DATA_DIRECTORY + "test/tiny-test.txt", configuration(true).build());
+		AnalyzedData heldOut = run("HG", DATA_DIRECTORY + "test/HG-heldout50.txt", configuration(true).build());
+		AnalyzedData test = sequentialRun("HG", true, false);
+
+		LanguageModeler modeler = LanguageModeler.getInstance();
+		ModelStore store = modeler.trainModels(DATA_DIRECTORY + "train/HG-train.txt", configuration(true).build());
+		List<String> testFiles = Arrays.asList(DATA_DIRECTORY + "test/tiny-test.txt", DATA_DIRECTORY + "test/HG-heldout50.txt", DATA_DIRECTORY + "test/HG-test.txt");
+		new BatchEvaluator(modeler.getPipeline(), store, 3, null).evaluate(testFiles, outputDirectory.toString());
+
+		assertSameBatchResults(tiny, outputDirectory.resolve("tiny-test.txt.out"));
+		assertSameBatchResults(heldOut, outputDirectory.resolve("HG-heldout50.txt.out"));
+		assertSameBatchResults(test, outputDirectory.resolve("HG-test.txt.out"));
+	}
+
+
+	/**
+	 * Checks that ranking candidates on several
+	 * threads gives exactly the ranking one thread
+	 * gives.
+	 */
+	@Test
+	public void parallelRankingAgrees() throws IOException, InterruptedException
+	{
+		List<String> candidates = new ArrayList<String>(new TreeMap<String, float[]>(sequentialRun("HG", true, false).getDocumentSentenceInfo()).keySet());
+		ModelStore store = LanguageModeler.getInstance().trainModels(DATA_DIRECTORY + "train/HG-train.txt", configuration(true).build());
+
+		float[][] sequential = new TextRanker(store, 1).rank(candidates);
+		float[][] parallel = new TextRanker(store, 4).rank(candidates);
+		assertEquals(sequential.length, parallel.length);
+		for (int index = 0; index < sequential.length; index++) { assertArrayEquals(sequential[index], parallel[index], "rank " + index); }
+	}
+
+
+	/**
+	 * Checks that a candidate made only of words
+	 * the model has never seen ranks last, rather
+	 * than first with a perplexity of 1.
+	 */
+	@Test
+	public void unknownCandidatesRankLast() throws IOException, InterruptedException
+	{
+		ModelStore store = LanguageModeler.getInstance().trainModels(DATA_DIRECTORY + "train/HG-train.txt", configuration(true).build());
+		List<String> candidates = Arrays.asList("The book was good.", "qzxv wplk mmrtq", "She said that he was there.");
+
+		float[][] ranking = new TextRanker(store, 1).rank(candidates);
+		float[] last = ranking[ranking.length - 1];
+		assertEquals(1, (int) last[TextRanker.INDEX]);
+		assertEquals(3, (int) last[TextRanker.UNKNOWN_WORDS]);
+		assertTrue(last[TextRanker.PERPLEXITY] > ranking[0][TextRanker.PERPLEXITY]);
+	}
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that lists the sentences of an
+	 * annotated dataset, each with its line number
+	 * and its token words.
+	 */
+	private static List<String> sentenceLines(Annotation document)
+	{
+		List<String> lines = new ArrayList<String>();
+		for (CoreMap sentence : document.get(SentencesAnnotation.class))
+		{ lines.add(sentence.get(LineNumberAnnotation.class) + "\t" + sentence + "\t" + String.join(" ", FileHandler.getInstance().tokenWords(sentence))); }
+		return lines;
+	}
+
+
+	/**
+	 * Helper method that returns the results of the
+	 * sequential run on a dataset, making it only once.
+	 */
+	private static AnalyzedData sequentialRun(String dataset, boolean smoothing, boolean whitespaceUnigrams) throws IOException
+	{
+		String key = dataset + "/" + smoothing + "/" + whitespaceUnigrams;
+		if (!sequentialRuns.containsKey(key)) { sequentialRuns.put(key, run(dataset, configuration(smoothing).setWhitespaceUnigrams(whitespaceUnigrams).build())); }
+		return sequentialRuns.get(key);
+	}
+
+
+	/**
+	 * Helper method that builds the models of a
+	 * dataset and evaluates its test dataset.
+	 */
+	private static AnalyzedData run(String dataset, RunConfiguration configuration) throws IOException
+	{
+		return run(dataset, DATA_DIRECTORY + "test/" + dataset + "-test.txt", configuration);
+	}
+
+
+	/**
+	 * Helper method that builds the models of a
+	 * dataset and evaluates a test dataset.
+	 */
+	private static AnalyzedData run(String dataset, String testFile, RunConfiguration configuration) throws IOException
+	{
+		return LanguageModeler.getInstance().analyzeText(DATA_DIRECTORY + "train/" + dataset + "-train.txt", testFile, configuration);
+	}
+
+
+	/**
+	 * Helper method that returns a configuration
+	 * computing perplexity, with or without smoothing.
+	 */
+	private static RunConfiguration.Builder configuration(boolean smoothing)
+	{
+		return new RunConfiguration.Builder().setPerplexity(true).setSmoothing(smoothing);
+	}
+
+
+	/**
+	 * Helper method that returns the texts of the
+	 * sentences CoreNLP splits a dataset into.
+	 */
+	private static List<String> sentences(String file) throws IOException
+	{
+		Annotation document = FileHandler.getInstance().readData(file);
+		if (document.get(SentencesAnnotation.class) == null) { LanguageModeler.getInstance().getPipeline().annotate(document); }
+		List<String> sentences = new ArrayList<String>();
+		for (CoreMap sentence : document.get(SentencesAnnotation.class)) { sentences.add(sentence.toString()); }
+		return sentences;
+	}
+
+
+	/**
+	 * Helper method that splits a sentence into the
+	 * tokens the naive estimate counts: <s>, the words
+	 * split at whitespace with a trailing full stop
+	 * split off, and </s>.
+	 */
+	private static List<String> naiveTokens(String sentence)
+	{
+		List<String> tokens = new ArrayList<String>();
+		tokens.add("<s>");
+		boolean fullStop = sentence.endsWith(".");
+		for (String word : (fullStop ? sentence.substring(0, sentence.length() - 1) : sentence).split("\\s+"))
+		{
+			if (!word.isEmpty()) { tokens.add(word); }
+		}
+		if (fullStop) { tokens.add("."); }
+		tokens.add("</s>");
+		return tokens;
+	}
+
+
+	/**
+	 * Helper method that returns the summary values
+	 * of a run, in the order of SUMMARY_KEYS.
+	 */
+	private static float[] summaryValues(AnalyzedData results)
+	{
+		float[] perplexity = results.getDocumentPerplexity();
+		float[] corpusPerplexity = results.getPerplexityReport().getCorpusPerplexity();
+		return new float[] { perplexity[0], perplexity[1], corpusPerplexity[0], corpusPerplexity[1],
+			results.getAverageUnigramProbability(), results.getAverageBigramProbability() };
+	}
+
+
+	/**
+	 * Helper method that writes the intended
+	 * differences of a dataset as the lines of a
+	 * deltas file, each explained.
+	 */
+	private static List<String> deltaLines(String dataset, boolean smoothing, float[] summary, float[] whitespaceSummary)
+	{
+		List<String> lines = new ArrayList<String>();
+		lines.add("# Intended differences from the original program, on " + dataset + "-train.txt against " + dataset + "-test.txt" + (smoothing ? ", with smoothing." : "."));
+		lines.add("# The golden values beside this file are the original program's numbers, which a default run still gives.");
+		lines.add("");
+		lines.add("# The corpus perplexities of a default run. The original program did not compute them: they are the");
+		lines.add("# exponential of minus the mean log probability of every word and end symbol of the test dataset.");
+		for (int index : CORPUS_PERPLEXITIES) { lines.add(SUMMARY_KEYS[index] + "=" + summary[index]); }
+		lines.add("");
+		lines.add("# The summary values of a run given -U, which counts unigrams from the words split at whitespace,");
+		lines.add("# rather than from the words of the CoreNLP tokens as the original program did. A word CoreNLP");
+		lines.add("# splits, such as one with punctuation attached, is counted whole, so every unigram count, and");
+		lines.add("# with it every unigram and bigram probability, may differ from the golden values.");
+		for (int index = 0; index < SUMMARY_KEYS.length; index++) { lines.add(WHITESPACE_PREFIX + SUMMARY_KEYS[index] + "=" + whitespaceSummary[index]); }
+		return lines;
+	}
+
+
+	/**
+	 * Helper method that reads a key=value line of
+	 * a golden or deltas file into a map.
+	 */
+	private static void putValue(Map<String, Float> values, String line)
+	{
+		String[] pair = line.split("=", 2);
+		values.put(pair[0], Float.parseFloat(pair[1]));
+	}
+
+
+	/**
+	 * Helper method that checks two count models
+	 * hold the same n-grams with the same counts.
+	 */
+	private static void assertSameCounts(Map<String, WordToken> expected, Map<String, WordToken> actual, String name)
+	{
+		assertEquals(expected.keySet(), actual.keySet(), "The " + name + "s counted differ.");
+		for (Map.Entry<String, WordToken> ngram : expected.entrySet())
+		{ assertEquals(ngram.getValue().count, actual.get(ngram.getKey()).count, name + " count of: " + ngram.getKey()); }
+	}
+
+
+	/**
+	 * Helper method that checks two runs gave
+	 * exactly the same numbers.
+	 */
+	private static void assertSameResults(AnalyzedData expected, AnalyzedData actual)
+	{
+		assertArrayEquals(summaryValues(expected), summaryValues(actual), "summary values");
+		assertEquals(expected.getDocumentSentenceInfo().keySet(), actual.getDocumentSentenceInfo().keySet(), "The test dataset was split into different sentences.");
+		for (Map.Entry<String, float[]> sentence : expected.getDocumentSentenceInfo().entrySet())
+		{ assertArrayEquals(sentence.getValue(), actual.getDocumentSentenceInfo().get(sentence.getKey()), "scores of: " + sentence.getKey()); }
+	}
+
+
+	/**
+	 * Helper method that checks the result file a
+	 * batch evaluation wrote for a test dataset holds
+	 * exactly the numbers of the run on it alone.
+	 */
+	private static void assertSameBatchResults(AnalyzedData expected, Path resultFile) throws IOException
+	{
+		List<String> lines = Files.readAllLines(resultFile, StandardCharsets.UTF_8);
+		Map<String, float[]> sentences = expected.getDocumentSentenceInfo();
+		int scored = 0;
+		StringBuilder text = null;
+		for (int index = 0; index < lines.size(); index++)
+		{
+			String line = lines.get(index);
+			if (text == null && line.startsWith("Sentence ")) { text = new StringBuilder(line.substring(line.indexOf(": ") + 2)); }
+			else if (text != null && line.startsWith("- unigram [Prob] "))
+			{
+				float[] scores = sentences.get(text.toString());
+				assertNotNull(scores, "The batch evaluation scored an unknown sentence: " + text);
+				assertEquals(scores[0], Float.parseFloat(line.substring("- unigram [Prob] ".length())), "unigram probability of: " + text);
+				assertEquals(scores[1], Float.parseFloat(lines.get(++index).substring("- bigram  [Prob] ".length())), "bigram probability of: " + text);
+				text = null;
+				scored++;
+			}
+			// A sentence spanning several lines of its dataset keeps its line breaks.
+			else if (text != null) { text.append('\n').append(line); }
+			else if (line.startsWith("- Unigram perplexity: "))
+			{ assertEquals(expected.getPerplexityReport().getCorpusPerplexity()[0], Float.parseFloat(line.substring("- Unigram perplexity: ".length()))); }
+			else if (line.startsWith("- Bigram perplexity:  "))
+			{ assertEquals(expected.getPerplexityReport().getCorpusPerplexity()[1], Float.parseFloat(line.substring("- Bigram perplexity:  ".length()))); }
+		}
+		if (scored < sentences.size()) { fail("The batch evaluation scored " + scored + " sentences, not " + sentences.size() + "."); }
+	}
+
+
+	/**
+	 * Helper method that checks a value is within
+	 * the tolerance of its golden value.
+	 */
+	private static void assertClose(Float expected, float actual, String name)
+	{
+		assertNotNull(expected, "Missing golden value of " + name);
+		if (Float.isInfinite(expected) || Float.isNaN(expected)) { assertEquals(expected.floatValue(), actual, name); return; }
+		assertEquals(expected, actual, TOLERANCE * Math.max(1, Math.abs(expected)), name);
+	}
+
+
+	/**
+	 * Helper method that escapes the backslashes,
+	 * tabs and line breaks of a sentence, so it fits
+	 * on one line of a golden file.
+	 */
+	private static String escape(String text)
+	{
+		return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+}
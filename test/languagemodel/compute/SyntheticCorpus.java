@@ -0,0 +1,154 @@
+package languagemodel.compute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * This class generates the synthetic corpora the
+ * equivalence tests count and score: sentences of
+ * random lengths, whose words are drawn from a Zipf
+ * distribution over a vocabulary of random size and
+ * skew. Besides plain words, the vocabulary holds the
+ * forms the counting engines handle specially: words
+ * outside the Basic Multilingual Plane, punctuation,
+ * words ending in a full stop, the text of the <s> and
+ * </s> symbols, and words separated by tabs, vertical
+ * tabs or form feeds rather than spaces.
+ * Everything is drawn from the seed, so a corpus can
+ * be generated again from its seed alone.
+ *
+ * @author David Olorundare
+ *
+ */
+final class SyntheticCorpus
+{
+
+	//============================================ PRIVATE VARIABLES =============================================================
+
+
+	// Represents the word forms besides plain words, each taken by some of the ranks.
+	private static final String[] SPECIAL_WORDS = { ".", ",", ";", "'s", "--", "(", ")", "<s>", "</s>", "été", "日本", "𝄞" };
+
+	// Represents what a sentence may end with: nothing, a full stop on its own or on the last word, or another mark.
+	private static final String[] SENTENCE_ENDS = { "", " .", ".", " !", "?", " ...", "..." };
+
+	// Represents the random source every choice is drawn from.
+	private final Random random;
+
+	// Represents the words of the vocabulary, by Zipf rank.
+	private final String[] words;
+
+	// Represents the cumulative Zipf weights of the ranks.
+	private final double[] cumulativeWeights;
+
+	// Represents the separators words are joined with, the first of them by far the most often.
+	private final String[] separators;
+
+
+	//============================================ CONSTRUCTOR =============================================================
+
+
+	/**
+	 * Constructor of the class.
+	 *
+	 * @param seed	the seed every choice is drawn from.
+	 *
+	 * @param separatorCharacters	the separators words may be joined with; the first is used most often.
+	 */
+	SyntheticCorpus(long seed, String... separatorCharacters)
+	{
+		random = new Random(seed);
+		separators = separatorCharacters;
+
+		// Small vocabularies repeat their bigrams a lot, large ones leave most of them unseen.
+		int vocabularySize = 1 + random.nextInt(random.nextBoolean() ? 12 : 600);
+		double exponent = 0.7 + random.nextDouble() * 1.3;
+		words = new String[vocabularySize];
+		cumulativeWeights = new double[vocabularySize];
+		double total = 0;
+		for (int rank = 0; rank < vocabularySize; rank++)
+		{
+			int form = random.nextInt(10);
+			if (form == 0) { words[rank] = SPECIAL_WORDS[random.nextInt(SPECIAL_WORDS.length)]; }
+			else if (form == 1) { words[rank] = "a" + rank + "."; }
+			else { words[rank] = "w" + rank; }
+			total += 1 / Math.pow(rank + 1, exponent);
+			cumulativeWeights[rank] = total;
+		}
+	}
+
+
+	//============================================ PUBLIC METHODS =============================================================
+
+
+	/**
+	 * Helper method that generates sentences.
+	 *
+	 * @param maximumSentences	the largest number of sentences.
+	 *
+	 * @param maximumLength	the largest number of words in a sentence.
+	 *
+	 * @param unseenRate	the fraction of words replaced by words outside the vocabulary.
+	 *
+	 * @return	the sentences, without start or end symbols.
+	 */
+	List<String> sentences(int maximumSentences, int maximumLength, double unseenRate)
+	{
+		int count = 1 + random.nextInt(maximumSentences);
+		List<String> sentences = new ArrayList<String>(count);
+		for (int index = 0; index < count; index++)
+		{
+			StringBuilder sentence = new StringBuilder();
+			int length = random.nextInt(maximumLength + 1);
+			for (int position = 0; position < length; position++)
+			{
+				if (position > 0) { sentence.append(separator()); }
+				sentence.append((random.nextDouble() < unseenRate) ? "u" + random.nextInt(1000) : words[zipf()]);
+			}
+			sentence.append(SENTENCE_ENDS[random.nextInt(SENTENCE_ENDS.length)]);
+			sentences.add(sentence.toString());
+		}
+		return sentences;
+	}
+
+
+	/**
+	 * Helper method that draws a number from
+	 * the random source of the corpus, for the
+	 * settings an engine is run with.
+	 *
+	 * @param bound	the bound (exclusive) of the number.
+	 *
+	 * @return	the number drawn.
+	 */
+	int nextInt(int bound)
+	{ return random.nextInt(bound); }
+
+
+	//============================================ PRIVATE METHODS =============================================================
+
+
+	/**
+	 * Helper method that draws the rank of a word
+	 * from the Zipf distribution.
+	 */
+	private int zipf()
+	{
+		int rank = Arrays.binarySearch(cumulativeWeights, random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1]);
+		return Math.min(words.length - 1, (rank >= 0) ? rank : -rank - 1);
+	}
+
+
+	/**
+	 * Helper method that draws the separator of
+	 * two words.
+	 */
+	private String separator()
+	{
+		return (separators.length == 1 || random.nextInt(8) != 0) ? separators[0] : separators[1 + random.nextInt(separators.length - 1)];
+	}
+
+}